@@ -17,6 +17,9 @@
 package org.springframework.cloud.stream.app.label.image.processor;
 
 import java.net.MalformedURLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -29,9 +32,11 @@ import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowInput
 import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowOutputConverter;
 import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowProcessorConfiguration;
 import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowProcessorProperties;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowStartup;
 import org.springframework.cloud.stream.messaging.Processor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.io.Resource;
 
 /**
  * A processor that evaluates a machine learning model stored in TensorFlow's ProtoBuf format.
@@ -50,10 +55,18 @@ public class LabelImageProcessorConfiguration {
 	private LabelImageProcessorProperties properties;
 
 	@Bean
-	public TensorflowOutputConverter tensorflowOutputConverter() {
-		logger.info("Load list: " + properties.getLabelsLocation());
+	public TensorflowOutputConverter tensorflowOutputConverter(TensorflowStartup tensorflowStartup) {
+		final Resource labelsLocation = properties.getLabelsLocation();
+		logger.info("Load list: " + labelsLocation);
 		logger.info("Load LabelImageTensorflowOutputConverter");
-		return new LabelImageTensorflowOutputConverter(properties.getLabelsLocation(), properties.getAlternativesLength());
+		// Read concurrently with the model import
+		Future<List<String>> labels = tensorflowStartup.submit("labels", new Callable<List<String>>() {
+			@Override
+			public List<String> call() {
+				return LabelImageTensorflowOutputConverter.readLabels(labelsLocation);
+			}
+		});
+		return new LabelImageTensorflowOutputConverter(labels, properties.getAlternativesLength());
 	}
 
 	@Bean
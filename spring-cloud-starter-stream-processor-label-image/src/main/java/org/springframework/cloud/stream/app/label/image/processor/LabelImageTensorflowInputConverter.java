@@ -41,6 +41,8 @@ public class LabelImageTensorflowInputConverter implements TensorflowInputConver
 
 	private final Output graphOutput;
 
+	private final Session session;
+
 	public LabelImageTensorflowInputConverter() {
 		graph = new Graph();
 		GraphBuilder b = new GraphBuilder(graph);
@@ -66,13 +68,13 @@ public class LabelImageTensorflowInputConverter implements TensorflowInputConver
 								b.constant("mean", mean)),
 						b.constant("scale", scale));
 
+		// Session is thread-safe. Reuse it for all images
+		session = new Session(graph);
 	}
 
 	private Tensor constructAndExecuteGraphToNormalizeImage3(byte[] imageBytes) {
-		try (Session s = new Session(graph)) {
-			try (Tensor inputTensor = Tensor.create(imageBytes)) {
-				return s.runner().feed("input", inputTensor).fetch(graphOutput.op().name()).run().get(0);
-			}
+		try (Tensor inputTensor = Tensor.create(imageBytes)) {
+			return session.runner().feed("input", inputTensor).fetch(graphOutput.op().name()).run().get(0);
 		}
 	}
 
@@ -82,6 +84,7 @@ public class LabelImageTensorflowInputConverter implements TensorflowInputConver
 		Object payload = input.getPayload();
 
 		if (payload instanceof byte[]) {
+			// The normalized image tensor is released by the TensorFlowService once the model is evaluated
 			Tensor inputImageTensor = constructAndExecuteGraphToNormalizeImage3((byte[]) payload);
 			Map<String, Object> inputMap = new HashMap<>();
 			inputMap.put("input", inputImageTensor);
@@ -95,6 +98,9 @@ public class LabelImageTensorflowInputConverter implements TensorflowInputConver
 	@Override
 	public void close() throws Exception {
 		logger.info("Input Graph Destroyed");
+		if (session != null) {
+			session.close();
+		}
 		if (graph != null) {
 			graph.close();
 		}
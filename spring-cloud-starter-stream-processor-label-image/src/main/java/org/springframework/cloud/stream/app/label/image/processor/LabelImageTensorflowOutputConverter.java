@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
@@ -31,6 +32,7 @@ import org.apache.commons.logging.LogFactory;
 import org.tensorflow.Tensor;
 
 import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowOutputConverter;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowStartup;
 import org.springframework.core.io.Resource;
 import org.springframework.util.Assert;
 
@@ -46,26 +48,48 @@ public class LabelImageTensorflowOutputConverter implements TensorflowOutputConv
 
 	private static final Log logger = LogFactory.getLog(LabelImageTensorflowOutputConverter.class);
 
-	private final List<String> labels;
+	private volatile List<String> labels;
 
-	private final ObjectMapper objectMapper;
+	private final Future<List<String>> pendingLabels;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
 
 	private final int alternativesLength;
 
 	public LabelImageTensorflowOutputConverter(Resource labelsLocation, int alternativesLength) {
 		this.alternativesLength = alternativesLength;
+		this.labels = readLabels(labelsLocation);
+		this.pendingLabels = null;
+	}
+
+	/**
+	 * @param labels Labels loaded in the background (see {@link #readLabels(Resource)}). The first conversion waits
+	 * for them.
+	 */
+	public LabelImageTensorflowOutputConverter(Future<List<String>> labels, int alternativesLength) {
+		this.alternativesLength = alternativesLength;
+		this.pendingLabels = labels;
+	}
+
+	public static List<String> readLabels(Resource labelsLocation) {
 		try (InputStream is = labelsLocation.getInputStream()) {
-			labels = IOUtils.readLines(is, Charset.forName("UTF-8"));
-			objectMapper = new ObjectMapper();
+			List<String> labels = IOUtils.readLines(is, Charset.forName("UTF-8"));
 			Assert.notNull(labels, "Failed to initialize the labels list");
-			Assert.notNull(objectMapper, "Failed to initialize the objectMapper");
+			logger.info("Labels Initialized");
+			return labels;
 		}
 		catch (IOException e) {
-			throw new RuntimeException("Failed to initialize the Vocabulary", e);
+			throw new RuntimeException("Failed to initialize the labels", e);
 		}
+	}
 
-		logger.info("Word Vocabulary Initialized");
-
+	private List<String> labels() {
+		List<String> loaded = labels;
+		if (loaded == null) {
+			loaded = TensorflowStartup.await(pendingLabels, "labels");
+			labels = loaded;
+		}
+		return loaded;
 	}
 
 	@Override
@@ -81,6 +105,7 @@ public class LabelImageTensorflowOutputConverter implements TensorflowOutputConv
 		float[] labelProbabilities = tensor.copyTo(new float[1][nlabels])[0];
 
 		int mostProbableLabelIndex = maxProbabilityIndex(labelProbabilities);
+		List<String> labels = labels();
 
 		Map<String, Object> outputJsonMap = new HashMap<>();
 		outputJsonMap.put("label", labels.get(mostProbableLabelIndex));
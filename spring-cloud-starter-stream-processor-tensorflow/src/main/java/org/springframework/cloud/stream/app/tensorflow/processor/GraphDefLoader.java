@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * Reads serialized GraphDef models with as few heap copies as possible.
+ *
+ * The TensorFlow Java API imports graphs from a byte array only, so one heap copy of the model is unavoidable.
+ * File based models are memory-mapped and copied straight from the page cache into a single, exactly sized array.
+ * This avoids the stream buffer, the growing output buffer copies and the temporary direct buffer that a heap
+ * targeted {@link FileChannel#read(java.nio.ByteBuffer)} would allocate. Other resources (classpath, http) are
+ * read from their input stream.
+ *
+ * @author Christian Tzolov
+ */
+public class GraphDefLoader {
+
+	private static final Log logger = LogFactory.getLog(GraphDefLoader.class);
+
+	private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	public static byte[] load(Resource modelLocation) throws IOException {
+		long start = System.nanoTime();
+		long usedHeapBefore = usedHeap();
+
+		File file = toFile(modelLocation);
+		byte[] graphDef = (file != null) ? readMapped(file) : readStream(modelLocation);
+
+		logger.info(String.format("Read %d bytes GraphDef from %s in %d ms (%s, heap delta %d KB)",
+				graphDef.length, modelLocation, (System.nanoTime() - start) / 1000000,
+				(file != null) ? "memory-mapped" : "stream", (usedHeap() - usedHeapBefore) / 1024));
+
+		return graphDef;
+	}
+
+	static byte[] readMapped(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			Assert.isTrue(size <= MAX_ARRAY_SIZE, "GraphDef larger than 2GB is not supported: " + file);
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			byte[] graphDef = new byte[(int) size];
+			mapped.get(graphDef);
+			return graphDef;
+		}
+	}
+
+	static byte[] readStream(Resource modelLocation) throws IOException {
+		try (InputStream is = modelLocation.getInputStream()) {
+			// The output buffer of toByteArray already buffers the reads
+			return IOUtils.toByteArray(is);
+		}
+	}
+
+	private static File toFile(Resource resource) throws IOException {
+		try {
+			File file = resource.getFile();
+			return file.isFile() ? file : null;
+		}
+		catch (IOException e) {
+			if (TensorflowModelCache.isCached(resource)) {
+				// The cached model could not be fetched, reading its stream would fetch it again
+				throw e;
+			}
+			// Not a file system resource
+			return null;
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
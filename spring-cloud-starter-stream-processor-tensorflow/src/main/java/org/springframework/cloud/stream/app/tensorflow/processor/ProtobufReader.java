@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal protobuf wire format reader, used to inspect the serialized TensorFlow messages (e.g. GraphDef) without
+ * the protobuf runtime and the generated TensorFlow classes. Length delimited fields (e.g. Const node weights) are
+ * skipped or read as sub-readers over the same array, without copy.
+ *
+ * @author Christian Tzolov
+ */
+final class ProtobufReader {
+
+	static final int WIRETYPE_VARINT = 0;
+
+	static final int WIRETYPE_FIXED64 = 1;
+
+	static final int WIRETYPE_LENGTH_DELIMITED = 2;
+
+	static final int WIRETYPE_FIXED32 = 5;
+
+	private final byte[] buffer;
+
+	private final int start;
+
+	private final int limit;
+
+	private int position;
+
+	private int tag;
+
+	private int fieldStart;
+
+	ProtobufReader(byte[] buffer) {
+		this(buffer, 0, buffer.length);
+	}
+
+	ProtobufReader(byte[] buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.start = offset;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+
+	/**
+	 * Reads the next field tag.
+	 * @return false at the end of the message.
+	 */
+	boolean next() {
+		if (position >= limit) {
+			return false;
+		}
+		fieldStart = position;
+		tag = (int) readVarint();
+		return true;
+	}
+
+	int fieldNumber() {
+		return tag >>> 3;
+	}
+
+	int wireType() {
+		return tag & 0x7;
+	}
+
+	long readVarint() {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed protobuf varint");
+	}
+
+	int readFixed32() {
+		return (readByte() & 0xFF) | (readByte() & 0xFF) << 8 | (readByte() & 0xFF) << 16 | (readByte() & 0xFF) << 24;
+	}
+
+	long readFixed64() {
+		return (readFixed32() & 0xFFFFFFFFL) | ((long) readFixed32() << 32);
+	}
+
+	String readString() {
+		int length = readLength();
+		String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return value;
+	}
+
+	byte[] readBytes() {
+		int length = readLength();
+		byte[] value = new byte[length];
+		System.arraycopy(buffer, position, value, 0, length);
+		position += length;
+		return value;
+	}
+
+	/**
+	 * @return Reader of the embedded message (or packed repeated field) value.
+	 */
+	ProtobufReader readMessage() {
+		int length = readLength();
+		ProtobufReader message = new ProtobufReader(buffer, position, length);
+		position += length;
+		return message;
+	}
+
+	/**
+	 * @return New reader of the whole message, from its first field.
+	 */
+	ProtobufReader duplicate() {
+		return new ProtobufReader(buffer, start, limit - start);
+	}
+
+	/**
+	 * Writes the whole message, unchanged, to the output.
+	 */
+	void writeTo(ByteArrayOutputStream out) {
+		out.write(buffer, start, limit - start);
+	}
+
+	int length() {
+		return limit - start;
+	}
+
+	/**
+	 * @return Reader over the raw bytes (tag and value) of the current field. Call once the value is read or skipped.
+	 */
+	ProtobufReader rawField() {
+		return new ProtobufReader(buffer, fieldStart, position - fieldStart);
+	}
+
+	/**
+	 * Skips the value of the current field.
+	 */
+	void skip() {
+		switch (wireType()) {
+		case WIRETYPE_VARINT:
+			readVarint();
+			break;
+		case WIRETYPE_FIXED64:
+			advance(8);
+			break;
+		case WIRETYPE_LENGTH_DELIMITED:
+			advance(readLength());
+			break;
+		case WIRETYPE_FIXED32:
+			advance(4);
+			break;
+		default:
+			throw new IllegalArgumentException("Unsupported protobuf wire type: " + wireType());
+		}
+	}
+
+	private int readLength() {
+		long length = readVarint();
+		if (length < 0 || length > limit - position) {
+			throw new IllegalArgumentException("Malformed protobuf length: " + length);
+		}
+		return (int) length;
+	}
+
+	private void advance(int length) {
+		if (length > limit - position) {
+			throw new IllegalArgumentException("Truncated protobuf message");
+		}
+		position += length;
+	}
+
+	private byte readByte() {
+		if (position >= limit) {
+			throw new IllegalArgumentException("Truncated protobuf message");
+		}
+		return buffer[position++];
+	}
+}
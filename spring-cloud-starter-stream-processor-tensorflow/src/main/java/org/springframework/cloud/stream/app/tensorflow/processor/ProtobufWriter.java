@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal protobuf wire format writer, the counterpart of {@link ProtobufReader}. Used to compose the serialized
+ * TensorFlow messages (ConfigProto, rewritten GraphDef nodes) without the protobuf runtime.
+ *
+ * @author Christian Tzolov
+ */
+final class ProtobufWriter {
+
+	private ProtobufWriter() {
+	}
+
+	static void writeVarintField(ByteArrayOutputStream out, int fieldNumber, long value) {
+		writeVarint(out, (fieldNumber << 3) | ProtobufReader.WIRETYPE_VARINT);
+		writeVarint(out, value);
+	}
+
+	static void writeStringField(ByteArrayOutputStream out, int fieldNumber, String value) {
+		writeBytesField(out, fieldNumber, value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes a bytes, string or embedded message field.
+	 */
+	static void writeBytesField(ByteArrayOutputStream out, int fieldNumber, byte[] value) {
+		writeVarint(out, (fieldNumber << 3) | ProtobufReader.WIRETYPE_LENGTH_DELIMITED);
+		writeVarint(out, value.length);
+		out.write(value, 0, value.length);
+	}
+
+	/**
+	 * Writes a base 128 varint. Negative (enum) values are sign extended to 64 bits, as protobuf does.
+	 */
+	static void writeVarint(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+}
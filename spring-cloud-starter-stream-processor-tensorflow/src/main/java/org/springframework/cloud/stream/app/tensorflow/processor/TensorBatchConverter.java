@@ -0,0 +1,227 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tensorflow.DataType;
+import org.tensorflow.Tensor;
+
+import org.springframework.util.Assert;
+
+/**
+ * Utility that stacks the feeds of several messages into a single batch along dimension 0 and splits a batched
+ * result {@link Tensor} back into per message tensors.
+ *
+ * Scalar (rank 0) feeds can not be stacked. They are fed once and must hold the same value in every message of the
+ * batch (for example the dropout_keep_prob of the Twitter Sentiment model).
+ *
+ * @author Christian Tzolov
+ */
+public class TensorBatchConverter {
+
+	/**
+	 * The stacked feeds along with the number of rows contributed by every message.
+	 */
+	public static class StackedFeeds {
+
+		private final Map<String, Object> feeds;
+
+		private final int[] rows;
+
+		StackedFeeds(Map<String, Object> feeds, int[] rows) {
+			this.feeds = feeds;
+			this.rows = rows;
+		}
+
+		public Map<String, Object> getFeeds() {
+			return feeds;
+		}
+
+		public int[] getRows() {
+			return rows;
+		}
+	}
+
+	/**
+	 * Stacks the feeds of every message along dimension 0. All messages must provide the same feed names, data types
+	 * and trailing dimensions. The per message feed tensors are released once copied into the batch, or when the
+	 * batch can not be stacked.
+	 * @param messageFeeds Feeds for every message in the batch, as returned by the {@link TensorflowInputConverter}.
+	 * @return Batched feeds as {@link Tensor} values along with the rows contributed by each message.
+	 */
+	public static StackedFeeds stack(List<Map<String, Object>> messageFeeds) {
+		Assert.notEmpty(messageFeeds, "Can not stack an empty batch");
+
+		int batchSize = messageFeeds.size();
+		int[] rows = new int[batchSize];
+		Arrays.fill(rows, -1);
+
+		Map<String, Object> stackedFeeds = new HashMap<>();
+		try {
+			for (String feedName : messageFeeds.get(0).keySet()) {
+				List<Tensor> tensors = new ArrayList<>(batchSize);
+				try {
+					for (Map<String, Object> feeds : messageFeeds) {
+						Assert.isTrue(feeds.containsKey(feedName), "Missing feed [" + feedName + "] in batch message");
+						tensors.add(TensorFlowService.toFeedTensor(feeds.get(feedName)));
+					}
+					stackedFeeds.put(feedName, stack(feedName, tensors, rows));
+				}
+				finally {
+					for (Tensor tensor : tensors) {
+						tensor.close();
+					}
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			for (Object tensor : stackedFeeds.values()) {
+				((Tensor) tensor).close();
+			}
+			// The feeds of the other feed names and of the messages after the failed one are not copied yet
+			closeFeeds(messageFeeds);
+			throw e;
+		}
+
+		for (int i = 0; i < batchSize; i++) {
+			if (rows[i] <= 0) {
+				for (Object tensor : stackedFeeds.values()) {
+					((Tensor) tensor).close();
+				}
+				throw new IllegalArgumentException("Every batch message must provide at least one non scalar feed");
+			}
+		}
+
+		return new StackedFeeds(stackedFeeds, rows);
+	}
+
+	/**
+	 * Closes the {@link Tensor} feed values of every message. Closing an already closed tensor has no effect.
+	 * @param messageFeeds Feeds for every message in the batch.
+	 */
+	public static void closeFeeds(List<Map<String, Object>> messageFeeds) {
+		for (Map<String, Object> feeds : messageFeeds) {
+			for (Object value : feeds.values()) {
+				if (value instanceof Tensor) {
+					((Tensor) value).close();
+				}
+			}
+		}
+	}
+
+	private static Tensor stack(String feedName, List<Tensor> tensors, int[] rows) {
+		Tensor first = tensors.get(0);
+		DataType dataType = first.dataType();
+		long[] firstShape = first.shape();
+
+		Assert.isTrue(dataType != DataType.STRING, "STRING feed [" + feedName + "] can not be batched");
+
+		if (firstShape.length == 0) {
+			ByteBuffer firstValue = toByteBuffer(first);
+			for (Tensor tensor : tensors) {
+				Assert.isTrue(firstValue.equals(toByteBuffer(tensor)),
+						"Scalar feed [" + feedName + "] must have the same value in every batch message");
+			}
+			return Tensor.create(dataType, firstShape, firstValue);
+		}
+
+		long totalRows = 0;
+		long totalBytes = 0;
+		for (int i = 0; i < tensors.size(); i++) {
+			Tensor tensor = tensors.get(i);
+			long[] shape = tensor.shape();
+			Assert.isTrue(tensor.dataType() == dataType && shape.length == firstShape.length
+							&& Arrays.equals(Arrays.copyOfRange(shape, 1, shape.length),
+							Arrays.copyOfRange(firstShape, 1, firstShape.length)),
+					"Feed [" + feedName + "] has incompatible type or shape in batch message " + i);
+			Assert.isTrue(rows[i] < 0 || rows[i] == shape[0],
+					"Feeds of batch message " + i + " have different dimension 0 sizes");
+			rows[i] = (int) shape[0];
+			totalRows += shape[0];
+			totalBytes += tensor.numBytes();
+		}
+
+		Assert.isTrue(totalBytes <= Integer.MAX_VALUE,
+				"Feed [" + feedName + "] of " + totalBytes + " bytes is too large to be batched");
+		// Heap buffer, Tensor.create copies it into the native tensor memory
+		ByteBuffer buffer = ByteBuffer.allocate((int) totalBytes).order(ByteOrder.nativeOrder());
+		for (Tensor tensor : tensors) {
+			tensor.writeTo(buffer);
+		}
+		buffer.flip();
+
+		long[] batchShape = firstShape.clone();
+		batchShape[0] = totalRows;
+		return Tensor.create(dataType, batchShape, buffer);
+	}
+
+	/**
+	 * Splits the batched tensor along dimension 0 into one tensor per message. The caller is responsible for
+	 * closing both the batched and the returned tensors.
+	 * @param batch Batched model result.
+	 * @param rows Number of rows that belong to every message.
+	 * @return Per message tensors, in the rows order.
+	 */
+	public static List<Tensor> split(Tensor batch, int[] rows) {
+		long[] shape = batch.shape();
+		long totalRows = 0;
+		for (int r : rows) {
+			totalRows += r;
+		}
+		Assert.isTrue(shape.length > 0 && shape[0] == totalRows,
+				"Batched result with shape " + Arrays.toString(shape) + " can not be split into " + totalRows + " rows");
+		Assert.isTrue(batch.dataType() != DataType.STRING, "STRING results can not be split");
+
+		ByteBuffer all = toByteBuffer(batch);
+		int bytesPerRow = (totalRows == 0) ? 0 : (int) (batch.numBytes() / totalRows);
+
+		List<Tensor> slices = new ArrayList<>(rows.length);
+		try {
+			int offset = 0;
+			for (int r : rows) {
+				ByteBuffer slice = all.duplicate();
+				slice.position(offset);
+				slice.limit(offset + r * bytesPerRow);
+				long[] sliceShape = shape.clone();
+				sliceShape[0] = r;
+				slices.add(Tensor.create(batch.dataType(), sliceShape, slice));
+				offset += r * bytesPerRow;
+			}
+		}
+		catch (RuntimeException e) {
+			for (Tensor slice : slices) {
+				slice.close();
+			}
+			throw e;
+		}
+		return slices;
+	}
+
+	private static ByteBuffer toByteBuffer(Tensor tensor) {
+		ByteBuffer buffer = ByteBuffer.allocate(tensor.numBytes()).order(ByteOrder.nativeOrder());
+		tensor.writeTo(buffer);
+		buffer.flip();
+		return buffer;
+	}
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.jpountz.lz4.LZ4Factory;
+import org.tensorflow.DataType;
+import org.tensorflow.Tensor;
+
+import org.springframework.util.Assert;
+
+/**
+ * Encodes {@link Tensor} values into compact transport representations and decodes them back.
+ *
+ * Besides the plain little-endian bytes (NONE) following encodings are supported:
+ * <li>
+ *     LZ4 : LZ4 block compression of the little-endian bytes. Any numeric tensor.
+ *     FLOAT16 : IEEE 754 half precision floats. FLOAT tensors only.
+ *     BFLOAT16 : bfloat16 (truncated float32 exponent and upper mantissa bits) floats. FLOAT tensors only.
+ *     INT8 : per-tensor affine quantization to signed 8 bit integers. FLOAT tensors only.
+ * </li>
+ * The reduced precision encodings are lossy. The decoded tensor always has the data type and the shape of the
+ * original tensor. The encoding parameters (e.g. quantization scale) are returned along with the encoded bytes
+ * and are carried as message headers or Tuple fields.
+ *
+ * The encode/decode times (tensorflow.transport.encode/decode timers) and the compression ratio
+ * (tensorflow.transport.compression.ratio summary) are reported to the registry the codec is created with. The
+ * static {@link TensorRawBinaryConverter} and {@link TensorTupleConverter} methods without codec argument use a codec
+ * without meters.
+ *
+ * The values are copied through heap buffers, no direct buffer is allocated per call.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorCodec {
+
+	public enum Encoding {
+		NONE, LZ4, FLOAT16, BFLOAT16, INT8
+	}
+
+	public static final String TF_ENCODING = "tf_encoding";
+
+	public static final String TF_RAW_LENGTH = "tf_raw_length";
+
+	public static final String TF_SCALE = "tf_scale";
+
+	public static final String TF_ZERO_POINT = "tf_zero_point";
+
+	private static final LZ4Factory lz4Factory = LZ4Factory.fastestInstance();
+
+	/**
+	 * Codec without meters, used by the static converter methods.
+	 */
+	static final TensorCodec UNMETERED = new TensorCodec(null);
+
+	private final Map<Encoding, Timer> encodeTimers = new EnumMap<>(Encoding.class);
+
+	private final Map<Encoding, Timer> decodeTimers = new EnumMap<>(Encoding.class);
+
+	private final Map<Encoding, DistributionSummary> compressionRatios = new EnumMap<>(Encoding.class);
+
+	/**
+	 * @param meterRegistry Registry for the encode/decode timers and the compression ratio summaries. Null disables
+	 * the meters.
+	 */
+	public TensorCodec(MeterRegistry meterRegistry) {
+		if (meterRegistry == null) {
+			return;
+		}
+		for (Encoding encoding : Encoding.values()) {
+			encodeTimers.put(encoding, Timer.builder("tensorflow.transport.encode")
+					.tag("encoding", encoding.name()).register(meterRegistry));
+			decodeTimers.put(encoding, Timer.builder("tensorflow.transport.decode")
+					.tag("encoding", encoding.name()).register(meterRegistry));
+			compressionRatios.put(encoding, DistributionSummary.builder("tensorflow.transport.compression.ratio")
+					.tag("encoding", encoding.name()).register(meterRegistry));
+		}
+	}
+
+	/**
+	 * Encoded tensor value along with the encoding parameters required to decode it.
+	 */
+	public static class EncodedTensor {
+
+		private final byte[] bytes;
+
+		private final Map<String, Object> parameters;
+
+		EncodedTensor(byte[] bytes, Map<String, Object> parameters) {
+			this.bytes = bytes;
+			this.parameters = parameters;
+		}
+
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return Encoding parameters keyed by their header (or Tuple field) name.
+		 */
+		public Map<String, Object> getParameters() {
+			return parameters;
+		}
+	}
+
+	public EncodedTensor encode(Tensor tensor, Encoding encoding) {
+		DataType dataType = tensor.dataType();
+		Assert.isTrue(dataType != DataType.STRING, "STRING tensors can not be encoded");
+		Assert.isTrue(encoding == Encoding.NONE || encoding == Encoding.LZ4 || dataType == DataType.FLOAT,
+				encoding + " encoding supports FLOAT tensors only but got: " + dataType);
+
+		long start = System.nanoTime();
+
+		EncodedTensor encoded;
+		switch (encoding) {
+		case LZ4:
+			byte[] raw = toLittleEndianBytes(tensor);
+			Map<String, Object> parameters = new HashMap<>(2);
+			parameters.put(TF_RAW_LENGTH, raw.length);
+			encoded = new EncodedTensor(lz4Factory.fastCompressor().compress(raw), parameters);
+			break;
+		case FLOAT16:
+		case BFLOAT16:
+			encoded = new EncodedTensor(toHalfPrecision(floatValues(tensor), encoding == Encoding.BFLOAT16),
+					Collections.<String, Object>emptyMap());
+			break;
+		case INT8:
+			encoded = quantize(floatValues(tensor));
+			break;
+		default:
+			encoded = new EncodedTensor(toLittleEndianBytes(tensor), Collections.<String, Object>emptyMap());
+		}
+
+		Timer encodeTimer = encodeTimers.get(encoding);
+		if (encodeTimer != null) {
+			encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			if (encoding != Encoding.NONE && encoded.getBytes().length > 0) {
+				compressionRatios.get(encoding).record((double) tensor.numBytes() / encoded.getBytes().length);
+			}
+		}
+
+		return encoded;
+	}
+
+	/**
+	 * @param dataType Data type of the original tensor.
+	 * @param shape Shape of the original tensor.
+	 * @param bytes Encoded tensor value.
+	 * @param encoding Encoding used.
+	 * @param parameters Encoding parameters. Can contain unrelated entries (e.g. all message headers).
+	 * @return New Tensor. The caller is responsible to close it.
+	 */
+	public Tensor decode(DataType dataType, long[] shape, byte[] bytes, Encoding encoding,
+			Map<String, ?> parameters) {
+
+		long start = System.nanoTime();
+
+		Tensor tensor;
+		switch (encoding) {
+		case LZ4:
+			int rawLength = toInt(parameters, TF_RAW_LENGTH);
+			tensor = fromLittleEndianBytes(dataType, shape, lz4Factory.fastDecompressor().decompress(bytes, rawLength));
+			break;
+		case FLOAT16:
+		case BFLOAT16:
+			tensor = Tensor.create(shape, fromHalfPrecision(bytes, encoding == Encoding.BFLOAT16));
+			break;
+		case INT8:
+			tensor = Tensor.create(shape, dequantize(bytes, toFloat(parameters, TF_SCALE),
+					toInt(parameters, TF_ZERO_POINT)));
+			break;
+		default:
+			tensor = fromLittleEndianBytes(dataType, shape, bytes);
+		}
+
+		Timer decodeTimer = decodeTimers.get(encoding);
+		if (decodeTimer != null) {
+			decodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+
+		return tensor;
+	}
+
+	/**
+	 * @return The tensor value as little-endian bytes, copied once from the native tensor memory.
+	 */
+	static byte[] toLittleEndianBytes(Tensor tensor) {
+		byte[] bytes = new byte[tensor.numBytes()];
+		tensor.writeTo(ByteBuffer.wrap(bytes));
+		if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+			swapByteOrder(bytes, TensorRawBinaryConverter.elementSize(tensor.dataType()));
+		}
+		return bytes;
+	}
+
+	static Tensor fromLittleEndianBytes(DataType dataType, long[] shape, byte[] bytes) {
+		if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+			bytes = bytes.clone();
+			swapByteOrder(bytes, TensorRawBinaryConverter.elementSize(dataType));
+		}
+		// Wrapping does not copy, the bytes are copied once into the native tensor memory
+		return Tensor.create(dataType, shape, ByteBuffer.wrap(bytes));
+	}
+
+	private static void swapByteOrder(byte[] bytes, int elementSize) {
+		for (int offset = 0; offset + elementSize <= bytes.length; offset += elementSize) {
+			for (int i = 0, j = elementSize - 1; i < j; i++, j--) {
+				byte b = bytes[offset + i];
+				bytes[offset + i] = bytes[offset + j];
+				bytes[offset + j] = b;
+			}
+		}
+	}
+
+	private static FloatBuffer floatValues(Tensor tensor) {
+		ByteBuffer buffer = ByteBuffer.allocate(tensor.numBytes()).order(ByteOrder.nativeOrder());
+		tensor.writeTo(buffer);
+		buffer.flip();
+		return buffer.asFloatBuffer();
+	}
+
+	private static FloatBuffer newFloatBuffer(int size) {
+		// Heap buffer, Tensor.create copies it into the native tensor memory
+		return FloatBuffer.allocate(size);
+	}
+
+	private static byte[] toHalfPrecision(FloatBuffer values, boolean bfloat16) {
+		ByteBuffer out = ByteBuffer.allocate(values.remaining() * 2).order(ByteOrder.LITTLE_ENDIAN);
+		while (values.hasRemaining()) {
+			float value = values.get();
+			out.putShort(bfloat16 ? floatToBFloat16(value) : floatToHalf(value));
+		}
+		return out.array();
+	}
+
+	private static FloatBuffer fromHalfPrecision(byte[] bytes, boolean bfloat16) {
+		ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		FloatBuffer values = newFloatBuffer(bytes.length / 2);
+		while (in.hasRemaining()) {
+			short value = in.getShort();
+			values.put(bfloat16 ? bfloat16ToFloat(value) : halfToFloat(value));
+		}
+		values.flip();
+		return values;
+	}
+
+	private static EncodedTensor quantize(FloatBuffer values) {
+		float min = Float.MAX_VALUE;
+		float max = -Float.MAX_VALUE;
+		for (int i = values.position(); i < values.limit(); i++) {
+			float value = values.get(i);
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		if (!values.hasRemaining()) {
+			min = 0;
+			max = 0;
+		}
+
+		float scale = (max > min) ? (max - min) / 255f : 1f;
+		int zeroPoint = Math.round(-128 - min / scale);
+
+		byte[] bytes = new byte[values.remaining()];
+		for (int i = 0; i < bytes.length; i++) {
+			int q = Math.round(values.get() / scale) + zeroPoint;
+			bytes[i] = (byte) Math.max(-128, Math.min(127, q));
+		}
+
+		Map<String, Object> parameters = new HashMap<>(4);
+		parameters.put(TF_SCALE, scale);
+		parameters.put(TF_ZERO_POINT, zeroPoint);
+		return new EncodedTensor(bytes, parameters);
+	}
+
+	private static FloatBuffer dequantize(byte[] bytes, float scale, int zeroPoint) {
+		FloatBuffer values = newFloatBuffer(bytes.length);
+		for (byte b : bytes) {
+			values.put((b - zeroPoint) * scale);
+		}
+		values.flip();
+		return values;
+	}
+
+	/**
+	 * Integer parameters are parsed as such, a float value above 2^24 would lose the lowest digits.
+	 */
+	private static int toInt(Map<String, ?> parameters, String name) {
+		Object value = parameter(parameters, name);
+		return (value instanceof Number) ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim());
+	}
+
+	private static float toFloat(Map<String, ?> parameters, String name) {
+		Object value = parameter(parameters, name);
+		return (value instanceof Number) ? ((Number) value).floatValue() : Float.parseFloat(value.toString().trim());
+	}
+
+	private static Object parameter(Map<String, ?> parameters, String name) {
+		Object value = parameters.get(name);
+		Assert.notNull(value, "Missing encoding parameter: " + name);
+		return value;
+	}
+
+	/**
+	 * Converts float to IEEE 754 half precision float, rounding to nearest even.
+	 */
+	static short floatToHalf(float value) {
+		int bits = Float.floatToIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = (bits >>> 23) & 0xff;
+		int mantissa = bits & 0x7fffff;
+
+		if (exponent == 0xff) {
+			// Infinity or NaN
+			return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+		}
+
+		int halfExponent = exponent - 127 + 15;
+		if (halfExponent >= 0x1f) {
+			// Overflow
+			return (short) (sign | 0x7c00);
+		}
+
+		if (halfExponent <= 0) {
+			// Subnormal half or zero
+			if (halfExponent < -10) {
+				return (short) sign;
+			}
+			mantissa |= 0x800000;
+			int shift = 14 - halfExponent;
+			int halfMantissa = mantissa >>> shift;
+			int remainder = mantissa & ((1 << shift) - 1);
+			int halfway = 1 << (shift - 1);
+			if (remainder > halfway || (remainder == halfway && (halfMantissa & 1) != 0)) {
+				halfMantissa++;
+			}
+			return (short) (sign | halfMantissa);
+		}
+
+		int half = sign | (halfExponent << 10) | (mantissa >>> 13);
+		int remainder = mantissa & 0x1fff;
+		if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+			// The carry into the exponent is the correct rounding result
+			half++;
+		}
+		return (short) half;
+	}
+
+	static float halfToFloat(short half) {
+		int bits = half & 0xffff;
+		int sign = (bits & 0x8000) << 16;
+		int exponent = (bits >>> 10) & 0x1f;
+		int mantissa = bits & 0x3ff;
+
+		if (exponent == 0x1f) {
+			return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+		}
+		if (exponent == 0) {
+			// Zero or subnormal: mantissa * 2^-24
+			float value = mantissa * 5.9604645e-8f;
+			return (sign != 0) ? -value : value;
+		}
+		return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+	}
+
+	/**
+	 * Converts float to bfloat16, rounding to nearest even.
+	 */
+	static short floatToBFloat16(float value) {
+		int bits = Float.floatToIntBits(value);
+		if (Float.isNaN(value)) {
+			return (short) ((bits >>> 16) | 0x40);
+		}
+		int rounding = 0x7fff + ((bits >>> 16) & 1);
+		return (short) ((bits + rounding) >>> 16);
+	}
+
+	static float bfloat16ToFloat(short value) {
+		return Float.intBitsToFloat((value & 0xffff) << 16);
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import org.tensorflow.DataType;
+import org.tensorflow.Tensor;
+
+import org.springframework.util.Assert;
+
+/**
+ * Typed model feed: a primitive buffer with an explicit shape.
+ *
+ * The feed tensor is created with a single bulk copy of the buffer into native memory. Creating a tensor from a
+ * (nested) Java array with {@link Tensor#create(Object)} instead walks the array by reflection, row by row. Input
+ * converters should return TensorFeed values (or {@link Tensor}s) for large feeds.
+ *
+ * @author Christian Tzolov
+ */
+public final class TensorFeed {
+
+	private final long[] shape;
+
+	private final Buffer buffer;
+
+	private TensorFeed(long[] shape, Buffer buffer) {
+		Assert.notNull(shape, "The shape must not be null");
+		Assert.notNull(buffer, "The buffer must not be null");
+		long size = 1;
+		for (long dimension : shape) {
+			size *= dimension;
+		}
+		Assert.isTrue(size == buffer.remaining(), "Shape " + Arrays.toString(shape) + " requires " + size
+				+ " elements, the buffer has " + buffer.remaining());
+		this.shape = shape;
+		this.buffer = buffer;
+	}
+
+	public static TensorFeed of(FloatBuffer values, long... shape) {
+		return new TensorFeed(shape, values);
+	}
+
+	public static TensorFeed of(IntBuffer values, long... shape) {
+		return new TensorFeed(shape, values);
+	}
+
+	public static TensorFeed of(LongBuffer values, long... shape) {
+		return new TensorFeed(shape, values);
+	}
+
+	public static TensorFeed of(DoubleBuffer values, long... shape) {
+		return new TensorFeed(shape, values);
+	}
+
+	public static TensorFeed of(float[] values, long... shape) {
+		return new TensorFeed(shape, FloatBuffer.wrap(values));
+	}
+
+	public static TensorFeed of(int[] values, long... shape) {
+		return new TensorFeed(shape, IntBuffer.wrap(values));
+	}
+
+	public static TensorFeed of(long[] values, long... shape) {
+		return new TensorFeed(shape, LongBuffer.wrap(values));
+	}
+
+	public static TensorFeed of(double[] values, long... shape) {
+		return new TensorFeed(shape, DoubleBuffer.wrap(values));
+	}
+
+	public long[] getShape() {
+		return shape;
+	}
+
+	public Buffer getBuffer() {
+		return buffer;
+	}
+
+	public DataType getDataType() {
+		if (buffer instanceof FloatBuffer) {
+			return DataType.FLOAT;
+		}
+		else if (buffer instanceof IntBuffer) {
+			return DataType.INT32;
+		}
+		else if (buffer instanceof LongBuffer) {
+			return DataType.INT64;
+		}
+		return DataType.DOUBLE;
+	}
+
+	/**
+	 * @return New tensor with a copy of the buffer content. The buffer position is left unchanged.
+	 */
+	public Tensor toTensor() {
+		// Tensor.create consumes the buffer, feed a duplicate so the feed can be reused
+		if (buffer instanceof FloatBuffer) {
+			return Tensor.create(shape, ((FloatBuffer) buffer).duplicate());
+		}
+		else if (buffer instanceof IntBuffer) {
+			return Tensor.create(shape, ((IntBuffer) buffer).duplicate());
+		}
+		else if (buffer instanceof LongBuffer) {
+			return Tensor.create(shape, ((LongBuffer) buffer).duplicate());
+		}
+		return Tensor.create(shape, ((DoubleBuffer) buffer).duplicate());
+	}
+
+	/**
+	 * Returns a feed for 1 or 2 dimensional (rectangular) primitive float, int, long and double arrays.
+	 * @param value Feed value.
+	 * @return Typed feed or null if the value is not a supported primitive array.
+	 */
+	static TensorFeed fromArray(Object value) {
+		if (value instanceof float[]) {
+			return of((float[]) value, ((float[]) value).length);
+		}
+		else if (value instanceof int[]) {
+			return of((int[]) value, ((int[]) value).length);
+		}
+		else if (value instanceof long[]) {
+			return of((long[]) value, ((long[]) value).length);
+		}
+		else if (value instanceof double[]) {
+			return of((double[]) value, ((double[]) value).length);
+		}
+		else if (value instanceof float[][]) {
+			float[][] rows = (float[][]) value;
+			int columns = columns(rows);
+			if (columns < 0) {
+				return null;
+			}
+			if (rows.length == 1) {
+				return of(rows[0], 1, columns);
+			}
+			float[] values = new float[rows.length * columns];
+			for (int i = 0; i < rows.length; i++) {
+				System.arraycopy(rows[i], 0, values, i * columns, columns);
+			}
+			return of(values, rows.length, columns);
+		}
+		else if (value instanceof int[][]) {
+			int[][] rows = (int[][]) value;
+			int columns = columns(rows);
+			if (columns < 0) {
+				return null;
+			}
+			if (rows.length == 1) {
+				// Single row feeds (e.g. a vectorized sentence) are wrapped without copy
+				return of(rows[0], 1, columns);
+			}
+			int[] values = new int[rows.length * columns];
+			for (int i = 0; i < rows.length; i++) {
+				System.arraycopy(rows[i], 0, values, i * columns, columns);
+			}
+			return of(values, rows.length, columns);
+		}
+		return null;
+	}
+
+	/**
+	 * @return The common row length or -1 if the rows are empty or jagged.
+	 */
+	private static int columns(Object[] rows) {
+		if (rows.length == 0 || rows[0] == null) {
+			return -1;
+		}
+		int columns = Array.getLength(rows[0]);
+		for (Object row : rows) {
+			if (row == null || Array.getLength(row) != columns) {
+				return -1;
+			}
+		}
+		return columns;
+	}
+}
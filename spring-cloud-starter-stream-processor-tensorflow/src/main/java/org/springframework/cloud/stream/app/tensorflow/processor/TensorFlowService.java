@@ -16,77 +16,593 @@
 
 package org.springframework.cloud.stream.app.tensorflow.processor;
 
-import static org.apache.commons.io.IOUtils.buffer;
-import static org.apache.commons.io.IOUtils.toByteArray;
-
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.tensorflow.Graph;
 import org.tensorflow.Session;
 import org.tensorflow.Session.Runner;
 import org.tensorflow.Tensor;
 
 import org.springframework.core.io.Resource;
 import org.springframework.tuple.Tuple;
+import org.springframework.util.Assert;
 
 /**
+ * Evaluates the current {@link TensorflowModel}.
+ *
+ * The model can be replaced at runtime with {@link #swap(Resource, Collection)}. The new model is loaded and validated
+ * while the current one keeps serving, then new evaluations switch to it atomically. The replaced model is closed
+ * once its last in-flight evaluation completes.
+ *
+ * With a {@link TensorflowModelRegistry} set, evaluations can select another model by its id. With a
+ * {@link TensorflowResultCache} set, {@link #evaluate(String, Map, List, Object)} serves repeated requests from the
+ * cache.
+ *
+ * With a {@link TensorflowStartup} the initial model is loaded in the background and the first evaluation waits for it.
+ *
  * @author Christian Tzolov
  */
 public class TensorFlowService implements AutoCloseable {
 
 	private static final Log logger = LogFactory.getLog(TensorflowProcessorConfiguration.class);
 
-	private Graph graph;
+	private final AtomicReference<TensorflowModel> model = new AtomicReference<>();
+
+	private final TensorflowSessionPool.Mode sessionMode;
+
+	private final int sessionPoolSize;
+
+	private final TensorflowSessionConfig sessionConfig;
+
+	private final TensorMemoryTracker tensorMemoryTracker;
+
+	private final TensorflowGraphOptimizer graphOptimizer;
+
+	private volatile Future<TensorflowModel> pendingModel;
+
+	private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+	private TensorflowMetrics metrics;
+
+	private TensorCodec codec = TensorCodec.UNMETERED;
+
+	private TensorflowModelRegistry modelRegistry;
+
+	private TensorflowResultCache resultCache;
+
+	private boolean validateFeeds = true;
 
 	public TensorFlowService(Resource modelLocation) throws IOException {
-		try (InputStream is = modelLocation.getInputStream()) {
-			graph = new Graph();
-			logger.info("Loading TensorFlow graph model: " + modelLocation);
-			graph.importGraphDef(toByteArray(buffer(is)));
-			logger.info("TensorFlow Graph Model Ready To Serve!");
+		this(modelLocation, TensorflowSessionPool.Mode.SHARED, 1);
+	}
+
+	public TensorFlowService(Resource modelLocation, TensorflowSessionPool.Mode sessionMode, int sessionPoolSize)
+			throws IOException {
+		this(modelLocation, sessionMode, sessionPoolSize, new TensorMemoryTracker());
+	}
+
+	public TensorFlowService(Resource modelLocation, TensorflowSessionPool.Mode sessionMode, int sessionPoolSize,
+			TensorMemoryTracker tensorMemoryTracker) throws IOException {
+		this(modelLocation, sessionMode, sessionPoolSize, TensorflowSessionConfig.DEFAULT, tensorMemoryTracker);
+	}
+
+	public TensorFlowService(Resource modelLocation, TensorflowSessionPool.Mode sessionMode, int sessionPoolSize,
+			TensorflowSessionConfig sessionConfig, TensorMemoryTracker tensorMemoryTracker) throws IOException {
+		this(modelLocation, sessionMode, sessionPoolSize, sessionConfig, tensorMemoryTracker, null, null);
+	}
+
+	/**
+	 * @param graphOptimizer Rewrites the model GraphDef for the fetched outputs at load time. Null disables the
+	 * optimization.
+	 * @param fetches Outputs the optimized model must provide.
+	 */
+	public TensorFlowService(Resource modelLocation, TensorflowSessionPool.Mode sessionMode, int sessionPoolSize,
+			TensorflowSessionConfig sessionConfig, TensorMemoryTracker tensorMemoryTracker,
+			TensorflowGraphOptimizer graphOptimizer, List<String> fetches) throws IOException {
+		this.tensorMemoryTracker = tensorMemoryTracker;
+		this.sessionMode = sessionMode;
+		this.sessionPoolSize = sessionPoolSize;
+		this.sessionConfig = sessionConfig;
+		this.graphOptimizer = graphOptimizer;
+		this.metrics = new TensorflowMetrics(meterRegistry, tensorMemoryTracker);
+		logger.info("Loading TensorFlow graph model: " + modelLocation);
+		this.model.set(new TensorflowModel(modelLocation, sessionMode, sessionPoolSize, sessionConfig,
+				graphOptimizer, fetches));
+		logger.info("TensorFlow Graph Model Ready To Serve!");
+	}
+
+	/**
+	 * Loads the model on the startup executor. The first use of the service waits for it.
+	 * @param graphOptimizer Rewrites the model GraphDef for the fetched outputs at load time. Null disables the
+	 * optimization.
+	 * @param fetches Outputs the model must provide, checked at load time. Null skips the check.
+	 * @param startup Loads the model concurrently with the other startup resources.
+	 */
+	public TensorFlowService(final Resource modelLocation, final TensorflowSessionPool.Mode sessionMode,
+			final int sessionPoolSize, final TensorflowSessionConfig sessionConfig,
+			TensorMemoryTracker tensorMemoryTracker, final TensorflowGraphOptimizer graphOptimizer,
+			final List<String> fetches, TensorflowStartup startup) {
+		this.tensorMemoryTracker = tensorMemoryTracker;
+		this.sessionMode = sessionMode;
+		this.sessionPoolSize = sessionPoolSize;
+		this.sessionConfig = sessionConfig;
+		this.graphOptimizer = graphOptimizer;
+		this.metrics = new TensorflowMetrics(meterRegistry, tensorMemoryTracker);
+		this.pendingModel = startup.submit("model", new Callable<TensorflowModel>() {
+			@Override
+			public TensorflowModel call() throws Exception {
+				logger.info("Loading TensorFlow graph model: " + modelLocation);
+				TensorflowModel loaded = new TensorflowModel(modelLocation, sessionMode, sessionPoolSize,
+						sessionConfig, graphOptimizer, fetches);
+				if (fetches != null) {
+					try {
+						loaded.validate(fetches);
+					}
+					catch (RuntimeException e) {
+						loaded.close();
+						throw e;
+					}
+				}
+				logger.info("TensorFlow Graph Model Ready To Serve!");
+				return loaded;
+			}
+		});
+	}
+
+	/**
+	 * Loads the model from the new location and switches the subsequent evaluations to it. The current model serves
+	 * the evaluations until the switch and is closed after its last in-flight evaluation.
+	 * The swap latency is recorded by the tensorflow.model.swap timer and the failures by the
+	 * tensorflow.model.swap.failures counter.
+	 * @param modelLocation New model location.
+	 * @param requiredOperations Operations the new model must provide (e.g. the fetched outputs). With a graph
+	 * optimizer, the new model is optimized for them.
+	 * @throws IOException if the model can not be read. The current model remains in use.
+	 * @throws IllegalArgumentException if the model is invalid. The current model remains in use.
+	 */
+	public void swap(Resource modelLocation, Collection<String> requiredOperations) throws IOException {
+		long start = System.nanoTime();
+		TensorflowModel newModel;
+		try {
+			logger.info("Loading new TensorFlow graph model: " + modelLocation);
+			newModel = new TensorflowModel(modelLocation, sessionMode, sessionPoolSize, sessionConfig,
+					graphOptimizer, new ArrayList<>(requiredOperations));
+			try {
+				newModel.validate(requiredOperations);
+			}
+			catch (RuntimeException e) {
+				newModel.close();
+				throw e;
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			meterRegistry.counter("tensorflow.model.swap.failures").increment();
+			throw e;
+		}
+
+		TensorflowModel oldModel = model.getAndSet(newModel);
+		if (oldModel != null) {
+			oldModel.release();
+		}
+
+		long duration = System.nanoTime() - start;
+		meterRegistry.timer("tensorflow.model.swap").record(duration, TimeUnit.NANOSECONDS);
+		logger.info("Swapped TensorFlow model to " + modelLocation + " in " + TimeUnit.NANOSECONDS.toMillis(duration)
+				+ " ms");
+	}
+
+	/**
+	 * @return Location of the model serving the new evaluations.
+	 */
+	public Resource getModelLocation() {
+		TensorflowModel current = retainModel();
+		try {
+			return current.getLocation();
+		}
+		finally {
+			current.release();
 		}
 	}
 
+	public void setMeterRegistry(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+		this.metrics = new TensorflowMetrics(meterRegistry, tensorMemoryTracker);
+		this.codec = new TensorCodec(meterRegistry);
+	}
+
+	/**
+	 * @param modelId Registry model id or null for the default model.
+	 * @return The stage meters of the last evaluated version of the model. They record nothing if the model was not
+	 * evaluated yet or is not served anymore.
+	 */
+	public TensorflowMetrics.ModelMeters getModelMeters(String modelId) {
+		return metrics.lastUsed(modelId);
+	}
+
+	public void setModelRegistry(TensorflowModelRegistry modelRegistry) {
+		this.modelRegistry = modelRegistry;
+		modelRegistry.setEvictionListener(new BiConsumer<String, TensorflowModel>() {
+			@Override
+			public void accept(String modelId, TensorflowModel model) {
+				metrics.remove(modelId, model.getVersion());
+			}
+		});
+	}
+
+	public void setResultCache(TensorflowResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * @param validateFeeds Check the feed names, data types and shapes against the model signature before every
+	 * evaluation (default true).
+	 */
+	public void setValidateFeeds(boolean validateFeeds) {
+		this.validateFeeds = validateFeeds;
+	}
+
+	/**
+	 * Checks that the default model provides the outputs.
+	 * @param fetches Outputs to fetch.
+	 * @throws IllegalArgumentException if an output is missing.
+	 */
+	public void validate(List<String> fetches) {
+		TensorflowModel currentModel = retainModel();
+		try {
+			currentModel.validate(fetches);
+		}
+		finally {
+			currentModel.release();
+		}
+	}
+
+	/**
+	 * Describes the default model: location, version, placeholders and fetched outputs.
+	 * @param fetches Outputs to fetch.
+	 * @return The model description.
+	 */
+	public Map<String, Object> describe(List<String> fetches) {
+		TensorflowModel currentModel = retainModel();
+		try {
+			TensorflowSignature signature = currentModel.getSignature();
+			List<Map<String, Object>> inputs = new ArrayList<>();
+			for (TensorflowSignature.Input input : signature.getInputs().values()) {
+				Map<String, Object> description = new LinkedHashMap<>();
+				description.put("name", input.getName());
+				description.put("type", input.getDataType());
+				description.put("shape", input.getShape());
+				description.put("required", input.isRequired());
+				inputs.add(description);
+			}
+			List<Map<String, Object>> outputs = new ArrayList<>();
+			for (String fetch : fetches) {
+				TensorflowModel.Fetch resolved = currentModel.resolveFetch(fetch);
+				Map<String, Object> description = new LinkedHashMap<>();
+				description.put("name", fetch);
+				description.put("operation", signature.getOperationType(resolved.getOperation()));
+				description.put("type", resolved.getDataType());
+				outputs.add(description);
+			}
+
+			Map<String, Object> model = new LinkedHashMap<>();
+			model.put("location", String.valueOf(currentModel.getLocation()));
+			model.put("version", currentModel.getVersion());
+			model.put("operations", signature.getOperationCount());
+			model.put("inputs", inputs);
+			model.put("outputs", outputs);
+			model.put("requiredInputs", signature.getRequiredInputs(fetches));
+			return model;
+		}
+		finally {
+			currentModel.release();
+		}
+	}
+
+	private TensorflowModel retainModel() {
+		for (;;) {
+			TensorflowModel current = model.get();
+			if (current == null) {
+				current = awaitPendingModel();
+			}
+			if (current.retain()) {
+				return current;
+			}
+			// Replaced and closed meanwhile, the next read returns the new model
+		}
+	}
+
+	/**
+	 * @return The model loaded on the startup executor, once it is loaded.
+	 * @throws IllegalStateException if the service is closed or the model failed to load.
+	 */
+	private TensorflowModel awaitPendingModel() {
+		Future<TensorflowModel> pending = pendingModel;
+		if (pending == null) {
+			throw new IllegalStateException("The TensorFlow service is closed");
+		}
+		TensorflowModel loaded = TensorflowStartup.await(pending, "TensorFlow model");
+		synchronized (this) {
+			if (pendingModel == pending) {
+				pendingModel = null;
+				if (!model.compareAndSet(null, loaded)) {
+					// Swapped meanwhile, the swapped in model serves the evaluations
+					loaded.close();
+				}
+			}
+		}
+		TensorflowModel current = model.get();
+		if (current == null) {
+			throw new IllegalStateException("The TensorFlow service is closed");
+		}
+		return current;
+	}
+
 	public Tensor evaluate(Map<String, Object> feeds, String outputName, int outputIndex) {
+		return evaluate(feeds, Collections.singletonList(outputName + ":" + outputIndex)).values().iterator().next();
+	}
+
+	/**
+	 * Evaluates the model and fetches all requested outputs within a single session run.
+	 * @param feeds Model inputs, keyed by placeholder name.
+	 * @param fetches Outputs to fetch, in the [operation name] or [operation name]:[output index] format.
+	 * @return Fetched tensors keyed by the fetch, in the fetches order. The tensors are tracked by the
+	 * {@link TensorMemoryTracker} and the caller is responsible to close them through it. The map may be
+	 * unmodifiable.
+	 */
+	public Map<String, Tensor> evaluate(Map<String, Object> feeds, List<String> fetches) {
+		return evaluate(null, feeds, fetches);
+	}
+
+	/**
+	 * Evaluates the model selected by id.
+	 * @param modelId Id of a model of the {@link TensorflowModelRegistry}. Null selects the default model.
+	 * @param feeds Model inputs, keyed by placeholder name.
+	 * @param fetches Outputs to fetch. Null fetches the outputs the evaluated model is loaded for.
+	 * @return Fetched tensors keyed by the fetch (see {@link #evaluate(Map, List)}).
+	 */
+	public Map<String, Tensor> evaluate(String modelId, Map<String, Object> feeds, List<String> fetches) {
+		TensorflowModel currentModel = retainModel(modelId);
+		try {
+			return evaluate(currentModel, metrics.forModel(modelId, currentModel), feeds,
+					fetches(currentModel, fetches));
+		}
+		finally {
+			currentModel.release();
+		}
+	}
+
+	/**
+	 * Evaluates the model selected by id, through the result cache if one is set. Cached results are scoped to the
+	 * model instance, so the results of a swapped or reloaded model are never returned.
+	 * @param modelId Id of a model of the {@link TensorflowModelRegistry}. Null selects the default model.
+	 * @param feeds Model inputs, keyed by placeholder name.
+	 * @param fetches Outputs to fetch. Null fetches the outputs the evaluated model is loaded for.
+	 * @param requestKey Cache key of the request. If null the key is the digest of the feeds.
+	 * @return Fetched tensors keyed by the fetch (see {@link #evaluate(Map, List)}).
+	 */
+	public Map<String, Tensor> evaluate(String modelId, final Map<String, Object> feeds, List<String> fetches,
+			Object requestKey) {
+		if (resultCache == null) {
+			return evaluate(modelId, feeds, fetches);
+		}
+
+		final TensorflowModel currentModel = retainModel(modelId);
+		final TensorflowMetrics.ModelMeters modelMeters = metrics.forModel(modelId, currentModel);
+		final List<String> modelFetches = fetches(currentModel, fetches);
+		final boolean[] evaluated = new boolean[1];
+		try {
+			return resultCache.evaluate(currentModel.getVersion(), modelFetches, feeds, requestKey,
+					new TensorflowResultCache.Evaluation() {
+						@Override
+						public Map<String, Tensor> evaluate() {
+							evaluated[0] = true;
+							return TensorFlowService.this.evaluate(currentModel, modelMeters, feeds, modelFetches);
+						}
+					}, tensorMemoryTracker);
+		}
+		finally {
+			currentModel.release();
+			if (!evaluated[0]) {
+				// Served from the cache, release the Tensor feeds the evaluation would have closed
+				for (Object value : feeds.values()) {
+					if (value instanceof Tensor) {
+						((Tensor) value).close();
+					}
+				}
+			}
+		}
+	}
+
+	private static List<String> fetches(TensorflowModel model, List<String> fetches) {
+		if (fetches != null) {
+			return fetches;
+		}
+		Assert.state(model.getOutputs() != null, "No outputs to fetch from model: " + model.getLocation());
+		return model.getOutputs();
+	}
+
+	private TensorflowModel retainModel(String modelId) {
+		if (modelId == null) {
+			return retainModel();
+		}
+		Assert.state(modelRegistry != null, "No model registry configured to select model: " + modelId);
+		return modelRegistry.retain(modelId);
+	}
+
+	private Map<String, Tensor> evaluate(TensorflowModel model, TensorflowMetrics.ModelMeters modelMeters,
+			Map<String, Object> feeds, List<String> fetches) {
+
+		// Fail fast in Java, before any feed tensor is created and the session run crosses JNI
+		try {
+			if (validateFeeds) {
+				model.getSignature().validateFeeds(feeds, fetches);
+			}
+			for (int j = 0; j < fetches.size(); j++) {
+				model.resolveFetch(fetches.get(j));
+			}
+		}
+		catch (IllegalArgumentException e) {
+			modelMeters.error(TensorflowMetrics.Stage.TENSOR_CREATION);
+			for (Object value : feeds.values()) {
+				if (value instanceof Tensor) {
+					((Tensor) value).close();
+				}
+			}
+			throw e;
+		}
 
-		try (Session session = new Session(graph)) {
+		TensorflowSessionPool sessionPool = model.getSessionPool();
+		Session session = sessionPool.acquire();
+		try {
 
 			Runner runner = session.runner();
 
-			// Keep tensor references to release them in the finally block
-			Tensor[] feedTensors = new Tensor[feeds.size()];
+			// Keep tensor references to release them in the finally block. The array is reused by the thread.
+			TensorflowEvaluationContext context = TensorflowEvaluationContext.current();
+			Tensor[] feedTensors = context.acquireFeedTensors(feeds.size());
 			try {
-				int i = 0;
-				for (Entry<String, Object> e : feeds.entrySet()) {
-					String feedName = e.getKey();
-					feedTensors[i] = toFeedTensor(e.getValue());
-					runner = runner.feed(feedName, feedTensors[i]);
-					i++;
+				long start = System.nanoTime();
+				long feedBytes = 0;
+				try {
+					TensorflowSignature signature = model.getSignature();
+					int i = 0;
+					for (Entry<String, Object> e : feeds.entrySet()) {
+						String feedName = e.getKey();
+						if (signature.isFixedInput(feedName)) {
+							// Baked into the graph as a constant
+							continue;
+						}
+						feedTensors[i] = tensorMemoryTracker.track(toFeedTensor(e.getValue(), codec));
+						feedBytes += feedTensors[i].numBytes();
+						runner = runner.feed(feedName, feedTensors[i]);
+						i++;
+					}
+				}
+				catch (RuntimeException e) {
+					modelMeters.error(TensorflowMetrics.Stage.TENSOR_CREATION);
+					throw e;
+				}
+				modelMeters.record(TensorflowMetrics.Stage.TENSOR_CREATION, System.nanoTime() - start);
+				modelMeters.feedBytes(feedBytes);
+
+				for (int j = 0; j < fetches.size(); j++) {
+					TensorflowModel.Fetch resolved = model.resolveFetch(fetches.get(j));
+					runner = runner.fetch(resolved.getOperation(), resolved.getIndex());
+				}
+
+				start = System.nanoTime();
+				List<Tensor> results;
+				try {
+					results = runner.run();
+				}
+				catch (RuntimeException e) {
+					modelMeters.error(TensorflowMetrics.Stage.SESSION_RUN);
+					throw e;
+				}
+				modelMeters.record(TensorflowMetrics.Stage.SESSION_RUN, System.nanoTime() - start);
+
+				int tracked = 0;
+				try {
+					long outputBytes = 0;
+					Map<String, Tensor> outputs;
+					if (fetches.size() == 1) {
+						outputs = Collections.singletonMap(fetches.get(0), tensorMemoryTracker.track(results.get(0)));
+						tracked++;
+						outputBytes = results.get(0).numBytes();
+					}
+					else {
+						outputs = new LinkedHashMap<>(fetches.size());
+						for (int j = 0; j < fetches.size(); j++) {
+							Tensor replaced = outputs.put(fetches.get(j), tensorMemoryTracker.track(results.get(j)));
+							tracked++;
+							outputBytes += results.get(j).numBytes();
+							// The same output fetched twice, only the last one is returned
+							tensorMemoryTracker.close(replaced);
+						}
+					}
+					modelMeters.outputBytes(outputBytes);
+					return outputs;
+				}
+				catch (RuntimeException e) {
+					// The caller never gets the output tensors, close them here
+					for (int j = 0; j < results.size(); j++) {
+						if (j < tracked) {
+							tensorMemoryTracker.close(results.get(j));
+						}
+						else {
+							results.get(j).close();
+						}
+					}
+					throw e;
 				}
-				return runner.fetch(outputName).run().get(outputIndex);
 			}
 			finally {
 				// Release all feed tensors
 				for (Tensor tensor : feedTensors) {
-					if (tensor != null) {
-						tensor.close();
+					tensorMemoryTracker.close(tensor);
+				}
+				// Release the Tensor feeds never reached because of a failure
+				for (Object value : feeds.values()) {
+					if (value instanceof Tensor && !contains(feedTensors, value)) {
+						((Tensor) value).close();
 					}
 				}
+				context.releaseFeedTensors(feedTensors);
 			}
 		}
+		finally {
+			sessionPool.release(session);
+		}
 	}
 
-	private Tensor toFeedTensor(Object value) {
+	private static boolean contains(Tensor[] tensors, Object value) {
+		for (Tensor tensor : tensors) {
+			if (tensor == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public TensorMemoryTracker getTensorMemoryTracker() {
+		return tensorMemoryTracker;
+	}
+
+	static Tensor toFeedTensor(Object value) {
+		return toFeedTensor(value, TensorCodec.UNMETERED);
+	}
+
+	static Tensor toFeedTensor(Object value, TensorCodec codec) {
 		if (value instanceof Tensor) {
 			return (Tensor) value;
 		}
+		else if (value instanceof TensorFeed) {
+			return ((TensorFeed) value).toTensor();
+		}
 		else if (value instanceof Tuple) {
-			return TensorTupleConverter.toTensor((Tuple) value);
+			return TensorTupleConverter.toTensor((Tuple) value, codec);
+		}
+
+		// Bulk copy of the primitive arrays, avoids the element by element reflective walk of Tensor.create
+		TensorFeed feed = TensorFeed.fromArray(value);
+		if (feed != null) {
+			return feed.toTensor();
 		}
 
 		return Tensor.create(value);
@@ -95,8 +611,25 @@ public class TensorFlowService implements AutoCloseable {
 	@Override
 	public void close() throws Exception {
 		logger.info("Close TensorFlow Graph!");
-		if (graph != null) {
-			graph.close();
+		TensorflowModel currentModel = model.getAndSet(null);
+		if (currentModel != null) {
+			currentModel.close();
+		}
+		Future<TensorflowModel> pending;
+		synchronized (this) {
+			pending = pendingModel;
+			pendingModel = null;
+		}
+		if (pending != null && !pending.cancel(false)) {
+			try {
+				pending.get().close();
+			}
+			catch (Exception e) {
+				logger.debug("The pending TensorFlow model failed to load", e);
+			}
+		}
+		if (modelRegistry != null) {
+			modelRegistry.close();
 		}
 	}
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.tensorflow.Tensor;
+
+/**
+ * Keeps count of the live native {@link Tensor}s (and their bytes) created and released by the processor.
+ *
+ * The Tensor data lives outside of the Java heap and is freed only when the Tensor is closed. The tracker is used to
+ * close every feed, intermediate and output tensor deterministically and to apply admission control: when
+ * maxInFlightBytes is positive, {@link #awaitAdmission()} blocks the calling (consumer) thread while the live
+ * tensor bytes exceed the limit.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorMemoryTracker {
+
+	private static final Log logger = LogFactory.getLog(TensorMemoryTracker.class);
+
+	private final long maxInFlightBytes;
+
+	private final long admissionTimeout;
+
+	private final Object lock = new Object();
+
+	private long liveTensors = 0;
+
+	private long liveBytes = 0;
+
+	/**
+	 * Creates tracker without admission control.
+	 */
+	public TensorMemoryTracker() {
+		this(0, 0);
+	}
+
+	/**
+	 * @param maxInFlightBytes Live tensor bytes above which new messages are not admitted. Non positive disables
+	 * the admission control.
+	 * @param admissionTimeout Maximum time in milliseconds to wait for admission before failing the message.
+	 */
+	public TensorMemoryTracker(long maxInFlightBytes, long admissionTimeout) {
+		this.maxInFlightBytes = maxInFlightBytes;
+		this.admissionTimeout = admissionTimeout;
+	}
+
+	/**
+	 * Registers a newly created (or received) tensor as live.
+	 * @param tensor tensor to track.
+	 * @return the same tensor.
+	 */
+	public Tensor track(Tensor tensor) {
+		if (tensor != null) {
+			long bytes = tensor.numBytes();
+			synchronized (lock) {
+				liveTensors++;
+				liveBytes += bytes;
+			}
+		}
+		return tensor;
+	}
+
+	/**
+	 * Closes a tracked tensor and releases its native memory.
+	 * @param tensor tensor to close. Null values are ignored.
+	 */
+	public void close(Tensor tensor) {
+		if (tensor != null) {
+			long bytes = tensor.numBytes();
+			tensor.close();
+			synchronized (lock) {
+				liveTensors--;
+				liveBytes -= bytes;
+				if (maxInFlightBytes > 0 && liveBytes <= maxInFlightBytes) {
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes all tracked tensors in the collection.
+	 * @param tensors tensors to close.
+	 */
+	public void closeAll(Collection<Tensor> tensors) {
+		for (Tensor tensor : tensors) {
+			close(tensor);
+		}
+	}
+
+	/**
+	 * Blocks while the live tensor bytes are above the maxInFlightBytes limit.
+	 * @throws IllegalStateException if the admission is not granted within the admission timeout.
+	 */
+	public void awaitAdmission() {
+		if (maxInFlightBytes <= 0) {
+			return;
+		}
+		synchronized (lock) {
+			if (liveBytes <= maxInFlightBytes) {
+				return;
+			}
+			logger.debug("In-flight native tensor bytes " + liveBytes + " exceed the " + maxInFlightBytes
+					+ " limit. Pause consumption.");
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(admissionTimeout);
+			while (liveBytes > maxInFlightBytes) {
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remaining <= 0) {
+					throw new IllegalStateException("In-flight native tensor bytes " + liveBytes + " still exceed the "
+							+ maxInFlightBytes + " limit after " + admissionTimeout + "ms");
+				}
+				try {
+					lock.wait(remaining);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while waiting for native memory admission", e);
+				}
+			}
+		}
+	}
+
+	public long getLiveTensors() {
+		synchronized (lock) {
+			return liveTensors;
+		}
+	}
+
+	public long getLiveBytes() {
+		synchronized (lock) {
+			return liveBytes;
+		}
+	}
+
+	public long getMaxInFlightBytes() {
+		return maxInFlightBytes;
+	}
+}
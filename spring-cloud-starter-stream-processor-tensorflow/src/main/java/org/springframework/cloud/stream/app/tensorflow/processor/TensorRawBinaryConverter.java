@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tensorflow.DataType;
+import org.tensorflow.Tensor;
+
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Utility that converts {@link Tensor} to raw binary {@link Message} and in reverse.
+ *
+ * The message payload holds only the tensor value as little-endian bytes. The data type and the shape are carried in
+ * the tf_dtype (TensorFlow {@link DataType} name) and tf_shape (comma separated dimensions) message headers.
+ * The content type of the message is application/x-tensorflow-tensor.
+ * Optionally the payload can be compressed or carry reduced precision values (see {@link TensorCodec}). The encoding
+ * is then named in the tf_encoding header.
+ *
+ * Note: The Kafka binder requires you to white list the custom headers:
+ * <code>
+ *  --spring.cloud.stream.kafka.binder.headers=tf_dtype,tf_shape,tf_encoding,tf_raw_length,tf_scale,tf_zero_point
+ * </code>
+ *
+ * @author Christian Tzolov
+ */
+public class TensorRawBinaryConverter {
+
+	public static final String CONTENT_TYPE = "application/x-tensorflow-tensor";
+
+	public static final String TF_DATA_TYPE_HEADER = "tf_dtype";
+
+	public static final String TF_SHAPE_HEADER = "tf_shape";
+
+	/**
+	 * Headers describing a raw binary tensor payload: data type, shape, encoding and encoding parameters.
+	 */
+	static final List<String> PAYLOAD_HEADERS = Collections.unmodifiableList(Arrays.asList(TF_DATA_TYPE_HEADER,
+			TF_SHAPE_HEADER, TensorCodec.TF_ENCODING, TensorCodec.TF_RAW_LENGTH, TensorCodec.TF_SCALE,
+			TensorCodec.TF_ZERO_POINT));
+
+	/**
+	 * @param headers Message headers.
+	 * @return true if the headers describe a raw binary tensor payload.
+	 */
+	public static boolean isRawTensor(MessageHeaders headers) {
+		return headers.containsKey(TF_DATA_TYPE_HEADER) && headers.containsKey(TF_SHAPE_HEADER);
+	}
+
+	/**
+	 * @param headers Headers of a message whose payload is replaced (e.g. by the evaluation result).
+	 * @return The headers without the ones describing a raw binary tensor payload, the raw tensor content type
+	 * included. The same headers if there are none.
+	 */
+	public static Map<String, Object> withoutPayloadHeaders(MessageHeaders headers) {
+		Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+		boolean rawContentType = contentType != null && contentType.toString().startsWith(CONTENT_TYPE);
+		if (!rawContentType && Collections.disjoint(headers.keySet(), PAYLOAD_HEADERS)) {
+			return headers;
+		}
+		Map<String, Object> filtered = new HashMap<>(headers);
+		filtered.keySet().removeAll(PAYLOAD_HEADERS);
+		if (rawContentType) {
+			filtered.remove(MessageHeaders.CONTENT_TYPE);
+		}
+		return filtered;
+	}
+
+	public static Message<byte[]> toMessage(Tensor tensor) {
+		return toMessage(tensor, TensorCodec.Encoding.NONE);
+	}
+
+	public static Message<byte[]> toMessage(Tensor tensor, TensorCodec.Encoding encoding) {
+		return toMessage(tensor, encoding, TensorCodec.UNMETERED);
+	}
+
+	/**
+	 * @param tensor Tensor to convert.
+	 * @param encoding Payload encoding. For encodings other than NONE the tf_encoding header and the encoding
+	 * parameter headers are added.
+	 * @param codec Encodes the payload.
+	 * @return Raw binary tensor message.
+	 */
+	public static Message<byte[]> toMessage(Tensor tensor, TensorCodec.Encoding encoding, TensorCodec codec) {
+		DataType dataType = tensor.dataType();
+		Assert.isTrue(dataType != DataType.STRING, "STRING tensors are not supported by the raw binary format");
+
+		TensorCodec.EncodedTensor encoded = codec.encode(tensor, encoding);
+
+		MessageBuilder<byte[]> builder = MessageBuilder.withPayload(encoded.getBytes())
+				.setHeader(TF_DATA_TYPE_HEADER, dataType.name())
+				.setHeader(TF_SHAPE_HEADER, toShapeHeader(tensor.shape()))
+				.setHeader(MessageHeaders.CONTENT_TYPE, CONTENT_TYPE);
+
+		if (encoding != TensorCodec.Encoding.NONE) {
+			builder.setHeader(TensorCodec.TF_ENCODING, encoding.name());
+			builder.copyHeaders(encoded.getParameters());
+		}
+
+		return builder.build();
+	}
+
+	public static Tensor toTensor(byte[] payload, MessageHeaders headers) {
+		return toTensor(payload, headers, TensorCodec.UNMETERED);
+	}
+
+	/**
+	 * @param payload Raw binary tensor payload.
+	 * @param headers Message headers describing the tensor.
+	 * @param codec Decodes the payload.
+	 * @return New Tensor. The caller is responsible to close it.
+	 */
+	public static Tensor toTensor(byte[] payload, MessageHeaders headers, TensorCodec codec) {
+		Assert.isTrue(isRawTensor(headers), "Missing " + TF_DATA_TYPE_HEADER + " or " + TF_SHAPE_HEADER + " header");
+
+		DataType dataType = DataType.valueOf(headers.get(TF_DATA_TYPE_HEADER).toString());
+		long[] shape = fromShapeHeader(headers.get(TF_SHAPE_HEADER).toString());
+		TensorCodec.Encoding encoding = headers.containsKey(TensorCodec.TF_ENCODING) ?
+				TensorCodec.Encoding.valueOf(headers.get(TensorCodec.TF_ENCODING).toString()) : TensorCodec.Encoding.NONE;
+
+		return codec.decode(dataType, shape, payload, encoding, headers);
+	}
+
+	static String toShapeHeader(long[] shape) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < shape.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(shape[i]);
+		}
+		return sb.toString();
+	}
+
+	static long[] fromShapeHeader(String shapeHeader) {
+		if (!StringUtils.hasText(shapeHeader)) {
+			// Scalar
+			return new long[0];
+		}
+		String[] dimensions = StringUtils.commaDelimitedListToStringArray(shapeHeader);
+		long[] shape = new long[dimensions.length];
+		for (int i = 0; i < dimensions.length; i++) {
+			shape[i] = Long.parseLong(dimensions[i].trim());
+		}
+		return shape;
+	}
+
+	static int elementSize(DataType dataType) {
+		switch (dataType) {
+		case FLOAT:
+		case INT32:
+			return 4;
+		case DOUBLE:
+		case INT64:
+			return 8;
+		case UINT8:
+		case BOOL:
+			return 1;
+		default:
+			throw new IllegalArgumentException("Unsupported data type: " + dataType);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * {@link TensorflowInputConverter} for messages in the raw binary tensor format (see {@link TensorRawBinaryConverter}).
+ * The payload bytes are copied straight into a native {@link org.tensorflow.Tensor} fed to the feedName placeholder.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorRawBinaryInputConverter implements TensorflowInputConverter {
+
+	private final String feedName;
+
+	private final TensorCodec codec;
+
+	public TensorRawBinaryInputConverter(String feedName) {
+		this(feedName, TensorCodec.UNMETERED);
+	}
+
+	/**
+	 * @param feedName Placeholder fed with the payload tensor.
+	 * @param codec Decodes the encoded payloads.
+	 */
+	public TensorRawBinaryInputConverter(String feedName, TensorCodec codec) {
+		Assert.hasText(feedName, "The raw tensor feed name must be set (tensorflow.transport.feedName)");
+		this.feedName = feedName;
+		this.codec = codec;
+	}
+
+	@Override
+	public Map<String, Object> convert(Message<?> input, Map<String, Object> processorContext) {
+		Assert.isInstanceOf(byte[].class, input.getPayload(), "Raw tensor message must have a byte[] payload");
+
+		Map<String, Object> feeds = new HashMap<>(2);
+		feeds.put(feedName, TensorRawBinaryConverter.toTensor((byte[]) input.getPayload(), input.getHeaders(),
+				codec));
+		return feeds;
+	}
+}
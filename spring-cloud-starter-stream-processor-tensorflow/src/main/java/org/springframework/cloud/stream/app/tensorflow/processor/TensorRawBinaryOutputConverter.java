@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.Map;
+
+import org.tensorflow.Tensor;
+
+import org.springframework.messaging.Message;
+
+/**
+ * {@link TensorflowOutputConverter} that encodes the result {@link Tensor} in the raw binary tensor format
+ * (see {@link TensorRawBinaryConverter}). The processor uses the returned message as payload and headers of the
+ * outbound message.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorRawBinaryOutputConverter implements TensorflowOutputConverter<Message<byte[]>> {
+
+	private final TensorCodec.Encoding encoding;
+
+	private final TensorCodec codec;
+
+	public TensorRawBinaryOutputConverter() {
+		this(TensorCodec.Encoding.NONE);
+	}
+
+	public TensorRawBinaryOutputConverter(TensorCodec.Encoding encoding) {
+		this(encoding, TensorCodec.UNMETERED);
+	}
+
+	/**
+	 * @param encoding Payload encoding.
+	 * @param codec Encodes the payloads.
+	 */
+	public TensorRawBinaryOutputConverter(TensorCodec.Encoding encoding, TensorCodec codec) {
+		this.encoding = encoding;
+		this.codec = codec;
+	}
+
+	@Override
+	public Message<byte[]> convert(Tensor tensor, Map<String, Object> processorContext) {
+		return TensorRawBinaryConverter.toMessage(tensor, encoding, codec);
+	}
+}
@@ -17,6 +17,8 @@
 package org.springframework.cloud.stream.app.tensorflow.processor;
 
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.tensorflow.DataType;
 import org.tensorflow.Tensor;
@@ -26,6 +28,13 @@ import org.springframework.tuple.TupleBuilder;
 
 /**
  * Utility that helps to covert {@link Tensor} to {@link Tuple} and in reverse.
+ *
+ * The tensor value is copied once, straight between the native tensor memory and the byte array carried by the Tuple.
+ * No intermediate buffers are allocated.
+ *
+ * Optionally the value can be compressed or carry reduced precision values (see {@link TensorCodec}). The encoding
+ * and its parameters are added as extra Tuple fields.
+ *
  * @author Christian Tzolov
  */
 public class TensorTupleConverter {
@@ -36,15 +45,41 @@ public class TensorTupleConverter {
 
 	public static final String TF_VALUE = "value";
 
-	public static Tuple toTuple(Tensor tensor) {
-		ByteBuffer buffer = ByteBuffer.allocate(tensor.numBytes());
-		tensor.writeTo(buffer);
+	public static final String TF_ENCODING = TensorCodec.TF_ENCODING;
 
-		// Retrieve all bytes in the buffer
-		buffer.clear();
-		byte[] bytes = new byte[buffer.capacity()];
+	public static Tuple toTuple(Tensor tensor, TensorCodec.Encoding encoding) {
+		return toTuple(tensor, encoding, TensorCodec.UNMETERED);
+	}
+
+	/**
+	 * @param tensor Tensor to convert.
+	 * @param encoding Value encoding. For encodings other than NONE the encoding and its parameters are added as
+	 * Tuple fields.
+	 * @param codec Encodes the value.
+	 * @return Tensor Tuple.
+	 */
+	public static Tuple toTuple(Tensor tensor, TensorCodec.Encoding encoding, TensorCodec codec) {
+		if (encoding == TensorCodec.Encoding.NONE) {
+			return toTuple(tensor);
+		}
 
-        buffer.get(bytes, 0, bytes.length);
+		TensorCodec.EncodedTensor encoded = codec.encode(tensor, encoding);
+
+		TupleBuilder builder = TupleBuilder.tuple()
+				.put(TF_DATA_TYPE, tensor.dataType().name())
+				.put(TF_SHAPE, tensor.shape())
+				.put(TF_VALUE, encoded.getBytes())
+				.put(TF_ENCODING, encoding.name());
+		for (Map.Entry<String, Object> parameter : encoded.getParameters().entrySet()) {
+			builder.put(parameter.getKey(), parameter.getValue());
+		}
+		return builder.build();
+	}
+
+	public static Tuple toTuple(Tensor tensor) {
+		// Copy the native tensor data directly into the payload array
+		byte[] bytes = new byte[tensor.numBytes()];
+		tensor.writeTo(ByteBuffer.wrap(bytes));
 
 		return TupleBuilder.tuple()
 				.put(TF_DATA_TYPE, tensor.dataType().name())
@@ -54,10 +89,29 @@ public class TensorTupleConverter {
 	}
 
 	public static Tensor toTensor(Tuple tuple) {
+		return toTensor(tuple, TensorCodec.UNMETERED);
+	}
+
+	/**
+	 * @param tuple Tensor Tuple.
+	 * @param codec Decodes the encoded Tuple values.
+	 * @return New Tensor. The caller is responsible to close it.
+	 */
+	public static Tensor toTensor(Tuple tuple, TensorCodec codec) {
 		DataType dataType = DataType.valueOf(tuple.getString(TF_DATA_TYPE));
 		long[] shape = (long[]) tuple.getValue(TF_SHAPE);
 		byte[] bytes = (byte[]) tuple.getValue(TF_VALUE);
 
+		if (tuple.hasFieldName(TF_ENCODING)) {
+			Map<String, Object> parameters = new HashMap<>();
+			for (String name : tuple.getFieldNames()) {
+				parameters.put(name, tuple.getValue(name));
+			}
+			return codec.decode(dataType, shape, bytes,
+					TensorCodec.Encoding.valueOf(tuple.getString(TF_ENCODING)), parameters);
+		}
+
+		// Wrapping does not copy, the bytes are copied once into the native tensor memory
 		return Tensor.create(dataType, shape, ByteBuffer.wrap(bytes));
 	}
 }
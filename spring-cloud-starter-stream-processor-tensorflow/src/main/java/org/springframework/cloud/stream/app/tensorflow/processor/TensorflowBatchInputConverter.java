@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.messaging.Message;
+
+/**
+ * Batch-aware extension of the {@link TensorflowInputConverter}, used when the processor runs in micro-batching mode
+ * (tensorflow.batch.enabled=true).
+ *
+ * Plain {@link TensorflowInputConverter} implementations are supported in batching mode as well. The processor
+ * converts every message on its own and stacks the resulting feeds along dimension 0 (see {@link TensorBatchConverter}).
+ * Implement this interface only if the converter can build the batched feeds more efficiently.
+ *
+ * @author Christian Tzolov
+ */
+public interface TensorflowBatchInputConverter extends TensorflowInputConverter {
+	/**
+	 *
+	 * @param inputs Batch of processor's input messages
+	 * @param processorContexts Per message contexts (in input order) shared between the Input and Output converters
+	 * @return Returns map that corresponds to the TensorFlow model's input format, where every input message contributes
+	 * exactly one row, in input order, along dimension 0 of each feed.
+	 */
+	Map<String, Object> convertBatch(List<Message<?>> inputs, List<Map<String, Object>> processorContexts);
+}
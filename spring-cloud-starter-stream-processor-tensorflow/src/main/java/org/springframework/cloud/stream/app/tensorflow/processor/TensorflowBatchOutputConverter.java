@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.List;
+import java.util.Map;
+
+import org.tensorflow.Tensor;
+
+import org.springframework.util.Assert;
+
+/**
+ * Batch-aware extension of the {@link TensorflowOutputConverter}, used when the processor runs in micro-batching mode
+ * (tensorflow.batch.enabled=true).
+ *
+ * Plain {@link TensorflowOutputConverter} implementations are supported in batching mode as well. The processor
+ * splits the batched result along dimension 0 (see {@link TensorBatchConverter}) and converts every slice on its own.
+ * Implement this interface only if the converter can decode the whole batch more efficiently.
+ *
+ * @author Christian Tzolov
+ */
+public interface TensorflowBatchOutputConverter<T> extends TensorflowOutputConverter<T> {
+	/**
+	 *
+	 * @param tensor Batched {@link Tensor} result of the model evaluation.
+	 * @param processorContexts Per message contexts (in input order) shared between the Input and Output converters
+	 * @return Returns one converted result per input message, in input order.
+	 */
+	List<T> convertBatch(Tensor tensor, List<Map<String, Object>> processorContexts);
+
+	/**
+	 * Batch counterpart of {@link TensorflowOutputConverter#convert(Map, Map)}, called with all fetched outputs.
+	 * The default implementation supports a single output only.
+	 *
+	 * @param tensors Batched {@link Tensor} results, keyed by fetch name in the configured order.
+	 * @param processorContexts Per message contexts (in input order) shared between the Input and Output converters
+	 * @return Returns one converted result per input message, in input order.
+	 */
+	default List<T> convertBatch(Map<String, Tensor> tensors, List<Map<String, Object>> processorContexts) {
+		Assert.isTrue(tensors.size() == 1, "The batch converter supports a single output but got: " + tensors.keySet());
+		return convertBatch(tensors.values().iterator().next(), processorContexts);
+	}
+}
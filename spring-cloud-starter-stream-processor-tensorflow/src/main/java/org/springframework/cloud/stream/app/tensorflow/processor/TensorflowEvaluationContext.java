@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.tensorflow.Tensor;
+
+/**
+ * Per-thread holders reused by the evaluation of every message: the processor context map shared by the converters
+ * and the feed tensor array. Reusing them keeps the steady state evaluation path free of these per-message
+ * allocations.
+ *
+ * A holder acquired again on the same thread before its release (e.g. a converter evaluating a nested message) is
+ * replaced by a fresh instance, so nested evaluations never share state.
+ *
+ * @author Christian Tzolov
+ */
+final class TensorflowEvaluationContext {
+
+	private static final ThreadLocal<TensorflowEvaluationContext> contexts =
+			new ThreadLocal<TensorflowEvaluationContext>() {
+				@Override
+				protected TensorflowEvaluationContext initialValue() {
+					return new TensorflowEvaluationContext();
+				}
+			};
+
+	private final Map<String, Object> processorContext = new ConcurrentHashMap<>();
+
+	private boolean processorContextInUse;
+
+	private Tensor[] feedTensors = new Tensor[4];
+
+	private boolean feedTensorsInUse;
+
+	private TensorflowEvaluationContext() {
+	}
+
+	static TensorflowEvaluationContext current() {
+		return contexts.get();
+	}
+
+	/**
+	 * @return Empty processor context. Release it with {@link #releaseProcessorContext(Map)} once the message is
+	 * converted.
+	 */
+	Map<String, Object> acquireProcessorContext() {
+		if (processorContextInUse) {
+			return new ConcurrentHashMap<>();
+		}
+		processorContextInUse = true;
+		return processorContext;
+	}
+
+	void releaseProcessorContext(Map<String, Object> context) {
+		if (context == processorContext) {
+			processorContext.clear();
+			processorContextInUse = false;
+		}
+	}
+
+	/**
+	 * @param size Number of feeds.
+	 * @return Array of at least size empty slots. Release it with {@link #releaseFeedTensors(Tensor[])}.
+	 */
+	Tensor[] acquireFeedTensors(int size) {
+		if (feedTensorsInUse) {
+			return new Tensor[size];
+		}
+		if (feedTensors.length < size) {
+			feedTensors = new Tensor[size];
+		}
+		feedTensorsInUse = true;
+		return feedTensors;
+	}
+
+	void releaseFeedTensors(Tensor[] tensors) {
+		if (tensors == feedTensors) {
+			// Do not keep the closed tensors reachable
+			Arrays.fill(feedTensors, null);
+			feedTensorsInUse = false;
+		}
+	}
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tensorflow.DataType;
+
+/**
+ * Editable view of a serialized tensorflow.GraphDef, used by the load time graph rewrites.
+ *
+ * The nodes reference the original byte array: unchanged nodes and attribute values (e.g. Const weights) are written
+ * back as-is, without being decoded. Only the name, op, inputs, device and attribute map of the nodes are exposed.
+ *
+ * @author Christian Tzolov
+ */
+final class TensorflowGraphDef {
+
+	// tensorflow.GraphDef field numbers
+	private static final int GRAPH_NODE = 1;
+
+	// tensorflow.NodeDef field numbers
+	private static final int NODE_NAME = 1;
+
+	private static final int NODE_OP = 2;
+
+	private static final int NODE_INPUT = 3;
+
+	private static final int NODE_DEVICE = 4;
+
+	private static final int NODE_ATTR = 5;
+
+	// map<string, AttrValue> entry field numbers
+	private static final int ENTRY_KEY = 1;
+
+	private static final int ENTRY_VALUE = 2;
+
+	// tensorflow.AttrValue field numbers
+	static final int ATTR_LIST = 1;
+
+	static final int ATTR_S = 2;
+
+	static final int ATTR_TYPE = 6;
+
+	static final int ATTR_SHAPE = 7;
+
+	static final int ATTR_TENSOR = 8;
+
+	// tensorflow.TensorProto field numbers
+	static final int TENSOR_DTYPE = 1;
+
+	static final int TENSOR_SHAPE = 2;
+
+	static final int TENSOR_CONTENT = 4;
+
+	static final int TENSOR_FLOAT_VAL = 5;
+
+	// tensorflow.DataType enum values missing in the Java API
+	static final int DT_QUINT8 = 12;
+
+	// tensorflow.TensorShapeProto field numbers
+	static final int SHAPE_DIM = 2;
+
+	// tensorflow.TensorShapeProto.Dim field numbers
+	static final int DIM_SIZE = 1;
+
+	private final List<Node> nodes;
+
+	private final List<ProtobufReader> otherFields;
+
+	private TensorflowGraphDef(List<Node> nodes, List<ProtobufReader> otherFields) {
+		this.nodes = nodes;
+		this.otherFields = otherFields;
+	}
+
+	/**
+	 * @param graphDef Serialized tensorflow.GraphDef. The array must not change while the view is used.
+	 * @return The editable graph.
+	 * @throws IllegalArgumentException if the GraphDef is malformed.
+	 */
+	static TensorflowGraphDef parse(byte[] graphDef) {
+		List<Node> nodes = new ArrayList<>();
+		List<ProtobufReader> otherFields = new ArrayList<>();
+		ProtobufReader graph = new ProtobufReader(graphDef);
+		while (graph.next()) {
+			if (graph.fieldNumber() == GRAPH_NODE) {
+				nodes.add(Node.parse(graph.readMessage()));
+			}
+			else {
+				// versions, library: kept as-is
+				graph.skip();
+				otherFields.add(graph.rawField());
+			}
+		}
+		return new TensorflowGraphDef(nodes, otherFields);
+	}
+
+	/**
+	 * @return The nodes in graph order. The list can be modified.
+	 */
+	List<Node> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return The nodes keyed by name.
+	 */
+	Map<String, Node> getNodesByName() {
+		Map<String, Node> nodesByName = new LinkedHashMap<>();
+		for (Node node : nodes) {
+			nodesByName.put(node.getName(), node);
+		}
+		return nodesByName;
+	}
+
+	byte[] toByteArray() {
+		long size = 0;
+		for (Node node : nodes) {
+			size += node.serializedSize() + 6;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(size + 1024, Integer.MAX_VALUE - 8));
+		for (Node node : nodes) {
+			node.writeTo(out);
+		}
+		for (ProtobufReader field : otherFields) {
+			field.writeTo(out);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return The tensorflow.DataType enum value of a Java API data type.
+	 */
+	static int toTypeEnum(DataType dataType) {
+		switch (dataType) {
+		case FLOAT:
+			return 1;
+		case DOUBLE:
+			return 2;
+		case INT32:
+			return 3;
+		case UINT8:
+			return 4;
+		case STRING:
+			return 7;
+		case INT64:
+			return 9;
+		case BOOL:
+			return 10;
+		default:
+			throw new IllegalArgumentException("Unsupported data type: " + dataType);
+		}
+	}
+
+	/**
+	 * @return Serialized tensorflow.TensorShapeProto.
+	 */
+	static byte[] shapeProto(long[] shape) {
+		ByteArrayOutputStream shapeProto = new ByteArrayOutputStream();
+		for (long size : shape) {
+			ByteArrayOutputStream dim = new ByteArrayOutputStream();
+			ProtobufWriter.writeVarintField(dim, DIM_SIZE, size);
+			ProtobufWriter.writeBytesField(shapeProto, SHAPE_DIM, dim.toByteArray());
+		}
+		return shapeProto.toByteArray();
+	}
+
+	/**
+	 * GraphDef node (tensorflow.NodeDef).
+	 */
+	static final class Node {
+
+		private final ProtobufReader raw;
+
+		private final String name;
+
+		private final String op;
+
+		private List<String> inputs;
+
+		private final String device;
+
+		private final Map<String, ProtobufReader> attrs;
+
+		private final List<ProtobufReader> otherFields;
+
+		private boolean modified;
+
+		private Node(ProtobufReader raw, String name, String op, List<String> inputs, String device,
+				Map<String, ProtobufReader> attrs, List<ProtobufReader> otherFields) {
+			this.raw = raw;
+			this.name = name;
+			this.op = op;
+			this.inputs = inputs;
+			this.device = device;
+			this.attrs = attrs;
+			this.otherFields = otherFields;
+			this.modified = (raw == null);
+		}
+
+		private static Node parse(ProtobufReader node) {
+			String name = null;
+			String op = null;
+			List<String> inputs = new ArrayList<>(2);
+			String device = "";
+			Map<String, ProtobufReader> attrs = new LinkedHashMap<>();
+			List<ProtobufReader> otherFields = new ArrayList<>(0);
+			ProtobufReader raw = node.duplicate();
+			while (node.next()) {
+				switch (node.fieldNumber()) {
+				case NODE_NAME:
+					name = node.readString();
+					break;
+				case NODE_OP:
+					op = node.readString();
+					break;
+				case NODE_INPUT:
+					inputs.add(node.readString());
+					break;
+				case NODE_DEVICE:
+					device = node.readString();
+					break;
+				case NODE_ATTR:
+					ProtobufReader entry = node.readMessage();
+					String key = null;
+					ProtobufReader value = null;
+					while (entry.next()) {
+						if (entry.fieldNumber() == ENTRY_KEY) {
+							key = entry.readString();
+						}
+						else if (entry.fieldNumber() == ENTRY_VALUE) {
+							value = entry.readMessage();
+						}
+						else {
+							entry.skip();
+						}
+					}
+					attrs.put(key, (value != null) ? value : new ProtobufReader(new byte[0]));
+					break;
+				default:
+					node.skip();
+					otherFields.add(node.rawField());
+				}
+			}
+			return new Node(raw, name, op, inputs, device, attrs, otherFields);
+		}
+
+		/**
+		 * @return New node.
+		 * @param attrs Serialized tensorflow.AttrValue values keyed by attribute name.
+		 */
+		static Node create(String name, String op, String device, List<String> inputs, Map<String, byte[]> attrs) {
+			Map<String, ProtobufReader> attrValues = new LinkedHashMap<>();
+			for (Map.Entry<String, byte[]> attr : attrs.entrySet()) {
+				attrValues.put(attr.getKey(), new ProtobufReader(attr.getValue()));
+			}
+			return new Node(null, name, op, new ArrayList<>(inputs), device, attrValues,
+					new ArrayList<ProtobufReader>(0));
+		}
+
+		/**
+		 * @return New Const node.
+		 * @param tensorProto Serialized tensorflow.TensorProto value.
+		 */
+		static Node constant(String name, String device, DataType dataType, byte[] tensorProto) {
+			return constant(name, device, toTypeEnum(dataType), tensorProto);
+		}
+
+		/**
+		 * @return New Const node.
+		 * @param dataType tensorflow.DataType enum value, e.g. DT_QUINT8 not supported by the Java API.
+		 * @param tensorProto Serialized tensorflow.TensorProto value.
+		 */
+		static Node constant(String name, String device, int dataType, byte[] tensorProto) {
+			Map<String, byte[]> attrs = new LinkedHashMap<>();
+			attrs.put("dtype", typeAttr(dataType));
+			ByteArrayOutputStream value = new ByteArrayOutputStream(tensorProto.length + 8);
+			ProtobufWriter.writeBytesField(value, ATTR_TENSOR, tensorProto);
+			attrs.put("value", value.toByteArray());
+			return create(name, "Const", device, Collections.<String>emptyList(), attrs);
+		}
+
+		/**
+		 * @return Serialized tensorflow.TensorProto with the values in the tensor_content field.
+		 */
+		static byte[] tensorProto(DataType dataType, long[] shape, byte[] content) {
+			return tensorProto(toTypeEnum(dataType), shape, content);
+		}
+
+		/**
+		 * @return Serialized tensorflow.TensorProto with the values in the tensor_content field.
+		 */
+		static byte[] tensorProto(int dataType, long[] shape, byte[] content) {
+			ByteArrayOutputStream tensorProto = new ByteArrayOutputStream(content.length + 64);
+			ProtobufWriter.writeVarintField(tensorProto, TENSOR_DTYPE, dataType);
+			ProtobufWriter.writeBytesField(tensorProto, TENSOR_SHAPE, shapeProto(shape));
+			ProtobufWriter.writeBytesField(tensorProto, TENSOR_CONTENT, content);
+			return tensorProto.toByteArray();
+		}
+
+		/**
+		 * @return Serialized tensorflow.AttrValue of a data type.
+		 */
+		static byte[] typeAttr(int dataType) {
+			ByteArrayOutputStream attrValue = new ByteArrayOutputStream(4);
+			ProtobufWriter.writeVarintField(attrValue, ATTR_TYPE, dataType);
+			return attrValue.toByteArray();
+		}
+
+		/**
+		 * @return Serialized tensorflow.AttrValue of a string.
+		 */
+		static byte[] stringAttr(String value) {
+			ByteArrayOutputStream attrValue = new ByteArrayOutputStream();
+			ProtobufWriter.writeStringField(attrValue, ATTR_S, value);
+			return attrValue.toByteArray();
+		}
+
+		String getName() {
+			return name;
+		}
+
+		String getOp() {
+			return op;
+		}
+
+		String getDevice() {
+			return device;
+		}
+
+		/**
+		 * @return The data ([operation name] or [operation name]:[index]) and control (^[operation name]) inputs.
+		 */
+		List<String> getInputs() {
+			return inputs;
+		}
+
+		void setInputs(List<String> inputs) {
+			this.inputs = inputs;
+			this.modified = true;
+		}
+
+		/**
+		 * @return The serialized tensorflow.AttrValue or null.
+		 */
+		ProtobufReader getAttr(String key) {
+			ProtobufReader value = attrs.get(key);
+			return (value != null) ? value.duplicate() : null;
+		}
+
+		void setAttr(String key, byte[] attrValue) {
+			attrs.put(key, new ProtobufReader(attrValue));
+			modified = true;
+		}
+
+		void removeAttr(String key) {
+			if (attrs.remove(key) != null) {
+				modified = true;
+			}
+		}
+
+		long serializedSize() {
+			if (!modified) {
+				return raw.length();
+			}
+			long size = 0;
+			for (ProtobufReader value : attrs.values()) {
+				size += value.length();
+			}
+			return size + 256;
+		}
+
+		private void writeTo(ByteArrayOutputStream out) {
+			if (!modified) {
+				ProtobufWriter.writeVarint(out, (GRAPH_NODE << 3) | ProtobufReader.WIRETYPE_LENGTH_DELIMITED);
+				ProtobufWriter.writeVarint(out, raw.length());
+				raw.writeTo(out);
+				return;
+			}
+			ByteArrayOutputStream node = new ByteArrayOutputStream((int) serializedSize());
+			ProtobufWriter.writeStringField(node, NODE_NAME, name);
+			ProtobufWriter.writeStringField(node, NODE_OP, op);
+			for (String input : inputs) {
+				ProtobufWriter.writeStringField(node, NODE_INPUT, input);
+			}
+			if (!device.isEmpty()) {
+				ProtobufWriter.writeStringField(node, NODE_DEVICE, device);
+			}
+			for (Map.Entry<String, ProtobufReader> attr : attrs.entrySet()) {
+				ByteArrayOutputStream entry = new ByteArrayOutputStream(attr.getValue().length() + 32);
+				ProtobufWriter.writeStringField(entry, ENTRY_KEY, attr.getKey());
+				ProtobufWriter.writeVarint(entry, (ENTRY_VALUE << 3) | ProtobufReader.WIRETYPE_LENGTH_DELIMITED);
+				ProtobufWriter.writeVarint(entry, attr.getValue().length());
+				attr.getValue().writeTo(entry);
+				ProtobufWriter.writeBytesField(node, NODE_ATTR, entry.toByteArray());
+			}
+			for (ProtobufReader field : otherFields) {
+				field.writeTo(node);
+			}
+			ProtobufWriter.writeBytesField(out, GRAPH_NODE, node.toByteArray());
+		}
+	}
+}
@@ -0,0 +1,999 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.tensorflow.DataType;
+import org.tensorflow.Graph;
+import org.tensorflow.Operation;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
+import org.tensorflow.TensorFlow;
+
+import org.springframework.util.Assert;
+
+/**
+ * Load time rewrite of the serialized GraphDef, applied before the graph is imported:
+ * <ul>
+ * <li>fixed inputs: the placeholders with a configured value become constants,</li>
+ * <li>Identity and NoOp removal: the consumers are rewired to the Identity input,</li>
+ * <li>constant folding: the subexpressions computed from constants only are evaluated once and replaced by their
+ * value,</li>
+ * <li>pruning: the operations the fetched outputs do not depend on are removed,</li>
+ * <li>weight quantization (opt-in): the large float constants are stored as 8-bit values with their range and
+ * restored by an inline Dequantize operation. The outputs of the quantized graph are compared with the float graph on
+ * generated sample inputs and the float graph is kept if the error is above the limit.</li>
+ * </ul>
+ *
+ * The fetched operations and the placeholders are never removed. The node counts and, if enabled, the run latency of
+ * the original and the optimized graph are logged. With a {@link TensorflowModelCache} the optimized GraphDef is stored
+ * and reused on the next loads of the same GraphDef.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowGraphOptimizer {
+
+	private static final Log logger = LogFactory.getLog(TensorflowGraphOptimizer.class);
+
+	private static final Set<String> PLACEHOLDER_OPS = new HashSet<>(Arrays.asList("Placeholder", "PlaceholderV2",
+			"PlaceholderWithDefault"));
+
+	// Removing an Identity from a loop frame or a switch branch changes the control flow
+	private static final Set<String> CONTROL_FLOW_OPS = new HashSet<>(Arrays.asList("Switch", "RefSwitch", "Merge",
+			"RefMerge", "Enter", "RefEnter", "Exit", "RefExit", "NextIteration", "RefNextIteration", "LoopCond"));
+
+	// Stateful or side effect operations, never folded. Dequantize neither, folding it would restore the float
+	// weights of an already quantized graph
+	private static final Set<String> NON_FOLDABLE_OPS = new HashSet<>(Arrays.asList("Variable", "VariableV2",
+			"VarHandleOp", "ReadVariableOp", "TemporaryVariable", "DestroyTemporaryVariable", "Assign", "AssignAdd",
+			"AssignSub", "Multinomial", "Print", "Assert", "Save", "SaveV2", "SaveSlices", "Restore", "RestoreV2",
+			"RestoreSlice", "NoOp", "ControlTrigger", "Stage", "Unstage", "Dequantize"));
+
+	private boolean prune = true;
+
+	private boolean removeIdentity = true;
+
+	private boolean foldConstants = true;
+
+	private Map<String, String> fixedInputs = Collections.emptyMap();
+
+	private int latencyIterations = 0;
+
+	private boolean quantizeWeights = false;
+
+	private long quantizeMinBytes = 4096;
+
+	private int quantizeSamples = 8;
+
+	private float quantizeMaxError = 0.01f;
+
+	private TensorflowModelCache modelCache;
+
+	/**
+	 * @param prune Remove the operations the fetched outputs do not depend on (default true).
+	 */
+	public void setPrune(boolean prune) {
+		this.prune = prune;
+	}
+
+	/**
+	 * @param removeIdentity Remove the Identity and NoOp operations (default true).
+	 */
+	public void setRemoveIdentity(boolean removeIdentity) {
+		this.removeIdentity = removeIdentity;
+	}
+
+	/**
+	 * @param foldConstants Replace the subexpressions computed from constants only by their value (default true).
+	 */
+	public void setFoldConstants(boolean foldConstants) {
+		this.foldConstants = foldConstants;
+	}
+
+	/**
+	 * @param fixedInputs Placeholder values baked into the graph as constants, keyed by placeholder name. The values
+	 * are scalars or comma separated vectors of the placeholder data type.
+	 */
+	public void setFixedInputs(Map<String, String> fixedInputs) {
+		Assert.notNull(fixedInputs, "Fixed inputs must not be null");
+		this.fixedInputs = fixedInputs;
+	}
+
+	/**
+	 * @param latencyIterations Number of runs of the original and the optimized graph compared at load time. 0
+	 * disables the comparison (default).
+	 */
+	public void setLatencyIterations(int latencyIterations) {
+		this.latencyIterations = latencyIterations;
+	}
+
+	/**
+	 * @param quantizeWeights Store the large float constants as 8-bit values (default false).
+	 */
+	public void setQuantizeWeights(boolean quantizeWeights) {
+		this.quantizeWeights = quantizeWeights;
+	}
+
+	/**
+	 * @param quantizeMinBytes Minimum size of the quantized float constants (default 4096).
+	 */
+	public void setQuantizeMinBytes(long quantizeMinBytes) {
+		this.quantizeMinBytes = quantizeMinBytes;
+	}
+
+	/**
+	 * @param quantizeSamples Number of generated sample inputs evaluated by the float and the quantized graph to check
+	 * the quantization error. 0 disables the check (default 8).
+	 */
+	public void setQuantizeSamples(int quantizeSamples) {
+		this.quantizeSamples = quantizeSamples;
+	}
+
+	/**
+	 * @param quantizeMaxError Maximum absolute difference between the float outputs of the float and the quantized
+	 * graph. Above it the float graph is kept (default 0.01).
+	 */
+	public void setQuantizeMaxError(float quantizeMaxError) {
+		this.quantizeMaxError = quantizeMaxError;
+	}
+
+	/**
+	 * @param modelCache Stores the optimized GraphDefs, reused when the same GraphDef is optimized with the same
+	 * settings and fetches. Null disables the caching (default).
+	 */
+	public void setModelCache(TensorflowModelCache modelCache) {
+		this.modelCache = modelCache;
+	}
+
+	/**
+	 * @return The names of the placeholders replaced by constants. Their feeds are ignored.
+	 */
+	public Set<String> getFixedInputs() {
+		return fixedInputs.keySet();
+	}
+
+	/**
+	 * Rewrites the graph for the fetched outputs.
+	 * @param modelName Model name used in the log and error messages.
+	 * @param graphDef Serialized tensorflow.GraphDef.
+	 * @param fetches Outputs to fetch, in the [operation name] or [operation name]:[output index] format.
+	 * @return The serialized optimized GraphDef.
+	 * @throws IllegalArgumentException if the GraphDef is malformed or a fixed input is invalid.
+	 */
+	public byte[] optimize(String modelName, byte[] graphDef, List<String> fetches) {
+		if (modelCache == null) {
+			return rewrite(modelName, graphDef, fetches);
+		}
+
+		String cacheKey = cacheKey(graphDef, fetches);
+		try {
+			byte[] cached = modelCache.getOptimized(cacheKey);
+			if (cached != null) {
+				logger.info("Read the optimized TensorFlow model " + modelName + " from the model cache: "
+						+ graphDef.length + " -> " + cached.length + " bytes");
+				return cached;
+			}
+		}
+		catch (IOException e) {
+			logger.warn("Can not read the optimized TensorFlow model " + modelName + " from the model cache", e);
+		}
+
+		byte[] optimized = rewrite(modelName, graphDef, fetches);
+		try {
+			modelCache.putOptimized(cacheKey, optimized);
+		}
+		catch (IOException e) {
+			logger.warn("Can not store the optimized TensorFlow model " + modelName + " in the model cache", e);
+		}
+		return optimized;
+	}
+
+	/**
+	 * @return Key of the optimized GraphDef: the original GraphDef digest, the settings changing the result, the
+	 * fetches and the TensorFlow version evaluating the folded constants.
+	 */
+	private String cacheKey(byte[] graphDef, List<String> fetches) {
+		return TensorflowModelCache.sha256(graphDef) + ";prune=" + prune + ";removeIdentity=" + removeIdentity
+				+ ";foldConstants=" + foldConstants + ";fixedInputs=" + new TreeMap<>(fixedInputs)
+				+ ";quantizeWeights=" + quantizeWeights + ";quantizeMinBytes=" + quantizeMinBytes
+				+ ";quantizeSamples=" + quantizeSamples + ";quantizeMaxError=" + quantizeMaxError
+				+ ";fetches=" + fetches + ";tensorflow=" + TensorFlow.version();
+	}
+
+	private byte[] rewrite(String modelName, byte[] graphDef, List<String> fetches) {
+		long start = System.nanoTime();
+
+		TensorflowGraphDef graph = TensorflowGraphDef.parse(graphDef);
+		int originalNodes = graph.getNodes().size();
+
+		Set<String> fetched = new HashSet<>();
+		for (String fetch : fetches) {
+			fetched.add(TensorflowSignature.operationName(fetch));
+		}
+
+		Map<String, Tensor> fixedValues = new LinkedHashMap<>();
+		try {
+			bakeFixedInputs(modelName, graph, fixedValues);
+			if (removeIdentity) {
+				removeIdentity(graph, fetched);
+			}
+			if (foldConstants) {
+				foldConstants(modelName, graph, fetched);
+			}
+			if (prune) {
+				prune(graph, fetched);
+			}
+			removeDanglingColocation(graph);
+
+			byte[] optimized = graph.toByteArray();
+			if (quantizeWeights && quantizeWeights(modelName, graph) > 0) {
+				// Quantized last, the constant folding would restore the float values
+				byte[] quantized = graph.toByteArray();
+				if (isAccurate(modelName, optimized, quantized, fetches)) {
+					optimized = quantized;
+				}
+			}
+			logger.info("Optimized TensorFlow model " + modelName + " in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms: " + originalNodes + " -> "
+					+ TensorflowGraphDef.parse(optimized).getNodes().size() + " nodes, " + graphDef.length + " -> "
+					+ optimized.length + " bytes");
+
+			if (latencyIterations > 0) {
+				compareLatency(modelName, graphDef, optimized, fetches, fixedValues);
+			}
+			return optimized;
+		}
+		finally {
+			for (Tensor tensor : fixedValues.values()) {
+				tensor.close();
+			}
+		}
+	}
+
+	private void bakeFixedInputs(String modelName, TensorflowGraphDef graph, Map<String, Tensor> fixedValues) {
+		for (Map.Entry<String, String> fixedInput : fixedInputs.entrySet()) {
+			int index = indexOf(graph, fixedInput.getKey());
+			Assert.isTrue(index >= 0, "Model " + modelName + " has no fixed input: " + fixedInput.getKey());
+			TensorflowGraphDef.Node node = graph.getNodes().get(index);
+			Assert.isTrue(PLACEHOLDER_OPS.contains(node.getOp()), "Model " + modelName + " fixed input "
+					+ node.getName() + " is not a placeholder but " + node.getOp());
+
+			DataType dataType = readType(node.getAttr("dtype"));
+			Assert.isTrue(dataType != null && dataType != DataType.STRING, "Model " + modelName + " fixed input "
+					+ node.getName() + " has unsupported data type");
+
+			String[] values = fixedInput.getValue().split(",");
+			long[] shape = (values.length == 1) ? new long[0] : new long[] { values.length };
+			byte[] content = parseValues(dataType, values);
+			graph.getNodes().set(index, TensorflowGraphDef.Node.constant(node.getName(), node.getDevice(), dataType,
+					TensorflowGraphDef.Node.tensorProto(dataType, shape, content)));
+			fixedValues.put(node.getName(), Tensor.create(dataType, shape, ByteBuffer.wrap(content)));
+		}
+	}
+
+	private static int indexOf(TensorflowGraphDef graph, String name) {
+		List<TensorflowGraphDef.Node> nodes = graph.getNodes();
+		for (int i = 0; i < nodes.size(); i++) {
+			if (name.equals(nodes.get(i).getName())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The values in native byte order, as the tensor_content field and Tensor.create expect them.
+	 */
+	private static byte[] parseValues(DataType dataType, String[] values) {
+		ByteBuffer content = ByteBuffer.allocate(values.length * byteSize(dataType)).order(ByteOrder.nativeOrder());
+		for (String value : values) {
+			String trimmed = value.trim();
+			switch (dataType) {
+			case FLOAT:
+				content.putFloat(Float.parseFloat(trimmed));
+				break;
+			case DOUBLE:
+				content.putDouble(Double.parseDouble(trimmed));
+				break;
+			case INT32:
+				content.putInt(Integer.parseInt(trimmed));
+				break;
+			case INT64:
+				content.putLong(Long.parseLong(trimmed));
+				break;
+			case UINT8:
+				content.put((byte) Integer.parseInt(trimmed));
+				break;
+			case BOOL:
+				content.put((byte) (Boolean.parseBoolean(trimmed) ? 1 : 0));
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported data type: " + dataType);
+			}
+		}
+		return content.array();
+	}
+
+	private static int byteSize(DataType dataType) {
+		switch (dataType) {
+		case DOUBLE:
+		case INT64:
+			return 8;
+		case FLOAT:
+		case INT32:
+			return 4;
+		default:
+			return 1;
+		}
+	}
+
+	private static DataType readType(ProtobufReader attrValue) {
+		if (attrValue == null) {
+			return null;
+		}
+		DataType dataType = null;
+		while (attrValue.next()) {
+			if (attrValue.fieldNumber() == TensorflowGraphDef.ATTR_TYPE) {
+				dataType = TensorflowSignature.toDataType((int) attrValue.readVarint());
+			}
+			else {
+				attrValue.skip();
+			}
+		}
+		return dataType;
+	}
+
+	/**
+	 * Rewires the consumers of the Identity (and NoOp) operations to their input. The control inputs of a removed
+	 * operation are moved to its consumers.
+	 */
+	private static void removeIdentity(TensorflowGraphDef graph, Set<String> fetched) {
+		Map<String, TensorflowGraphDef.Node> nodesByName = graph.getNodesByName();
+		Map<String, TensorflowGraphDef.Node> removed = new HashMap<>();
+		for (TensorflowGraphDef.Node node : graph.getNodes()) {
+			if (fetched.contains(node.getName())) {
+				continue;
+			}
+			if ("NoOp".equals(node.getOp())) {
+				removed.put(node.getName(), node);
+			}
+			else if ("Identity".equals(node.getOp()) && !node.getInputs().isEmpty()
+					&& !node.getInputs().get(0).startsWith("^")) {
+				TensorflowGraphDef.Node input = nodesByName.get(
+						TensorflowSignature.operationName(node.getInputs().get(0)));
+				if (input != null && !CONTROL_FLOW_OPS.contains(input.getOp())) {
+					removed.put(node.getName(), node);
+				}
+			}
+		}
+		if (removed.isEmpty()) {
+			return;
+		}
+
+		for (Iterator<TensorflowGraphDef.Node> nodes = graph.getNodes().iterator(); nodes.hasNext();) {
+			TensorflowGraphDef.Node node = nodes.next();
+			if (removed.containsKey(node.getName())) {
+				nodes.remove();
+				continue;
+			}
+			boolean rewired = false;
+			for (String input : node.getInputs()) {
+				if (removed.containsKey(TensorflowSignature.operationName(input))) {
+					rewired = true;
+					break;
+				}
+			}
+			if (rewired) {
+				List<String> dataInputs = new ArrayList<>();
+				Set<String> controlInputs = new LinkedHashSet<>();
+				for (String input : node.getInputs()) {
+					rewireInput(input, removed, dataInputs, controlInputs);
+				}
+				// NodeDef lists the control inputs after the data inputs
+				dataInputs.addAll(controlInputs);
+				node.setInputs(dataInputs);
+			}
+		}
+	}
+
+	private static void rewireInput(String input, Map<String, TensorflowGraphDef.Node> removed,
+			List<String> dataInputs, Set<String> controlInputs) {
+		boolean control = input.startsWith("^");
+		TensorflowGraphDef.Node node = removed.get(TensorflowSignature.operationName(input));
+		if (node == null) {
+			if (control) {
+				controlInputs.add(input);
+			}
+			else {
+				dataInputs.add(input);
+			}
+			return;
+		}
+		for (String nodeInput : node.getInputs()) {
+			if (nodeInput.startsWith("^")) {
+				rewireInput(nodeInput, removed, dataInputs, controlInputs);
+			}
+		}
+		if ("Identity".equals(node.getOp())) {
+			String identityInput = node.getInputs().get(0);
+			rewireInput(control ? "^" + TensorflowSignature.operationName(identityInput) : identityInput, removed,
+					dataInputs, controlInputs);
+		}
+	}
+
+	/**
+	 * Evaluates the foldable subexpressions in a temporary session and replaces each with a Const node. The
+	 * subexpression operations only used by folded operations are removed.
+	 */
+	private static void foldConstants(String modelName, TensorflowGraphDef graph, Set<String> fetched) {
+		Map<String, TensorflowGraphDef.Node> nodesByName = graph.getNodesByName();
+		Map<String, Boolean> foldable = new HashMap<>();
+		for (String name : nodesByName.keySet()) {
+			isFoldable(name, nodesByName, foldable);
+		}
+
+		// Frontier: foldable computations consumed by non foldable operations or fetched
+		Set<String> frontier = new LinkedHashSet<>();
+		for (TensorflowGraphDef.Node node : graph.getNodes()) {
+			if (!foldable.get(node.getName())) {
+				for (String input : node.getInputs()) {
+					String inputName = TensorflowSignature.operationName(input);
+					if (Boolean.TRUE.equals(foldable.get(inputName))) {
+						frontier.add(inputName);
+					}
+				}
+			}
+			else if (fetched.contains(node.getName())) {
+				frontier.add(node.getName());
+			}
+		}
+		for (Iterator<String> names = frontier.iterator(); names.hasNext();) {
+			if ("Const".equals(nodesByName.get(names.next()).getOp())) {
+				names.remove();
+			}
+		}
+		if (frontier.isEmpty()) {
+			return;
+		}
+
+		Map<String, TensorflowGraphDef.Node> folded = evaluate(modelName, graph, nodesByName, frontier);
+
+		// Keep the operations still consumed by a remaining operation
+		Set<String> needed = new HashSet<>();
+		Deque<String> pending = new ArrayDeque<>();
+		for (TensorflowGraphDef.Node node : graph.getNodes()) {
+			if (!foldable.get(node.getName()) || folded.containsKey(node.getName())
+					|| frontier.contains(node.getName()) || fetched.contains(node.getName())) {
+				pending.add(node.getName());
+			}
+		}
+		while (!pending.isEmpty()) {
+			String name = pending.poll();
+			if (!needed.add(name) || folded.containsKey(name)) {
+				continue;
+			}
+			TensorflowGraphDef.Node node = nodesByName.get(name);
+			if (node != null) {
+				for (String input : node.getInputs()) {
+					pending.add(TensorflowSignature.operationName(input));
+				}
+			}
+		}
+
+		List<TensorflowGraphDef.Node> nodes = graph.getNodes();
+		for (int i = nodes.size() - 1; i >= 0; i--) {
+			String name = nodes.get(i).getName();
+			if (folded.containsKey(name)) {
+				nodes.set(i, folded.get(name));
+			}
+			else if (!needed.contains(name)) {
+				nodes.remove(i);
+			}
+		}
+		logger.debug("Folded " + folded.size() + " constant subexpressions of model " + modelName);
+	}
+
+	private static boolean isFoldable(String name, Map<String, TensorflowGraphDef.Node> nodesByName,
+			Map<String, Boolean> foldable) {
+		Boolean known = foldable.get(name);
+		if (known != null) {
+			return known;
+		}
+		TensorflowGraphDef.Node node = nodesByName.get(name);
+		if (node == null) {
+			return false;
+		}
+		// Not foldable while visited, breaks the loop cycles
+		foldable.put(name, false);
+		boolean result;
+		if ("Const".equals(node.getOp())) {
+			result = true;
+		}
+		else if (node.getInputs().isEmpty() || !isFoldableOp(node.getOp())) {
+			result = false;
+		}
+		else {
+			result = true;
+			for (String input : node.getInputs()) {
+				if (!isFoldable(TensorflowSignature.operationName(input), nodesByName, foldable)) {
+					result = false;
+					break;
+				}
+			}
+		}
+		foldable.put(name, result);
+		return result;
+	}
+
+	private static boolean isFoldableOp(String op) {
+		return !NON_FOLDABLE_OPS.contains(op) && !PLACEHOLDER_OPS.contains(op) && !CONTROL_FLOW_OPS.contains(op)
+				&& !op.startsWith("Random") && !op.contains("Queue") && !op.contains("Reader")
+				&& !op.contains("Variable") && !op.contains("Summary") && !op.equals("TruncatedNormal");
+	}
+
+	/**
+	 * @return The Const nodes of the frontier operations with a single output of a Java supported, non string data
+	 * type.
+	 */
+	private static Map<String, TensorflowGraphDef.Node> evaluate(String modelName, TensorflowGraphDef graph,
+			Map<String, TensorflowGraphDef.Node> nodesByName, Set<String> frontier) {
+		Map<String, TensorflowGraphDef.Node> folded = new HashMap<>();
+		try (Graph tfGraph = new Graph()) {
+			tfGraph.importGraphDef(graph.toByteArray());
+			List<String> names = new ArrayList<>();
+			for (String name : frontier) {
+				Operation operation = tfGraph.operation(name);
+				if (operation != null && operation.numOutputs() == 1
+						&& operation.output(0).dataType() != DataType.STRING) {
+					names.add(name);
+				}
+			}
+			if (names.isEmpty()) {
+				return folded;
+			}
+
+			try (Session session = new Session(tfGraph)) {
+				Session.Runner runner = session.runner();
+				for (String name : names) {
+					runner = runner.fetch(name, 0);
+				}
+				List<Tensor> results = runner.run();
+				try {
+					for (int i = 0; i < names.size(); i++) {
+						Tensor result = results.get(i);
+						ByteBuffer content = ByteBuffer.allocate(result.numBytes());
+						result.writeTo(content);
+						TensorflowGraphDef.Node node = nodesByName.get(names.get(i));
+						folded.put(node.getName(), TensorflowGraphDef.Node.constant(node.getName(), node.getDevice(),
+								result.dataType(), TensorflowGraphDef.Node.tensorProto(result.dataType(),
+										result.shape(), content.array())));
+					}
+				}
+				finally {
+					for (Tensor result : results) {
+						result.close();
+					}
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			logger.warn("Skip the constant folding of model " + modelName + ": " + e.getMessage());
+			folded.clear();
+		}
+		return folded;
+	}
+
+	/**
+	 * Removes the operations the fetched outputs do not depend on. The placeholders are kept.
+	 */
+	private static void prune(TensorflowGraphDef graph, Set<String> fetched) {
+		Map<String, TensorflowGraphDef.Node> nodesByName = graph.getNodesByName();
+		Set<String> reachable = new HashSet<>();
+		Deque<String> pending = new ArrayDeque<>(fetched);
+		for (TensorflowGraphDef.Node node : graph.getNodes()) {
+			if (PLACEHOLDER_OPS.contains(node.getOp())) {
+				pending.add(node.getName());
+			}
+		}
+		while (!pending.isEmpty()) {
+			String name = pending.poll();
+			if (!reachable.add(name)) {
+				continue;
+			}
+			TensorflowGraphDef.Node node = nodesByName.get(name);
+			if (node != null) {
+				for (String input : node.getInputs()) {
+					pending.add(TensorflowSignature.operationName(input));
+				}
+			}
+		}
+		for (Iterator<TensorflowGraphDef.Node> nodes = graph.getNodes().iterator(); nodes.hasNext();) {
+			if (!reachable.contains(nodes.next().getName())) {
+				nodes.remove();
+			}
+		}
+	}
+
+	/**
+	 * Drops the colocation constraints (_class attribute, loc:@[operation name] values) referencing removed
+	 * operations. The graph import rejects them.
+	 */
+	private static void removeDanglingColocation(TensorflowGraphDef graph) {
+		Set<String> names = graph.getNodesByName().keySet();
+		for (TensorflowGraphDef.Node node : graph.getNodes()) {
+			ProtobufReader attrValue = node.getAttr("_class");
+			if (attrValue == null) {
+				continue;
+			}
+			boolean dangling = false;
+			while (attrValue.next()) {
+				if (attrValue.fieldNumber() != TensorflowGraphDef.ATTR_LIST) {
+					attrValue.skip();
+					continue;
+				}
+				ProtobufReader list = attrValue.readMessage();
+				while (list.next()) {
+					if (list.fieldNumber() == TensorflowGraphDef.ATTR_S) {
+						String location = list.readString();
+						if (location.startsWith("loc:@") && !names.contains(location.substring(5))) {
+							dangling = true;
+						}
+					}
+					else {
+						list.skip();
+					}
+				}
+			}
+			if (dangling) {
+				node.removeAttr("_class");
+			}
+		}
+	}
+
+	/**
+	 * Replaces every float Const node of at least quantizeMinBytes by a DT_QUINT8 Const, its range (min and max Const)
+	 * and a MIN_COMBINED Dequantize operation of the same name, so the consumers are unchanged.
+	 * @return The number of quantized constants.
+	 */
+	private int quantizeWeights(String modelName, TensorflowGraphDef graph) {
+		Set<String> names = graph.getNodesByName().keySet();
+		List<TensorflowGraphDef.Node> nodes = graph.getNodes();
+		long floatBytes = 0;
+		long quantizedBytes = 0;
+		int count = 0;
+		for (int i = nodes.size() - 1; i >= 0; i--) {
+			TensorflowGraphDef.Node node = nodes.get(i);
+			if (!"Const".equals(node.getOp()) || readType(node.getAttr("dtype")) != DataType.FLOAT
+					|| names.contains(node.getName() + "/quantized")) {
+				continue;
+			}
+			List<Long> shape = new ArrayList<>();
+			byte[] content = readTensorContent(node.getAttr("value"), shape);
+			if (content == null || content.length < quantizeMinBytes) {
+				continue;
+			}
+
+			FloatBuffer values = ByteBuffer.wrap(content).order(ByteOrder.nativeOrder()).asFloatBuffer();
+			float min = Float.POSITIVE_INFINITY;
+			float max = Float.NEGATIVE_INFINITY;
+			for (int j = 0; j < values.limit(); j++) {
+				min = Math.min(min, values.get(j));
+				max = Math.max(max, values.get(j));
+			}
+			if (!(max > min) || Float.isInfinite(min) || Float.isInfinite(max)) {
+				// Constant, NaN or infinite values
+				continue;
+			}
+			float scale = 255f / (max - min);
+			byte[] quantized = new byte[values.limit()];
+			for (int j = 0; j < quantized.length; j++) {
+				quantized[j] = (byte) Math.min(255, Math.max(0, Math.round((values.get(j) - min) * scale)));
+			}
+
+			long[] dims = new long[shape.size()];
+			for (int j = 0; j < dims.length; j++) {
+				dims[j] = shape.get(j);
+			}
+			String name = node.getName();
+			Map<String, byte[]> attrs = new LinkedHashMap<>();
+			attrs.put("T", TensorflowGraphDef.Node.typeAttr(TensorflowGraphDef.DT_QUINT8));
+			attrs.put("mode", TensorflowGraphDef.Node.stringAttr("MIN_COMBINED"));
+			nodes.set(i, TensorflowGraphDef.Node.create(name, "Dequantize", node.getDevice(),
+					Arrays.asList(name + "/quantized", name + "/min", name + "/max"), attrs));
+			nodes.add(i, scalar(name + "/max", node.getDevice(), max));
+			nodes.add(i, scalar(name + "/min", node.getDevice(), min));
+			nodes.add(i, TensorflowGraphDef.Node.constant(name + "/quantized", node.getDevice(),
+					TensorflowGraphDef.DT_QUINT8,
+					TensorflowGraphDef.Node.tensorProto(TensorflowGraphDef.DT_QUINT8, dims, quantized)));
+
+			floatBytes += content.length;
+			quantizedBytes += quantized.length + 8;
+			count++;
+		}
+		if (count > 0) {
+			logger.info("Quantized " + count + " weight constants of model " + modelName + ": " + floatBytes
+					+ " -> " + quantizedBytes + " bytes");
+		}
+		return count;
+	}
+
+	private static TensorflowGraphDef.Node scalar(String name, String device, float value) {
+		byte[] content = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder()).putFloat(value).array();
+		return TensorflowGraphDef.Node.constant(name, device, DataType.FLOAT,
+				TensorflowGraphDef.Node.tensorProto(DataType.FLOAT, new long[0], content));
+	}
+
+	/**
+	 * @param attrValue Serialized tensorflow.AttrValue holding a TensorProto.
+	 * @param shape Receives the tensor shape.
+	 * @return The tensor_content bytes or null if the values are stored in the typed fields (small or splat tensors).
+	 */
+	private static byte[] readTensorContent(ProtobufReader attrValue, List<Long> shape) {
+		if (attrValue == null) {
+			return null;
+		}
+		byte[] content = null;
+		while (attrValue.next()) {
+			if (attrValue.fieldNumber() != TensorflowGraphDef.ATTR_TENSOR) {
+				attrValue.skip();
+				continue;
+			}
+			ProtobufReader tensorProto = attrValue.readMessage();
+			while (tensorProto.next()) {
+				if (tensorProto.fieldNumber() == TensorflowGraphDef.TENSOR_CONTENT) {
+					content = tensorProto.readBytes();
+				}
+				else if (tensorProto.fieldNumber() == TensorflowGraphDef.TENSOR_SHAPE) {
+					ProtobufReader shapeProto = tensorProto.readMessage();
+					while (shapeProto.next()) {
+						if (shapeProto.fieldNumber() != TensorflowGraphDef.SHAPE_DIM) {
+							shapeProto.skip();
+							continue;
+						}
+						ProtobufReader dim = shapeProto.readMessage();
+						long size = 0;
+						while (dim.next()) {
+							if (dim.fieldNumber() == TensorflowGraphDef.DIM_SIZE) {
+								size = dim.readVarint();
+							}
+							else {
+								dim.skip();
+							}
+						}
+						shape.add(size);
+					}
+				}
+				else {
+					tensorProto.skip();
+				}
+			}
+		}
+		return content;
+	}
+
+	/**
+	 * Evaluates the float and the quantized graph on the same generated inputs: uniform [0, 1) values for the floating
+	 * point placeholders, zeros for the others.
+	 * @return true if the float outputs differ by at most quantizeMaxError or the check is disabled.
+	 */
+	private boolean isAccurate(String modelName, byte[] reference, byte[] quantized, List<String> fetches) {
+		if (quantizeSamples <= 0) {
+			return true;
+		}
+		TensorflowSignature signature = TensorflowSignature.read(modelName, reference);
+		Random random = new Random(42);
+		float maxError = 0;
+		try (Graph referenceGraph = new Graph(); Graph quantizedGraph = new Graph()) {
+			referenceGraph.importGraphDef(reference);
+			quantizedGraph.importGraphDef(quantized);
+			try (Session referenceSession = new Session(referenceGraph);
+					Session quantizedSession = new Session(quantizedGraph)) {
+				for (int i = 0; i < quantizeSamples; i++) {
+					Map<String, Tensor> feeds = new LinkedHashMap<>();
+					try {
+						for (String name : signature.getRequiredInputs(fetches)) {
+							feeds.put(name, sample(signature.getInputs().get(name), random));
+						}
+						List<Tensor> expected = run(referenceSession, feeds, fetches);
+						List<Tensor> actual = run(quantizedSession, feeds, fetches);
+						try {
+							for (int j = 0; j < expected.size(); j++) {
+								maxError = Math.max(maxError, maxDifference(expected.get(j), actual.get(j)));
+							}
+						}
+						finally {
+							for (Tensor tensor : expected) {
+								tensor.close();
+							}
+							for (Tensor tensor : actual) {
+								tensor.close();
+							}
+						}
+					}
+					finally {
+						for (Tensor tensor : feeds.values()) {
+							tensor.close();
+						}
+					}
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			logger.warn("Keep the float weights of model " + modelName + ", the quantization check failed: "
+					+ e.getMessage());
+			return false;
+		}
+		if (maxError > quantizeMaxError) {
+			logger.warn("Keep the float weights of model " + modelName + ", the quantized outputs differ by "
+					+ maxError + " (limit " + quantizeMaxError + ")");
+			return false;
+		}
+		logger.info("Quantized model " + modelName + " outputs differ by at most " + maxError + " on "
+				+ quantizeSamples + " samples");
+		return true;
+	}
+
+	private static List<Tensor> run(Session session, Map<String, Tensor> feeds, List<String> fetches) {
+		Session.Runner runner = session.runner();
+		for (Map.Entry<String, Tensor> feed : feeds.entrySet()) {
+			runner = runner.feed(feed.getKey(), feed.getValue());
+		}
+		for (String fetch : fetches) {
+			runner = runner.fetch(fetch);
+		}
+		return runner.run();
+	}
+
+	private static float maxDifference(Tensor expected, Tensor actual) {
+		if (expected.dataType() != DataType.FLOAT) {
+			return 0;
+		}
+		Assert.isTrue(Arrays.equals(expected.shape(), actual.shape()), "Quantized output shape mismatch");
+		FloatBuffer expectedValues = FloatBuffer.allocate(expected.numElements());
+		expected.writeTo(expectedValues);
+		FloatBuffer actualValues = FloatBuffer.allocate(actual.numElements());
+		actual.writeTo(actualValues);
+		float maxDifference = 0;
+		for (int i = 0; i < expectedValues.capacity(); i++) {
+			maxDifference = Math.max(maxDifference, Math.abs(expectedValues.get(i) - actualValues.get(i)));
+		}
+		return maxDifference;
+	}
+
+	private static Tensor sample(TensorflowSignature.Input input, Random random) {
+		DataType dataType = input.getDataType();
+		Tensor zeros = zeros(input);
+		if (dataType != DataType.FLOAT && dataType != DataType.DOUBLE) {
+			return zeros;
+		}
+		long[] shape = zeros.shape();
+		int size = zeros.numElements();
+		zeros.close();
+		ByteBuffer values = ByteBuffer.allocate(size * byteSize(dataType)).order(ByteOrder.nativeOrder());
+		for (int i = 0; i < size; i++) {
+			if (dataType == DataType.FLOAT) {
+				values.putFloat(random.nextFloat());
+			}
+			else {
+				values.putDouble(random.nextDouble());
+			}
+		}
+		values.flip();
+		return Tensor.create(dataType, shape, values);
+	}
+
+	/**
+	 * Logs the average run latency of the original and the optimized graph, fed with zero values.
+	 */
+	private void compareLatency(String modelName, byte[] original, byte[] optimized, List<String> fetches,
+			Map<String, Tensor> fixedValues) {
+		Map<String, Tensor> feeds = new LinkedHashMap<>();
+		try {
+			TensorflowSignature signature = TensorflowSignature.read(modelName, optimized);
+			for (String name : signature.getRequiredInputs(fetches)) {
+				feeds.put(name, zeros(signature.getInputs().get(name)));
+			}
+			long originalNanos = runLatency(original, feeds, fixedValues, fetches);
+			long optimizedNanos = runLatency(optimized, feeds, Collections.<String, Tensor>emptyMap(), fetches);
+			logger.info("TensorFlow model " + modelName + " average run latency: "
+					+ TimeUnit.NANOSECONDS.toMicros(originalNanos) + " us original, "
+					+ TimeUnit.NANOSECONDS.toMicros(optimizedNanos) + " us optimized (" + latencyIterations
+					+ " runs)");
+		}
+		catch (RuntimeException e) {
+			logger.info("Skip the latency comparison of model " + modelName + ": " + e.getMessage());
+		}
+		finally {
+			for (Tensor tensor : feeds.values()) {
+				tensor.close();
+			}
+		}
+	}
+
+	private long runLatency(byte[] graphDef, Map<String, Tensor> feeds, Map<String, Tensor> fixedValues,
+			List<String> fetches) {
+		try (Graph graph = new Graph()) {
+			graph.importGraphDef(graphDef);
+			try (Session session = new Session(graph)) {
+				// The first run initializes the kernels
+				long total = 0;
+				for (int i = 0; i <= latencyIterations; i++) {
+					long start = System.nanoTime();
+					Session.Runner runner = session.runner();
+					for (Map.Entry<String, Tensor> feed : feeds.entrySet()) {
+						runner = runner.feed(feed.getKey(), feed.getValue());
+					}
+					for (Map.Entry<String, Tensor> feed : fixedValues.entrySet()) {
+						runner = runner.feed(feed.getKey(), feed.getValue());
+					}
+					for (String fetch : fetches) {
+						runner = runner.fetch(fetch);
+					}
+					for (Tensor result : runner.run()) {
+						result.close();
+					}
+					if (i > 0) {
+						total += System.nanoTime() - start;
+					}
+				}
+				return total / latencyIterations;
+			}
+		}
+	}
+
+	/**
+	 * @return Zero value tensor of the input data type and shape. Unknown dimensions are 1, unconstrained shapes
+	 * scalar.
+	 */
+	private static Tensor zeros(TensorflowSignature.Input input) {
+		DataType dataType = input.getDataType();
+		if (dataType == null || dataType == DataType.STRING) {
+			throw new IllegalArgumentException("Unsupported input " + input);
+		}
+		long[] shape = (input.getShape() != null) ? input.getShape().clone() : new long[0];
+		long size = 1;
+		for (int i = 0; i < shape.length; i++) {
+			if (shape[i] < 0) {
+				shape[i] = 1;
+			}
+			size *= shape[i];
+		}
+		return Tensor.create(dataType, shape, ByteBuffer.allocate((int) (size * byteSize(dataType))));
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.core.DestinationResolver;
+
+/**
+ * Sheds the expired messages before their input conversion and model evaluation.
+ *
+ * A message expires when the current time is past its absolute deadline (epoch milliseconds header) or when its age,
+ * counted from its timestamp header, exceeds its max-age header or the default max age. Messages without deadline
+ * and max age never expire. Expired messages are dropped or, with a shed destination, diverted to it unchanged.
+ *
+ * Meters: tensorflow.deadline.shed counter (tagged by dropped/diverted action) and tensorflow.deadline.age timer
+ * (tagged by accepted/shed result) recording the message age at the check.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowLoadShedder {
+
+	private static final Log logger = LogFactory.getLog(TensorflowLoadShedder.class);
+
+	private final String deadlineHeader;
+
+	private final String maxAgeHeader;
+
+	private final String timestampHeader;
+
+	private final long defaultMaxAge;
+
+	private final DestinationResolver<MessageChannel> destinationResolver;
+
+	private final String shedDestination;
+
+	private volatile MessageChannel shedChannel;
+
+	private final Counter dropped;
+
+	private final Counter diverted;
+
+	private final Timer acceptedAge;
+
+	private final Timer shedAge;
+
+	/**
+	 * @param deadlineHeader Header holding the absolute deadline in epoch milliseconds.
+	 * @param maxAgeHeader Header holding the maximum message age in milliseconds.
+	 * @param timestampHeader Header holding the message creation time in epoch milliseconds.
+	 * @param defaultMaxAge Maximum age in milliseconds of the messages without deadline and max-age header. Non
+	 * positive value disables it.
+	 * @param destinationResolver Resolves the shed destination. Can be null if no shed destination is set.
+	 * @param shedDestination Destination receiving the expired messages. Null drops them.
+	 * @param meterRegistry Registry for the shed counters and age timers.
+	 */
+	public TensorflowLoadShedder(String deadlineHeader, String maxAgeHeader, String timestampHeader,
+			long defaultMaxAge, DestinationResolver<MessageChannel> destinationResolver, String shedDestination,
+			MeterRegistry meterRegistry) {
+		this.deadlineHeader = deadlineHeader;
+		this.maxAgeHeader = maxAgeHeader;
+		this.timestampHeader = timestampHeader;
+		this.defaultMaxAge = defaultMaxAge;
+		this.destinationResolver = destinationResolver;
+		this.shedDestination = shedDestination;
+		this.dropped = meterRegistry.counter("tensorflow.deadline.shed", "action", "dropped");
+		this.diverted = meterRegistry.counter("tensorflow.deadline.shed", "action", "diverted");
+		this.acceptedAge = meterRegistry.timer("tensorflow.deadline.age", "result", "accepted");
+		this.shedAge = meterRegistry.timer("tensorflow.deadline.age", "result", "shed");
+
+		logger.info("TensorFlow deadline load shedding enabled. Deadline header: " + deadlineHeader
+				+ ", max-age header: " + maxAgeHeader + ", default max age: " + defaultMaxAge
+				+ " ms, shed destination: " + ((shedDestination != null) ? shedDestination : "<dropped>"));
+	}
+
+	/**
+	 * Checks the message deadline. An expired message is dropped or sent to the shed destination.
+	 * @param message Inbound message.
+	 * @return true if the message expired and must not be evaluated.
+	 */
+	public boolean shed(Message<?> message) {
+		long now = System.currentTimeMillis();
+		MessageHeaders headers = message.getHeaders();
+
+		Long timestamp = toMillis(headers.get(timestampHeader));
+		long age = (timestamp != null) ? Math.max(0, now - timestamp) : -1;
+
+		boolean expired = false;
+		Long deadline = toMillis(headers.get(deadlineHeader));
+		if (deadline != null) {
+			expired = now > deadline;
+		}
+		else if (age >= 0) {
+			Long maxAge = toMillis(headers.get(maxAgeHeader));
+			if (maxAge == null && defaultMaxAge > 0) {
+				maxAge = defaultMaxAge;
+			}
+			expired = maxAge != null && age > maxAge;
+		}
+
+		if (!expired) {
+			if (age >= 0) {
+				acceptedAge.record(age, TimeUnit.MILLISECONDS);
+			}
+			return false;
+		}
+
+		if (age >= 0) {
+			shedAge.record(age, TimeUnit.MILLISECONDS);
+		}
+		if (shedDestination == null) {
+			dropped.increment();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Drop expired message " + headers.getId() + ", age: " + age + " ms");
+			}
+		}
+		else {
+			shedChannel().send(message);
+			diverted.increment();
+		}
+		return true;
+	}
+
+	private MessageChannel shedChannel() {
+		MessageChannel channel = shedChannel;
+		if (channel == null) {
+			// Resolved on first use, the binder creates the output binding of a dynamic destination on demand
+			channel = destinationResolver.resolveDestination(shedDestination);
+			shedChannel = channel;
+		}
+		return channel;
+	}
+
+	/**
+	 * @return The milliseconds of a Number or numeric String header value or null.
+	 */
+	private static Long toMillis(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		if (value instanceof String) {
+			try {
+				return Long.parseLong(((String) value).trim());
+			}
+			catch (NumberFormatException e) {
+				logger.debug("Ignore the non numeric deadline header value: " + value);
+			}
+		}
+		return null;
+	}
+}
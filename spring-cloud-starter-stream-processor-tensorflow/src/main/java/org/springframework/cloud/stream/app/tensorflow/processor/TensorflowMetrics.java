@@ -0,0 +1,269 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Micrometer meters of the processing stages.
+ *
+ * Every stage is timed by the tensorflow.stage timer and its failures are counted by the tensorflow.stage.errors
+ * counter, both tagged with the stage, model and model location. The tensorflow.feed.bytes and tensorflow.output.bytes
+ * summaries record the native tensor sizes of every evaluation. The meters are looked up once per model instance, so
+ * the hot path only reads the clock and updates pre-registered meters. A model reloaded from the same location keeps
+ * its meters, the meters of a replaced location or of an evicted registry model are removed from the registry. The
+ * evaluations still running on a replaced or evicted model instance do not register its meters again.
+ *
+ * The live tensors of the {@link TensorMemoryTracker} are published by the tensorflow.memory.live.tensors and
+ * tensorflow.memory.live.bytes gauges.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowMetrics {
+
+	public enum Stage {
+
+		INPUT_CONVERSION("input.conversion"),
+
+		TENSOR_CREATION("tensor.creation"),
+
+		SESSION_RUN("session.run"),
+
+		OUTPUT_CONVERSION("output.conversion");
+
+		private final String tag;
+
+		Stage(String tag) {
+			this.tag = tag;
+		}
+
+		public String getTag() {
+			return tag;
+		}
+	}
+
+	/**
+	 * Key of the default (not registry selected) model.
+	 */
+	private static final String DEFAULT_MODEL = "";
+
+	/**
+	 * Meters of the model instances that are not served anymore. They record nothing.
+	 */
+	private static final ModelMeters UNREGISTERED = new ModelMeters();
+
+	private final MeterRegistry meterRegistry;
+
+	private final ConcurrentMap<String, ModelMeters> models = new ConcurrentHashMap<>();
+
+	/**
+	 * Most recent removed model version by model key. Guarded by this.
+	 */
+	private final Map<String, Long> removedVersions = new HashMap<>();
+
+	public TensorflowMetrics(MeterRegistry meterRegistry, TensorMemoryTracker tensorMemoryTracker) {
+		this.meterRegistry = meterRegistry;
+
+		meterRegistry.gauge("tensorflow.memory.live.tensors", tensorMemoryTracker,
+				new ToDoubleFunction<TensorMemoryTracker>() {
+					@Override
+					public double applyAsDouble(TensorMemoryTracker tracker) {
+						return tracker.getLiveTensors();
+					}
+				});
+		meterRegistry.gauge("tensorflow.memory.live.bytes", tensorMemoryTracker,
+				new ToDoubleFunction<TensorMemoryTracker>() {
+					@Override
+					public double applyAsDouble(TensorMemoryTracker tracker) {
+						return tracker.getLiveBytes();
+					}
+				});
+	}
+
+	/**
+	 * Returns the meters of the model, registering them on first use of the model location.
+	 * @param modelId Registry model id or null for the default model.
+	 * @param model Evaluated model.
+	 * @return Model meters. Unregistered meters if the model instance was replaced or removed meanwhile.
+	 */
+	public ModelMeters forModel(String modelId, TensorflowModel model) {
+		String key = (modelId != null) ? modelId : DEFAULT_MODEL;
+		ModelMeters modelMeters = models.get(key);
+		if (modelMeters == null || modelMeters.version != model.getVersion()) {
+			modelMeters = register(key, modelId, model);
+		}
+		return modelMeters;
+	}
+
+	private synchronized ModelMeters register(String key, String modelId, TensorflowModel model) {
+		ModelMeters current = models.get(key);
+		if (current != null && current.version == model.getVersion()) {
+			return current;
+		}
+		String location = model.getLocation().getDescription();
+		Long removedVersion = removedVersions.get(key);
+		if (removedVersion != null && model.getVersion() <= removedVersion) {
+			// In-flight evaluation of a removed model
+			return UNREGISTERED;
+		}
+		if (current != null && current.version > model.getVersion()) {
+			// In-flight evaluation of a replaced model, the meters of the same location are shared
+			return current.location.equals(location) ? current : UNREGISTERED;
+		}
+		if (current != null && !current.location.equals(location)) {
+			current.remove(meterRegistry);
+		}
+		// Registering the tags of the current location again returns its existing meters
+		String name = (modelId != null) ? modelId : modelName(model);
+		ModelMeters modelMeters = new ModelMeters(meterRegistry, name, location, model.getVersion());
+		models.put(key, modelMeters);
+		return modelMeters;
+	}
+
+	/**
+	 * Removes the meters of a model that is not served anymore (e.g. evicted from the model registry). The later
+	 * evaluations of this or older versions of the model do not register them again.
+	 * @param modelId Registry model id or null for the default model.
+	 * @param version Version of the removed model instance.
+	 */
+	public synchronized void remove(String modelId, long version) {
+		String key = (modelId != null) ? modelId : DEFAULT_MODEL;
+		Long removedVersion = removedVersions.get(key);
+		if (removedVersion == null || removedVersion < version) {
+			removedVersions.put(key, version);
+		}
+		ModelMeters modelMeters = models.get(key);
+		if (modelMeters != null && modelMeters.version <= version) {
+			models.remove(key);
+			modelMeters.remove(meterRegistry);
+		}
+	}
+
+	/**
+	 * @param modelId Registry model id or null for the default model.
+	 * @return The meters of the most recently evaluated version of the model. Unregistered meters that record nothing
+	 * if the model was not evaluated yet or is not served anymore.
+	 */
+	public ModelMeters lastUsed(String modelId) {
+		ModelMeters modelMeters = models.get((modelId != null) ? modelId : DEFAULT_MODEL);
+		return (modelMeters != null) ? modelMeters : UNREGISTERED;
+	}
+
+	private static String modelName(TensorflowModel model) {
+		String filename = model.getLocation().getFilename();
+		return StringUtils.hasText(filename) ? filename : model.getLocation().getDescription();
+	}
+
+	/**
+	 * Pre-registered meters of a model instance.
+	 */
+	public static class ModelMeters {
+
+		private final long version;
+
+		private final String location;
+
+		private final EnumMap<Stage, Timer> timers = new EnumMap<>(Stage.class);
+
+		private final EnumMap<Stage, Counter> errors = new EnumMap<>(Stage.class);
+
+		private final DistributionSummary feedBytes;
+
+		private final DistributionSummary outputBytes;
+
+		private ModelMeters() {
+			this.version = 0;
+			this.location = null;
+			this.feedBytes = null;
+			this.outputBytes = null;
+		}
+
+		ModelMeters(MeterRegistry meterRegistry, String model, String location, long version) {
+			this.version = version;
+			this.location = location;
+			for (Stage stage : Stage.values()) {
+				timers.put(stage, Timer.builder("tensorflow.stage")
+						.tags("stage", stage.getTag(), "model", model, "location", location)
+						.register(meterRegistry));
+				errors.put(stage, Counter.builder("tensorflow.stage.errors")
+						.tags("stage", stage.getTag(), "model", model, "location", location)
+						.register(meterRegistry));
+			}
+			feedBytes = DistributionSummary.builder("tensorflow.feed.bytes").baseUnit("bytes")
+					.tags("model", model, "location", location).register(meterRegistry);
+			outputBytes = DistributionSummary.builder("tensorflow.output.bytes").baseUnit("bytes")
+					.tags("model", model, "location", location).register(meterRegistry);
+		}
+
+		void remove(MeterRegistry meterRegistry) {
+			List<Meter> meters = new ArrayList<>();
+			meters.addAll(timers.values());
+			meters.addAll(errors.values());
+			meters.add(feedBytes);
+			meters.add(outputBytes);
+			for (Meter meter : meters) {
+				meterRegistry.remove(meter);
+			}
+		}
+
+		/**
+		 * @param stage Processing stage.
+		 * @param nanos Stage duration in nanoseconds.
+		 */
+		public void record(Stage stage, long nanos) {
+			Timer timer = timers.get(stage);
+			if (timer != null) {
+				timer.record(nanos, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		public void error(Stage stage) {
+			Counter counter = errors.get(stage);
+			if (counter != null) {
+				counter.increment();
+			}
+		}
+
+		public void feedBytes(long bytes) {
+			if (feedBytes != null) {
+				feedBytes.record(bytes);
+			}
+		}
+
+		public void outputBytes(long bytes) {
+			if (outputBytes != null) {
+				outputBytes.record(bytes);
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.Assert;
+import org.springframework.util.ErrorHandler;
+
+/**
+ * Gathers the inbound messages into batches of up to maxBatchSize messages. A batch is handed to the batch handler
+ * as soon as it is full or maxWait milliseconds after its first message arrived, whatever comes first.
+ *
+ * Batches are handled sequentially on a dedicated thread. The pending message queue is bounded to twice the batch
+ * size, so the submitting (binder consumer) threads block when the handler can not keep up. The messages are
+ * acknowledged to the binder once queued, so a failed batch is reported message by message to the error handler.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowMicroBatcher implements AutoCloseable {
+
+	private static final Log logger = LogFactory.getLog(TensorflowMicroBatcher.class);
+
+	private final int maxBatchSize;
+
+	private final long maxWait;
+
+	private final Consumer<List<Message<?>>> batchHandler;
+
+	private final ErrorHandler errorHandler;
+
+	private final BlockingQueue<Message<?>> queue;
+
+	private final Thread worker;
+
+	private volatile boolean running = true;
+
+	/**
+	 * @param maxBatchSize Maximum number of messages evaluated together.
+	 * @param maxWait Maximum milliseconds a batch waits for more messages after its first one.
+	 * @param batchHandler Evaluates a batch and sends its results.
+	 * @param errorHandler Receives a {@link MessagingException} for every message of a failed batch (e.g. a
+	 * {@code MessagePublishingErrorHandler} publishing to the error channel).
+	 */
+	public TensorflowMicroBatcher(int maxBatchSize, long maxWait, Consumer<List<Message<?>>> batchHandler,
+			ErrorHandler errorHandler) {
+		Assert.isTrue(maxBatchSize > 0, "The max batch size must be positive");
+		Assert.isTrue(maxWait >= 0, "The max wait must not be negative");
+		Assert.notNull(batchHandler, "The batch handler must not be null");
+		Assert.notNull(errorHandler, "The error handler must not be null");
+
+		this.maxBatchSize = maxBatchSize;
+		this.maxWait = maxWait;
+		this.batchHandler = batchHandler;
+		this.errorHandler = errorHandler;
+		this.queue = new ArrayBlockingQueue<>(2 * maxBatchSize);
+
+		this.worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				processBatches();
+			}
+		}, "tensorflow-micro-batcher");
+		this.worker.setDaemon(true);
+		this.worker.start();
+
+		logger.info("TensorFlow micro-batching enabled. Max batch size: " + maxBatchSize + ", max wait: " + maxWait + "ms");
+	}
+
+	/**
+	 * Adds the message to the current batch. Blocks while the pending message queue is full.
+	 * @param message Message to evaluate.
+	 */
+	public void submit(Message<?> message) {
+		Assert.state(running, "The micro-batcher is closed");
+		try {
+			queue.put(message);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while submitting message to the micro-batcher", e);
+		}
+	}
+
+	private void processBatches() {
+		while (running) {
+			List<Message<?>> batch = new ArrayList<>(maxBatchSize);
+			try {
+				batch.add(queue.take());
+
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait);
+				while (batch.size() < maxBatchSize) {
+					long remaining = deadline - System.nanoTime();
+					Message<?> next = (remaining > 0) ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+			}
+			catch (InterruptedException e) {
+				// Closing. Handle the partial batch, the still queued messages are handled by close()
+				running = false;
+			}
+
+			if (!batch.isEmpty()) {
+				handle(batch);
+			}
+		}
+	}
+
+	private void handle(List<Message<?>> batch) {
+		try {
+			batchHandler.accept(batch);
+		}
+		catch (Exception e) {
+			logger.warn("Failed to evaluate a batch of " + batch.size() + " messages", e);
+			for (Message<?> message : batch) {
+				errorHandler.handleError(new MessagingException(message,
+						"Failed to evaluate a batch of " + batch.size() + " messages", e));
+			}
+		}
+	}
+
+	@Override
+	public void close() throws Exception {
+		logger.info("Close TensorFlow micro-batcher");
+		running = false;
+		worker.interrupt();
+		worker.join(TimeUnit.SECONDS.toMillis(30));
+
+		// Flush the messages accepted before closing
+		List<Message<?>> remaining = new ArrayList<>(queue.size());
+		queue.drainTo(remaining);
+		for (int i = 0; i < remaining.size(); i += maxBatchSize) {
+			handle(remaining.subList(i, Math.min(i + maxBatchSize, remaining.size())));
+		}
+	}
+}
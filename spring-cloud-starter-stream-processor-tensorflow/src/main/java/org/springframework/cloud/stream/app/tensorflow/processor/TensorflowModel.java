@@ -0,0 +1,286 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.tensorflow.DataType;
+import org.tensorflow.Graph;
+import org.tensorflow.Operation;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * Loaded TensorFlow model: the imported {@link Graph} together with its {@link TensorflowSessionPool}.
+ *
+ * The model is reference counted. The creator holds the initial reference, every evaluation retains the model while
+ * it runs. The graph and its sessions are closed when the last reference is released, so a replaced model keeps
+ * serving its in-flight evaluations.
+ *
+ * The {@link TensorflowSignature} (placeholders) is read from the GraphDef at load time and the fetched outputs are
+ * resolved once, so invalid feeds and fetches fail in Java before the session run. With a
+ * {@link TensorflowGraphOptimizer} the GraphDef is rewritten for the fetched outputs before the import. The outputs
+ * the model is loaded for are kept with it, so a model swapped for other outputs is never evaluated with stale ones.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowModel implements AutoCloseable {
+
+	private static final Log logger = LogFactory.getLog(TensorflowModel.class);
+
+	private static final AtomicLong versions = new AtomicLong();
+
+	private final long version = versions.incrementAndGet();
+
+	private final Resource location;
+
+	private final List<String> outputs;
+
+	private final Graph graph;
+
+	private final TensorflowSessionPool sessionPool;
+
+	private final TensorflowSignature signature;
+
+	private final ConcurrentMap<String, Fetch> fetches = new ConcurrentHashMap<>();
+
+	private final AtomicInteger references = new AtomicInteger(1);
+
+	public TensorflowModel(Resource location, TensorflowSessionPool.Mode sessionMode, int sessionPoolSize)
+			throws IOException {
+		this(location, sessionMode, sessionPoolSize, TensorflowSessionConfig.DEFAULT);
+	}
+
+	public TensorflowModel(Resource location, TensorflowSessionPool.Mode sessionMode, int sessionPoolSize,
+			TensorflowSessionConfig sessionConfig) throws IOException {
+		this(location, GraphDefLoader.load(location), sessionMode, sessionPoolSize, sessionConfig);
+	}
+
+	public TensorflowModel(Resource location, byte[] graphDef, TensorflowSessionPool.Mode sessionMode,
+			int sessionPoolSize) {
+		this(location, graphDef, sessionMode, sessionPoolSize, TensorflowSessionConfig.DEFAULT);
+	}
+
+	public TensorflowModel(Resource location, byte[] graphDef, TensorflowSessionPool.Mode sessionMode,
+			int sessionPoolSize, TensorflowSessionConfig sessionConfig) {
+		this(location, graphDef, sessionMode, sessionPoolSize, sessionConfig, null, null);
+	}
+
+	public TensorflowModel(Resource location, TensorflowSessionPool.Mode sessionMode, int sessionPoolSize,
+			TensorflowSessionConfig sessionConfig, TensorflowGraphOptimizer optimizer, List<String> fetches)
+			throws IOException {
+		this(location, GraphDefLoader.load(location), sessionMode, sessionPoolSize, sessionConfig, optimizer,
+				fetches);
+	}
+
+	/**
+	 * @param optimizer Rewrites the GraphDef before the import. Null imports the GraphDef as-is.
+	 * @param fetches Outputs the model is loaded for, fetched when the evaluation requests no outputs. The optimized
+	 * graph must provide them. Can be null without an optimizer.
+	 */
+	public TensorflowModel(Resource location, byte[] graphDef, TensorflowSessionPool.Mode sessionMode,
+			int sessionPoolSize, TensorflowSessionConfig sessionConfig, TensorflowGraphOptimizer optimizer,
+			List<String> fetches) {
+		this.location = location;
+		this.outputs = fetches;
+		byte[] modelGraphDef = graphDef;
+		if (optimizer != null) {
+			Assert.notEmpty(fetches, "The graph optimization requires the fetched outputs");
+			modelGraphDef = optimizer.optimize(String.valueOf(location), graphDef, fetches);
+			this.signature = TensorflowSignature.read(String.valueOf(location), modelGraphDef,
+					optimizer.getFixedInputs());
+		}
+		else {
+			this.signature = TensorflowSignature.read(String.valueOf(location), modelGraphDef);
+		}
+		logger.info("Model " + location + " has " + signature.getOperationCount() + " operations and inputs: "
+				+ signature.getInputs().values());
+		this.graph = new Graph();
+		try {
+			this.graph.importGraphDef(modelGraphDef);
+		}
+		catch (RuntimeException e) {
+			this.graph.close();
+			throw e;
+		}
+		try {
+			this.sessionPool = new TensorflowSessionPool(graph, sessionMode, sessionPoolSize, sessionConfig);
+		}
+		catch (RuntimeException e) {
+			// e.g. invalid session configuration
+			this.graph.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Checks that the graph provides all outputs.
+	 * @param operationNames Outputs in the [operation name] or [operation name]:[output index] format.
+	 * @throws IllegalArgumentException if an operation or output is missing.
+	 */
+	public void validate(Collection<String> operationNames) {
+		for (String operationName : operationNames) {
+			resolveFetch(operationName);
+		}
+	}
+
+	/**
+	 * Resolves an output to fetch. The resolved outputs are cached.
+	 * @param fetch Output in the [operation name] or [operation name]:[output index] format.
+	 * @return The resolved operation name, output index and output data type.
+	 * @throws IllegalArgumentException if the operation or output is missing.
+	 */
+	Fetch resolveFetch(String fetch) {
+		Fetch resolved = fetches.get(fetch);
+		if (resolved == null) {
+			String name = fetch;
+			int index = 0;
+			int separator = fetch.lastIndexOf(':');
+			if (separator > 0 && isIndex(fetch.substring(separator + 1))) {
+				name = fetch.substring(0, separator);
+				index = Integer.parseInt(fetch.substring(separator + 1));
+			}
+			Operation operation = graph.operation(name);
+			if (operation == null) {
+				throw new IllegalArgumentException("Model " + location + " has no operation: " + name);
+			}
+			if (index >= operation.numOutputs()) {
+				throw new IllegalArgumentException("Model " + location + " operation " + name + " has "
+						+ operation.numOutputs() + " outputs, can not fetch output " + index);
+			}
+			resolved = new Fetch(name, index, operation.output(index).dataType());
+			fetches.putIfAbsent(fetch, resolved);
+		}
+		return resolved;
+	}
+
+	private static boolean isIndex(String value) {
+		if (value.isEmpty()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (!Character.isDigit(value.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a reference to the model.
+	 * @return false if the model is already closed and can not be used.
+	 */
+	boolean retain() {
+		for (;;) {
+			int count = references.get();
+			if (count == 0) {
+				return false;
+			}
+			if (references.compareAndSet(count, count + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Releases a reference. The last release closes the sessions and the graph.
+	 */
+	void release() {
+		if (references.decrementAndGet() == 0) {
+			logger.info("Close TensorFlow model: " + location);
+			sessionPool.close();
+			graph.close();
+		}
+	}
+
+	/**
+	 * @return Unique identity of this model instance. A reloaded model gets a new version.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public Resource getLocation() {
+		return location;
+	}
+
+	/**
+	 * @return The outputs the model is loaded for or null if not known.
+	 */
+	public List<String> getOutputs() {
+		return outputs;
+	}
+
+	public Graph getGraph() {
+		return graph;
+	}
+
+	public TensorflowSignature getSignature() {
+		return signature;
+	}
+
+	TensorflowSessionPool getSessionPool() {
+		return sessionPool;
+	}
+
+	/**
+	 * Releases the creator reference.
+	 */
+	@Override
+	public void close() {
+		release();
+	}
+
+	/**
+	 * Resolved model output.
+	 */
+	static final class Fetch {
+
+		private final String operation;
+
+		private final int index;
+
+		private final DataType dataType;
+
+		Fetch(String operation, int index, DataType dataType) {
+			this.operation = operation;
+			this.index = index;
+			this.dataType = dataType;
+		}
+
+		String getOperation() {
+			return operation;
+		}
+
+		int getIndex() {
+			return index;
+		}
+
+		DataType getDataType() {
+			return dataType;
+		}
+	}
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * Local on-disk cache of the remote (http and https) model GraphDefs and of the optimized GraphDefs.
+ *
+ * The GraphDef bytes are stored once, in files named by their SHA-256 digest, and verified against it whenever they
+ * are read. An index entry maps the model URL to its content digest, ETag and Last-Modified response headers. A cached
+ * model is revalidated with a conditional request (If-None-Match, If-Modified-Since), so an unchanged model is not
+ * transferred again, and served from the cache if the server is unreachable. A downloaded GraphDef is checked against
+ * its ETag when the ETag is an MD5 or SHA-256 hex digest.
+ *
+ * The optimized GraphDefs are indexed by a key of the original GraphDef digest and the optimization settings (see
+ * {@link TensorflowGraphOptimizer#setModelCache(TensorflowModelCache)}), so warm restarts skip the optimization.
+ *
+ * When the cached GraphDefs exceed the maximum size, the least recently used ones are deleted.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowModelCache {
+
+	private static final Log logger = LogFactory.getLog(TensorflowModelCache.class);
+
+	private static final String GRAPH_SUFFIX = ".pb";
+
+	private static final String ENTRY_SUFFIX = ".properties";
+
+	private final File graphDirectory;
+
+	private final File indexDirectory;
+
+	private final long maxBytes;
+
+	private int connectTimeout = 10000;
+
+	private int readTimeout = 60000;
+
+	/**
+	 * @param directory Cache directory, created if missing.
+	 * @param maxBytes Total size of the cached GraphDefs above which the least recently used are deleted. Non
+	 * positive value disables the eviction.
+	 */
+	public TensorflowModelCache(File directory, long maxBytes) {
+		this.graphDirectory = new File(directory, "graphs");
+		this.indexDirectory = new File(directory, "index");
+		this.maxBytes = maxBytes;
+		Assert.state((graphDirectory.isDirectory() || graphDirectory.mkdirs())
+				&& (indexDirectory.isDirectory() || indexDirectory.mkdirs()),
+				"Can not create the model cache directory: " + directory);
+		logger.info("TensorFlow model cache: " + directory.getAbsolutePath() + ", max size: " + maxBytes + " bytes");
+	}
+
+	/**
+	 * @param connectTimeout Connection timeout of the model requests in milliseconds.
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * @param readTimeout Read timeout of the model requests in milliseconds.
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * @param location Model location.
+	 * @return Resource reading the remote model through the cache, or the location itself if it is not an http(s)
+	 * location.
+	 */
+	public Resource cached(Resource location) {
+		if (location == null || location instanceof CachedResource || !isRemote(location)) {
+			return location;
+		}
+		return new CachedResource(location);
+	}
+
+	/**
+	 * @return true if the resource reads a remote model through a model cache.
+	 */
+	static boolean isCached(Resource location) {
+		return location instanceof CachedResource;
+	}
+
+	/**
+	 * Revalidates or downloads the model. The cache lock is held only while the index and the GraphDef files are read
+	 * or updated, so a slow download does not block the other models nor the optimized GraphDef lookups.
+	 * @param location http(s) model location.
+	 * @return The cached GraphDef file.
+	 * @throws IOException if the model can not be downloaded and is not cached.
+	 */
+	public File fetch(Resource location) throws IOException {
+		long start = System.nanoTime();
+		URL url = location.getURL();
+		String entryName = sha256(url.toString().getBytes(StandardCharsets.UTF_8));
+		Properties entry;
+		File cached;
+		synchronized (this) {
+			entry = readEntry(entryName);
+			cached = (entry != null) ? verifiedGraph(entry) : null;
+			if (cached != null) {
+				// Most recently used, so the evictions during the revalidation keep it
+				touch(cached);
+			}
+		}
+
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		try {
+			connection.setConnectTimeout(connectTimeout);
+			connection.setReadTimeout(readTimeout);
+			if (cached != null) {
+				if (entry.getProperty("etag") != null) {
+					connection.setRequestProperty("If-None-Match", entry.getProperty("etag"));
+				}
+				if (entry.getProperty("lastModified") != null) {
+					connection.setRequestProperty("If-Modified-Since", entry.getProperty("lastModified"));
+				}
+			}
+
+			int status;
+			try {
+				status = connection.getResponseCode();
+			}
+			catch (IOException e) {
+				if (cached == null) {
+					throw e;
+				}
+				logger.warn("Can not revalidate the model " + url + ", use the cached copy: " + e.getMessage());
+				return touch(cached);
+			}
+
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+				logger.info("Model " + url + " not modified, read from the cache: " + cached.getName() + " ("
+						+ cached.length() + " bytes)");
+				return touch(cached);
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new IOException("Failed to download the model " + url + ": HTTP " + status);
+			}
+
+			byte[] graphDef;
+			try (InputStream is = connection.getInputStream()) {
+				graphDef = IOUtils.toByteArray(is);
+			}
+			String etag = connection.getHeaderField("ETag");
+			verifyETag(url, etag, graphDef);
+
+			File graph;
+			synchronized (this) {
+				graph = store(graphDef);
+				Properties newEntry = new Properties();
+				newEntry.setProperty("location", url.toString());
+				newEntry.setProperty("sha256", digestOf(graph));
+				if (etag != null) {
+					newEntry.setProperty("etag", etag);
+				}
+				if (connection.getHeaderField("Last-Modified") != null) {
+					newEntry.setProperty("lastModified", connection.getHeaderField("Last-Modified"));
+				}
+				writeEntry(entryName, newEntry);
+				evict(graph);
+			}
+
+			logger.info("Downloaded model " + url + " (" + graphDef.length + " bytes) into the cache in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+			return graph;
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * @param key Optimization key.
+	 * @return The cached optimized GraphDef or null.
+	 */
+	public synchronized byte[] getOptimized(String key) throws IOException {
+		Properties entry = readEntry(optimizedEntryName(key));
+		File cached = (entry != null) ? verifiedGraph(entry) : null;
+		return (cached != null) ? GraphDefLoader.readMapped(touch(cached)) : null;
+	}
+
+	/**
+	 * @param key Optimization key.
+	 * @param graphDef Optimized GraphDef.
+	 */
+	public synchronized void putOptimized(String key, byte[] graphDef) throws IOException {
+		File graph = store(graphDef);
+		Properties entry = new Properties();
+		entry.setProperty("sha256", digestOf(graph));
+		writeEntry(optimizedEntryName(key), entry);
+		evict(graph);
+	}
+
+	private static String digestOf(File graph) {
+		return graph.getName().substring(0, graph.getName().length() - GRAPH_SUFFIX.length());
+	}
+
+	private static String optimizedEntryName(String key) {
+		return "optimized-" + sha256(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return The GraphDef file of the entry, or null if it was evicted or is corrupted.
+	 */
+	private File verifiedGraph(Properties entry) throws IOException {
+		String sha256 = entry.getProperty("sha256");
+		File graph = new File(graphDirectory, sha256 + GRAPH_SUFFIX);
+		if (!graph.isFile()) {
+			return null;
+		}
+		if (!sha256.equals(sha256(graph))) {
+			logger.warn("Delete the corrupted cached GraphDef: " + graph);
+			Files.deleteIfExists(graph.toPath());
+			return null;
+		}
+		return graph;
+	}
+
+	/**
+	 * Writes the GraphDef to its content addressed file, through a temporary file, so that the concurrent readers
+	 * (e.g. the other processor instances sharing the directory) never see a partial GraphDef.
+	 */
+	private File store(byte[] graphDef) throws IOException {
+		File graph = new File(graphDirectory, sha256(graphDef) + GRAPH_SUFFIX);
+		if (graph.isFile()) {
+			return touch(graph);
+		}
+		File temporary = File.createTempFile("graph", ".tmp", graphDirectory);
+		try {
+			try (OutputStream os = new FileOutputStream(temporary)) {
+				os.write(graphDef);
+			}
+			move(temporary, graph);
+		}
+		finally {
+			Files.deleteIfExists(temporary.toPath());
+		}
+		return graph;
+	}
+
+	private void evict(File keep) throws IOException {
+		if (maxBytes <= 0) {
+			return;
+		}
+		File[] files = graphDirectory.listFiles();
+		if (files == null) {
+			return;
+		}
+		List<File> graphs = new ArrayList<>();
+		long total = 0;
+		for (File file : files) {
+			if (file.getName().endsWith(GRAPH_SUFFIX)) {
+				graphs.add(file);
+				total += file.length();
+			}
+		}
+		Collections.sort(graphs, new Comparator<File>() {
+			@Override
+			public int compare(File left, File right) {
+				return Long.compare(left.lastModified(), right.lastModified());
+			}
+		});
+		for (File graph : graphs) {
+			if (total <= maxBytes) {
+				break;
+			}
+			if (!graph.equals(keep)) {
+				// The index entries of the evicted GraphDefs are treated as misses
+				total -= graph.length();
+				Files.deleteIfExists(graph.toPath());
+				logger.info("Evicted cached GraphDef " + graph.getName());
+			}
+		}
+	}
+
+	private Properties readEntry(String name) throws IOException {
+		File file = new File(indexDirectory, name + ENTRY_SUFFIX);
+		if (!file.isFile()) {
+			return null;
+		}
+		Properties entry = new Properties();
+		try (InputStream is = new FileInputStream(file)) {
+			entry.load(is);
+		}
+		return (entry.getProperty("sha256") != null) ? entry : null;
+	}
+
+	private void writeEntry(String name, Properties entry) throws IOException {
+		File temporary = File.createTempFile("entry", ".tmp", indexDirectory);
+		try {
+			try (OutputStream os = new FileOutputStream(temporary)) {
+				entry.store(os, null);
+			}
+			move(temporary, new File(indexDirectory, name + ENTRY_SUFFIX));
+		}
+		finally {
+			Files.deleteIfExists(temporary.toPath());
+		}
+	}
+
+	private static void move(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Records the use, the eviction deletes the least recently used GraphDefs first.
+	 */
+	private static File touch(File file) {
+		file.setLastModified(System.currentTimeMillis());
+		return file;
+	}
+
+	/**
+	 * Checks the downloaded GraphDef against a strong ETag holding its MD5 (e.g. S3, nginx static files served with
+	 * etag md5) or SHA-256 hex digest. Other ETags are opaque and only used for the revalidation.
+	 */
+	private static void verifyETag(URL url, String etag, byte[] graphDef) throws IOException {
+		if (etag == null || etag.startsWith("W/")) {
+			return;
+		}
+		String value = etag.replace("\"", "").toLowerCase();
+		String digest = null;
+		if (value.matches("[0-9a-f]{32}")) {
+			digest = toHex(digest("MD5", graphDef));
+		}
+		else if (value.matches("[0-9a-f]{64}")) {
+			digest = sha256(graphDef);
+		}
+		if (digest != null && !digest.equals(value)) {
+			throw new IOException("Checksum mismatch of the downloaded model " + url + ": ETag " + etag
+					+ ", content digest " + digest);
+		}
+	}
+
+	static boolean isRemote(Resource location) {
+		try {
+			String protocol = location.getURL().getProtocol();
+			return "http".equals(protocol) || "https".equals(protocol);
+		}
+		catch (IOException e) {
+			// No URL, e.g. an input stream resource
+			return false;
+		}
+	}
+
+	static String sha256(byte[] content) {
+		return toHex(digest("SHA-256", content));
+	}
+
+	private static String sha256(File file) throws IOException {
+		return sha256(GraphDefLoader.readMapped(file));
+	}
+
+	private static byte[] digest(String algorithm, byte[] content) {
+		try {
+			return MessageDigest.getInstance(algorithm).digest(content);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Remote model location read from the cache. The model is revalidated or downloaded when the GraphDef is read.
+	 */
+	private class CachedResource extends AbstractResource {
+
+		private final Resource location;
+
+		CachedResource(Resource location) {
+			this.location = location;
+		}
+
+		@Override
+		public String getDescription() {
+			return location.getDescription();
+		}
+
+		@Override
+		public URL getURL() throws IOException {
+			return location.getURL();
+		}
+
+		@Override
+		public String getFilename() {
+			return location.getFilename();
+		}
+
+		@Override
+		public File getFile() throws IOException {
+			return fetch(location);
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return new FileInputStream(getFile());
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other == this || (other instanceof CachedResource
+					&& location.equals(((CachedResource) other).location));
+		}
+
+		@Override
+		public int hashCode() {
+			return location.hashCode();
+		}
+	}
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.regex.Pattern;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Lazily loads the models selected by id and keeps the recently used ones in memory.
+ *
+ * A model id is resolved to a location through the configured id to location map, or else by replacing the {model}
+ * placeholder of the location pattern. The graphs are loaded on first use. Concurrent requests for a model that is
+ * being loaded wait for the same load. When the total size of the loaded GraphDefs (an estimate of the native graph
+ * memory) exceeds maxBytes, the least recently used models are evicted. An evicted model is closed once its in-flight
+ * evaluations complete.
+ *
+ * The models are loaded like the default model: read through the model cache, rewritten by the graph optimizer and
+ * checked to provide the fetched outputs, each when set.
+ *
+ * Per model meters: tensorflow.registry.requests counter (tagged with result hit or miss) and
+ * tensorflow.registry.load timer. They are registered once the model is loaded and removed when it is unloaded, so the
+ * ids that fail to load do not leave meters behind.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowModelRegistry implements AutoCloseable {
+
+	private static final Log logger = LogFactory.getLog(TensorflowModelRegistry.class);
+
+	public static final String MODEL_PLACEHOLDER = "{model}";
+
+	private static final Pattern MODEL_ID_PATTERN = Pattern.compile("[A-Za-z0-9_\\-.]+");
+
+	private final Map<String, String> modelLocations;
+
+	private final String locationPattern;
+
+	private final long maxBytes;
+
+	private final ResourceLoader resourceLoader;
+
+	private final TensorflowSessionPool.Mode sessionMode;
+
+	private final int sessionPoolSize;
+
+	private final TensorflowSessionConfig sessionConfig;
+
+	private final MeterRegistry meterRegistry;
+
+	/**
+	 * Loaded models in access order. Guarded by itself.
+	 */
+	private final LinkedHashMap<String, LoadedModel> models = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final ConcurrentMap<String, CompletableFuture<TensorflowModel>> loading = new ConcurrentHashMap<>();
+
+	private long loadedBytes = 0;
+
+	/**
+	 * Incremented when the fetches change, so the loads started for the former fetches are discarded. Guarded by
+	 * models.
+	 */
+	private long generation = 0;
+
+	private volatile BiConsumer<String, TensorflowModel> evictionListener;
+
+	private TensorflowModelCache modelCache;
+
+	private TensorflowGraphOptimizer graphOptimizer;
+
+	private List<String> fetches;
+
+	/**
+	 * @param modelLocations Model id to model location map.
+	 * @param locationPattern Model location with {model} placeholder, used for ids missing in the modelLocations.
+	 * Can be null.
+	 * @param maxBytes Total GraphDef bytes of the loaded models above which the least recently used models are
+	 * evicted. Non positive disables the eviction.
+	 * @param resourceLoader Resolves the model locations.
+	 * @param sessionMode Session mode of the loaded models.
+	 * @param sessionPoolSize Session pool size of the loaded models.
+	 * @param meterRegistry Registry for the per model meters.
+	 */
+	public TensorflowModelRegistry(Map<String, String> modelLocations, String locationPattern, long maxBytes,
+			ResourceLoader resourceLoader, TensorflowSessionPool.Mode sessionMode, int sessionPoolSize,
+			MeterRegistry meterRegistry) {
+		this(modelLocations, locationPattern, maxBytes, resourceLoader, sessionMode, sessionPoolSize,
+				TensorflowSessionConfig.DEFAULT, meterRegistry);
+	}
+
+	/**
+	 * @param modelLocations Model id to model location map.
+	 * @param locationPattern Model location with {model} placeholder. Can be null.
+	 * @param maxBytes Total GraphDef bytes of the loaded models above which the least recently used models are
+	 * evicted.
+	 * @param resourceLoader Resolves the model locations.
+	 * @param sessionMode Session mode of the loaded models.
+	 * @param sessionPoolSize Session pool size of the loaded models.
+	 * @param sessionConfig Session configuration of the loaded models.
+	 * @param meterRegistry Registry for the per model meters.
+	 */
+	public TensorflowModelRegistry(Map<String, String> modelLocations, String locationPattern, long maxBytes,
+			ResourceLoader resourceLoader, TensorflowSessionPool.Mode sessionMode, int sessionPoolSize,
+			TensorflowSessionConfig sessionConfig, MeterRegistry meterRegistry) {
+		this.modelLocations = modelLocations;
+		this.locationPattern = locationPattern;
+		this.maxBytes = maxBytes;
+		this.resourceLoader = resourceLoader;
+		this.sessionMode = sessionMode;
+		this.sessionPoolSize = sessionPoolSize;
+		this.sessionConfig = sessionConfig;
+		this.meterRegistry = meterRegistry;
+
+		meterRegistry.gauge("tensorflow.registry.models", this, new ToDoubleFunction<TensorflowModelRegistry>() {
+			@Override
+			public double applyAsDouble(TensorflowModelRegistry registry) {
+				return registry.getLoadedModels().size();
+			}
+		});
+		meterRegistry.gauge("tensorflow.registry.bytes", this, new ToDoubleFunction<TensorflowModelRegistry>() {
+			@Override
+			public double applyAsDouble(TensorflowModelRegistry registry) {
+				return registry.getLoadedBytes();
+			}
+		});
+	}
+
+	/**
+	 * Returns the model, loading it if necessary. The model is retained for the caller, who must release it after use.
+	 * @param modelId Model id.
+	 * @return Retained model.
+	 * @throws IllegalArgumentException if the model id is unknown or the model can not be loaded.
+	 */
+	public TensorflowModel retain(String modelId) {
+		Resource location = resolve(modelId);
+
+		synchronized (models) {
+			LoadedModel loaded = models.get(modelId);
+			if (loaded != null && loaded.model.retain()) {
+				loaded.meters.hits.increment();
+				return loaded.model;
+			}
+		}
+
+		for (;;) {
+			CompletableFuture<TensorflowModel> future = new CompletableFuture<>();
+			CompletableFuture<TensorflowModel> existing = loading.putIfAbsent(modelId, future);
+			if (existing == null) {
+				TensorflowModel model;
+				try {
+					model = load(modelId, location, future);
+				}
+				finally {
+					loading.remove(modelId, future);
+				}
+				if (model != null) {
+					return model;
+				}
+				// Loaded for former fetches, load again
+				continue;
+			}
+
+			TensorflowModel model;
+			try {
+				model = existing.join();
+			}
+			catch (CompletionException e) {
+				throw new IllegalArgumentException("Failed to load model: " + modelId, e.getCause());
+			}
+			synchronized (models) {
+				if (model.retain()) {
+					LoadedModel loaded = models.get(modelId);
+					if (loaded != null && loaded.model == model) {
+						loaded.meters.misses.increment();
+					}
+					return model;
+				}
+			}
+			// Evicted or discarded meanwhile, load again
+		}
+	}
+
+	/**
+	 * @return The loaded and retained model or null if the fetches changed during the load.
+	 */
+	private TensorflowModel load(String modelId, Resource location, CompletableFuture<TensorflowModel> future) {
+		List<String> fetches;
+		long loadGeneration;
+		synchronized (models) {
+			fetches = this.fetches;
+			loadGeneration = generation;
+		}
+
+		TensorflowModel model;
+		int graphDefSize;
+		long loadTime;
+		try {
+			long start = System.nanoTime();
+			byte[] graphDef = GraphDefLoader.load((modelCache != null) ? modelCache.cached(location) : location);
+			graphDefSize = graphDef.length;
+			model = new TensorflowModel(location, graphDef, sessionMode, sessionPoolSize, sessionConfig,
+					graphOptimizer, fetches);
+			if (fetches != null) {
+				try {
+					model.validate(fetches);
+				}
+				catch (RuntimeException e) {
+					model.close();
+					throw e;
+				}
+			}
+			loadTime = System.nanoTime() - start;
+			logger.info("Loaded model " + modelId + " from " + location);
+		}
+		catch (IOException | RuntimeException e) {
+			future.completeExceptionally(e);
+			throw new IllegalArgumentException("Failed to load model: " + modelId, e);
+		}
+
+		boolean stale;
+		LoadedModel previous = null;
+		List<LoadedModel> evicted = new ArrayList<>();
+		List<String> evictedIds = new ArrayList<>();
+		synchronized (models) {
+			stale = loadGeneration != generation;
+			if (!stale) {
+				previous = models.get(modelId);
+				// A reloaded model keeps the meters of the model it replaces
+				ModelMeters modelMeters = (previous != null) ? previous.meters : new ModelMeters(modelId);
+				models.put(modelId, new LoadedModel(model, graphDefSize, modelMeters));
+				if (previous != null) {
+					loadedBytes -= previous.bytes;
+				}
+				loadedBytes += graphDefSize;
+				evict(modelId, evicted, evictedIds);
+				model.retain();
+				modelMeters.misses.increment();
+				modelMeters.load.record(loadTime, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		if (stale) {
+			// Closed before completing, so the waiting requests can not retain it and load again
+			model.close();
+			future.complete(model);
+			return null;
+		}
+
+		future.complete(model);
+		if (previous != null) {
+			previous.model.close();
+		}
+		unloaded(evicted, evictedIds);
+		return model;
+	}
+
+	/**
+	 * Closes the unloaded models, removes their meters and notifies the eviction listener.
+	 */
+	private void unloaded(List<LoadedModel> unloaded, List<String> unloadedIds) {
+		for (LoadedModel loaded : unloaded) {
+			// Closes after the last in-flight evaluation
+			loaded.model.close();
+			loaded.meters.remove();
+		}
+		BiConsumer<String, TensorflowModel> listener = evictionListener;
+		if (listener != null) {
+			for (int i = 0; i < unloaded.size(); i++) {
+				listener.accept(unloadedIds.get(i), unloaded.get(i).model);
+			}
+		}
+	}
+
+	private void evict(String keepModelId, List<LoadedModel> evicted, List<String> evictedIds) {
+		if (maxBytes <= 0) {
+			return;
+		}
+		Iterator<Map.Entry<String, LoadedModel>> iterator = models.entrySet().iterator();
+		while (loadedBytes > maxBytes && iterator.hasNext()) {
+			Map.Entry<String, LoadedModel> eldest = iterator.next();
+			if (eldest.getKey().equals(keepModelId)) {
+				continue;
+			}
+			logger.info("Evict least recently used model: " + eldest.getKey());
+			iterator.remove();
+			loadedBytes -= eldest.getValue().bytes;
+			evicted.add(eldest.getValue());
+			evictedIds.add(eldest.getKey());
+		}
+	}
+
+	Resource resolve(String modelId) {
+		Assert.isTrue(StringUtils.hasText(modelId) && MODEL_ID_PATTERN.matcher(modelId).matches()
+				&& !modelId.contains(".."), "Invalid model id: " + modelId);
+
+		String location = modelLocations.get(modelId);
+		if (location == null && StringUtils.hasText(locationPattern)) {
+			location = locationPattern.replace(MODEL_PLACEHOLDER, modelId);
+		}
+		Assert.notNull(location, "Unknown model id: " + modelId);
+		return resourceLoader.getResource(location);
+	}
+
+	/**
+	 * @param modelCache Local copies of the remote models. Null reads the model locations directly.
+	 */
+	public void setModelCache(TensorflowModelCache modelCache) {
+		this.modelCache = modelCache;
+	}
+
+	/**
+	 * @param graphOptimizer Rewrites the loaded GraphDefs for the fetched outputs. Null loads them as-is.
+	 */
+	public void setGraphOptimizer(TensorflowGraphOptimizer graphOptimizer) {
+		this.graphOptimizer = graphOptimizer;
+	}
+
+	/**
+	 * @param fetches Outputs every loaded model must provide, checked at load time. Null skips the check. Changing
+	 * them unloads the loaded models and discards the loads in progress, the models are loaded for the new outputs
+	 * on next use.
+	 */
+	public void setFetches(List<String> fetches) {
+		synchronized (models) {
+			if (ObjectUtils.nullSafeEquals(this.fetches, fetches)) {
+				return;
+			}
+			this.fetches = fetches;
+			generation++;
+		}
+		close();
+	}
+
+	/**
+	 * @param evictionListener Notified with the id and the model instance of every model evicted to free memory or
+	 * unloaded by a change of the fetches or by close.
+	 */
+	public void setEvictionListener(BiConsumer<String, TensorflowModel> evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	/**
+	 * @return Ids of the loaded models, least recently used first.
+	 */
+	public List<String> getLoadedModels() {
+		synchronized (models) {
+			return new ArrayList<>(models.keySet());
+		}
+	}
+
+	public long getLoadedBytes() {
+		synchronized (models) {
+			return loadedBytes;
+		}
+	}
+
+	@Override
+	public void close() {
+		List<LoadedModel> closing;
+		List<String> closingIds;
+		synchronized (models) {
+			closing = new ArrayList<>(models.values());
+			closingIds = new ArrayList<>(models.keySet());
+			models.clear();
+			loadedBytes = 0;
+		}
+		unloaded(closing, closingIds);
+	}
+
+	private static class LoadedModel {
+
+		private final TensorflowModel model;
+
+		private final long bytes;
+
+		private final ModelMeters meters;
+
+		LoadedModel(TensorflowModel model, long bytes, ModelMeters meters) {
+			this.model = model;
+			this.bytes = bytes;
+			this.meters = meters;
+		}
+	}
+
+	private class ModelMeters {
+
+		private final Counter hits;
+
+		private final Counter misses;
+
+		private final Timer load;
+
+		ModelMeters(String modelId) {
+			hits = meterRegistry.counter("tensorflow.registry.requests", "model", modelId, "result", "hit");
+			misses = meterRegistry.counter("tensorflow.registry.requests", "model", modelId, "result", "miss");
+			load = meterRegistry.timer("tensorflow.registry.load", "model", modelId);
+		}
+
+		void remove() {
+			meterRegistry.remove(hits);
+			meterRegistry.remove(misses);
+			meterRegistry.remove(load);
+		}
+	}
+}
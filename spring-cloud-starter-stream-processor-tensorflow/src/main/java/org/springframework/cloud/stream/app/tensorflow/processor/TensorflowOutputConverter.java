@@ -21,6 +21,7 @@ import java.util.Map;
 import org.tensorflow.Tensor;
 
 import org.springframework.tuple.Tuple;
+import org.springframework.util.Assert;
 
 /**
  * The TensorFlow evaluation result is represented by a (non-serializable) {@link Tensor} instance.
@@ -51,4 +52,19 @@ public interface TensorflowOutputConverter<T> {
 	 * @return Returns the converted {@link Tensor} data.
 	 */
 	T convert(Tensor tensor, Map<String, Object> processorContext);
+
+	/**
+	 * Called with all fetched outputs when the model is evaluated with multiple fetches (see tensorflow.outputs).
+	 * The default implementation supports a single output only and delegates to {@link #convert(Tensor, Map)}.
+	 * Converters for multi-output models must override it.
+	 *
+	 * @param tensors {@link Tensor} results of the model evaluation, keyed by fetch name in the configured order.
+	 * @param processorContext processorContext Context used to share information between the Input and Output converters
+	 * @return Returns the converted {@link Tensor}s data.
+	 */
+	default T convert(Map<String, Tensor> tensors, Map<String, Object> processorContext) {
+		Assert.isTrue(tensors.size() == 1, "The converter supports a single output but got: " + tensors.keySet()
+				+ ". Override the convert(Map<String, Tensor>, Map<String, Object>) method to handle multiple outputs");
+		return convert(tensors.values().iterator().next(), processorContext);
+	}
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.Collections;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.expression.Expression;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.Assert;
+import org.springframework.util.ErrorHandler;
+
+/**
+ * Evaluates the messages on a worker pool and emits the results in the inbound order of their key.
+ *
+ * The key of every message is computed with a SpEL expression evaluated against the message (e.g.
+ * headers['cameraId']). Every message gets the next sequence number of its key. A completed result is held in the
+ * reorder buffer of its key until the results of all former messages with the same key are emitted. Messages with
+ * different keys do not wait for each other. Without key expression all messages share a single key.
+ *
+ * The work queue is bounded. When it is full the submitting (binder consumer) thread evaluates the message itself,
+ * which throttles the consumption. The binder acknowledges a message once submitted, so a failed evaluation is
+ * reported to the error handler, in the order of its key, without blocking the key.
+ *
+ * Meters: tensorflow.parallel.reorder.depth (results waiting for former results), tensorflow.parallel.reorder.keys
+ * (keys with in-flight messages) and tensorflow.parallel.in-flight gauges.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowParallelProcessor implements AutoCloseable {
+
+	private static final Log logger = LogFactory.getLog(TensorflowParallelProcessor.class);
+
+	private static final Object NULL_KEY = new Object();
+
+	private final ThreadPoolExecutor executor;
+
+	private final Expression keyExpression;
+
+	private final Function<Message<?>, Message<?>> evaluator;
+
+	private final MessageChannel output;
+
+	private final ErrorHandler errorHandler;
+
+	private final ConcurrentHashMap<Object, KeySequence> sequences = new ConcurrentHashMap<>();
+
+	private final AtomicInteger reorderDepth = new AtomicInteger();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/**
+	 * @param threads Number of worker threads.
+	 * @param queueCapacity Maximum number of messages waiting for a worker.
+	 * @param keyExpression Ordering key expression evaluated against the message. Can be null.
+	 * @param evaluator Converts and evaluates a message. Returns the output message or null.
+	 * @param output Channel receiving the results.
+	 * @param errorHandler Receives a {@link MessagingException} for every message that failed to be evaluated or sent
+	 * (e.g. a {@code MessagePublishingErrorHandler} publishing to the error channel).
+	 * @param meterRegistry Registry for the reorder buffer meters.
+	 */
+	public TensorflowParallelProcessor(int threads, int queueCapacity, Expression keyExpression,
+			Function<Message<?>, Message<?>> evaluator, MessageChannel output, ErrorHandler errorHandler,
+			MeterRegistry meterRegistry) {
+		Assert.isTrue(threads > 0, "The number of threads must be positive");
+		Assert.isTrue(queueCapacity > 0, "The queue capacity must be positive");
+		Assert.notNull(errorHandler, "The error handler must not be null");
+
+		this.keyExpression = keyExpression;
+		this.evaluator = evaluator;
+		this.output = output;
+		this.errorHandler = errorHandler;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+
+					private final AtomicInteger threadCount = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "tensorflow-worker-" + threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+
+		meterRegistry.gauge("tensorflow.parallel.reorder.depth", reorderDepth);
+		meterRegistry.gauge("tensorflow.parallel.in-flight", inFlight);
+		meterRegistry.gaugeMapSize("tensorflow.parallel.reorder.keys", Collections.<Tag>emptyList(), sequences);
+
+		logger.info("TensorFlow parallel processing enabled. Threads: " + threads + ", ordering key: "
+				+ ((keyExpression != null) ? keyExpression.getExpressionString() : "<none>"));
+	}
+
+	/**
+	 * Schedules the message evaluation. Runs the evaluation on the calling thread if the work queue is full.
+	 * @param message Message to evaluate.
+	 */
+	public void submit(final Message<?> message) {
+		Object keyValue = (keyExpression != null) ? keyExpression.getValue(message) : null;
+		final Object key = (keyValue != null) ? keyValue : NULL_KEY;
+
+		final long[] sequence = new long[1];
+		final KeySequence keySequence = sequences.compute(key, new BiFunction<Object, KeySequence, KeySequence>() {
+			@Override
+			public KeySequence apply(Object k, KeySequence current) {
+				KeySequence keySequence = (current != null) ? current : new KeySequence();
+				synchronized (keySequence) {
+					sequence[0] = keySequence.nextSequence++;
+					keySequence.inFlight++;
+				}
+				return keySequence;
+			}
+		});
+		inFlight.incrementAndGet();
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Result result;
+				try {
+					result = new Result(evaluator.apply(message), null);
+				}
+				catch (RuntimeException e) {
+					result = new Result(null, new MessagingException(message, "Failed to evaluate the message", e));
+				}
+				complete(key, keySequence, sequence[0], result);
+			}
+		});
+	}
+
+	private void complete(Object key, KeySequence keySequence, long sequence, Result result) {
+		synchronized (keySequence) {
+			keySequence.pending.put(sequence, result);
+			reorderDepth.incrementAndGet();
+
+			// Emit the consecutive results while holding the key lock to keep the per key order. Nothing is
+			// emitted while a former message of the same key is still in flight.
+			Result next;
+			while ((next = keySequence.pending.remove(keySequence.nextEmit)) != null) {
+				keySequence.nextEmit++;
+				keySequence.inFlight--;
+				reorderDepth.decrementAndGet();
+				inFlight.decrementAndGet();
+				if (next.failure != null) {
+					errorHandler.handleError(next.failure);
+				}
+				else if (next.message != null) {
+					try {
+						output.send(next.message);
+					}
+					catch (RuntimeException e) {
+						errorHandler.handleError(new MessagingException(next.message,
+								"Failed to send the result message", e));
+					}
+				}
+			}
+		}
+
+		// Drop the idle keys
+		sequences.computeIfPresent(key, new BiFunction<Object, KeySequence, KeySequence>() {
+			@Override
+			public KeySequence apply(Object k, KeySequence current) {
+				synchronized (current) {
+					return (current.inFlight == 0) ? null : current;
+				}
+			}
+		});
+	}
+
+	@Override
+	public void close() throws Exception {
+		logger.info("Close TensorFlow parallel processor");
+		executor.shutdown();
+		executor.awaitTermination(30, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Sequencing state of a key. Guarded by itself.
+	 */
+	private static class KeySequence {
+
+		private long nextSequence = 0;
+
+		private long nextEmit = 0;
+
+		private int inFlight = 0;
+
+		private final TreeMap<Long, Result> pending = new TreeMap<>();
+	}
+
+	private static class Result {
+
+		private final Message<?> message;
+
+		private final MessagingException failure;
+
+		Result(Message<?> message, MessagingException failure) {
+			this.message = message;
+			this.failure = failure;
+		}
+	}
+}
@@ -16,10 +16,25 @@
 
 package org.springframework.cloud.stream.app.tensorflow.processor;
 
-import java.io.IOException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import javax.annotation.PostConstruct;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.tensorflow.Tensor;
@@ -27,15 +42,33 @@ import org.tensorflow.Tensor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
-import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
 import org.springframework.cloud.stream.annotation.EnableBinding;
+import org.springframework.cloud.stream.binding.BinderAwareChannelResolver;
 import org.springframework.cloud.stream.messaging.Processor;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.integration.channel.MessagePublishingErrorHandler;
+import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.support.channel.BeanFactoryChannelResolver;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.GenericMessage;
 import org.springframework.tuple.Tuple;
+import org.springframework.tuple.TupleBuilder;
+import org.springframework.util.Assert;
+import org.springframework.util.ErrorHandler;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
 
 /**
  * A processor that evaluates a machine learning model stored in TensorFlow's ProtoBuf format.
@@ -53,6 +86,40 @@ import org.springframework.tuple.Tuple;
  * Custom {@link TensorflowOutputConverter} can provide more convenient data representations.
  * (see TwitterSentimentTensorflowOutputConverter.java
  *
+ * When micro-batching is enabled (tensorflow.batch.enabled=true) the inbound messages are gathered by the
+ * {@link TensorflowMicroBatcher} and evaluated together. The results are sent to the output channel asynchronously
+ * and the failed messages are published to the error channel.
+ * Converters implementing {@link TensorflowBatchInputConverter} or {@link TensorflowBatchOutputConverter} handle
+ * the whole batch, other converters are applied per message.
+ *
+ * With tensorflow.reactive.enabled=true the messages are evaluated by the non-blocking
+ * {@link TensorflowReactiveProcessor} instead of the binder consumer threads.
+ *
+ * With tensorflow.parallel.enabled=true the messages are evaluated on a worker pool and re-sequenced per ordering
+ * key (see {@link TensorflowParallelProcessor}).
+ *
+ * With tensorflow.warmup.enabled=true sample inputs are evaluated before the input binding starts consuming
+ * (see {@link TensorflowWarmup}).
+ *
+ * With tensorflow.registry.enabled=true the messages can select the evaluated model by header
+ * (see {@link TensorflowModelRegistry}).
+ *
+ * With tensorflow.deadline.enabled=true the messages past their deadline or max age are dropped or diverted before
+ * the input conversion (see {@link TensorflowLoadShedder}).
+ *
+ * With tensorflow.cache.enabled=true repeated requests are served from the {@link TensorflowResultCache}.
+ *
+ * With tensorflow.model-cache.enabled=true the http(s) models and the optimized GraphDefs are kept in a local
+ * directory and revalidated with conditional requests (see {@link TensorflowModelCache}).
+ *
+ * The model, and the resources of the converters, are loaded concurrently at startup (see {@link TensorflowStartup}).
+ *
+ * The configured outputs are validated at startup and the converted inputs are checked against the model
+ * {@link TensorflowSignature} before every evaluation. The /tensorflow actuator endpoint exposes the signature.
+ *
+ * On configuration refresh the model is reloaded from the (possibly changed) tensorflow.model-location in the
+ * background and swapped in without interrupting the in-flight evaluations (see {@link TensorFlowService#swap}).
+ *
  * @author Christian Tzolov
  */
 @EnableBinding(Processor.class)
@@ -96,50 +163,661 @@ public class TensorflowProcessorConfiguration implements AutoCloseable {
 	@Autowired
 	private TensorFlowService tensorFlowService;
 
+	@Autowired
+	private Processor processor;
+
+	@Autowired
+	private TensorMemoryTracker tensorMemoryTracker;
+
+	@Autowired(required = false)
+	private TensorflowMicroBatcher microBatcher;
+
+	@Autowired(required = false)
+	private TensorflowParallelProcessor parallelProcessor;
+
+	@Autowired(required = false)
+	private TensorflowLoadShedder loadShedder;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	private Expression cacheKeyExpression;
+
+	private volatile List<String> fetches;
+
+	private TensorflowModelCache modelCache;
+
+	private TensorflowModelRegistry modelRegistry;
+
+	private ErrorHandler errorHandler;
+
+	private final ExecutorService modelSwapExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "tensorflow-model-swap");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	@PostConstruct
+	public void init() {
+		String cacheKey = properties.getCache().getKey();
+		if (properties.getCache().isEnabled() && StringUtils.hasText(cacheKey)) {
+			cacheKeyExpression = new SpelExpressionParser().parseExpression(cacheKey);
+		}
+	}
+
+	/**
+	 * Blocking message handler evaluating the inbound messages on the binder consumer threads. Replaced by the
+	 * {@link TensorflowReactiveProcessor} when tensorflow.reactive.enabled=true.
+	 */
+	@Bean
 	@ServiceActivator(inputChannel = Processor.INPUT, outputChannel = Processor.OUTPUT)
+	@ConditionalOnProperty(prefix = "tensorflow.reactive", name = "enabled", havingValue = "false", matchIfMissing = true)
+	public MessageHandler tensorflowMessageHandler() {
+		return new AbstractReplyProducingMessageHandler() {
+			@Override
+			protected Object handleRequestMessage(Message<?> requestMessage) {
+				return evaluate(requestMessage);
+			}
+
+			@Override
+			protected boolean shouldCopyRequestHeaders() {
+				// The output messages already carry the request headers
+				return false;
+			}
+		};
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "tensorflow.reactive", name = "enabled", havingValue = "true")
+	public TensorflowReactiveProcessor tensorflowReactiveProcessor() {
+		return new TensorflowReactiveProcessor(processor.input(), processor.output(),
+				new Function<Message<?>, Message<?>>() {
+					@Override
+					public Message<?> apply(Message<?> input) {
+						tensorMemoryTracker.awaitAdmission();
+						return evaluateSingle(input);
+					}
+				}, properties.getReactive().getParallelism(), properties.getReactive().getPrefetch(), errorHandler());
+	}
+
 	public Message<?> evaluate(Message<?> input) {
 
-		Map<String, Object> processorContext = new ConcurrentHashMap<>();
+		// Pause consumption while too much native memory is held by in-flight tensors
+		tensorMemoryTracker.awaitAdmission();
+
+		if (microBatcher != null) {
+			// The batch result is sent to the output channel once the batch is evaluated
+			microBatcher.submit(input);
+			return null;
+		}
+
+		if (parallelProcessor != null) {
+			// The result is sent to the output channel in the order of its key
+			parallelProcessor.submit(input);
+			return null;
+		}
+
+		return evaluateSingle(input);
+	}
+
+	private Message<?> evaluateSingle(Message<?> input) {
+
+		// The processor context map is reused by the thread, it is cleared once the message is converted
+		TensorflowEvaluationContext context = TensorflowEvaluationContext.current();
+		Map<String, Object> processorContext = context.acquireProcessorContext();
+		try {
+			return evaluateSingle(input, processorContext);
+		}
+		finally {
+			context.releaseProcessorContext(processorContext);
+		}
+	}
+
+	private Message<?> evaluateSingle(Message<?> input, Map<String, Object> processorContext) {
+
+		// Expired messages are not worth the conversion and the session run
+		if (loadShedder != null && loadShedder.shed(input)) {
+			return null;
+		}
+
+		String modelId = modelId(input);
+
+		long start = System.nanoTime();
+		Map<String, Object> inputData;
+		try {
+			inputData = tensorflowInputConverter.convert(input, processorContext);
+		}
+		catch (RuntimeException e) {
+			recordError(modelId, TensorflowMetrics.Stage.INPUT_CONVERSION);
+			throw e;
+		}
+		long inputConversion = System.nanoTime() - start;
+
+		Map<String, Tensor> outputTensors = tensorFlowService.evaluate(modelId, inputData, fetches(modelId),
+				cacheKey(input));
+
+		// The model version is known once evaluated
+		TensorflowMetrics.ModelMeters modelMeters = tensorFlowService.getModelMeters(modelId);
+		modelMeters.record(TensorflowMetrics.Stage.INPUT_CONVERSION, inputConversion);
+
+		start = System.nanoTime();
+		Object outputData;
+		try {
+			outputData = tensorflowOutputConverter.convert(outputTensors, processorContext);
+		}
+		catch (RuntimeException e) {
+			modelMeters.error(TensorflowMetrics.Stage.OUTPUT_CONVERSION);
+			throw e;
+		}
+		finally {
+			tensorMemoryTracker.closeAll(outputTensors.values());
+		}
+		modelMeters.record(TensorflowMetrics.Stage.OUTPUT_CONVERSION, System.nanoTime() - start);
+
+		return toOutputMessage(input, outputData);
+	}
+
+	/**
+	 * Reports the failed evaluation of a message handed off the binder consumer thread (micro-batching, parallel or
+	 * reactive processing). The binder acknowledged the message already, so the failure is published to the error
+	 * channel of the message, or else to the errorChannel bean, instead of being thrown to the binder.
+	 */
+	private void handleError(Message<?> input, Throwable error) {
+		errorHandler().handleError(new MessagingException(input, "Failed to evaluate the message", error));
+	}
+
+	private synchronized ErrorHandler errorHandler() {
+		if (errorHandler == null) {
+			errorHandler = new MessagePublishingErrorHandler(new BeanFactoryChannelResolver(applicationContext));
+		}
+		return errorHandler;
+	}
+
+	private void recordError(String modelId, TensorflowMetrics.Stage stage) {
+		tensorFlowService.getModelMeters(modelId).error(stage);
+	}
+
+	/**
+	 * @param modelId Registry model id or null for the default model.
+	 * @return The outputs to fetch from the model. Null for the default model, which is evaluated for the outputs it
+	 * is loaded for, so a swap changes the model and its outputs at once.
+	 */
+	private List<String> fetches(String modelId) {
+		return (modelId != null) ? fetches() : null;
+	}
+
+	/**
+	 * @return The model outputs to fetch, resolved from the properties at startup and updated by a successful swap.
+	 */
+	private List<String> fetches() {
+		List<String> fetches = this.fetches;
+		if (fetches == null) {
+			fetches = resolveFetches();
+			this.fetches = fetches;
+		}
+		return fetches;
+	}
+
+	/**
+	 * @return The model outputs to fetch. The outputs property takes precedence over the outputName/outputIndex pair.
+	 */
+	private List<String> resolveFetches() {
+		if (!properties.getOutputs().isEmpty()) {
+			return properties.getOutputs();
+		}
+		return Collections.singletonList((properties.getOutputIndex() == 0) ?
+				properties.getOutputName() : properties.getOutputName() + ":" + properties.getOutputIndex());
+	}
+
+	/**
+	 * @return The id of the registry model selected by the message or null for the default model.
+	 */
+	private String modelId(Message<?> input) {
+		if (!properties.getRegistry().isEnabled()) {
+			return null;
+		}
+		Object modelId = input.getHeaders().get(properties.getRegistry().getHeader());
+		return (modelId != null) ? modelId.toString() : null;
+	}
+
+	/**
+	 * @return The result cache key computed from the message or null to use the digest of the model inputs.
+	 */
+	private Object cacheKey(Message<?> input) {
+		return (cacheKeyExpression != null) ? cacheKeyExpression.getValue(input) : null;
+	}
+
+	private String batchModelId(List<Message<?>> inputs) {
+		String modelId = modelId(inputs.get(0));
+		for (Message<?> input : inputs) {
+			// Mixed model batches are evaluated message by message
+			Assert.state(ObjectUtils.nullSafeEquals(modelId, modelId(input)),
+					"The batch messages select different models");
+		}
+		return modelId;
+	}
+
+	/**
+	 * Evaluates a batch of messages with a single model run and sends the results to the output channel.
+	 * Falls back to per message evaluation if the batch can not be stacked or split.
+	 */
+	private void evaluateBatch(List<Message<?>> batch) {
+		List<Message<?>> inputs = batch;
+		if (loadShedder != null) {
+			inputs = new ArrayList<>(batch.size());
+			for (Message<?> input : batch) {
+				if (!loadShedder.shed(input)) {
+					inputs.add(input);
+				}
+			}
+			if (inputs.isEmpty()) {
+				return;
+			}
+		}
+
+		List<Message<?>> outputMessages;
+		try {
+			outputMessages = doEvaluateBatch(inputs);
+		}
+		catch (RuntimeException e) {
+			logger.warn("Failed to evaluate batch of " + inputs.size() + " messages. Evaluate them one by one.", e);
+			outputMessages = new ArrayList<>(inputs.size());
+			for (Message<?> input : inputs) {
+				try {
+					Message<?> outputMessage = evaluateSingle(input);
+					if (outputMessage != null) {
+						outputMessages.add(outputMessage);
+					}
+				}
+				catch (RuntimeException ex) {
+					handleError(input, ex);
+				}
+			}
+		}
+
+		for (Message<?> outputMessage : outputMessages) {
+			processor.output().send(outputMessage);
+		}
+	}
+
+	private List<Message<?>> doEvaluateBatch(List<Message<?>> inputs) {
+
+		List<Map<String, Object>> processorContexts = new ArrayList<>(inputs.size());
+		for (int i = 0; i < inputs.size(); i++) {
+			processorContexts.add(new ConcurrentHashMap<String, Object>());
+		}
+
+		long start = System.nanoTime();
+		Map<String, Object> inputData;
+		int[] rows;
+		if (tensorflowInputConverter instanceof TensorflowBatchInputConverter) {
+			inputData = ((TensorflowBatchInputConverter) tensorflowInputConverter)
+					.convertBatch(inputs, processorContexts);
+			rows = new int[inputs.size()];
+			Arrays.fill(rows, 1);
+		}
+		else {
+			List<Map<String, Object>> messageFeeds = new ArrayList<>(inputs.size());
+			try {
+				for (int i = 0; i < inputs.size(); i++) {
+					messageFeeds.add(tensorflowInputConverter.convert(inputs.get(i), processorContexts.get(i)));
+				}
+			}
+			catch (RuntimeException e) {
+				// The messages are converted again by the per message fallback, release the converted feeds
+				TensorBatchConverter.closeFeeds(messageFeeds);
+				throw e;
+			}
+			TensorBatchConverter.StackedFeeds stackedFeeds = TensorBatchConverter.stack(messageFeeds);
+			inputData = stackedFeeds.getFeeds();
+			rows = stackedFeeds.getRows();
+		}
+
+		long inputConversion = System.nanoTime() - start;
+
+		List<Object> outputData;
+		String modelId = batchModelId(inputs);
+		Map<String, Tensor> outputTensors = tensorFlowService.evaluate(modelId, inputData, fetches(modelId));
+		TensorflowMetrics.ModelMeters modelMeters = tensorFlowService.getModelMeters(modelId);
+		modelMeters.record(TensorflowMetrics.Stage.INPUT_CONVERSION, inputConversion);
+
+		start = System.nanoTime();
+		try {
+			if (tensorflowOutputConverter instanceof TensorflowBatchOutputConverter) {
+				outputData = ((TensorflowBatchOutputConverter) tensorflowOutputConverter)
+						.convertBatch(outputTensors, processorContexts);
+				Assert.state(outputData.size() == inputs.size(),
+						"The batch output converter must return one result per input message");
+			}
+			else {
+				List<Map<String, Tensor>> outputSlices = new ArrayList<>(inputs.size());
+				for (int i = 0; i < inputs.size(); i++) {
+					outputSlices.add(new LinkedHashMap<String, Tensor>());
+				}
+				try {
+					for (Map.Entry<String, Tensor> output : outputTensors.entrySet()) {
+						List<Tensor> slices = TensorBatchConverter.split(output.getValue(), rows);
+						for (int i = 0; i < slices.size(); i++) {
+							outputSlices.get(i).put(output.getKey(), tensorMemoryTracker.track(slices.get(i)));
+						}
+					}
+					outputData = new ArrayList<>(inputs.size());
+					for (int i = 0; i < inputs.size(); i++) {
+						outputData.add(tensorflowOutputConverter.convert(outputSlices.get(i), processorContexts.get(i)));
+					}
+				}
+				finally {
+					for (Map<String, Tensor> outputSlice : outputSlices) {
+						tensorMemoryTracker.closeAll(outputSlice.values());
+					}
+				}
+			}
+		}
+		finally {
+			tensorMemoryTracker.closeAll(outputTensors.values());
+		}
+		modelMeters.record(TensorflowMetrics.Stage.OUTPUT_CONVERSION, System.nanoTime() - start);
+
+		List<Message<?>> outputMessages = new ArrayList<>(inputs.size());
+		for (int i = 0; i < inputs.size(); i++) {
+			outputMessages.add(toOutputMessage(inputs.get(i), outputData.get(i)));
+		}
+		return outputMessages;
+	}
 
-		Map<String, Object> inputData = tensorflowInputConverter.convert(input, processorContext);
+	private Message<?> toOutputMessage(Message<?> input, Object outputData) {
+		return toOutputMessage(input, outputData, properties.isSaveOutputInHeader());
+	}
 
-		Tensor outputTensor = tensorFlowService.evaluate(
-				inputData, properties.getOutputName(), properties.getOutputIndex());
+	/**
+	 * @param input Evaluated message.
+	 * @param outputData Converted result, a payload or a Message.
+	 * @param saveOutputInHeader Keep the input payload and save the result in the TF_OUTPUT header.
+	 * @return The output message, with the input headers that still apply to its payload.
+	 */
+	static Message<?> toOutputMessage(Message<?> input, Object outputData, boolean saveOutputInHeader) {
 
-		Object outputData = tensorflowOutputConverter.convert(outputTensor, processorContext);
+		// The raw tensor headers of the input describe neither a converted payload nor the saved result
+		Map<String, Object> headers = TensorRawBinaryConverter.withoutPayloadHeaders(input.getHeaders());
 
-		if (properties.isSaveOutputInHeader()) {
+		if (saveOutputInHeader) {
 			// Add the result to the message header
 			return MessageBuilder
 					.withPayload(input.getPayload())
-					.copyHeadersIfAbsent(input.getHeaders())
-					.setHeaderIfAbsent(TF_OUTPUT_HEADER, outputData)
+					.copyHeadersIfAbsent(headers)
+					.setHeaderIfAbsent(TF_OUTPUT_HEADER,
+							(outputData instanceof Message) ? ((Message<?>) outputData).getPayload() : outputData)
 					.build();
 		}
 
-		// Add the outputData as part of the message payload
-		Message<?> outputMessage = MessageBuilder
-				.withPayload(outputData)
-				.copyHeadersIfAbsent(input.getHeaders())
-				.build();
+		if (outputData instanceof Message) {
+			// Converters returning Message (e.g. raw binary tensors) provide both the payload and the headers
+			return MessageBuilder
+					.fromMessage((Message<?>) outputData)
+					.copyHeadersIfAbsent(headers)
+					.build();
+		}
+
+		// Add the outputData as part of the message payload. The headers are copied once, with new id and timestamp,
+		// without the intermediate header accessor of the MessageBuilder.
+		return new GenericMessage<>(outputData, headers);
+	}
 
-		return outputMessage;
+	/**
+	 * Static, so the converter configurations can submit their loads while this configuration is being created.
+	 */
+	@Bean
+	public static TensorflowStartup tensorflowStartup(TensorflowProcessorProperties properties) {
+		return new TensorflowStartup(properties.getStartup().getThreads());
 	}
 
 	@Bean
-	@RefreshScope
-	public TensorFlowService tensorFlowService() throws IOException {
-		return new TensorFlowService(properties.getModelLocation());
+	public TensorFlowService tensorFlowService(TensorflowStartup tensorflowStartup) {
+		// The model is loaded in the background, a missing configured output fails the load and the startup
+		TensorFlowService tensorFlowService = new TensorFlowService(modelLocation(),
+				properties.getSession().getMode(), properties.getSession().getPoolSize(), sessionConfig(),
+				tensorMemoryTracker(), graphOptimizer(), properties.isOutputConfigured() ? fetches() : null,
+				tensorflowStartup);
+		tensorFlowService.setMeterRegistry(meterRegistry());
+		if (properties.getRegistry().isEnabled()) {
+			TensorflowProcessorProperties.Registry registry = properties.getRegistry();
+			modelRegistry = new TensorflowModelRegistry(registry.getModels(), registry.getLocationPattern(),
+					registry.getMaxBytes(), applicationContext, properties.getSession().getMode(),
+					properties.getSession().getPoolSize(), sessionConfig(), meterRegistry());
+			// Same load pipeline as the default model: model cache, graph optimizer and fetch validation
+			modelRegistry.setModelCache(modelCache());
+			modelRegistry.setGraphOptimizer(graphOptimizer());
+			modelRegistry.setFetches(properties.isOutputConfigured() ? fetches() : null);
+			tensorFlowService.setModelRegistry(modelRegistry);
+		}
+		if (properties.getCache().isEnabled()) {
+			tensorFlowService.setResultCache(new TensorflowResultCache(properties.getCache().getMaxSize(),
+					properties.getCache().getTimeToLive(), meterRegistry()));
+		}
+		tensorFlowService.setValidateFeeds(properties.getSignature().isValidateFeeds());
+		return tensorFlowService;
+	}
+
+	@Bean
+	public TensorflowSignatureEndpoint tensorflowSignatureEndpoint() {
+		return new TensorflowSignatureEndpoint(tensorFlowService, new Supplier<List<String>>() {
+			@Override
+			public List<String> get() {
+				return fetches();
+			}
+		});
+	}
+
+	/**
+	 * Reloads the model after a configuration refresh changed the model location or outputs. The properties are
+	 * already rebound to the refreshed environment. The current model and its outputs keep serving until the new
+	 * model is loaded and validated, and remain in use if it fails.
+	 */
+	@EventListener(RefreshScopeRefreshedEvent.class)
+	public void onRefresh() {
+		final Resource modelLocation = modelLocation();
+		final List<String> requiredOperations = resolveFetches();
+		if (requiredOperations.equals(fetches()) && modelLocation.getDescription()
+				.equals(tensorFlowService.getModelLocation().getDescription())) {
+			logger.debug("TensorFlow model location and outputs unchanged, skip the reload");
+			return;
+		}
+		modelSwapExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					tensorFlowService.swap(modelLocation, requiredOperations);
+					// The registry models and the signature endpoint follow the swapped model
+					fetches = requiredOperations;
+					if (modelRegistry != null) {
+						modelRegistry.setFetches(requiredOperations);
+					}
+				}
+				catch (Exception e) {
+					logger.error("Failed to swap the TensorFlow model to " + modelLocation
+							+ ". Continue with " + tensorFlowService.getModelLocation(), e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return The model location, read through the model cache if enabled.
+	 */
+	private Resource modelLocation() {
+		TensorflowModelCache modelCache = modelCache();
+		return (modelCache != null) ? modelCache.cached(properties.getModelLocation()) : properties.getModelLocation();
+	}
+
+	private synchronized TensorflowModelCache modelCache() {
+		TensorflowProcessorProperties.ModelCache cacheProperties = properties.getModelCache();
+		if (modelCache == null && cacheProperties.isEnabled()) {
+			modelCache = new TensorflowModelCache(new File(cacheProperties.getDirectory()),
+					cacheProperties.getMaxBytes());
+			modelCache.setConnectTimeout(cacheProperties.getConnectTimeout());
+			modelCache.setReadTimeout(cacheProperties.getReadTimeout());
+		}
+		return modelCache;
+	}
+
+	private TensorflowSessionConfig sessionConfig() {
+		TensorflowProcessorProperties.Session session = properties.getSession();
+		TensorflowSessionConfig.OptimizerLevel optimizerLevel = session.getOptimizerLevel();
+		TensorflowProcessorProperties.Optimization optimization = properties.getOptimization();
+		if (optimization.isEnabled() && optimization.isQuantizeWeights()
+				&& optimizerLevel != TensorflowSessionConfig.OptimizerLevel.L0) {
+			// The session constant folding would turn the quantized weights back to float constants
+			logger.info("Quantized weights, the session optimizer level " + optimizerLevel + " is lowered to L0");
+			optimizerLevel = TensorflowSessionConfig.OptimizerLevel.L0;
+		}
+		return new TensorflowSessionConfig(session.getIntraOpParallelism(), session.getInterOpParallelism(),
+				session.isUsePerSessionThreads(), session.isAllowSoftPlacement(), optimizerLevel,
+				session.getJitLevel());
+	}
+
+	private TensorflowGraphOptimizer graphOptimizer() {
+		TensorflowProcessorProperties.Optimization optimization = properties.getOptimization();
+		if (!optimization.isEnabled()) {
+			return null;
+		}
+		Assert.state(properties.isOutputConfigured(), "The graph optimization requires the outputs configuration");
+		TensorflowGraphOptimizer graphOptimizer = new TensorflowGraphOptimizer();
+		graphOptimizer.setPrune(optimization.isPrune());
+		graphOptimizer.setRemoveIdentity(optimization.isRemoveIdentity());
+		graphOptimizer.setFoldConstants(optimization.isFoldConstants());
+		graphOptimizer.setFixedInputs(optimization.getFixedInputs());
+		graphOptimizer.setLatencyIterations(optimization.getLatencyIterations());
+		graphOptimizer.setQuantizeWeights(optimization.isQuantizeWeights());
+		graphOptimizer.setQuantizeMinBytes(optimization.getQuantizeMinBytes());
+		graphOptimizer.setQuantizeSamples(optimization.getQuantizeSamples());
+		graphOptimizer.setQuantizeMaxError(optimization.getQuantizeMaxError());
+		graphOptimizer.setModelCache(modelCache());
+		return graphOptimizer;
+	}
+
+	private MeterRegistry meterRegistry() {
+		return (meterRegistry != null) ? meterRegistry : Metrics.globalRegistry;
+	}
+
+	@Bean
+	public TensorMemoryTracker tensorMemoryTracker() {
+		return new TensorMemoryTracker(properties.getMemory().getMaxInFlightBytes(),
+				properties.getMemory().getAdmissionTimeout());
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "tensorflow.batch", name = "enabled", havingValue = "true")
+	public TensorflowMicroBatcher tensorflowMicroBatcher() {
+		return new TensorflowMicroBatcher(properties.getBatch().getMaxSize(), properties.getBatch().getMaxWait(),
+				new Consumer<List<Message<?>>>() {
+					@Override
+					public void accept(List<Message<?>> inputs) {
+						evaluateBatch(inputs);
+					}
+				}, errorHandler());
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "tensorflow.parallel", name = "enabled", havingValue = "true")
+	public TensorflowParallelProcessor tensorflowParallelProcessor() {
+		String key = properties.getParallel().getKey();
+		return new TensorflowParallelProcessor(properties.getParallel().getThreads(),
+				properties.getParallel().getQueueCapacity(),
+				StringUtils.hasText(key) ? new SpelExpressionParser().parseExpression(key) : null,
+				new Function<Message<?>, Message<?>>() {
+					@Override
+					public Message<?> apply(Message<?> input) {
+						return evaluateSingle(input);
+					}
+				}, processor.output(), errorHandler(), meterRegistry());
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "tensorflow.deadline", name = "enabled", havingValue = "true")
+	public TensorflowLoadShedder tensorflowLoadShedder() {
+		TensorflowProcessorProperties.Deadline deadline = properties.getDeadline();
+		String shedDestination = StringUtils.hasText(deadline.getShedDestination()) ?
+				deadline.getShedDestination() : null;
+		return new TensorflowLoadShedder(deadline.getHeader(), deadline.getMaxAgeHeader(),
+				deadline.getTimestampHeader(), deadline.getMaxAge(),
+				(shedDestination != null) ? applicationContext.getBean(BinderAwareChannelResolver.class) : null,
+				shedDestination, meterRegistry());
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "tensorflow.warmup", name = "enabled", havingValue = "true")
+	public TensorflowWarmup tensorflowWarmup() {
+		return new TensorflowWarmup(applicationContext, properties.getWarmup().getSamples(),
+				properties.getWarmup().getIterations(), new Consumer<Message<?>>() {
+					@Override
+					public void accept(Message<?> input) {
+						warmup(input);
+					}
+				});
+	}
+
+	/**
+	 * Evaluates a warm-up sample without the result cache and without recording the conversion stages.
+	 */
+	private void warmup(Message<?> input) {
+		TensorflowEvaluationContext context = TensorflowEvaluationContext.current();
+		Map<String, Object> processorContext = context.acquireProcessorContext();
+		try {
+			String modelId = modelId(input);
+			Map<String, Object> inputData = tensorflowInputConverter.convert(input, processorContext);
+			Map<String, Tensor> outputTensors = tensorFlowService.evaluate(modelId, inputData, fetches(modelId));
+			try {
+				tensorflowOutputConverter.convert(outputTensors, processorContext);
+			}
+			finally {
+				tensorMemoryTracker.closeAll(outputTensors.values());
+			}
+		}
+		finally {
+			context.releaseProcessorContext(processorContext);
+		}
+	}
+
+	@Bean
+	public TensorCodec tensorCodec() {
+		return new TensorCodec(meterRegistry());
 	}
 
 	@Bean
 	@ConditionalOnMissingBean(name = "tensorflowOutputConverter")
 	public TensorflowOutputConverter tensorflowOutputConverter() {
+		final TensorCodec.Encoding encoding = properties.getTransport().getEncoding();
+		final TensorCodec codec = tensorCodec();
+
+		if (properties.getTransport().getFormat() == TensorflowProcessorProperties.Transport.Format.RAW) {
+			return new TensorRawBinaryOutputConverter(encoding, codec);
+		}
+
 		// Default implementations serializes the Tensor into Tuple
 		return new TensorflowOutputConverter<Tuple>() {
 			@Override
 			public Tuple convert(Tensor tensor, Map<String, Object> processorContext) {
-				return TensorTupleConverter.toTuple(tensor);
+				return TensorTupleConverter.toTuple(tensor, encoding, codec);
+			}
+
+			@Override
+			public Tuple convert(Map<String, Tensor> tensors, Map<String, Object> processorContext) {
+				if (tensors.size() == 1) {
+					return convert(tensors.values().iterator().next(), processorContext);
+				}
+				// Multiple outputs are encoded as Tuple of (fetch name -> tensor Tuple) pairs
+				TupleBuilder tupleBuilder = TupleBuilder.tuple();
+				for (Map.Entry<String, Tensor> output : tensors.entrySet()) {
+					tupleBuilder.put(output.getKey(),
+							TensorTupleConverter.toTuple(output.getValue(), encoding, codec));
+				}
+				return tupleBuilder.build();
 			}
 		};
 	}
@@ -147,12 +825,21 @@ public class TensorflowProcessorConfiguration implements AutoCloseable {
 	@Bean
 	@ConditionalOnMissingBean(name = "tensorflowInputConverter")
 	public TensorflowInputConverter tensorflowInputConverter() {
+		// Built once, the feed name is checked by the properties validation
+		String feedName = properties.getTransport().getFeedName();
+		final TensorRawBinaryInputConverter rawInputConverter = (feedName != null)
+				? new TensorRawBinaryInputConverter(feedName, tensorCodec()) : null;
 		return new TensorflowInputConverter() {
 
 			@Override
 			public Map<String, Object> convert(Message<?> input, Map<String, Object> processorContext) {
 
-				if (input.getHeaders().containsKey(TF_INPUT_HEADER)) {
+				if (input.getPayload() instanceof byte[] && TensorRawBinaryConverter.isRawTensor(input.getHeaders())) {
+					Assert.state(rawInputConverter != null,
+							"Raw tensor message received, set the tensorflow.transport.feed-name placeholder");
+					return rawInputConverter.convert(input, processorContext);
+				}
+				else if (input.getHeaders().containsKey(TF_INPUT_HEADER)) {
 					return (Map<String, Object>) input.getHeaders().get(TF_INPUT_HEADER, Map.class);
 				}
 				else if (input.getPayload() instanceof Map) {
@@ -168,6 +855,7 @@ public class TensorflowProcessorConfiguration implements AutoCloseable {
 	@Override
 	public void close() throws Exception {
 		logger.info("Close TensorflowProcessorConfiguration");
+		modelSwapExecutor.shutdownNow();
 		tensorFlowService.close();
 	}
 }
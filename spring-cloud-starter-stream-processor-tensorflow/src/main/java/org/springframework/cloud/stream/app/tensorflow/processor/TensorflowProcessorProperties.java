@@ -16,10 +16,18 @@
 
 package org.springframework.cloud.stream.app.tensorflow.processor;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.NotNull;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.core.io.Resource;
+import org.springframework.util.StringUtils;
 import org.springframework.validation.annotation.Validated;
 
 /**
@@ -46,6 +54,12 @@ public class TensorflowProcessorProperties {
 	 */
 	private int outputIndex = 0;
 
+	/**
+	 * Model graph outputs to fetch within a single evaluation, in the [operation name] or
+	 * [operation name]:[output index] format. When set it takes precedence over the outputName and outputIndex.
+	 */
+	private List<String> outputs = new ArrayList<>();
+
 	/**
 	 * Mark if the computed output has to stored in the outbound message's header or in the payload.
 	 * Note: The Kafka binder requires you to withe list the custom headers. Therefore if you set the
@@ -56,7 +70,34 @@ public class TensorflowProcessorProperties {
 	 */
 	private boolean saveOutputInHeader = false;
 
-	@NotNull
+	private final Session session = new Session();
+
+	private final Batch batch = new Batch();
+
+	private final Memory memory = new Memory();
+
+	private final Transport transport = new Transport();
+
+	private final Warmup warmup = new Warmup();
+
+	private final Registry registry = new Registry();
+
+	private final Reactive reactive = new Reactive();
+
+	private final Parallel parallel = new Parallel();
+
+	private final Cache cache = new Cache();
+
+	private final Signature signature = new Signature();
+
+	private final Optimization optimization = new Optimization();
+
+	private final Deadline deadline = new Deadline();
+
+	private final Startup startup = new Startup();
+
+	private final ModelCache modelCache = new ModelCache();
+
 	public String getOutputName() {
 		return outputName;
 	}
@@ -82,6 +123,35 @@ public class TensorflowProcessorProperties {
 		this.outputIndex = outputIndex;
 	}
 
+	public List<String> getOutputs() {
+		return outputs;
+	}
+
+	public void setOutputs(List<String> outputs) {
+		this.outputs = outputs;
+	}
+
+	@AssertTrue(message = "Either the outputName or the outputs property must be set")
+	public boolean isOutputConfigured() {
+		return outputName != null || !outputs.isEmpty();
+	}
+
+	@AssertTrue(message = "At most one of the batch, parallel and reactive processing modes can be enabled")
+	public boolean isProcessingModeValid() {
+		int enabled = 0;
+		for (boolean mode : new boolean[] { batch.isEnabled(), parallel.isEnabled(), reactive.isEnabled() }) {
+			if (mode) {
+				enabled++;
+			}
+		}
+		return enabled <= 1;
+	}
+
+	@AssertTrue(message = "The transport feedName must not be blank")
+	public boolean isTransportFeedNameValid() {
+		return transport.getFeedName() == null || StringUtils.hasText(transport.getFeedName());
+	}
+
 	public boolean isSaveOutputInHeader() {
 		return saveOutputInHeader;
 	}
@@ -89,4 +159,894 @@ public class TensorflowProcessorProperties {
 	public void setSaveOutputInHeader(boolean saveOutputInHeader) {
 		this.saveOutputInHeader = saveOutputInHeader;
 	}
+
+	public Session getSession() {
+		return session;
+	}
+
+	public Batch getBatch() {
+		return batch;
+	}
+
+	public Memory getMemory() {
+		return memory;
+	}
+
+	public Transport getTransport() {
+		return transport;
+	}
+
+	public Warmup getWarmup() {
+		return warmup;
+	}
+
+	public Registry getRegistry() {
+		return registry;
+	}
+
+	public Reactive getReactive() {
+		return reactive;
+	}
+
+	public Parallel getParallel() {
+		return parallel;
+	}
+
+	public Cache getCache() {
+		return cache;
+	}
+
+	public Signature getSignature() {
+		return signature;
+	}
+
+	public Optimization getOptimization() {
+		return optimization;
+	}
+
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	public Startup getStartup() {
+		return startup;
+	}
+
+	public ModelCache getModelCache() {
+		return modelCache;
+	}
+
+	public static class Session {
+
+		/**
+		 * How TensorFlow sessions are managed: PER_CALL opens a new session for every message, SHARED reuses a
+		 * single thread-safe session and POOLED reuses up to poolSize sessions.
+		 */
+		private TensorflowSessionPool.Mode mode = TensorflowSessionPool.Mode.SHARED;
+
+		/**
+		 * Maximum number of sessions kept open when the session mode is POOLED.
+		 */
+		private int poolSize = Runtime.getRuntime().availableProcessors();
+
+		/**
+		 * Number of threads used to parallelize a single operation. 0 lets TensorFlow use all cores.
+		 */
+		private int intraOpParallelism = 0;
+
+		/**
+		 * Number of threads used to run independent operations. 0 lets TensorFlow use all cores.
+		 */
+		private int interOpParallelism = 0;
+
+		/**
+		 * Create the thread pools per session instead of sharing the process wide pools between sessions.
+		 */
+		private boolean usePerSessionThreads = false;
+
+		/**
+		 * Place operations without kernel for the requested device on the CPU instead of failing.
+		 */
+		private boolean allowSoftPlacement = false;
+
+		/**
+		 * Graph optimizer level: L1 (constant folding and common subexpression elimination) or L0 (none).
+		 */
+		private TensorflowSessionConfig.OptimizerLevel optimizerLevel = TensorflowSessionConfig.OptimizerLevel.L1;
+
+		/**
+		 * XLA global JIT compilation level. Requires a TensorFlow native library built with XLA.
+		 */
+		private TensorflowSessionConfig.JitLevel jitLevel = TensorflowSessionConfig.JitLevel.DEFAULT;
+
+		public TensorflowSessionPool.Mode getMode() {
+			return mode;
+		}
+
+		public void setMode(TensorflowSessionPool.Mode mode) {
+			this.mode = mode;
+		}
+
+		public int getPoolSize() {
+			return poolSize;
+		}
+
+		public void setPoolSize(int poolSize) {
+			this.poolSize = poolSize;
+		}
+
+		public int getIntraOpParallelism() {
+			return intraOpParallelism;
+		}
+
+		public void setIntraOpParallelism(int intraOpParallelism) {
+			this.intraOpParallelism = intraOpParallelism;
+		}
+
+		public int getInterOpParallelism() {
+			return interOpParallelism;
+		}
+
+		public void setInterOpParallelism(int interOpParallelism) {
+			this.interOpParallelism = interOpParallelism;
+		}
+
+		public boolean isUsePerSessionThreads() {
+			return usePerSessionThreads;
+		}
+
+		public void setUsePerSessionThreads(boolean usePerSessionThreads) {
+			this.usePerSessionThreads = usePerSessionThreads;
+		}
+
+		public boolean isAllowSoftPlacement() {
+			return allowSoftPlacement;
+		}
+
+		public void setAllowSoftPlacement(boolean allowSoftPlacement) {
+			this.allowSoftPlacement = allowSoftPlacement;
+		}
+
+		public TensorflowSessionConfig.OptimizerLevel getOptimizerLevel() {
+			return optimizerLevel;
+		}
+
+		public void setOptimizerLevel(TensorflowSessionConfig.OptimizerLevel optimizerLevel) {
+			this.optimizerLevel = optimizerLevel;
+		}
+
+		public TensorflowSessionConfig.JitLevel getJitLevel() {
+			return jitLevel;
+		}
+
+		public void setJitLevel(TensorflowSessionConfig.JitLevel jitLevel) {
+			this.jitLevel = jitLevel;
+		}
+	}
+
+	public static class Batch {
+
+		/**
+		 * Enables micro-batching. Inbound messages are gathered into batches, their feeds are stacked along
+		 * dimension 0 and the model is evaluated once per batch.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Maximum number of messages in a batch.
+		 */
+		private int maxSize = 32;
+
+		/**
+		 * Maximum time in milliseconds to wait for a batch to fill up before it is evaluated.
+		 */
+		private long maxWait = 10;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxSize() {
+			return maxSize;
+		}
+
+		public void setMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public long getMaxWait() {
+			return maxWait;
+		}
+
+		public void setMaxWait(long maxWait) {
+			this.maxWait = maxWait;
+		}
+	}
+
+	public static class Memory {
+
+		/**
+		 * Native (off-heap) tensor bytes held by in-flight messages above which the consumption of new messages
+		 * is paused. Non positive value disables the admission control.
+		 */
+		private long maxInFlightBytes = 0;
+
+		/**
+		 * Maximum time in milliseconds a message waits for admission before it fails.
+		 */
+		private long admissionTimeout = 30000;
+
+		public long getMaxInFlightBytes() {
+			return maxInFlightBytes;
+		}
+
+		public void setMaxInFlightBytes(long maxInFlightBytes) {
+			this.maxInFlightBytes = maxInFlightBytes;
+		}
+
+		public long getAdmissionTimeout() {
+			return admissionTimeout;
+		}
+
+		public void setAdmissionTimeout(long admissionTimeout) {
+			this.admissionTimeout = admissionTimeout;
+		}
+	}
+
+	public static class Transport {
+
+		public enum Format {
+			/**
+			 * Tuple with the data type, shape and value of the tensor (see TensorTupleConverter).
+			 */
+			TUPLE,
+			/**
+			 * Raw little-endian tensor bytes payload with the data type and shape in the tf_dtype and tf_shape
+			 * headers (see TensorRawBinaryConverter).
+			 */
+			RAW
+		}
+
+		/**
+		 * Message format used by the default output converter to send the result tensor.
+		 */
+		private Format format = Format.TUPLE;
+
+		/**
+		 * Model placeholder fed with the tensor of inbound raw binary tensor messages.
+		 */
+		private String feedName;
+
+		/**
+		 * Encoding of the result tensor value. LZ4 compresses the bytes, FLOAT16, BFLOAT16 and INT8 (affine
+		 * quantization) reduce the precision of FLOAT tensors. Inbound encoded tensors are decoded transparently.
+		 */
+		private TensorCodec.Encoding encoding = TensorCodec.Encoding.NONE;
+
+		public Format getFormat() {
+			return format;
+		}
+
+		public void setFormat(Format format) {
+			this.format = format;
+		}
+
+		public String getFeedName() {
+			return feedName;
+		}
+
+		public void setFeedName(String feedName) {
+			this.feedName = feedName;
+		}
+
+		public TensorCodec.Encoding getEncoding() {
+			return encoding;
+		}
+
+		public void setEncoding(TensorCodec.Encoding encoding) {
+			this.encoding = encoding;
+		}
+	}
+
+	public static class Warmup {
+
+		/**
+		 * Runs the sample inputs through the input converter, the model and the output converter before the
+		 * processor starts consuming messages. A failed warm-up fails the startup.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Sample input locations. Resource patterns are supported. JSON (.json) samples are sent as Map payloads,
+		 * all other samples as byte array payloads.
+		 */
+		private List<String> samples = new ArrayList<>();
+
+		/**
+		 * Number of times every sample is evaluated.
+		 */
+		private int iterations = 10;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public List<String> getSamples() {
+			return samples;
+		}
+
+		public void setSamples(List<String> samples) {
+			this.samples = samples;
+		}
+
+		public int getIterations() {
+			return iterations;
+		}
+
+		public void setIterations(int iterations) {
+			this.iterations = iterations;
+		}
+	}
+
+	public static class Registry {
+
+		/**
+		 * Enables the model registry. Messages select the evaluated model by the model header. Messages without
+		 * the header are evaluated by the model at the model-location.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Message header holding the model id.
+		 */
+		private String header = "tf_model";
+
+		/**
+		 * Model id to model location map.
+		 */
+		private Map<String, String> models = new HashMap<>();
+
+		/**
+		 * Location of the models missing in the models map. The {model} placeholder is replaced by the model id,
+		 * e.g. file:/models/{model}/graph.pb
+		 */
+		private String locationPattern;
+
+		/**
+		 * Total GraphDef bytes of the loaded models above which the least recently used models are evicted.
+		 * Non positive value disables the eviction.
+		 */
+		private long maxBytes = 1024L * 1024 * 1024;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getHeader() {
+			return header;
+		}
+
+		public void setHeader(String header) {
+			this.header = header;
+		}
+
+		public Map<String, String> getModels() {
+			return models;
+		}
+
+		public void setModels(Map<String, String> models) {
+			this.models = models;
+		}
+
+		public String getLocationPattern() {
+			return locationPattern;
+		}
+
+		public void setLocationPattern(String locationPattern) {
+			this.locationPattern = locationPattern;
+		}
+
+		public long getMaxBytes() {
+			return maxBytes;
+		}
+
+		public void setMaxBytes(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+	}
+
+	public static class Reactive {
+
+		/**
+		 * Evaluates the messages on a dedicated bounded scheduler (Project Reactor) instead of the binder consumer
+		 * threads. The results keep the inbound order.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Number of inference threads.
+		 */
+		private int parallelism = Runtime.getRuntime().availableProcessors();
+
+		/**
+		 * Maximum number of in-flight messages. The binder consumer blocks when the limit is reached.
+		 */
+		private int prefetch = 32;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getParallelism() {
+			return parallelism;
+		}
+
+		public void setParallelism(int parallelism) {
+			this.parallelism = parallelism;
+		}
+
+		public int getPrefetch() {
+			return prefetch;
+		}
+
+		public void setPrefetch(int prefetch) {
+			this.prefetch = prefetch;
+		}
+	}
+
+	public static class Parallel {
+
+		/**
+		 * Evaluates the messages on a worker pool. The results of messages with the same ordering key are emitted
+		 * in their inbound order.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Number of worker threads.
+		 */
+		private int threads = Runtime.getRuntime().availableProcessors();
+
+		/**
+		 * Maximum number of messages waiting for a worker. When full the binder consumer evaluates the message.
+		 */
+		private int queueCapacity = 256;
+
+		/**
+		 * SpEL expression, evaluated against the message, computing the ordering key (e.g. headers['userId']).
+		 * All messages share the same key when not set.
+		 */
+		private String key;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getThreads() {
+			return threads;
+		}
+
+		public void setThreads(int threads) {
+			this.threads = threads;
+		}
+
+		public int getQueueCapacity() {
+			return queueCapacity;
+		}
+
+		public void setQueueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public void setKey(String key) {
+			this.key = key;
+		}
+	}
+
+	public static class Cache {
+
+		/**
+		 * Serves repeated requests from a result cache and coalesces the identical concurrent requests.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Maximum number of cached results. The least recently used results are evicted.
+		 */
+		private int maxSize = 1000;
+
+		/**
+		 * Time in milliseconds after which a cached result expires. Non positive value disables the expiration.
+		 */
+		private long timeToLive = 60000;
+
+		/**
+		 * SpEL expression, evaluated against the message, computing the cache key (e.g. headers['requestId']).
+		 * When not set the key is the SHA-256 digest of the converted model inputs.
+		 */
+		private String key;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxSize() {
+			return maxSize;
+		}
+
+		public void setMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public long getTimeToLive() {
+			return timeToLive;
+		}
+
+		public void setTimeToLive(long timeToLive) {
+			this.timeToLive = timeToLive;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public void setKey(String key) {
+			this.key = key;
+		}
+	}
+
+	public static class Signature {
+
+		/**
+		 * Checks the converted model inputs against the model placeholders (names, data types and shapes) before
+		 * every evaluation, so invalid inputs fail before the session run.
+		 */
+		private boolean validateFeeds = true;
+
+		public boolean isValidateFeeds() {
+			return validateFeeds;
+		}
+
+		public void setValidateFeeds(boolean validateFeeds) {
+			this.validateFeeds = validateFeeds;
+		}
+	}
+
+	public static class Optimization {
+
+		/**
+		 * Rewrites the model GraphDef for the fetched outputs before the import. Requires the outputs to be
+		 * configured.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Removes the operations the fetched outputs do not depend on. The placeholders are kept.
+		 */
+		private boolean prune = true;
+
+		/**
+		 * Removes the Identity and NoOp operations, the consumers read the Identity input directly.
+		 */
+		private boolean removeIdentity = true;
+
+		/**
+		 * Replaces the subexpressions computed from constants only by their value.
+		 */
+		private boolean foldConstants = true;
+
+		/**
+		 * Placeholder name to fixed value map. The placeholders are replaced by constants and their feeds are
+		 * ignored. Values are scalars or comma separated vectors.
+		 */
+		private Map<String, String> fixedInputs = new HashMap<>();
+
+		/**
+		 * Number of runs of the original and the optimized graph whose average latency is logged at load time.
+		 * 0 disables the comparison.
+		 */
+		private int latencyIterations = 0;
+
+		/**
+		 * Stores the large float constants (weights) as 8-bit values restored by inline Dequantize operations.
+		 * Lowers the session optimizer level to L0, L1 would fold the dequantized values back to float constants.
+		 */
+		private boolean quantizeWeights = false;
+
+		/**
+		 * Minimum size in bytes of the quantized float constants.
+		 */
+		private long quantizeMinBytes = 4096;
+
+		/**
+		 * Number of generated sample inputs evaluated by the float and the quantized graph to check the
+		 * quantization error. 0 disables the check.
+		 */
+		private int quantizeSamples = 8;
+
+		/**
+		 * Maximum absolute difference between the float and the quantized graph outputs. Above it the float
+		 * weights are kept.
+		 */
+		private float quantizeMaxError = 0.01f;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public boolean isPrune() {
+			return prune;
+		}
+
+		public void setPrune(boolean prune) {
+			this.prune = prune;
+		}
+
+		public boolean isRemoveIdentity() {
+			return removeIdentity;
+		}
+
+		public void setRemoveIdentity(boolean removeIdentity) {
+			this.removeIdentity = removeIdentity;
+		}
+
+		public boolean isFoldConstants() {
+			return foldConstants;
+		}
+
+		public void setFoldConstants(boolean foldConstants) {
+			this.foldConstants = foldConstants;
+		}
+
+		public Map<String, String> getFixedInputs() {
+			return fixedInputs;
+		}
+
+		public void setFixedInputs(Map<String, String> fixedInputs) {
+			this.fixedInputs = fixedInputs;
+		}
+
+		public int getLatencyIterations() {
+			return latencyIterations;
+		}
+
+		public void setLatencyIterations(int latencyIterations) {
+			this.latencyIterations = latencyIterations;
+		}
+
+		public boolean isQuantizeWeights() {
+			return quantizeWeights;
+		}
+
+		public void setQuantizeWeights(boolean quantizeWeights) {
+			this.quantizeWeights = quantizeWeights;
+		}
+
+		public long getQuantizeMinBytes() {
+			return quantizeMinBytes;
+		}
+
+		public void setQuantizeMinBytes(long quantizeMinBytes) {
+			this.quantizeMinBytes = quantizeMinBytes;
+		}
+
+		public int getQuantizeSamples() {
+			return quantizeSamples;
+		}
+
+		public void setQuantizeSamples(int quantizeSamples) {
+			this.quantizeSamples = quantizeSamples;
+		}
+
+		public float getQuantizeMaxError() {
+			return quantizeMaxError;
+		}
+
+		public void setQuantizeMaxError(float quantizeMaxError) {
+			this.quantizeMaxError = quantizeMaxError;
+		}
+	}
+
+	public static class Deadline {
+
+		/**
+		 * Drops, or diverts to the shed-destination, the messages past their deadline or max age before the input
+		 * conversion and the model evaluation.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Message header holding the absolute deadline in epoch milliseconds.
+		 */
+		private String header = "tf_deadline";
+
+		/**
+		 * Message header holding the maximum message age in milliseconds, counted from the timestamp-header.
+		 */
+		private String maxAgeHeader = "tf_max_age";
+
+		/**
+		 * Message header holding the message creation time in epoch milliseconds, set by the producer. The message
+		 * timestamp header can not be used, the binder resets it when it receives the message.
+		 */
+		private String timestampHeader = "tf_timestamp";
+
+		/**
+		 * Maximum age in milliseconds of the messages without deadline and max-age header. Non positive value
+		 * disables it.
+		 */
+		private long maxAge = 0;
+
+		/**
+		 * Destination (binding target) receiving the expired messages. The expired messages are dropped when not set.
+		 */
+		private String shedDestination;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getHeader() {
+			return header;
+		}
+
+		public void setHeader(String header) {
+			this.header = header;
+		}
+
+		public String getMaxAgeHeader() {
+			return maxAgeHeader;
+		}
+
+		public void setMaxAgeHeader(String maxAgeHeader) {
+			this.maxAgeHeader = maxAgeHeader;
+		}
+
+		public String getTimestampHeader() {
+			return timestampHeader;
+		}
+
+		public void setTimestampHeader(String timestampHeader) {
+			this.timestampHeader = timestampHeader;
+		}
+
+		public long getMaxAge() {
+			return maxAge;
+		}
+
+		public void setMaxAge(long maxAge) {
+			this.maxAge = maxAge;
+		}
+
+		public String getShedDestination() {
+			return shedDestination;
+		}
+
+		public void setShedDestination(String shedDestination) {
+			this.shedDestination = shedDestination;
+		}
+	}
+
+	public static class Startup {
+
+		/**
+		 * Number of threads loading the model, the vocabularies and the labels concurrently at startup. 0 loads them
+		 * one after another on the context refresh thread.
+		 */
+		private int threads = 4;
+
+		public int getThreads() {
+			return threads;
+		}
+
+		public void setThreads(int threads) {
+			this.threads = threads;
+		}
+	}
+
+	public static class ModelCache {
+
+		/**
+		 * Keeps the http(s) models and the optimized GraphDefs in a local directory. The cached models are revalidated
+		 * with conditional requests and served from the directory when unchanged or when the server is unreachable.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Model cache directory.
+		 */
+		private String directory = new File(System.getProperty("java.io.tmpdir"), "tensorflow-model-cache").getPath();
+
+		/**
+		 * Total size in bytes of the cached GraphDefs above which the least recently used ones are deleted. Non
+		 * positive value disables the eviction.
+		 */
+		private long maxBytes = 2147483648L;
+
+		/**
+		 * Connection timeout in milliseconds of the model requests.
+		 */
+		private int connectTimeout = 10000;
+
+		/**
+		 * Read timeout in milliseconds of the model requests.
+		 */
+		private int readTimeout = 60000;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getDirectory() {
+			return directory;
+		}
+
+		public void setDirectory(String directory) {
+			this.directory = directory;
+		}
+
+		public long getMaxBytes() {
+			return maxBytes;
+		}
+
+		public void setMaxBytes(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+
+		public int getConnectTimeout() {
+			return connectTimeout;
+		}
+
+		public void setConnectTimeout(int connectTimeout) {
+			this.connectTimeout = connectTimeout;
+		}
+
+		public int getReadTimeout() {
+			return readTimeout;
+		}
+
+		public void setReadTimeout(int readTimeout) {
+			this.readTimeout = readTimeout;
+		}
+	}
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.util.Assert;
+import org.springframework.util.ErrorHandler;
+
+/**
+ * Non-blocking processor variant built on Project Reactor.
+ *
+ * The inbound messages are emitted into a {@link Flux} and evaluated on a dedicated scheduler of parallelism
+ * threads. The results are sent to the output channel in the inbound order. At most prefetch messages are in flight:
+ * when the limit is reached the binder consumer thread blocks until a result is emitted, so the backpressure
+ * propagates to the binder instead of buffering messages in memory.
+ *
+ * The evaluation reuses the {@link TensorFlowService} and the converters unchanged. The binder acknowledges a message
+ * once it is emitted, so a failed evaluation is reported to the error handler and the stream continues with the next
+ * message.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowReactiveProcessor implements AutoCloseable {
+
+	private static final Log logger = LogFactory.getLog(TensorflowReactiveProcessor.class);
+
+	private final SubscribableChannel input;
+
+	private final MessageChannel output;
+
+	private final Function<Message<?>, Message<?>> evaluator;
+
+	private final ErrorHandler errorHandler;
+
+	private final Semaphore inFlight;
+
+	private final ExecutorService executor;
+
+	private final AtomicReference<FluxSink<Message<?>>> sink = new AtomicReference<>();
+
+	private final MessageHandler inputHandler = new MessageHandler() {
+		@Override
+		public void handleMessage(Message<?> message) throws MessagingException {
+			try {
+				// Blocks the binder consumer thread while prefetch messages are in flight
+				inFlight.acquire();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MessagingException(message, "Interrupted while waiting for in-flight capacity", e);
+			}
+			sink.get().next(message);
+		}
+	};
+
+	/**
+	 * @param input Inbound channel.
+	 * @param output Outbound channel.
+	 * @param evaluator Converts and evaluates a message. Returns the output message or null.
+	 * @param parallelism Number of inference threads.
+	 * @param prefetch Maximum number of in-flight messages.
+	 * @param errorHandler Receives a {@link MessagingException} for every message that failed to be evaluated or sent
+	 * (e.g. a {@code MessagePublishingErrorHandler} publishing to the error channel).
+	 */
+	public TensorflowReactiveProcessor(SubscribableChannel input, MessageChannel output,
+			Function<Message<?>, Message<?>> evaluator, int parallelism, int prefetch, ErrorHandler errorHandler) {
+		Assert.isTrue(parallelism > 0, "The parallelism must be positive");
+		Assert.isTrue(prefetch >= parallelism, "The prefetch must not be less than the parallelism");
+		Assert.notNull(errorHandler, "The error handler must not be null");
+
+		this.input = input;
+		this.output = output;
+		this.evaluator = evaluator;
+		this.errorHandler = errorHandler;
+		this.inFlight = new Semaphore(prefetch);
+		this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "tensorflow-inference-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		final Scheduler scheduler = Schedulers.fromExecutorService(executor);
+
+		Flux.create(new Consumer<FluxSink<Message<?>>>() {
+			@Override
+			public void accept(FluxSink<Message<?>> fluxSink) {
+				sink.set(fluxSink);
+			}
+		}, FluxSink.OverflowStrategy.BUFFER)
+				.flatMapSequential(new Function<Message<?>, Mono<Optional<Message<?>>>>() {
+					@Override
+					public Mono<Optional<Message<?>>> apply(Message<?> message) {
+						return Mono.fromCallable(evaluation(message)).subscribeOn(scheduler);
+					}
+				}, parallelism, prefetch)
+				.subscribe(new Consumer<Optional<Message<?>>>() {
+					@Override
+					public void accept(Optional<Message<?>> result) {
+						try {
+							if (result.isPresent()) {
+								TensorflowReactiveProcessor.this.output.send(result.get());
+							}
+						}
+						catch (RuntimeException e) {
+							errorHandler.handleError(new MessagingException(result.get(),
+									"Failed to send the result message", e));
+						}
+						finally {
+							inFlight.release();
+						}
+					}
+				});
+
+		this.input.subscribe(inputHandler);
+
+		logger.info("TensorFlow reactive processor enabled. Parallelism: " + parallelism + ", prefetch: " + prefetch);
+	}
+
+	private Callable<Optional<Message<?>>> evaluation(final Message<?> message) {
+		return new Callable<Optional<Message<?>>>() {
+			@Override
+			public Optional<Message<?>> call() {
+				try {
+					return Optional.<Message<?>>ofNullable(evaluator.apply(message));
+				}
+				catch (RuntimeException e) {
+					// Keep the stream alive, an error signal would terminate it
+					errorHandler.handleError(new MessagingException(message, "Failed to evaluate the message", e));
+					return Optional.empty();
+				}
+			}
+		};
+	}
+
+	@Override
+	public void close() throws Exception {
+		logger.info("Close TensorFlow reactive processor");
+		input.unsubscribe(inputHandler);
+		FluxSink<Message<?>> fluxSink = sink.get();
+		if (fluxSink != null) {
+			fluxSink.complete();
+		}
+		executor.shutdown();
+		executor.awaitTermination(30, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.tensorflow.DataType;
+import org.tensorflow.Tensor;
+
+import org.springframework.tuple.Tuple;
+
+/**
+ * Caches the evaluation results keyed by the model version, the fetches and the request key.
+ *
+ * The request key is either provided by the caller (e.g. computed from the message) or is the SHA-256 digest of the
+ * feeds. The cache holds copies of the output tensor values (data type, shape and bytes), never the native tensors.
+ * Every hit creates new tensors owned by the caller. Keying by the model version invalidates the results of a
+ * replaced model.
+ *
+ * The cache is bounded by the number of entries (least recently used entries are evicted) and by the entry time to
+ * live. Concurrent requests with the same key are coalesced: a single evaluation runs and the other requests wait for
+ * its result.
+ *
+ * Meters: tensorflow.cache.requests counter tagged with result hit, miss or coalesced, tensorflow.cache.hit.ratio and
+ * tensorflow.cache.size gauges.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowResultCache {
+
+	/**
+	 * Evaluation run on cache miss.
+	 */
+	public interface Evaluation {
+
+		Map<String, Tensor> evaluate();
+	}
+
+	private final long timeToLive;
+
+	/**
+	 * Cached results in access order. Guarded by itself.
+	 */
+	private final LinkedHashMap<Key, CachedResult> results;
+
+	private final ConcurrentMap<Key, CompletableFuture<CachedResult>> inFlight = new ConcurrentHashMap<>();
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	private final Counter coalesced;
+
+	/**
+	 * @param maxSize Maximum number of cached results.
+	 * @param timeToLive Time in milliseconds after which a cached result expires. Non positive disables expiration.
+	 * @param meterRegistry Registry for the cache meters.
+	 */
+	public TensorflowResultCache(final int maxSize, long timeToLive, MeterRegistry meterRegistry) {
+		this.timeToLive = timeToLive;
+		this.results = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+				return size() > maxSize;
+			}
+		};
+
+		this.hits = meterRegistry.counter("tensorflow.cache.requests", "result", "hit");
+		this.misses = meterRegistry.counter("tensorflow.cache.requests", "result", "miss");
+		this.coalesced = meterRegistry.counter("tensorflow.cache.requests", "result", "coalesced");
+		meterRegistry.gauge("tensorflow.cache.hit.ratio", this, new ToDoubleFunction<TensorflowResultCache>() {
+			@Override
+			public double applyAsDouble(TensorflowResultCache cache) {
+				double requests = cache.hits.count() + cache.coalesced.count() + cache.misses.count();
+				return (requests > 0) ? (cache.hits.count() + cache.coalesced.count()) / requests : 0;
+			}
+		});
+		meterRegistry.gauge("tensorflow.cache.size", this, new ToDoubleFunction<TensorflowResultCache>() {
+			@Override
+			public double applyAsDouble(TensorflowResultCache cache) {
+				return cache.size();
+			}
+		});
+	}
+
+	/**
+	 * Returns the cached result or runs the evaluation.
+	 * @param modelVersion Version of the evaluated model.
+	 * @param fetches Fetched outputs.
+	 * @param feeds Model feeds, used to compute the request key if not provided.
+	 * @param requestKey Request key. If null the feeds digest is used.
+	 * @param evaluation Evaluation to run on cache miss.
+	 * @param tensorMemoryTracker Tracks the tensors created from a cached result.
+	 * @return Output tensors owned by the caller.
+	 */
+	public Map<String, Tensor> evaluate(long modelVersion, List<String> fetches, Map<String, Object> feeds,
+			Object requestKey, Evaluation evaluation, TensorMemoryTracker tensorMemoryTracker) {
+
+		Object key = (requestKey != null) ? requestKey : digest(feeds);
+		if (key == null) {
+			// Feeds that can not be hashed are never cached
+			misses.increment();
+			return evaluation.evaluate();
+		}
+		Key cacheKey = new Key(modelVersion, fetches, key);
+
+		CachedResult cached = get(cacheKey);
+		if (cached != null) {
+			hits.increment();
+			return cached.toTensors(tensorMemoryTracker);
+		}
+
+		CompletableFuture<CachedResult> future = new CompletableFuture<>();
+		CompletableFuture<CachedResult> existing = inFlight.putIfAbsent(cacheKey, future);
+		if (existing != null) {
+			CachedResult result = await(existing);
+			if (result != null) {
+				coalesced.increment();
+				return result.toTensors(tensorMemoryTracker);
+			}
+			// The coalesced evaluation failed or is not cacheable, evaluate on its own
+			misses.increment();
+			return evaluation.evaluate();
+		}
+
+		misses.increment();
+		try {
+			Map<String, Tensor> outputs = evaluation.evaluate();
+			CachedResult result = CachedResult.of(outputs, timeToLive);
+			if (result != null) {
+				synchronized (results) {
+					results.put(cacheKey, result);
+				}
+				future.complete(result);
+			}
+			else {
+				future.completeExceptionally(new IllegalStateException("The evaluation result can not be cached"));
+			}
+			return outputs;
+		}
+		catch (RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		}
+		finally {
+			inFlight.remove(cacheKey, future);
+		}
+	}
+
+	private CachedResult get(Key key) {
+		synchronized (results) {
+			CachedResult cached = results.get(key);
+			if (cached != null && cached.isExpired()) {
+				results.remove(key);
+				return null;
+			}
+			return cached;
+		}
+	}
+
+	/**
+	 * @return Result of the coalesced evaluation or null if it failed.
+	 */
+	private static CachedResult await(CompletableFuture<CachedResult> future) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a coalesced evaluation", e);
+		}
+		catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+	public int size() {
+		synchronized (results) {
+			return results.size();
+		}
+	}
+
+	public void clear() {
+		synchronized (results) {
+			results.clear();
+		}
+	}
+
+	/**
+	 * @return SHA-256 digest of the feeds or null if a feed value type is not supported.
+	 */
+	static ByteBuffer digest(Map<String, Object> feeds) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			// Hash in name order, independent of the map implementation
+			for (Map.Entry<String, Object> feed : new TreeMap<>(feeds).entrySet()) {
+				update(digest, feed.getKey());
+				if (!update(digest, feed.getValue())) {
+					return null;
+				}
+			}
+			return ByteBuffer.wrap(digest.digest());
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static boolean update(MessageDigest digest, Object value) {
+		if (value == null) {
+			digest.update((byte) 0);
+		}
+		else if (value instanceof Tensor) {
+			Tensor tensor = (Tensor) value;
+			if (tensor.dataType() == DataType.STRING) {
+				return false;
+			}
+			update(digest, tensor.dataType().name());
+			update(digest, Arrays.toString(tensor.shape()));
+			byte[] bytes = new byte[tensor.numBytes()];
+			tensor.writeTo(ByteBuffer.wrap(bytes));
+			digest.update(bytes);
+		}
+		else if (value instanceof TensorFeed) {
+			TensorFeed feed = (TensorFeed) value;
+			update(digest, feed.getDataType().name());
+			update(digest, Arrays.toString(feed.getShape()));
+			Buffer buffer = feed.getBuffer();
+			for (int i = buffer.position(); i < buffer.limit(); i++) {
+				if (buffer instanceof FloatBuffer) {
+					updateInt(digest, Float.floatToIntBits(((FloatBuffer) buffer).get(i)));
+				}
+				else if (buffer instanceof IntBuffer) {
+					updateInt(digest, ((IntBuffer) buffer).get(i));
+				}
+				else if (buffer instanceof LongBuffer) {
+					updateLong(digest, ((LongBuffer) buffer).get(i));
+				}
+				else {
+					updateLong(digest, Double.doubleToLongBits(((DoubleBuffer) buffer).get(i)));
+				}
+			}
+		}
+		else if (value instanceof Tuple) {
+			Tuple tuple = (Tuple) value;
+			for (String name : tuple.getFieldNames()) {
+				update(digest, name);
+				if (!update(digest, tuple.getValue(name))) {
+					return false;
+				}
+			}
+		}
+		else if (value instanceof byte[]) {
+			digest.update((byte[]) value);
+		}
+		else if (value.getClass().isArray()) {
+			update(digest, value.getClass().getName());
+			int length = Array.getLength(value);
+			for (int i = 0; i < length; i++) {
+				if (!update(digest, Array.get(value, i))) {
+					return false;
+				}
+			}
+		}
+		else if (value instanceof Number || value instanceof String || value instanceof Boolean) {
+			// Type name keeps e.g. 1 (int) and 1.0 (float) feeds apart
+			digest.update(value.getClass().getName().getBytes(StandardCharsets.UTF_8));
+			digest.update(value.toString().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+		else {
+			return false;
+		}
+		return true;
+	}
+
+	private static void updateInt(MessageDigest digest, int value) {
+		digest.update((byte) (value >>> 24));
+		digest.update((byte) (value >>> 16));
+		digest.update((byte) (value >>> 8));
+		digest.update((byte) value);
+	}
+
+	private static void updateLong(MessageDigest digest, long value) {
+		updateInt(digest, (int) (value >>> 32));
+		updateInt(digest, (int) value);
+	}
+
+	private static final class Key {
+
+		private final long modelVersion;
+
+		private final List<String> fetches;
+
+		private final Object requestKey;
+
+		Key(long modelVersion, List<String> fetches, Object requestKey) {
+			this.modelVersion = modelVersion;
+			this.fetches = fetches;
+			this.requestKey = requestKey;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return modelVersion == key.modelVersion && fetches.equals(key.fetches)
+					&& requestKey.equals(key.requestKey);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = (int) (modelVersion ^ (modelVersion >>> 32));
+			result = 31 * result + fetches.hashCode();
+			result = 31 * result + requestKey.hashCode();
+			return result;
+		}
+	}
+
+	/**
+	 * Heap copy of the output tensors.
+	 */
+	private static final class CachedResult {
+
+		private final Map<String, DataType> dataTypes = new LinkedHashMap<>();
+
+		private final Map<String, long[]> shapes = new LinkedHashMap<>();
+
+		private final Map<String, byte[]> values = new LinkedHashMap<>();
+
+		private final long expiresAt;
+
+		private CachedResult(long timeToLive) {
+			this.expiresAt = (timeToLive > 0) ? System.currentTimeMillis() + timeToLive : Long.MAX_VALUE;
+		}
+
+		static CachedResult of(Map<String, Tensor> outputs, long timeToLive) {
+			CachedResult result = new CachedResult(timeToLive);
+			for (Map.Entry<String, Tensor> output : outputs.entrySet()) {
+				Tensor tensor = output.getValue();
+				if (tensor.dataType() == DataType.STRING) {
+					return null;
+				}
+				byte[] bytes = new byte[tensor.numBytes()];
+				tensor.writeTo(ByteBuffer.wrap(bytes));
+				result.dataTypes.put(output.getKey(), tensor.dataType());
+				result.shapes.put(output.getKey(), tensor.shape());
+				result.values.put(output.getKey(), bytes);
+			}
+			return result;
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() > expiresAt;
+		}
+
+		Map<String, Tensor> toTensors(TensorMemoryTracker tensorMemoryTracker) {
+			Map<String, Tensor> tensors = new LinkedHashMap<>(values.size());
+			for (Map.Entry<String, byte[]> value : values.entrySet()) {
+				String name = value.getKey();
+				tensors.put(name, tensorMemoryTracker.track(Tensor.create(dataTypes.get(name), shapes.get(name),
+						ByteBuffer.wrap(value.getValue()))));
+			}
+			return tensors;
+		}
+	}
+}
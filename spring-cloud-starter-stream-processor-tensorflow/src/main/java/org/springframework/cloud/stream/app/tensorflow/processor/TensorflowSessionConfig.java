@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.io.ByteArrayOutputStream;
+
+import org.springframework.util.Assert;
+
+/**
+ * TensorFlow Session configuration: thread pools, placement and graph optimizer settings.
+ *
+ * The TensorFlow Java API accepts the configuration as a serialized tensorflow.ConfigProto message. The protobuf
+ * classes are not on the classpath, so the few fields used here are encoded directly (see
+ * tensorflow/core/protobuf/config.proto). Unset fields keep the TensorFlow defaults, which size the intra-op and
+ * inter-op thread pools to the number of cores.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowSessionConfig {
+
+	/**
+	 * TensorFlow defaults.
+	 */
+	public static final TensorflowSessionConfig DEFAULT = new TensorflowSessionConfig(0, 0, false, false,
+			OptimizerLevel.L1, JitLevel.DEFAULT);
+
+	/**
+	 * Graph optimizer level (tensorflow.OptimizerOptions.Level).
+	 */
+	public enum OptimizerLevel {
+		/**
+		 * Common subexpression elimination and constant folding (TensorFlow default).
+		 */
+		L1(0),
+		/**
+		 * No graph optimizations.
+		 */
+		L0(-1);
+
+		private final int value;
+
+		OptimizerLevel(int value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 * XLA JIT compilation level of the whole graph (tensorflow.OptimizerOptions.GlobalJitLevel). Requires a
+	 * TensorFlow native library built with XLA.
+	 */
+	public enum JitLevel {
+		/**
+		 * TensorFlow default (currently off).
+		 */
+		DEFAULT(0),
+		OFF(-1),
+		ON_1(1),
+		ON_2(2);
+
+		private final int value;
+
+		JitLevel(int value) {
+			this.value = value;
+		}
+	}
+
+	// tensorflow.ConfigProto field numbers
+	private static final int INTRA_OP_PARALLELISM_THREADS = 2;
+
+	private static final int INTER_OP_PARALLELISM_THREADS = 5;
+
+	private static final int ALLOW_SOFT_PLACEMENT = 7;
+
+	private static final int USE_PER_SESSION_THREADS = 9;
+
+	private static final int GRAPH_OPTIONS = 10;
+
+	// tensorflow.GraphOptions field numbers
+	private static final int OPTIMIZER_OPTIONS = 3;
+
+	// tensorflow.OptimizerOptions field numbers
+	private static final int OPT_LEVEL = 3;
+
+	private static final int GLOBAL_JIT_LEVEL = 5;
+
+	private final int intraOpParallelism;
+
+	private final int interOpParallelism;
+
+	private final boolean usePerSessionThreads;
+
+	private final boolean allowSoftPlacement;
+
+	private final OptimizerLevel optimizerLevel;
+
+	private final JitLevel jitLevel;
+
+	/**
+	 * @param intraOpParallelism Threads used to run a single operation. 0 lets TensorFlow choose.
+	 * @param interOpParallelism Threads used to run independent operations. 0 lets TensorFlow choose.
+	 * @param usePerSessionThreads Create the thread pools per session instead of sharing them process wide.
+	 * @param allowSoftPlacement Fall back to CPU for operations without kernel for the requested device.
+	 * @param optimizerLevel Graph optimizer level.
+	 * @param jitLevel XLA global JIT level.
+	 */
+	public TensorflowSessionConfig(int intraOpParallelism, int interOpParallelism, boolean usePerSessionThreads,
+			boolean allowSoftPlacement, OptimizerLevel optimizerLevel, JitLevel jitLevel) {
+		Assert.isTrue(intraOpParallelism >= 0, "The intra-op parallelism must not be negative");
+		Assert.isTrue(interOpParallelism >= 0, "The inter-op parallelism must not be negative");
+		Assert.notNull(optimizerLevel, "The optimizer level must not be null");
+		Assert.notNull(jitLevel, "The JIT level must not be null");
+
+		this.intraOpParallelism = intraOpParallelism;
+		this.interOpParallelism = interOpParallelism;
+		this.usePerSessionThreads = usePerSessionThreads;
+		this.allowSoftPlacement = allowSoftPlacement;
+		this.optimizerLevel = optimizerLevel;
+		this.jitLevel = jitLevel;
+	}
+
+	/**
+	 * @return The serialized tensorflow.ConfigProto or null if all settings are the TensorFlow defaults.
+	 */
+	public byte[] toConfigProto() {
+		ByteArrayOutputStream optimizerOptions = new ByteArrayOutputStream();
+		if (optimizerLevel.value != 0) {
+			ProtobufWriter.writeVarintField(optimizerOptions, OPT_LEVEL, optimizerLevel.value);
+		}
+		if (jitLevel.value != 0) {
+			ProtobufWriter.writeVarintField(optimizerOptions, GLOBAL_JIT_LEVEL, jitLevel.value);
+		}
+
+		ByteArrayOutputStream configProto = new ByteArrayOutputStream();
+		if (intraOpParallelism != 0) {
+			ProtobufWriter.writeVarintField(configProto, INTRA_OP_PARALLELISM_THREADS, intraOpParallelism);
+		}
+		if (interOpParallelism != 0) {
+			ProtobufWriter.writeVarintField(configProto, INTER_OP_PARALLELISM_THREADS, interOpParallelism);
+		}
+		if (allowSoftPlacement) {
+			ProtobufWriter.writeVarintField(configProto, ALLOW_SOFT_PLACEMENT, 1);
+		}
+		if (usePerSessionThreads) {
+			ProtobufWriter.writeVarintField(configProto, USE_PER_SESSION_THREADS, 1);
+		}
+		if (optimizerOptions.size() > 0) {
+			ByteArrayOutputStream graphOptions = new ByteArrayOutputStream();
+			ProtobufWriter.writeBytesField(graphOptions, OPTIMIZER_OPTIONS, optimizerOptions.toByteArray());
+			ProtobufWriter.writeBytesField(configProto, GRAPH_OPTIONS, graphOptions.toByteArray());
+		}
+
+		return (configProto.size() > 0) ? configProto.toByteArray() : null;
+	}
+
+	@Override
+	public String toString() {
+		return "intraOpParallelism=" + intraOpParallelism + ", interOpParallelism=" + interOpParallelism
+				+ ", usePerSessionThreads=" + usePerSessionThreads + ", allowSoftPlacement=" + allowSoftPlacement
+				+ ", optimizerLevel=" + optimizerLevel + ", jitLevel=" + jitLevel;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.tensorflow.Graph;
+import org.tensorflow.Session;
+
+import org.springframework.util.Assert;
+
+/**
+ * Manages the lifecycle of the TensorFlow {@link Session}s used to evaluate a {@link Graph}.
+ *
+ * Depending on the {@link Mode} a new session is opened for every evaluation (PER_CALL), a single thread-safe
+ * session is shared by all callers (SHARED) or up to poolSize sessions are lazily opened and reused (POOLED).
+ * All sessions are opened with the same {@link TensorflowSessionConfig}.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowSessionPool implements AutoCloseable {
+
+	private static final Log logger = LogFactory.getLog(TensorflowSessionPool.class);
+
+	public enum Mode {
+		/**
+		 * Open and close a new Session for every evaluation.
+		 */
+		PER_CALL,
+		/**
+		 * Share a single (thread-safe) Session between all evaluations.
+		 */
+		SHARED,
+		/**
+		 * Reuse Sessions from a bounded pool.
+		 */
+		POOLED
+	}
+
+	private final Graph graph;
+
+	private final Mode mode;
+
+	private final byte[] configProto;
+
+	private final Session sharedSession;
+
+	private final Semaphore permits;
+
+	private final Queue<Session> idleSessions = new ConcurrentLinkedQueue<>();
+
+	private volatile boolean closed = false;
+
+	public TensorflowSessionPool(Graph graph, Mode mode, int poolSize) {
+		this(graph, mode, poolSize, TensorflowSessionConfig.DEFAULT);
+	}
+
+	public TensorflowSessionPool(Graph graph, Mode mode, int poolSize, TensorflowSessionConfig sessionConfig) {
+		Assert.notNull(graph, "Graph must not be null");
+		Assert.notNull(mode, "Session mode must not be null");
+		Assert.isTrue(mode != Mode.POOLED || poolSize > 0, "The session pool size must be positive");
+
+		this.graph = graph;
+		this.mode = mode;
+		this.configProto = sessionConfig.toConfigProto();
+		this.sharedSession = (mode == Mode.SHARED) ? newSession() : null;
+		this.permits = (mode == Mode.POOLED) ? new Semaphore(poolSize, true) : null;
+
+		logger.info("TensorFlow session mode: " + mode + ((mode == Mode.POOLED) ? ", pool size: " + poolSize : "")
+				+ ((configProto != null) ? ", config: " + sessionConfig : ""));
+	}
+
+	/**
+	 * Acquires a session to run the graph with. Every acquired session must be handed back with
+	 * {@link #release(Session)}. In POOLED mode the call blocks until a session becomes available.
+	 * @return Session bound to the pool's graph.
+	 */
+	public Session acquire() {
+		Assert.state(!closed, "The session pool is closed");
+
+		switch (mode) {
+		case SHARED:
+			return sharedSession;
+		case POOLED:
+			try {
+				permits.acquire();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for a TensorFlow session", e);
+			}
+			Session session = idleSessions.poll();
+			if (session != null) {
+				return session;
+			}
+			try {
+				return newSession();
+			}
+			catch (RuntimeException e) {
+				// e.g. invalid session configuration, the permit would be lost otherwise
+				permits.release();
+				throw e;
+			}
+		default:
+			return newSession();
+		}
+	}
+
+	private Session newSession() {
+		return (configProto != null) ? new Session(graph, configProto) : new Session(graph);
+	}
+
+	/**
+	 * Hands back a session obtained from {@link #acquire()}.
+	 * @param session session to release.
+	 */
+	public void release(Session session) {
+		switch (mode) {
+		case SHARED:
+			break;
+		case POOLED:
+			synchronized (idleSessions) {
+				if (closed) {
+					session.close();
+				}
+				else {
+					idleSessions.offer(session);
+				}
+			}
+			permits.release();
+			break;
+		default:
+			session.close();
+		}
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	@Override
+	public void close() {
+		synchronized (idleSessions) {
+			closed = true;
+			Session session;
+			while ((session = idleSessions.poll()) != null) {
+				session.close();
+			}
+		}
+		if (sharedSession != null) {
+			sharedSession.close();
+		}
+	}
+}
@@ -0,0 +1,557 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.tensorflow.DataType;
+import org.tensorflow.Tensor;
+
+import org.springframework.tuple.Tuple;
+
+/**
+ * Model inputs (placeholders) read from the serialized GraphDef at load time.
+ *
+ * The feeds of every evaluation are checked against the signature in Java with {@link #validateFeeds(Map, List)}:
+ * unknown feed names, missing placeholders and data type or shape mismatches are rejected before any tensor is
+ * created and before the session run crosses JNI.
+ *
+ * Placeholders with an empty shape are unconstrained, as the TensorFlow 1.x Placeholder op defines it.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowSignature {
+
+	// tensorflow.GraphDef field numbers
+	private static final int GRAPH_NODE = 1;
+
+	// tensorflow.NodeDef field numbers
+	private static final int NODE_NAME = 1;
+
+	private static final int NODE_OP = 2;
+
+	private static final int NODE_INPUT = 3;
+
+	private static final int NODE_ATTR = 5;
+
+	// map<string, AttrValue> entry field numbers
+	private static final int ENTRY_KEY = 1;
+
+	private static final int ENTRY_VALUE = 2;
+
+	// tensorflow.AttrValue field numbers
+	private static final int ATTR_TYPE = 6;
+
+	private static final int ATTR_SHAPE = 7;
+
+	// tensorflow.TensorShapeProto field numbers
+	private static final int SHAPE_DIM = 2;
+
+	private static final int SHAPE_UNKNOWN_RANK = 3;
+
+	// tensorflow.TensorShapeProto.Dim field numbers
+	private static final int DIM_SIZE = 1;
+
+	private static final Set<String> PLACEHOLDER_OPS = new HashSet<>(Arrays.asList("Placeholder", "PlaceholderV2"));
+
+	private static final String PLACEHOLDER_WITH_DEFAULT_OP = "PlaceholderWithDefault";
+
+	private static final long[] SCALAR = new long[0];
+
+	// Shared scalar feed descriptions, the validation of scalar feeds does not allocate
+	private static final Input FLOAT_SCALAR = new Input(null, DataType.FLOAT, SCALAR, true);
+
+	private static final Input DOUBLE_SCALAR = new Input(null, DataType.DOUBLE, SCALAR, true);
+
+	private static final Input INT32_SCALAR = new Input(null, DataType.INT32, SCALAR, true);
+
+	private static final Input INT64_SCALAR = new Input(null, DataType.INT64, SCALAR, true);
+
+	private static final Input BOOL_SCALAR = new Input(null, DataType.BOOL, SCALAR, true);
+
+	/**
+	 * Model input or feed value description.
+	 */
+	public static class Input {
+
+		private final String name;
+
+		private final DataType dataType;
+
+		private final long[] shape;
+
+		private final boolean required;
+
+		Input(String name, DataType dataType, long[] shape, boolean required) {
+			this.name = name;
+			this.dataType = dataType;
+			this.shape = shape;
+			this.required = required;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The data type or null if not supported by the TensorFlow Java API.
+		 */
+		public DataType getDataType() {
+			return dataType;
+		}
+
+		/**
+		 * @return The shape, -1 for unknown dimensions, or null if unconstrained.
+		 */
+		public long[] getShape() {
+			return shape;
+		}
+
+		/**
+		 * @return false for placeholders with default value.
+		 */
+		public boolean isRequired() {
+			return required;
+		}
+
+		boolean accepts(Input feed) {
+			if (dataType != null && feed.dataType != null && dataType != feed.dataType) {
+				return false;
+			}
+			if (shape == null || feed.shape == null) {
+				return true;
+			}
+			if (shape.length != feed.shape.length) {
+				return false;
+			}
+			for (int i = 0; i < shape.length; i++) {
+				if (shape[i] >= 0 && shape[i] != feed.shape[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return ((name != null) ? name + " " : "") + ((dataType != null) ? dataType : "?") + " "
+					+ ((shape != null) ? Arrays.toString(shape) : "[*]");
+		}
+	}
+
+	private final String modelName;
+
+	private final Map<String, Input> inputs;
+
+	private final Map<String, String> operationTypes;
+
+	private final Map<String, List<String>> operationInputs;
+
+	private final Set<String> fixedInputs;
+
+	private final ConcurrentMap<List<String>, Set<String>> requiredInputs = new ConcurrentHashMap<>();
+
+	private TensorflowSignature(String modelName, Map<String, Input> inputs, Map<String, String> operationTypes,
+			Map<String, List<String>> operationInputs, Set<String> fixedInputs) {
+		this.modelName = modelName;
+		this.inputs = Collections.unmodifiableMap(inputs);
+		this.operationTypes = operationTypes;
+		this.operationInputs = operationInputs;
+		this.fixedInputs = fixedInputs;
+	}
+
+	/**
+	 * Reads the signature of a serialized GraphDef.
+	 * @param modelName Model name used in the validation messages.
+	 * @param graphDef Serialized tensorflow.GraphDef.
+	 * @return The model signature.
+	 * @throws IllegalArgumentException if the GraphDef is malformed.
+	 */
+	public static TensorflowSignature read(String modelName, byte[] graphDef) {
+		return read(modelName, graphDef, Collections.<String>emptySet());
+	}
+
+	/**
+	 * Reads the signature of an optimized GraphDef.
+	 * @param modelName Model name used in the validation messages.
+	 * @param graphDef Serialized tensorflow.GraphDef.
+	 * @param fixedInputs Placeholders replaced by constants at load time (see {@link TensorflowGraphOptimizer}).
+	 * Their feeds are accepted and ignored.
+	 * @return The model signature.
+	 * @throws IllegalArgumentException if the GraphDef is malformed.
+	 */
+	public static TensorflowSignature read(String modelName, byte[] graphDef, Set<String> fixedInputs) {
+		Map<String, Input> inputs = new LinkedHashMap<>();
+		Map<String, String> operationTypes = new HashMap<>();
+		Map<String, List<String>> operationInputs = new HashMap<>();
+
+		ProtobufReader graph = new ProtobufReader(graphDef);
+		while (graph.next()) {
+			if (graph.fieldNumber() != GRAPH_NODE) {
+				graph.skip();
+				continue;
+			}
+			ProtobufReader node = graph.readMessage();
+			String name = null;
+			String op = null;
+			List<String> nodeInputs = new ArrayList<>(2);
+			DataType dataType = null;
+			long[] shape = null;
+			while (node.next()) {
+				switch (node.fieldNumber()) {
+				case NODE_NAME:
+					name = node.readString();
+					break;
+				case NODE_OP:
+					op = node.readString();
+					break;
+				case NODE_INPUT:
+					nodeInputs.add(operationName(node.readString()));
+					break;
+				case NODE_ATTR:
+					ProtobufReader entry = node.readMessage();
+					String key = null;
+					ProtobufReader value = null;
+					while (entry.next()) {
+						if (entry.fieldNumber() == ENTRY_KEY) {
+							key = entry.readString();
+						}
+						else if (entry.fieldNumber() == ENTRY_VALUE) {
+							value = entry.readMessage();
+						}
+						else {
+							entry.skip();
+						}
+					}
+					if ("dtype".equals(key) && value != null) {
+						dataType = readType(value);
+					}
+					else if ("shape".equals(key) && value != null) {
+						shape = readShape(value);
+					}
+					break;
+				default:
+					node.skip();
+				}
+			}
+			operationTypes.put(name, op);
+			operationInputs.put(name, nodeInputs);
+			if (PLACEHOLDER_OPS.contains(op) || PLACEHOLDER_WITH_DEFAULT_OP.equals(op)) {
+				inputs.put(name, new Input(name, dataType, shape, !PLACEHOLDER_WITH_DEFAULT_OP.equals(op)));
+			}
+		}
+
+		return new TensorflowSignature(modelName, inputs, operationTypes, operationInputs, fixedInputs);
+	}
+
+	private static DataType readType(ProtobufReader attrValue) {
+		DataType dataType = null;
+		while (attrValue.next()) {
+			if (attrValue.fieldNumber() == ATTR_TYPE) {
+				dataType = toDataType((int) attrValue.readVarint());
+			}
+			else {
+				attrValue.skip();
+			}
+		}
+		return dataType;
+	}
+
+	private static long[] readShape(ProtobufReader attrValue) {
+		long[] shape = null;
+		while (attrValue.next()) {
+			if (attrValue.fieldNumber() != ATTR_SHAPE) {
+				attrValue.skip();
+				continue;
+			}
+			ProtobufReader shapeProto = attrValue.readMessage();
+			List<Long> dims = new ArrayList<>();
+			boolean unknownRank = false;
+			while (shapeProto.next()) {
+				if (shapeProto.fieldNumber() == SHAPE_DIM) {
+					ProtobufReader dim = shapeProto.readMessage();
+					long size = -1;
+					while (dim.next()) {
+						if (dim.fieldNumber() == DIM_SIZE) {
+							size = dim.readVarint();
+						}
+						else {
+							dim.skip();
+						}
+					}
+					dims.add(size);
+				}
+				else if (shapeProto.fieldNumber() == SHAPE_UNKNOWN_RANK) {
+					unknownRank = shapeProto.readVarint() != 0;
+				}
+				else {
+					shapeProto.skip();
+				}
+			}
+			if (!unknownRank && !dims.isEmpty()) {
+				shape = new long[dims.size()];
+				for (int i = 0; i < shape.length; i++) {
+					shape[i] = dims.get(i);
+				}
+			}
+		}
+		return shape;
+	}
+
+	/**
+	 * @return The data type of a tensorflow.DataType enum value or null if not supported by the Java API.
+	 */
+	static DataType toDataType(int value) {
+		switch (value) {
+		case 1:
+			return DataType.FLOAT;
+		case 2:
+			return DataType.DOUBLE;
+		case 3:
+			return DataType.INT32;
+		case 4:
+			return DataType.UINT8;
+		case 7:
+			return DataType.STRING;
+		case 9:
+			return DataType.INT64;
+		case 10:
+			return DataType.BOOL;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @return The model placeholders, keyed by name in graph order.
+	 */
+	public Map<String, Input> getInputs() {
+		return inputs;
+	}
+
+	/**
+	 * @return The number of graph operations.
+	 */
+	public int getOperationCount() {
+		return operationTypes.size();
+	}
+
+	/**
+	 * @return The operation type (e.g. Placeholder, MatMul) or null if the graph has no such operation.
+	 */
+	public String getOperationType(String operationName) {
+		return operationTypes.get(operationName);
+	}
+
+	/**
+	 * @return true if the placeholder was replaced by a constant at load time. Its feeds are ignored.
+	 */
+	public boolean isFixedInput(String name) {
+		return !fixedInputs.isEmpty() && fixedInputs.contains(name);
+	}
+
+	/**
+	 * @param fetches Outputs to fetch.
+	 * @return The required placeholders the fetched outputs depend on.
+	 */
+	public Set<String> getRequiredInputs(List<String> fetches) {
+		Set<String> required = requiredInputs.get(fetches);
+		if (required == null) {
+			required = Collections.unmodifiableSet(findRequiredInputs(fetches));
+			requiredInputs.putIfAbsent(new ArrayList<>(fetches), required);
+		}
+		return required;
+	}
+
+	private Set<String> findRequiredInputs(List<String> fetches) {
+		Set<String> required = new LinkedHashSet<>();
+		Set<String> visited = new HashSet<>();
+		Deque<String> pending = new ArrayDeque<>();
+		for (String fetch : fetches) {
+			pending.add(operationName(fetch));
+		}
+		while (!pending.isEmpty()) {
+			String name = pending.poll();
+			if (!visited.add(name)) {
+				continue;
+			}
+			Input input = inputs.get(name);
+			if (input != null && input.isRequired()) {
+				required.add(name);
+			}
+			List<String> nodeInputs = operationInputs.get(name);
+			if (nodeInputs != null) {
+				pending.addAll(nodeInputs);
+			}
+		}
+		return required;
+	}
+
+	/**
+	 * Checks the feeds against the signature.
+	 * @param feeds Model inputs, keyed by operation name.
+	 * @param fetches Outputs to fetch.
+	 * @throws IllegalArgumentException if a feed is unknown or incompatible with its placeholder, or a required
+	 * placeholder is not fed.
+	 */
+	public void validateFeeds(Map<String, Object> feeds, List<String> fetches) {
+		boolean placeholdersOnly = true;
+		for (Map.Entry<String, Object> feed : feeds.entrySet()) {
+			String name = operationName(feed.getKey());
+			if (isFixedInput(name)) {
+				continue;
+			}
+			Input input = inputs.get(name);
+			if (input == null) {
+				if (!operationTypes.containsKey(name)) {
+					throw new IllegalArgumentException("Model " + modelName + " has no operation to feed: " + name);
+				}
+				// Feeding an intermediate operation is valid and may cut placeholders off
+				placeholdersOnly = false;
+				continue;
+			}
+			Input value = describe(feed.getValue());
+			if (value != null && !input.accepts(value)) {
+				throw new IllegalArgumentException("Model " + modelName + " expects feed " + input + " but got "
+						+ value);
+			}
+		}
+
+		if (placeholdersOnly) {
+			for (String required : getRequiredInputs(fetches)) {
+				if (!feeds.containsKey(required)) {
+					throw new IllegalArgumentException("Model " + modelName + " requires feed " + inputs.get(required)
+							+ " for " + fetches);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The data type and shape of a feed value or null if they can not be determined without converting it.
+	 */
+	static Input describe(Object value) {
+		if (value instanceof Tensor) {
+			Tensor tensor = (Tensor) value;
+			return new Input(null, tensor.dataType(), tensor.shape(), true);
+		}
+		else if (value instanceof TensorFeed) {
+			TensorFeed feed = (TensorFeed) value;
+			return new Input(null, feed.getDataType(), feed.getShape(), true);
+		}
+		else if (value instanceof Tuple) {
+			Tuple tuple = (Tuple) value;
+			if (!tuple.hasFieldName(TensorTupleConverter.TF_DATA_TYPE)
+					|| !(tuple.getValue(TensorTupleConverter.TF_SHAPE) instanceof long[])) {
+				return null;
+			}
+			return new Input(null, DataType.valueOf(tuple.getString(TensorTupleConverter.TF_DATA_TYPE)),
+					(long[]) tuple.getValue(TensorTupleConverter.TF_SHAPE), true);
+		}
+		else if (value instanceof Float) {
+			return FLOAT_SCALAR;
+		}
+		else if (value instanceof Double) {
+			return DOUBLE_SCALAR;
+		}
+		else if (value instanceof Integer) {
+			return INT32_SCALAR;
+		}
+		else if (value instanceof Long) {
+			return INT64_SCALAR;
+		}
+		else if (value instanceof Boolean) {
+			return BOOL_SCALAR;
+		}
+		else if (value != null && value.getClass().isArray()) {
+			return describeArray(value);
+		}
+		return null;
+	}
+
+	private static Input describeArray(Object array) {
+		List<Long> dims = new ArrayList<>();
+		Class<?> type = array.getClass();
+		Object element = array;
+		while (type.isArray()) {
+			int length = Array.getLength(element);
+			dims.add((long) length);
+			type = type.getComponentType();
+			if (type.isArray()) {
+				if (length == 0) {
+					// The inner dimensions of an empty array are unknown
+					return null;
+				}
+				element = Array.get(element, 0);
+			}
+		}
+
+		DataType dataType;
+		if (type == float.class) {
+			dataType = DataType.FLOAT;
+		}
+		else if (type == double.class) {
+			dataType = DataType.DOUBLE;
+		}
+		else if (type == int.class) {
+			dataType = DataType.INT32;
+		}
+		else if (type == long.class) {
+			dataType = DataType.INT64;
+		}
+		else if (type == boolean.class) {
+			dataType = DataType.BOOL;
+		}
+		else if (type == byte.class) {
+			// byte[] values are strings
+			dataType = DataType.STRING;
+			dims.remove(dims.size() - 1);
+		}
+		else {
+			return null;
+		}
+
+		long[] shape = new long[dims.size()];
+		for (int i = 0; i < shape.length; i++) {
+			shape[i] = dims.get(i);
+		}
+		return new Input(null, dataType, shape, true);
+	}
+
+	/**
+	 * @return The operation name of an [operation name]:[index] output or ^[operation name] control input.
+	 */
+	static String operationName(String output) {
+		int start = output.startsWith("^") ? 1 : 0;
+		int separator = output.lastIndexOf(':');
+		return (separator > start) ? output.substring(start, separator) : output.substring(start);
+	}
+}
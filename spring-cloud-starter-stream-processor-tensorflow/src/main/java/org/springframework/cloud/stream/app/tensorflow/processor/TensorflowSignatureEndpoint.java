@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+/**
+ * Actuator endpoint (/tensorflow) exposing the signature of the served model: the placeholders with their data types
+ * and shapes and the fetched outputs with their data types.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowSignatureEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+	private final TensorFlowService tensorFlowService;
+
+	private final Supplier<List<String>> fetches;
+
+	/**
+	 * @param tensorFlowService Service of the described model.
+	 * @param fetches Supplies the fetched outputs, which can change on configuration refresh.
+	 */
+	public TensorflowSignatureEndpoint(TensorFlowService tensorFlowService, Supplier<List<String>> fetches) {
+		super("tensorflow");
+		this.tensorFlowService = tensorFlowService;
+		this.fetches = fetches;
+	}
+
+	@Override
+	public Map<String, Object> invoke() {
+		return tensorFlowService.describe(fetches.get());
+	}
+}
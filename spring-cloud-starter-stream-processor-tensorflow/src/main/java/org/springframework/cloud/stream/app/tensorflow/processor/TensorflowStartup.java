@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Loads the startup resources (model graph, vocabulary, labels) concurrently.
+ *
+ * The beans submit their loading tasks at creation and wait for the result on first use, so the loads overlap with
+ * each other and with the rest of the context refresh. When the application is ready the outstanding loads are
+ * awaited, a failed load fails the startup, and the load time of every resource is logged.
+ *
+ * With no threads the tasks run in the submitting thread, one after another.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowStartup implements ApplicationListener<ApplicationReadyEvent>, AutoCloseable {
+
+	private static final Log logger = LogFactory.getLog(TensorflowStartup.class);
+
+	private final ThreadPoolExecutor executor;
+
+	private final List<Load<?>> loads = new ArrayList<>();
+
+	/**
+	 * @param threads Number of loading threads. 0 runs the loads in the submitting thread.
+	 */
+	public TensorflowStartup(int threads) {
+		if (threads > 0) {
+			this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "tensorflow-startup-" + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			// The idle threads exit after the boot, refreshed beans still can submit their reloads
+			this.executor.allowCoreThreadTimeOut(true);
+		}
+		else {
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * Starts loading a resource.
+	 * @param resource Resource name reported in the load times (e.g. "model").
+	 * @param loader Loads the resource.
+	 * @return The future result. Use {@link #await(Future, String)} to wait for it.
+	 */
+	public <T> Future<T> submit(String resource, Callable<T> loader) {
+		Load<T> load = new Load<>(resource, loader);
+		synchronized (loads) {
+			loads.add(load);
+		}
+		if (executor != null) {
+			executor.execute(load);
+		}
+		else {
+			load.run();
+		}
+		return load;
+	}
+
+	/**
+	 * Waits for a submitted load.
+	 * @param future Future returned by {@link #submit(String, Callable)}.
+	 * @param resource Resource name used in the error message.
+	 * @return The loaded resource.
+	 * @throws IllegalStateException if the load failed or the waiting thread is interrupted.
+	 */
+	public static <T> T await(Future<T> future, String resource) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading the " + resource, e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException("Failed to load the " + resource, cause);
+		}
+	}
+
+	/**
+	 * @return Resource name to load time in milliseconds of the completed loads, in submission order.
+	 */
+	public Map<String, Long> getLoadTimes() {
+		Map<String, Long> loadTimes = new LinkedHashMap<>();
+		for (Load<?> load : loads()) {
+			if (load.isDone()) {
+				loadTimes.put(load.resource, TimeUnit.NANOSECONDS.toMillis(load.finished - load.started));
+			}
+		}
+		return loadTimes;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		List<Load<?>> submitted = loads();
+		if (submitted.isEmpty()) {
+			return;
+		}
+
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+		long total = 0;
+		StringBuilder breakdown = new StringBuilder();
+		for (Load<?> load : submitted) {
+			// Fails the startup if a resource could not be loaded
+			await(load, load.resource);
+			long duration = load.finished - load.started;
+			first = Math.min(first, load.started);
+			last = Math.max(last, load.finished);
+			total += duration;
+			breakdown.append(", ").append(load.resource).append(": ")
+					.append(TimeUnit.NANOSECONDS.toMillis(duration)).append(" ms");
+		}
+
+		logger.info("TensorFlow startup loaded " + submitted.size() + " resources in "
+				+ TimeUnit.NANOSECONDS.toMillis(last - first) + " ms (" + TimeUnit.NANOSECONDS.toMillis(total)
+				+ " ms sequentially)" + breakdown);
+	}
+
+	private List<Load<?>> loads() {
+		synchronized (loads) {
+			return new ArrayList<>(loads);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Load task recording its start and completion time before the result is published.
+	 */
+	private static class Load<T> extends FutureTask<T> {
+
+		private final String resource;
+
+		private volatile long started;
+
+		private volatile long finished;
+
+		Load(String resource, Callable<T> loader) {
+			super(loader);
+			this.resource = resource;
+		}
+
+		@Override
+		public void run() {
+			started = System.nanoTime();
+			super.run();
+		}
+
+		@Override
+		protected void set(T result) {
+			finished = System.nanoTime();
+			super.set(result);
+		}
+
+		@Override
+		protected void setException(Throwable error) {
+			finished = System.nanoTime();
+			super.setException(error);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+/**
+ * Evaluates sample inputs through the full input conversion, model evaluation and output conversion path, before
+ * the processor starts consuming. This initializes the TensorFlow kernels, JIT compiles the converters and performs
+ * the first-touch allocations, so the first real messages run at steady state speed. The samples bypass the result
+ * cache, so every iteration runs the model. The micro-batch stacking and splitting is not warmed.
+ *
+ * The warm-up runs once all singletons are instantiated, which is before the input binding is started and before the
+ * actuator endpoints serve. A failed warm-up fails the application startup, so a processor that can not evaluate
+ * its samples never consumes messages. As health indicator it reports the warm-up evaluations and duration.
+ *
+ * @author Christian Tzolov
+ */
+public class TensorflowWarmup extends AbstractHealthIndicator implements SmartInitializingSingleton {
+
+	private static final Log logger = LogFactory.getLog(TensorflowWarmup.class);
+
+	private final ResourcePatternResolver resourceResolver;
+
+	private final List<String> samples;
+
+	private final int iterations;
+
+	private final Consumer<Message<?>> evaluator;
+
+	private volatile boolean completed = false;
+
+	private volatile int evaluations;
+
+	private volatile long duration;
+
+	/**
+	 * @param resourceResolver Resolves the sample location patterns.
+	 * @param samples Sample input locations.
+	 * @param iterations Number of times every sample is evaluated.
+	 * @param evaluator Evaluates a message through the processor. The result is discarded.
+	 */
+	public TensorflowWarmup(ResourcePatternResolver resourceResolver, List<String> samples, int iterations,
+			Consumer<Message<?>> evaluator) {
+		this.resourceResolver = resourceResolver;
+		this.samples = samples;
+		this.iterations = iterations;
+		this.evaluator = evaluator;
+	}
+
+	/**
+	 * Evaluates the samples.
+	 * @throws IllegalStateException if the samples can not be loaded or evaluated.
+	 */
+	@Override
+	public void afterSingletonsInstantiated() {
+		long start = System.nanoTime();
+		try {
+			List<Message<?>> messages = loadSamples();
+			if (messages.isEmpty()) {
+				logger.warn("TensorFlow warm-up is enabled but no samples are found at: " + samples);
+			}
+			for (int i = 0; i < iterations; i++) {
+				for (Message<?> message : messages) {
+					evaluator.accept(message);
+					evaluations++;
+				}
+			}
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("TensorFlow warm-up failed after " + evaluations + " evaluations", e);
+		}
+		duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		completed = true;
+		logger.info("TensorFlow warm-up completed " + evaluations + " evaluations in " + duration + " ms");
+	}
+
+	private List<Message<?>> loadSamples() throws IOException {
+		ObjectMapper objectMapper = new ObjectMapper();
+		List<Message<?>> messages = new ArrayList<>();
+		for (String sample : samples) {
+			for (Resource resource : resourceResolver.getResources(sample)) {
+				try (InputStream is = resource.getInputStream()) {
+					String filename = resource.getFilename();
+					if (filename != null && filename.endsWith(".json")) {
+						messages.add(MessageBuilder.withPayload(objectMapper.readValue(is, Map.class)).build());
+					}
+					else {
+						messages.add(MessageBuilder.withPayload(IOUtils.toByteArray(is)).build());
+					}
+				}
+			}
+		}
+		return messages;
+	}
+
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	@Override
+	protected void doHealthCheck(Health.Builder builder) throws Exception {
+		if (completed) {
+			builder.up();
+		}
+		else {
+			builder.outOfService();
+		}
+		builder.withDetail("evaluations", evaluations).withDetail("duration", duration);
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.tensorflow.DataType;
+import org.tensorflow.Tensor;
+
+import org.springframework.messaging.Message;
+import org.springframework.tuple.Tuple;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorCodecTest {
+
+	private static final float[][] VALUES = new float[][] {
+			{ -1.5f, 0f, 0.333f, 2.75f }, { 100.125f, -42f, 7.5e-3f, 1f } };
+
+	@Test
+	public void lz4() {
+		long[][] inArray = new long[16][64];
+		inArray[3][5] = 42L;
+		Tensor inTensor = Tensor.create(inArray);
+
+		Message<byte[]> message = TensorRawBinaryConverter.toMessage(inTensor, TensorCodec.Encoding.LZ4);
+		assertEquals("LZ4", message.getHeaders().get(TensorCodec.TF_ENCODING));
+		assertTrue(message.getPayload().length < inTensor.numBytes());
+
+		Tensor outTensor = TensorRawBinaryConverter.toTensor(message.getPayload(), message.getHeaders());
+		assertEquals(DataType.INT64, outTensor.dataType());
+		assertArrayEquals(inArray, outTensor.copyTo(new long[16][64]));
+	}
+
+	@Test
+	public void decodeStringParameters() {
+		// Binders can deliver the encoding parameter headers as strings
+		for (TensorCodec.Encoding encoding : new TensorCodec.Encoding[] {
+				TensorCodec.Encoding.LZ4, TensorCodec.Encoding.INT8 }) {
+			Tensor inTensor = Tensor.create(VALUES);
+			TensorCodec.EncodedTensor encoded = TensorCodec.UNMETERED.encode(inTensor, encoding);
+			Map<String, Object> parameters = new HashMap<>();
+			for (Map.Entry<String, Object> parameter : encoded.getParameters().entrySet()) {
+				parameters.put(parameter.getKey(), parameter.getValue().toString());
+			}
+
+			Tensor outTensor = TensorCodec.UNMETERED.decode(DataType.FLOAT, inTensor.shape(), encoded.getBytes(),
+					encoding, parameters);
+			assertValues(outTensor.copyTo(new float[2][4]), (100.125f + 42f) / 255);
+			inTensor.close();
+			outTensor.close();
+		}
+	}
+
+	@Test
+	public void float16() {
+		Tensor outTensor = tupleRoundTrip(TensorCodec.Encoding.FLOAT16, 2);
+		assertEquals(DataType.FLOAT, outTensor.dataType());
+		assertValues(outTensor.copyTo(new float[2][4]), 1e-3f);
+	}
+
+	@Test
+	public void bfloat16() {
+		Tensor outTensor = tupleRoundTrip(TensorCodec.Encoding.BFLOAT16, 2);
+		assertValues(outTensor.copyTo(new float[2][4]), 1e-2f);
+	}
+
+	@Test
+	public void int8() {
+		Tensor outTensor = tupleRoundTrip(TensorCodec.Encoding.INT8, 1);
+		// The quantization step is (max - min) / 255
+		assertValues(outTensor.copyTo(new float[2][4]), (100.125f + 42f) / 255);
+	}
+
+	@Test
+	public void recordMetersOnInjectedRegistry() {
+		MeterRegistry meterRegistry = new SimpleMeterRegistry();
+		TensorCodec codec = new TensorCodec(meterRegistry);
+
+		Message<byte[]> message = TensorRawBinaryConverter.toMessage(Tensor.create(VALUES), TensorCodec.Encoding.INT8,
+				codec);
+		TensorRawBinaryConverter.toTensor(message.getPayload(), message.getHeaders(), codec).close();
+
+		assertEquals(1, meterRegistry.find("tensorflow.transport.encode").tags("encoding", "INT8").timer().count());
+		assertEquals(1, meterRegistry.find("tensorflow.transport.decode").tags("encoding", "INT8").timer().count());
+		assertEquals(4.0, meterRegistry.find("tensorflow.transport.compression.ratio").tags("encoding", "INT8")
+				.summary().mean(), 0.5);
+	}
+
+	@Test
+	public void halfPrecisionConversions() {
+		assertEquals((short) 0x3c00, TensorCodec.floatToHalf(1f));
+		assertEquals((short) 0xc000, TensorCodec.floatToHalf(-2f));
+		assertEquals((short) 0x7bff, TensorCodec.floatToHalf(65504f));
+		assertEquals((short) 0x7c00, TensorCodec.floatToHalf(1e6f));
+		assertEquals((short) 0x0001, TensorCodec.floatToHalf(5.9604645e-8f));
+		assertEquals(65504f, TensorCodec.halfToFloat((short) 0x7bff), 0f);
+		assertEquals(5.9604645e-8f, TensorCodec.halfToFloat((short) 0x0001), 0f);
+		assertTrue(Float.isNaN(TensorCodec.halfToFloat(TensorCodec.floatToHalf(Float.NaN))));
+
+		assertEquals((short) 0x3f80, TensorCodec.floatToBFloat16(1f));
+		assertEquals(1f, TensorCodec.bfloat16ToFloat((short) 0x3f80), 0f);
+	}
+
+	private Tensor tupleRoundTrip(TensorCodec.Encoding encoding, int bytesPerValue) {
+		Tensor inTensor = Tensor.create(VALUES);
+
+		Tuple tuple = TensorTupleConverter.toTuple(inTensor, encoding);
+		assertEquals(encoding.name(), tuple.getString(TensorTupleConverter.TF_ENCODING));
+		assertEquals(8 * bytesPerValue, ((byte[]) tuple.getValue(TensorTupleConverter.TF_VALUE)).length);
+
+		Tensor outTensor = TensorTupleConverter.toTensor(tuple);
+		assertArrayEquals(new long[] { 2, 4 }, outTensor.shape());
+		return outTensor;
+	}
+
+	private void assertValues(float[][] actual, float relativeDelta) {
+		for (int i = 0; i < VALUES.length; i++) {
+			for (int j = 0; j < VALUES[i].length; j++) {
+				float expected = VALUES[i][j];
+				assertEquals(expected, actual[i][j], Math.max(Math.abs(expected) * relativeDelta, relativeDelta));
+			}
+		}
+	}
+}
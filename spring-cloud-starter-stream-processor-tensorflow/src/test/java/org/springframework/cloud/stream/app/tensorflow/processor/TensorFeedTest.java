@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.FloatBuffer;
+
+import org.junit.Test;
+import org.tensorflow.DataType;
+import org.tensorflow.Tensor;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorFeedTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectShapeMismatch() {
+		TensorFeed.of(new float[] { 1f, 2f, 3f }, 2, 2);
+	}
+
+	@Test
+	public void flattenRectangularArray() {
+		TensorFeed feed = TensorFeed.fromArray(new float[][] { { 1f, 2f }, { 3f, 4f }, { 5f, 6f } });
+
+		assertEquals(DataType.FLOAT, feed.getDataType());
+		try (Tensor tensor = feed.toTensor()) {
+			assertArrayEquals(new long[] { 3, 2 }, tensor.shape());
+			assertArrayEquals(new float[][] { { 1f, 2f }, { 3f, 4f }, { 5f, 6f } }, tensor.copyTo(new float[3][2]));
+		}
+	}
+
+	@Test
+	public void skipJaggedArray() {
+		assertNull(TensorFeed.fromArray(new int[][] { { 1, 2 }, { 3 } }));
+		assertNull(TensorFeed.fromArray(new String[] { "a" }));
+	}
+
+	@Test
+	public void reuseBuffer() {
+		FloatBuffer buffer = FloatBuffer.wrap(new float[] { 1f, 2f, 3f, 4f });
+		TensorFeed feed = TensorFeed.of(buffer, 2, 2);
+
+		try (Tensor first = feed.toTensor(); Tensor second = feed.toTensor()) {
+			assertArrayEquals(first.copyTo(new float[2][2]), second.copyTo(new float[2][2]));
+		}
+		assertEquals(0, buffer.position());
+	}
+
+	@Test
+	public void matchReflectiveTensorCreation() {
+		int[][] values = new int[][] { { 1, 2, 3 }, { 4, 5, 6 } };
+		try (Tensor reflective = Tensor.create(values); Tensor bulk = TensorFlowService.toFeedTensor(values)) {
+			assertEquals(reflective.dataType(), bulk.dataType());
+			assertArrayEquals(reflective.shape(), bulk.shape());
+			assertArrayEquals(reflective.copyTo(new int[2][3]), bulk.copyTo(new int[2][3]));
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tensorflow.Tensor;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorFlowServiceTest {
+
+	private final Resource modelLocation = new ClassPathResource("tensorflow/model/linear_regression_graph.proto");
+
+	private final Map<String, Object> feeds = Collections.<String, Object>singletonMap("Placeholder", 0.7f);
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private TensorFlowService tensorFlowService;
+
+	@Before
+	public void before() throws Exception {
+		meterRegistry = new SimpleMeterRegistry();
+		tensorFlowService = new TensorFlowService(modelLocation);
+		tensorFlowService.setMeterRegistry(meterRegistry);
+	}
+
+	@After
+	public void after() throws Exception {
+		tensorFlowService.close();
+	}
+
+	@Test
+	public void swapModel() throws Exception {
+		Resource newModelLocation = new ClassPathResource("/tensorflow/model/linear_regression_graph.proto");
+		tensorFlowService.swap(newModelLocation, Collections.singletonList("add"));
+
+		assertEquals(newModelLocation, tensorFlowService.getModelLocation());
+		assertEquals(0.29999298f, evaluate(), 0f);
+		assertEquals(1, meterRegistry.timer("tensorflow.model.swap").count());
+	}
+
+	@Test
+	public void keepCurrentModelOnInvalidSwap() throws Exception {
+		try {
+			tensorFlowService.swap(modelLocation, Collections.singletonList("missing_output:0"));
+			fail("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		assertEquals(modelLocation, tensorFlowService.getModelLocation());
+		assertEquals(0.29999298f, evaluate(), 0f);
+		assertEquals(1.0, meterRegistry.counter("tensorflow.model.swap.failures").count(), 0);
+	}
+
+	@Test
+	public void keepOutputsOfCurrentModelOnInvalidSwap() throws Exception {
+		tensorFlowService.swap(modelLocation, Collections.singletonList("add"));
+		try {
+			tensorFlowService.swap(modelLocation, Collections.singletonList("missing_output:0"));
+			fail("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		// No fetches, the outputs the current model is loaded for are fetched
+		Map<String, Tensor> outputs = tensorFlowService.evaluate(null, feeds, null);
+		try {
+			assertEquals(Collections.singleton("add"), outputs.keySet());
+		}
+		finally {
+			tensorFlowService.getTensorMemoryTracker().closeAll(outputs.values());
+		}
+	}
+
+	@Test
+	public void closeReplacedModelAfterLastRelease() throws Exception {
+		TensorflowModel model = new TensorflowModel(modelLocation, TensorflowSessionPool.Mode.SHARED, 1);
+
+		assertTrue(model.retain());
+		model.close();
+		// The in-flight reference keeps the model open
+		assertTrue(model.retain());
+		model.release();
+
+		model.release();
+		assertFalse(model.retain());
+	}
+
+	@Test
+	public void recordStageMeters() {
+		evaluate();
+
+		assertNotNull(tensorFlowService.getModelMeters(null));
+		assertEquals(1, meterRegistry.find("tensorflow.stage").tags("stage", "session.run",
+				"model", "linear_regression_graph.proto").timer().count());
+		assertEquals(1, meterRegistry.find("tensorflow.stage").tags("stage", "tensor.creation").timer().count());
+		assertEquals(4, meterRegistry.find("tensorflow.feed.bytes").summary().totalAmount(), 0);
+		assertEquals(0, meterRegistry.find("tensorflow.memory.live.tensors").gauge().value(), 0);
+	}
+
+	@Test
+	public void keepStageMetersOnReload() throws Exception {
+		evaluate();
+		tensorFlowService.swap(modelLocation, Collections.singletonList("add"));
+		evaluate();
+
+		// Same location, same meters
+		assertEquals(1, meterRegistry.find("tensorflow.stage").tags("stage", "session.run").timers().size());
+		assertEquals(2, meterRegistry.find("tensorflow.stage").tags("stage", "session.run").timer().count());
+	}
+
+	@Test
+	public void removeStageMetersOfReplacedLocation() throws Exception {
+		evaluate();
+		Resource newModelLocation = new FileSystemResource(modelLocation.getFile());
+		tensorFlowService.swap(newModelLocation, Collections.singletonList("add"));
+		evaluate();
+
+		assertEquals(1, meterRegistry.find("tensorflow.stage").tags("stage", "session.run").timers().size());
+		assertEquals(1, meterRegistry.find("tensorflow.stage").tags("stage", "session.run",
+				"location", newModelLocation.getDescription()).timer().count());
+	}
+
+	@Test
+	public void closeOutputTensorsAfterUse() {
+		TensorMemoryTracker tensorMemoryTracker = tensorFlowService.getTensorMemoryTracker();
+		Map<String, Tensor> outputs = tensorFlowService.evaluate(feeds, Arrays.asList("add", "mul", "add"));
+
+		// The feed is closed, the duplicated output too
+		assertEquals(Arrays.asList("add", "mul"), new ArrayList<>(outputs.keySet()));
+		assertEquals(2, tensorMemoryTracker.getLiveTensors());
+
+		tensorMemoryTracker.closeAll(outputs.values());
+		assertEquals(0, tensorMemoryTracker.getLiveTensors());
+		assertEquals(0, tensorMemoryTracker.getLiveBytes());
+	}
+
+	@Test
+	public void closeOutputTensorsOnFailure() throws Exception {
+		final AtomicInteger tracked = new AtomicInteger();
+		TensorMemoryTracker tensorMemoryTracker = new TensorMemoryTracker() {
+			@Override
+			public Tensor track(Tensor tensor) {
+				// The feed and the add output are tracked, the mul output fails
+				if (tracked.incrementAndGet() == 3) {
+					throw new IllegalStateException("Tracking failed");
+				}
+				return super.track(tensor);
+			}
+		};
+		TensorFlowService failingService = new TensorFlowService(modelLocation, TensorflowSessionPool.Mode.SHARED, 1,
+				tensorMemoryTracker);
+		try {
+			failingService.evaluate(feeds, Arrays.asList("add", "mul"));
+			fail("The failed output tracking must fail the evaluation");
+		}
+		catch (IllegalStateException e) {
+			assertEquals(3, tracked.get());
+			assertEquals(0, tensorMemoryTracker.getLiveTensors());
+			assertEquals(0, tensorMemoryTracker.getLiveBytes());
+		}
+		finally {
+			failingService.close();
+		}
+	}
+
+	private float evaluate() {
+		Tensor output = tensorFlowService.evaluate(feeds, "add", 0);
+		try {
+			return output.copyTo(new float[1])[0];
+		}
+		finally {
+			tensorFlowService.getTensorMemoryTracker().close(output);
+		}
+	}
+}
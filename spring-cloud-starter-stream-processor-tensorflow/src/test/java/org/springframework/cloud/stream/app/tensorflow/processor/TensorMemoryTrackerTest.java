@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.tensorflow.Tensor;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorMemoryTrackerTest {
+
+	@Test
+	public void countLiveTensors() {
+		TensorMemoryTracker tracker = new TensorMemoryTracker();
+
+		Tensor t1 = tracker.track(Tensor.create(new float[] { 1f, 2f }));
+		Tensor t2 = tracker.track(Tensor.create(new long[] { 1L }));
+
+		assertEquals(2, tracker.getLiveTensors());
+		assertEquals(16, tracker.getLiveBytes());
+
+		tracker.close(t1);
+		assertEquals(1, tracker.getLiveTensors());
+		assertEquals(8, tracker.getLiveBytes());
+
+		tracker.close(t2);
+		assertEquals(0, tracker.getLiveTensors());
+		assertEquals(0, tracker.getLiveBytes());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectAdmissionAboveLimit() {
+		TensorMemoryTracker tracker = new TensorMemoryTracker(4, 10);
+		Tensor tensor = tracker.track(Tensor.create(new float[] { 1f, 2f }));
+		try {
+			tracker.awaitAdmission();
+		}
+		finally {
+			tracker.close(tensor);
+		}
+	}
+
+	@Test
+	public void admitWhenReleased() throws InterruptedException {
+		final TensorMemoryTracker tracker = new TensorMemoryTracker(4, 5000);
+		final Tensor tensor = tracker.track(Tensor.create(new float[] { 1f, 2f }));
+
+		Thread releaser = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				tracker.close(tensor);
+			}
+		});
+		releaser.start();
+
+		tracker.awaitAdmission();
+		releaser.join();
+		assertEquals(0, tracker.getLiveBytes());
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+import org.tensorflow.DataType;
+import org.tensorflow.Tensor;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorRawBinaryConverterTest {
+
+	@Test
+	public void floatMatrix() {
+		float[][] inArray = new float[][] { { 1.5f, 2.5f, 3.5f }, { 4.5f, 5.5f, 6.5f } };
+		Tensor inTensor = Tensor.create(inArray);
+
+		Message<byte[]> message = TensorRawBinaryConverter.toMessage(inTensor);
+
+		assertEquals("FLOAT", message.getHeaders().get(TensorRawBinaryConverter.TF_DATA_TYPE_HEADER));
+		assertEquals("2,3", message.getHeaders().get(TensorRawBinaryConverter.TF_SHAPE_HEADER));
+		assertEquals(TensorRawBinaryConverter.CONTENT_TYPE, message.getHeaders().get(MessageHeaders.CONTENT_TYPE));
+		assertEquals(24, message.getPayload().length);
+		assertEquals(1.5f, ByteBuffer.wrap(message.getPayload()).order(ByteOrder.LITTLE_ENDIAN).getFloat(), 0f);
+
+		Tensor outTensor = TensorRawBinaryConverter.toTensor(message.getPayload(), message.getHeaders());
+
+		assertEquals(DataType.FLOAT, outTensor.dataType());
+		assertArrayEquals(new long[] { 2, 3 }, outTensor.shape());
+		assertArrayEquals(inArray, outTensor.copyTo(new float[2][3]));
+	}
+
+	@Test
+	public void dropInputEncodingFromOutput() {
+		float[] values = new float[256];
+		values[7] = 0.7f;
+		Message<byte[]> input = TensorRawBinaryConverter.toMessage(Tensor.create(values), TensorCodec.Encoding.LZ4);
+		Message<byte[]> result = TensorRawBinaryConverter.toMessage(Tensor.create(values), TensorCodec.Encoding.NONE);
+
+		Message<?> output = TensorflowProcessorConfiguration.toOutputMessage(input, result, false);
+
+		assertFalse(output.getHeaders().containsKey(TensorCodec.TF_ENCODING));
+		assertFalse(output.getHeaders().containsKey(TensorCodec.TF_RAW_LENGTH));
+		assertEquals(1024, ((byte[]) output.getPayload()).length);
+		Tensor outTensor = TensorRawBinaryConverter.toTensor((byte[]) output.getPayload(), output.getHeaders());
+		assertArrayEquals(values, outTensor.copyTo(new float[256]), 0f);
+	}
+
+	@Test
+	public void dropInputEncodingFromSavedOutput() {
+		Message<byte[]> input = TensorRawBinaryConverter.toMessage(Tensor.create(new float[256]),
+				TensorCodec.Encoding.LZ4);
+
+		Message<?> output = TensorflowProcessorConfiguration.toOutputMessage(input, 0.7f, true);
+
+		assertEquals(0.7f, output.getHeaders().get(TensorflowProcessorConfiguration.TF_OUTPUT_HEADER));
+		assertFalse(output.getHeaders().containsKey(TensorRawBinaryConverter.TF_DATA_TYPE_HEADER));
+		assertFalse(output.getHeaders().containsKey(TensorCodec.TF_ENCODING));
+		assertFalse(output.getHeaders().containsKey(MessageHeaders.CONTENT_TYPE));
+	}
+
+	@Test
+	public void longScalar() {
+		Tensor inTensor = Tensor.create(666L);
+
+		Message<byte[]> message = TensorRawBinaryConverter.toMessage(inTensor);
+		Tensor outTensor = TensorRawBinaryConverter.toTensor(message.getPayload(), message.getHeaders());
+
+		assertEquals(0, outTensor.numDimensions());
+		assertEquals(666L, outTensor.longValue());
+	}
+}
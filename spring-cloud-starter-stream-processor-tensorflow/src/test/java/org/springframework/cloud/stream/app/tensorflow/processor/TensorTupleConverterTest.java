@@ -50,6 +50,26 @@ public class TensorTupleConverterTest {
 		assertArrayEquals(inLongArray, outLongArray);
 	}
 
+	@Test
+	public void floatMatrix() {
+		float[][] inFloatArray = new float[3][1024];
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 1024; j++) {
+				inFloatArray[i][j] = i * 1024 + j + 0.5f;
+			}
+		}
+
+		Tensor inTensor = Tensor.create(inFloatArray);
+
+		Tuple tuple = TensorTupleConverter.toTuple(inTensor);
+		Tensor outTensor = TensorTupleConverter.toTensor(tuple);
+
+		float[][] outFloatArray = outTensor.copyTo(new float[3][1024]);
+
+		compareTensors(inTensor, outTensor);
+		assertArrayEquals(inFloatArray, outFloatArray);
+	}
+
 	@Test
 	public void longScalar() {
 		long inLong = 666;
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.tensorflow.Tensor;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowEvaluationContextTest {
+
+	@Test
+	public void reuseClearedProcessorContext() {
+		TensorflowEvaluationContext context = TensorflowEvaluationContext.current();
+
+		Map<String, Object> first = context.acquireProcessorContext();
+		first.put("key", "value");
+		context.releaseProcessorContext(first);
+
+		Map<String, Object> second = context.acquireProcessorContext();
+		assertSame(first, second);
+		assertTrue(second.isEmpty());
+		context.releaseProcessorContext(second);
+	}
+
+	@Test
+	public void separateNestedProcessorContext() {
+		TensorflowEvaluationContext context = TensorflowEvaluationContext.current();
+
+		Map<String, Object> outer = context.acquireProcessorContext();
+		outer.put("key", "value");
+		Map<String, Object> nested = context.acquireProcessorContext();
+		assertNotSame(outer, nested);
+		context.releaseProcessorContext(nested);
+
+		assertSame("value", outer.get("key"));
+		context.releaseProcessorContext(outer);
+	}
+
+	@Test
+	public void reuseFeedTensors() {
+		TensorflowEvaluationContext context = TensorflowEvaluationContext.current();
+
+		Tensor[] first = context.acquireFeedTensors(2);
+		try (Tensor tensor = Tensor.create(1f)) {
+			first[0] = tensor;
+		}
+		context.releaseFeedTensors(first);
+
+		Tensor[] second = context.acquireFeedTensors(2);
+		assertSame(first, second);
+		assertNull(second[0]);
+		context.releaseFeedTensors(second);
+	}
+}
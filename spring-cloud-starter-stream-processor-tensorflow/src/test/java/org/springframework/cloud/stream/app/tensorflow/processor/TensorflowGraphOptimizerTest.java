@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tensorflow.DataType;
+import org.tensorflow.Graph;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
+
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowGraphOptimizerTest {
+
+	private static final List<String> FETCHES = Collections.singletonList("add");
+
+	private static final float[] WEIGHTS = new float[] { -1f, -0.5f, -0.3f, 0f, 0.1f, 0.25f, 0.7f, 1f };
+
+	private byte[] graphDef;
+
+	private TensorflowGraphOptimizer optimizer;
+
+	@Before
+	public void before() throws Exception {
+		graphDef = GraphDefLoader.load(new ClassPathResource("tensorflow/model/linear_regression_graph.proto"));
+		optimizer = new TensorflowGraphOptimizer();
+	}
+
+	@Test
+	public void removeIdentity() {
+		byte[] optimized = optimizer.optimize("linear_regression", graphDef, FETCHES);
+
+		TensorflowSignature signature = TensorflowSignature.read("optimized", optimized);
+		assertEquals(5, signature.getOperationCount());
+		assertNull(signature.getOperationType("Variable/read"));
+		assertNull(signature.getOperationType("Variable_1/read"));
+		assertEquals(Collections.singleton("Placeholder"), signature.getRequiredInputs(FETCHES));
+		assertEquals(0.29999298f, evaluate(optimized, Collections.<String, Object>singletonMap("Placeholder", 0.7f)),
+				0f);
+	}
+
+	@Test
+	public void pruneUnusedOperations() {
+		optimizer.setRemoveIdentity(false);
+		byte[] optimized = optimizer.optimize("linear_regression", graphDef, Collections.singletonList("mul"));
+
+		TensorflowSignature signature = TensorflowSignature.read("optimized", optimized);
+		assertNull(signature.getOperationType("add"));
+		assertNull(signature.getOperationType("Variable_1"));
+		assertEquals("Mul", signature.getOperationType("mul"));
+	}
+
+	@Test
+	public void foldFixedInput() {
+		optimizer.setFixedInputs(Collections.singletonMap("Placeholder", "0.7"));
+		byte[] optimized = optimizer.optimize("linear_regression", graphDef, FETCHES);
+
+		TensorflowSignature signature = TensorflowSignature.read("optimized", optimized, optimizer.getFixedInputs());
+		assertEquals(1, signature.getOperationCount());
+		assertEquals("Const", signature.getOperationType("add"));
+		assertTrue(signature.getInputs().isEmpty());
+		assertTrue(signature.isFixedInput("Placeholder"));
+		// Feeds of the fixed input are accepted and ignored
+		signature.validateFeeds(Collections.<String, Object>singletonMap("Placeholder", 0.5f), FETCHES);
+		assertEquals(0.29999298f, evaluate(optimized, Collections.<String, Object>emptyMap()), 1e-6f);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectFixedInputOfNonPlaceholder() {
+		optimizer.setFixedInputs(Collections.singletonMap("mul", "0.7"));
+		optimizer.optimize("linear_regression", graphDef, FETCHES);
+	}
+
+	@Test
+	public void quantizeWeights() {
+		optimizer.setQuantizeWeights(true);
+		optimizer.setQuantizeMinBytes(16);
+		byte[] optimized = optimizer.optimize("scale", scaleGraphDef(), Collections.singletonList("y"));
+
+		TensorflowSignature signature = TensorflowSignature.read("optimized", optimized);
+		assertEquals("Dequantize", signature.getOperationType("w"));
+		assertEquals("Const", signature.getOperationType("w/quantized"));
+		float[] y = evaluateScale(optimized);
+		for (int i = 0; i < WEIGHTS.length; i++) {
+			assertEquals(WEIGHTS[i], y[i], 0.01f);
+		}
+	}
+
+	@Test
+	public void keepQuantizedWeightsThroughAllPasses() {
+		optimizer.setQuantizeWeights(true);
+		optimizer.setQuantizeMinBytes(16);
+		byte[] quantized = optimizer.optimize("scale", scaleGraphDef(), Collections.singletonList("y"));
+
+		// Optimized again, e.g. a quantized model reloaded through the registry: the Dequantize is not folded back
+		optimizer.setQuantizeWeights(false);
+		byte[] optimized = optimizer.optimize("scale", quantized, Collections.singletonList("y"));
+
+		TensorflowSignature signature = TensorflowSignature.read("optimized", optimized);
+		assertEquals("Dequantize", signature.getOperationType("w"));
+		assertEquals(TensorflowGraphDef.DT_QUINT8, dataType(optimized, "w/quantized"));
+		float[] y = evaluateScale(optimized);
+		for (int i = 0; i < WEIGHTS.length; i++) {
+			assertEquals(WEIGHTS[i], y[i], 0.01f);
+		}
+	}
+
+	@Test
+	public void keepFloatWeightsAboveMaxError() {
+		optimizer.setQuantizeWeights(true);
+		optimizer.setQuantizeMinBytes(16);
+		optimizer.setQuantizeMaxError(1e-6f);
+		byte[] optimized = optimizer.optimize("scale", scaleGraphDef(), Collections.singletonList("y"));
+
+		TensorflowSignature signature = TensorflowSignature.read("optimized", optimized);
+		assertEquals("Const", signature.getOperationType("w"));
+		assertNull(signature.getOperationType("w/quantized"));
+	}
+
+	/**
+	 * @return y = x * w GraphDef, with a float placeholder x and a constant w of WEIGHTS.length elements.
+	 */
+	private static byte[] scaleGraphDef() {
+		long[] shape = new long[] { WEIGHTS.length };
+		ByteBuffer weights = ByteBuffer.allocate(WEIGHTS.length * 4).order(ByteOrder.nativeOrder());
+		for (float weight : WEIGHTS) {
+			weights.putFloat(weight);
+		}
+
+		TensorflowGraphDef graph = TensorflowGraphDef.parse(new byte[0]);
+		Map<String, byte[]> placeholderAttrs = new LinkedHashMap<>();
+		placeholderAttrs.put("dtype", TensorflowGraphDef.Node.typeAttr(1));
+		ByteArrayOutputStream shapeAttr = new ByteArrayOutputStream();
+		ProtobufWriter.writeBytesField(shapeAttr, TensorflowGraphDef.ATTR_SHAPE, TensorflowGraphDef.shapeProto(shape));
+		placeholderAttrs.put("shape", shapeAttr.toByteArray());
+		graph.getNodes().add(TensorflowGraphDef.Node.create("x", "Placeholder", "",
+				Collections.<String>emptyList(), placeholderAttrs));
+		graph.getNodes().add(TensorflowGraphDef.Node.constant("w", "", DataType.FLOAT,
+				TensorflowGraphDef.Node.tensorProto(DataType.FLOAT, shape, weights.array())));
+		graph.getNodes().add(TensorflowGraphDef.Node.create("y", "Mul", "", Arrays.asList("x", "w"),
+				Collections.singletonMap("T", TensorflowGraphDef.Node.typeAttr(1))));
+		return graph.toByteArray();
+	}
+
+	/**
+	 * @return The dtype attribute value of the Const node.
+	 */
+	private static int dataType(byte[] graphDef, String name) {
+		ProtobufReader attrValue = TensorflowGraphDef.parse(graphDef).getNodesByName().get(name).getAttr("dtype");
+		while (attrValue.next()) {
+			if (attrValue.fieldNumber() == TensorflowGraphDef.ATTR_TYPE) {
+				return (int) attrValue.readVarint();
+			}
+			attrValue.skip();
+		}
+		return -1;
+	}
+
+	private static float[] evaluateScale(byte[] graphDef) {
+		float[] ones = new float[WEIGHTS.length];
+		Arrays.fill(ones, 1f);
+		try (Graph graph = new Graph()) {
+			graph.importGraphDef(graphDef);
+			try (Session session = new Session(graph); Tensor x = Tensor.create(ones);
+					Tensor y = session.runner().feed("x", x).fetch("y").run().get(0)) {
+				return y.copyTo(new float[WEIGHTS.length]);
+			}
+		}
+	}
+
+	private static float evaluate(byte[] graphDef, Map<String, Object> feeds) {
+		try (Graph graph = new Graph()) {
+			graph.importGraphDef(graphDef);
+			try (Session session = new Session(graph)) {
+				Session.Runner runner = session.runner();
+				for (Map.Entry<String, Object> feed : feeds.entrySet()) {
+					runner = runner.feed(feed.getKey(), Tensor.create(feed.getValue()));
+				}
+				try (Tensor result = runner.fetch("add").run().get(0)) {
+					return result.floatValue();
+				}
+			}
+		}
+	}
+}
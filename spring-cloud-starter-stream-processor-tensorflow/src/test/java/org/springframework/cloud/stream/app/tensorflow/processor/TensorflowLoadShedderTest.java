@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.core.DestinationResolver;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowLoadShedderTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	public void dropPastDeadline() {
+		TensorflowLoadShedder loadShedder = loadShedder(0, null, null);
+		long now = System.currentTimeMillis();
+
+		assertTrue(loadShedder.shed(MessageBuilder.withPayload("a").setHeader("tf_deadline", now - 1000).build()));
+		assertFalse(loadShedder.shed(MessageBuilder.withPayload("b")
+				.setHeader("tf_deadline", String.valueOf(now + 60000)).build()));
+		// No deadline, no max age
+		assertFalse(loadShedder.shed(MessageBuilder.withPayload("c").build()));
+
+		assertEquals(1, meterRegistry.find("tensorflow.deadline.shed").tags("action", "dropped").counter().count(), 0);
+	}
+
+	@Test
+	public void dropAboveMaxAge() {
+		TensorflowLoadShedder loadShedder = loadShedder(5000, null, null);
+		long now = System.currentTimeMillis();
+
+		assertTrue(loadShedder.shed(MessageBuilder.withPayload("a").setHeader("tf_timestamp", now - 10000).build()));
+		assertFalse(loadShedder.shed(MessageBuilder.withPayload("b").setHeader("tf_timestamp", now - 10000)
+				.setHeader("tf_max_age", 60000).build()));
+		assertTrue(loadShedder.shed(MessageBuilder.withPayload("c").setHeader("tf_timestamp", now - 2000)
+				.setHeader("tf_max_age", 1000).build()));
+		assertFalse(loadShedder.shed(MessageBuilder.withPayload("d").setHeader("tf_timestamp", now).build()));
+
+		assertEquals(2, meterRegistry.find("tensorflow.deadline.age").tags("result", "shed").timer().count());
+		assertEquals(2, meterRegistry.find("tensorflow.deadline.age").tags("result", "accepted").timer().count());
+	}
+
+	@Test
+	public void divertToShedDestination() {
+		final QueueChannel shedChannel = new QueueChannel();
+		TensorflowLoadShedder loadShedder = loadShedder(0, new DestinationResolver<MessageChannel>() {
+			@Override
+			public MessageChannel resolveDestination(String name) {
+				assertEquals("expired", name);
+				return shedChannel;
+			}
+		}, "expired");
+
+		Message<?> expired = MessageBuilder.withPayload("a")
+				.setHeader("tf_deadline", System.currentTimeMillis() - 1000).build();
+		assertTrue(loadShedder.shed(expired));
+		assertSame(expired, shedChannel.receive(0));
+		assertEquals(1, meterRegistry.find("tensorflow.deadline.shed").tags("action", "diverted").counter().count(), 0);
+	}
+
+	private TensorflowLoadShedder loadShedder(long maxAge, DestinationResolver<MessageChannel> destinationResolver,
+			String shedDestination) {
+		return new TensorflowLoadShedder("tf_deadline", "tf_max_age", "tf_timestamp", maxAge, destinationResolver,
+				shedDestination, meterRegistry);
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowMetricsTest {
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private TensorflowMetrics metrics;
+
+	@Before
+	public void before() {
+		meterRegistry = new SimpleMeterRegistry();
+		metrics = new TensorflowMetrics(meterRegistry, new TensorMemoryTracker());
+	}
+
+	@Test
+	public void doNotRegisterRemovedModelAgain() throws Exception {
+		try (TensorflowModel evicted = model(); TensorflowModel reloaded = model()) {
+			metrics.forModel("a", evicted).record(TensorflowMetrics.Stage.SESSION_RUN, 1000);
+			metrics.remove("a", evicted.getVersion());
+			assertNull(meterRegistry.find("tensorflow.stage").tag("model", "a").timer());
+
+			// An evaluation still running on the evicted model
+			metrics.forModel("a", evicted).record(TensorflowMetrics.Stage.SESSION_RUN, 1000);
+			assertNull(meterRegistry.find("tensorflow.stage").tag("model", "a").timer());
+
+			metrics.forModel("a", reloaded).record(TensorflowMetrics.Stage.SESSION_RUN, 1000);
+			assertEquals(1, meterRegistry.find("tensorflow.stage").tags("model", "a", "stage", "session.run")
+					.timer().count());
+		}
+	}
+
+	private static TensorflowModel model() throws IOException {
+		return new TensorflowModel(new ClassPathResource("tensorflow/model/linear_regression_graph.proto"),
+				TensorflowSessionPool.Mode.SHARED, 1);
+	}
+}
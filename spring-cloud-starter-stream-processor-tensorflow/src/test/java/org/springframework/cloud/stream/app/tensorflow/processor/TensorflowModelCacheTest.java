@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowModelCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final List<String> requests = new ArrayList<>();
+
+	private byte[] graphDef;
+
+	private String etag;
+
+	private HttpServer server;
+
+	private Resource modelLocation;
+
+	@Before
+	public void before() throws Exception {
+		graphDef = GraphDefLoader.load(new ClassPathResource("tensorflow/model/linear_regression_graph.proto"));
+		etag = "\"" + TensorflowModelCache.sha256(graphDef) + "\"";
+
+		// Serves the model with its ETag and answers the matching conditional requests with 304
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/model.pb", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+				synchronized (requests) {
+					requests.add(String.valueOf(ifNoneMatch));
+				}
+				exchange.getResponseHeaders().set("ETag", etag);
+				if (etag.equals(ifNoneMatch)) {
+					exchange.sendResponseHeaders(304, -1);
+				}
+				else {
+					exchange.sendResponseHeaders(200, graphDef.length);
+					try (OutputStream os = exchange.getResponseBody()) {
+						os.write(graphDef);
+					}
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		modelLocation = new UrlResource("http://localhost:" + server.getAddress().getPort() + "/model.pb");
+	}
+
+	@After
+	public void after() {
+		server.stop(0);
+	}
+
+	@Test
+	public void revalidateWithConditionalRequest() throws Exception {
+		TensorflowModelCache modelCache = new TensorflowModelCache(folder.getRoot(), 0);
+
+		assertArrayEquals(graphDef, GraphDefLoader.load(modelCache.cached(modelLocation)));
+		assertArrayEquals(graphDef, GraphDefLoader.load(modelCache.cached(modelLocation)));
+
+		assertEquals(2, requests.size());
+		assertEquals("null", requests.get(0));
+		assertEquals(etag, requests.get(1));
+	}
+
+	@Test
+	public void serveCachedCopyWhenServerIsUnreachable() throws Exception {
+		TensorflowModelCache modelCache = new TensorflowModelCache(folder.getRoot(), 0);
+		modelCache.fetch(modelLocation);
+		server.stop(0);
+
+		try (TensorflowModel model = new TensorflowModel(modelCache.cached(modelLocation),
+				TensorflowSessionPool.Mode.SHARED, 1)) {
+			model.validate(Collections.singletonList("add"));
+		}
+	}
+
+	@Test
+	public void downloadAgainCorruptedGraph() throws Exception {
+		TensorflowModelCache modelCache = new TensorflowModelCache(folder.getRoot(), 0);
+		File cached = modelCache.fetch(modelLocation);
+		try (OutputStream os = new FileOutputStream(cached)) {
+			os.write(new byte[] { 1, 2, 3 });
+		}
+
+		// The checksum mismatch turns the conditional request into a full download
+		assertArrayEquals(graphDef, GraphDefLoader.readMapped(modelCache.fetch(modelLocation)));
+		assertEquals("null", requests.get(1));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectContentNotMatchingETag() throws Exception {
+		etag = "\"0123456789abcdef0123456789abcdef\"";
+		new TensorflowModelCache(folder.getRoot(), 0).fetch(modelLocation);
+	}
+
+	@Test
+	public void fetchFailedDownloadOnce() throws Exception {
+		etag = "\"0123456789abcdef0123456789abcdef\"";
+		try {
+			GraphDefLoader.load(new TensorflowModelCache(folder.getRoot(), 0).cached(modelLocation));
+			fail("The ETag mismatch must fail the load");
+		}
+		catch (IOException e) {
+			assertEquals(1, requests.size());
+		}
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() throws Exception {
+		TensorflowModelCache modelCache = new TensorflowModelCache(folder.getRoot(), graphDef.length + 10);
+		modelCache.putOptimized("first", new byte[] { 1, 2, 3 });
+		assertArrayEquals(new byte[] { 1, 2, 3 }, modelCache.getOptimized("first"));
+
+		modelCache.putOptimized("second", graphDef);
+
+		assertNull(modelCache.getOptimized("first"));
+		assertArrayEquals(graphDef, modelCache.getOptimized("second"));
+	}
+
+	@Test
+	public void reuseOptimizedGraph() throws Exception {
+		TensorflowModelCache modelCache = new TensorflowModelCache(folder.getRoot(), 0);
+		TensorflowGraphOptimizer optimizer = new TensorflowGraphOptimizer();
+		optimizer.setModelCache(modelCache);
+		byte[] optimized = optimizer.optimize("linear_regression", graphDef, Collections.singletonList("add"));
+
+		assertArrayEquals(optimized, optimizer.optimize("linear_regression", graphDef,
+				Collections.singletonList("add")));
+		assertEquals(1, new File(folder.getRoot(), "index").list().length);
+
+		// Other settings, other cache entry
+		optimizer.setPrune(false);
+		optimizer.optimize("linear_regression", graphDef, Collections.singletonList("add"));
+		assertEquals(2, new File(folder.getRoot(), "index").list().length);
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.core.io.DefaultResourceLoader;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowModelRegistryTest {
+
+	private static final String MODEL = "classpath:tensorflow/model/linear_regression_graph.proto";
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private TensorflowModelRegistry registry;
+
+	@Before
+	public void before() {
+		Map<String, String> models = new HashMap<>();
+		models.put("a", MODEL);
+		models.put("b", MODEL);
+		meterRegistry = new SimpleMeterRegistry();
+		// Budget fits a single model
+		registry = new TensorflowModelRegistry(models, null, 1, new DefaultResourceLoader(),
+				TensorflowSessionPool.Mode.SHARED, 1, meterRegistry);
+	}
+
+	@After
+	public void after() {
+		registry.close();
+	}
+
+	@Test
+	public void loadLazilyAndCountHits() {
+		assertTrue(registry.getLoadedModels().isEmpty());
+
+		registry.retain("a").release();
+		registry.retain("a").release();
+
+		assertEquals(Collections.singletonList("a"), registry.getLoadedModels());
+		assertEquals(1.0, meterRegistry.counter("tensorflow.registry.requests", "model", "a", "result", "miss").count(), 0);
+		assertEquals(1.0, meterRegistry.counter("tensorflow.registry.requests", "model", "a", "result", "hit").count(), 0);
+		assertEquals(1, meterRegistry.timer("tensorflow.registry.load", "model", "a").count());
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() {
+		TensorflowModel a = registry.retain("a");
+		registry.retain("b").release();
+
+		assertEquals(Collections.singletonList("b"), registry.getLoadedModels());
+		// The evicted model stays open until released
+		assertTrue(a.retain());
+		a.release();
+		a.release();
+		assertFalse(a.retain());
+	}
+
+	@Test
+	public void removeMetersOfUnloadedModels() {
+		registry.retain("a").release();
+		registry.retain("b").release();
+
+		assertNull(meterRegistry.find("tensorflow.registry.requests").tag("model", "a").counter());
+		assertNull(meterRegistry.find("tensorflow.registry.load").tag("model", "a").timer());
+		assertEquals(1, meterRegistry.find("tensorflow.registry.load").tag("model", "b").timer().count());
+	}
+
+	@Test
+	public void unloadModelsOnFetchesChange() {
+		final List<String> unloaded = new ArrayList<>();
+		registry.setEvictionListener(new BiConsumer<String, TensorflowModel>() {
+			@Override
+			public void accept(String modelId, TensorflowModel model) {
+				unloaded.add(modelId);
+			}
+		});
+		registry.setFetches(Collections.singletonList("add"));
+		registry.retain("a").release();
+
+		registry.setFetches(Collections.singletonList("mul"));
+
+		assertTrue(registry.getLoadedModels().isEmpty());
+		assertEquals(Collections.singletonList("a"), unloaded);
+		assertNull(meterRegistry.find("tensorflow.registry.requests").tag("model", "a").counter());
+	}
+
+	@Test
+	public void resolveLocationPattern() {
+		TensorflowModelRegistry patternRegistry = new TensorflowModelRegistry(new HashMap<String, String>(),
+				"classpath:tensorflow/model/{model}_graph.proto", 0, new DefaultResourceLoader(),
+				TensorflowSessionPool.Mode.SHARED, 1, meterRegistry);
+		try {
+			patternRegistry.retain("linear_regression").release();
+			assertEquals(Arrays.asList("linear_regression"), patternRegistry.getLoadedModels());
+
+			try {
+				patternRegistry.retain("missing");
+				fail("The missing model file must fail the load");
+			}
+			catch (IllegalArgumentException e) {
+				// The ids that fail to load do not register meters
+				assertNull(meterRegistry.find("tensorflow.registry.requests").tag("model", "missing").counter());
+			}
+		}
+		finally {
+			patternRegistry.close();
+		}
+	}
+
+	@Test
+	public void optimizeLoadedModels() {
+		registry.setGraphOptimizer(new TensorflowGraphOptimizer());
+		registry.setFetches(Collections.singletonList("add"));
+
+		TensorflowModel model = registry.retain("a");
+		try {
+			assertNull(model.getSignature().getOperationType("Variable/read"));
+			assertEquals(Collections.singletonList("add"), model.getOutputs());
+		}
+		finally {
+			model.release();
+		}
+	}
+
+	@Test
+	public void rejectMissingOutputAtLoad() {
+		registry.setFetches(Collections.singletonList("missing_output:0"));
+		try {
+			registry.retain("a");
+			fail("The missing output must fail the load");
+		}
+		catch (IllegalArgumentException e) {
+			assertTrue(registry.getLoadedModels().isEmpty());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectPathTraversal() {
+		registry.resolve("../secret");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectUnknownModel() {
+		registry.retain("c");
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.ErrorHandler;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowParallelProcessorTest {
+
+	@Test
+	public void keepOrderPerKey() throws Exception {
+		final Random random = new Random(42);
+		QueueChannel output = new QueueChannel();
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		final BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+
+		TensorflowParallelProcessor parallelProcessor = new TensorflowParallelProcessor(4, 8,
+				new SpelExpressionParser().parseExpression("headers['key']"),
+				new Function<Message<?>, Message<?>>() {
+					@Override
+					public Message<?> apply(Message<?> message) {
+						try {
+							Thread.sleep(random.nextInt(5));
+						}
+						catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						if ((Integer) message.getPayload() == 7) {
+							throw new IllegalArgumentException("Failed evaluation must not block its key");
+						}
+						return message;
+					}
+				}, output, new ErrorHandler() {
+					@Override
+					public void handleError(Throwable error) {
+						errors.add(error);
+					}
+				}, meterRegistry);
+
+		for (int i = 0; i < 100; i++) {
+			parallelProcessor.submit(MessageBuilder.withPayload(i).setHeader("key", i % 3).build());
+		}
+
+		Map<Integer, Integer> lastPerKey = new HashMap<>();
+		for (int i = 0; i < 99; i++) {
+			Message<?> received = output.receive(10000);
+			assertNotNull(received);
+			int key = (Integer) received.getHeaders().get("key");
+			int value = (Integer) received.getPayload();
+			Integer last = lastPerKey.put(key, value);
+			if (last != null) {
+				assertEquals(last + ((last == 4) ? 6 : 3), value);
+			}
+		}
+
+		parallelProcessor.close();
+		// The failed message is reported, not silently dropped
+		assertEquals(1, errors.size());
+		assertEquals(7, ((MessagingException) errors.poll()).getFailedMessage().getPayload());
+		assertEquals(0.0, meterRegistry.find("tensorflow.parallel.reorder.depth").gauge().value(), 0);
+	}
+}
@@ -19,6 +19,9 @@ package org.springframework.cloud.stream.app.tensorflow.processor;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -70,6 +73,15 @@ public class TensorflowProcessorPropertiesTest {
 		assertThat(properties.getOutputIndex(), equalTo(666));
 	}
 
+	@Test
+	public void outputsCanBeCustomized() {
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.outputs:logits,embeddings:1");
+		context.register(Conf.class);
+		context.refresh();
+		TensorflowProcessorProperties properties = context.getBean(TensorflowProcessorProperties.class);
+		assertThat(properties.getOutputs(), equalTo(Arrays.asList("logits", "embeddings:1")));
+	}
+
 	@Test
 	public void saveOutputInHeaderCanBeCustomized() {
 		EnvironmentTestUtils.addEnvironment(context, "tensorflow.saveOutputInHeader:false");
@@ -79,6 +91,77 @@ public class TensorflowProcessorPropertiesTest {
 		assertFalse(properties.isSaveOutputInHeader());
 	}
 
+	@Test
+	public void sessionCanBeCustomized() {
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.session.mode:POOLED");
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.session.poolSize:3");
+		context.register(Conf.class);
+		context.refresh();
+		TensorflowProcessorProperties properties = context.getBean(TensorflowProcessorProperties.class);
+		assertThat(properties.getSession().getMode(), equalTo(TensorflowSessionPool.Mode.POOLED));
+		assertThat(properties.getSession().getPoolSize(), equalTo(3));
+	}
+
+
+	@Test
+	public void batchCanBeCustomized() {
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.batch.enabled:true");
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.batch.maxSize:64");
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.batch.maxWait:5");
+		context.register(Conf.class);
+		context.refresh();
+		TensorflowProcessorProperties properties = context.getBean(TensorflowProcessorProperties.class);
+		assertTrue(properties.getBatch().isEnabled());
+		assertThat(properties.getBatch().getMaxSize(), equalTo(64));
+		assertThat(properties.getBatch().getMaxWait(), equalTo(5L));
+	}
+
+	@Test
+	public void memoryCanBeCustomized() {
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.memory.maxInFlightBytes:1048576");
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.memory.admissionTimeout:100");
+		context.register(Conf.class);
+		context.refresh();
+		TensorflowProcessorProperties properties = context.getBean(TensorflowProcessorProperties.class);
+		assertThat(properties.getMemory().getMaxInFlightBytes(), equalTo(1048576L));
+		assertThat(properties.getMemory().getAdmissionTimeout(), equalTo(100L));
+	}
+
+	@Test
+	public void warmupCanBeCustomized() {
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.warmup.enabled:true");
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.warmup.samples:classpath:warmup/*.json,file:/tmp/sample.bin");
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.warmup.iterations:3");
+		context.register(Conf.class);
+		context.refresh();
+		TensorflowProcessorProperties properties = context.getBean(TensorflowProcessorProperties.class);
+		assertTrue(properties.getWarmup().isEnabled());
+		assertThat(properties.getWarmup().getSamples().size(), equalTo(2));
+		assertThat(properties.getWarmup().getIterations(), equalTo(3));
+	}
+
+	@Test
+	public void deadlineTimestampHeaderDefaultsToProducerHeader() {
+		context.register(Conf.class);
+		context.refresh();
+		TensorflowProcessorProperties properties = context.getBean(TensorflowProcessorProperties.class);
+		assertThat(properties.getDeadline().getTimestampHeader(), equalTo("tf_timestamp"));
+	}
+
+	@Test(expected = BeanCreationException.class)
+	public void rejectBlankFeedName() {
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.transport.feedName: ");
+		context.register(Conf.class);
+		context.refresh();
+	}
+
+	@Test(expected = BeanCreationException.class)
+	public void rejectSeveralProcessingModes() {
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.batch.enabled:true");
+		EnvironmentTestUtils.addEnvironment(context, "tensorflow.parallel.enabled:true");
+		context.register(Conf.class);
+		context.refresh();
+	}
 
 	@Configuration
 	@EnableConfigurationProperties(TensorflowProcessorProperties.class)
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.tensorflow.Tensor;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowResultCacheTest {
+
+	private static final List<String> FETCHES = Collections.singletonList("add");
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private TensorMemoryTracker tracker;
+
+	private AtomicInteger evaluations;
+
+	@Before
+	public void before() {
+		meterRegistry = new SimpleMeterRegistry();
+		tracker = new TensorMemoryTracker();
+		evaluations = new AtomicInteger();
+	}
+
+	@Test
+	public void serveRepeatedRequestsFromCache() {
+		TensorflowResultCache cache = new TensorflowResultCache(10, 0, meterRegistry);
+
+		float[] first = result(cache.evaluate(1, FETCHES, feeds(1f), null, evaluation(2f, null), tracker));
+		float[] second = result(cache.evaluate(1, FETCHES, feeds(1f), null, evaluation(3f, null), tracker));
+
+		assertArrayEquals(new float[] { 2f }, first, 0);
+		assertArrayEquals(new float[] { 2f }, second, 0);
+		assertEquals(1, evaluations.get());
+		assertEquals(0.5, meterRegistry.find("tensorflow.cache.hit.ratio").gauge().value(), 0);
+		assertEquals(0, tracker.getLiveTensors());
+	}
+
+	@Test
+	public void scopeResultsToModelVersion() {
+		TensorflowResultCache cache = new TensorflowResultCache(10, 0, meterRegistry);
+
+		result(cache.evaluate(1, FETCHES, feeds(1f), null, evaluation(2f, null), tracker));
+		float[] swapped = result(cache.evaluate(2, FETCHES, feeds(1f), null, evaluation(3f, null), tracker));
+
+		assertArrayEquals(new float[] { 3f }, swapped, 0);
+		assertEquals(2, evaluations.get());
+	}
+
+	@Test
+	public void useRequestKey() {
+		TensorflowResultCache cache = new TensorflowResultCache(10, 0, meterRegistry);
+
+		result(cache.evaluate(1, FETCHES, feeds(1f), "key", evaluation(2f, null), tracker));
+		float[] cached = result(cache.evaluate(1, FETCHES, feeds(5f), "key", evaluation(3f, null), tracker));
+
+		assertArrayEquals(new float[] { 2f }, cached, 0);
+		assertEquals(1, evaluations.get());
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() {
+		TensorflowResultCache cache = new TensorflowResultCache(1, 0, meterRegistry);
+
+		result(cache.evaluate(1, FETCHES, feeds(1f), null, evaluation(2f, null), tracker));
+		result(cache.evaluate(1, FETCHES, feeds(2f), null, evaluation(3f, null), tracker));
+		result(cache.evaluate(1, FETCHES, feeds(1f), null, evaluation(2f, null), tracker));
+
+		assertEquals(1, cache.size());
+		assertEquals(3, evaluations.get());
+	}
+
+	@Test
+	public void expireResults() throws InterruptedException {
+		TensorflowResultCache cache = new TensorflowResultCache(10, 1, meterRegistry);
+
+		result(cache.evaluate(1, FETCHES, feeds(1f), null, evaluation(2f, null), tracker));
+		Thread.sleep(10);
+		result(cache.evaluate(1, FETCHES, feeds(1f), null, evaluation(2f, null), tracker));
+
+		assertEquals(2, evaluations.get());
+	}
+
+	@Test
+	public void coalesceConcurrentRequests() throws Exception {
+		final TensorflowResultCache cache = new TensorflowResultCache(10, 0, meterRegistry);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<float[]> leader = executor.submit(new Callable<float[]>() {
+				@Override
+				public float[] call() {
+					return result(cache.evaluate(1, FETCHES, feeds(1f), null, evaluation(2f, release), tracker));
+				}
+			});
+			while (evaluations.get() == 0) {
+				Thread.sleep(1);
+			}
+			Future<float[]> follower = executor.submit(new Callable<float[]>() {
+				@Override
+				public float[] call() {
+					return result(cache.evaluate(1, FETCHES, feeds(1f), null, evaluation(3f, null), tracker));
+				}
+			});
+			Thread.sleep(50);
+			release.countDown();
+
+			assertArrayEquals(new float[] { 2f }, leader.get(10, TimeUnit.SECONDS), 0);
+			assertArrayEquals(new float[] { 2f }, follower.get(10, TimeUnit.SECONDS), 0);
+			assertEquals(1, evaluations.get());
+			assertEquals(1.0, meterRegistry.counter("tensorflow.cache.requests", "result", "coalesced").count(), 0);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void digestFeeds() {
+		assertEquals(TensorflowResultCache.digest(feeds(1f)), TensorflowResultCache.digest(feeds(1f)));
+		assertNotEquals(TensorflowResultCache.digest(feeds(1f)), TensorflowResultCache.digest(feeds(2f)));
+
+		Map<String, Object> unsupported = new HashMap<>();
+		unsupported.put("x", new Object());
+		assertNull(TensorflowResultCache.digest(unsupported));
+	}
+
+	private static Map<String, Object> feeds(float x) {
+		Map<String, Object> feeds = new HashMap<>();
+		feeds.put("x", new float[] { x });
+		feeds.put("b", 0.5f);
+		return feeds;
+	}
+
+	private TensorflowResultCache.Evaluation evaluation(final float value, final CountDownLatch release) {
+		return new TensorflowResultCache.Evaluation() {
+			@Override
+			public Map<String, Tensor> evaluate() {
+				evaluations.incrementAndGet();
+				if (release != null) {
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return Collections.singletonMap("add", tracker.track(Tensor.create(new float[] { value })));
+			}
+		};
+	}
+
+	private float[] result(Map<String, Tensor> outputs) {
+		Tensor tensor = outputs.get("add");
+		try {
+			float[] values = new float[1];
+			tensor.copyTo(values);
+			return values;
+		}
+		finally {
+			tracker.close(tensor);
+		}
+	}
+}
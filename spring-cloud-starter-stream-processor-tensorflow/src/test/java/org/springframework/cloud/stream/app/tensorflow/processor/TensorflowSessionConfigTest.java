@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.tensorflow.Tensor;
+
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowSessionConfigTest {
+
+	@Test
+	public void defaultConfig() {
+		assertNull(TensorflowSessionConfig.DEFAULT.toConfigProto());
+	}
+
+	@Test
+	public void threadSettings() {
+		TensorflowSessionConfig config = new TensorflowSessionConfig(2, 1, true, true,
+				TensorflowSessionConfig.OptimizerLevel.L1, TensorflowSessionConfig.JitLevel.DEFAULT);
+
+		// intra_op_parallelism_threads=2, inter_op_parallelism_threads=1, allow_soft_placement, use_per_session_threads
+		assertArrayEquals(new byte[] { 0x10, 2, 0x28, 1, 0x38, 1, 0x48, 1 }, config.toConfigProto());
+	}
+
+	@Test
+	public void optimizerOptions() {
+		TensorflowSessionConfig config = new TensorflowSessionConfig(0, 0, false, false,
+				TensorflowSessionConfig.OptimizerLevel.L0, TensorflowSessionConfig.JitLevel.ON_1);
+
+		byte[] minusOne = { -1, -1, -1, -1, -1, -1, -1, -1, -1, 1 };
+		byte[] expected = new byte[17];
+		// graph_options { optimizer_options { opt_level: L0 global_jit_level: ON_1 } }
+		expected[0] = 0x52;
+		expected[1] = 15;
+		expected[2] = 0x1A;
+		expected[3] = 13;
+		expected[4] = 0x18;
+		System.arraycopy(minusOne, 0, expected, 5, minusOne.length);
+		expected[15] = 0x28;
+		expected[16] = 1;
+		assertArrayEquals(expected, config.toConfigProto());
+	}
+
+	@Test
+	public void evaluateWithConfiguredSession() throws Exception {
+		TensorflowSessionConfig config = new TensorflowSessionConfig(1, 1, false, false,
+				TensorflowSessionConfig.OptimizerLevel.L1, TensorflowSessionConfig.JitLevel.DEFAULT);
+		try (TensorFlowService service = new TensorFlowService(
+				new ClassPathResource("tensorflow/model/linear_regression_graph.proto"),
+				TensorflowSessionPool.Mode.SHARED, 1, config, new TensorMemoryTracker())) {
+			Tensor output = service.evaluate(Collections.<String, Object>singletonMap("Placeholder", 0.7f), "add", 0);
+			try {
+				assertEquals(0.29999298f, output.copyTo(new float[1])[0], 0f);
+			}
+			finally {
+				service.getTensorMemoryTracker().close(output);
+			}
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tensorflow.Graph;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
+
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowSessionPoolTest {
+
+	private Graph graph;
+
+	private TensorflowSessionPool sessionPool;
+
+	@Before
+	public void before() throws Exception {
+		graph = new Graph();
+		graph.importGraphDef(
+				GraphDefLoader.load(new ClassPathResource("tensorflow/model/linear_regression_graph.proto")));
+	}
+
+	@After
+	public void after() {
+		if (sessionPool != null) {
+			sessionPool.close();
+		}
+		graph.close();
+	}
+
+	@Test
+	public void shareSingleSession() {
+		sessionPool = new TensorflowSessionPool(graph, TensorflowSessionPool.Mode.SHARED, 1);
+		Session first = sessionPool.acquire();
+		Session second = sessionPool.acquire();
+		assertSame(first, second);
+
+		sessionPool.release(first);
+		// Released shared session stays open for the other callers
+		assertEquals(0.29999298f, evaluate(second), 0f);
+		sessionPool.release(second);
+	}
+
+	@Test
+	public void reusePooledSessions() {
+		sessionPool = new TensorflowSessionPool(graph, TensorflowSessionPool.Mode.POOLED, 2);
+		Session first = sessionPool.acquire();
+		Session second = sessionPool.acquire();
+		assertNotSame(first, second);
+
+		sessionPool.release(first);
+		Session reused = sessionPool.acquire();
+		assertSame(first, reused);
+		assertEquals(0.29999298f, evaluate(reused), 0f);
+
+		sessionPool.release(reused);
+		sessionPool.release(second);
+	}
+
+	@Test
+	public void waitForReleaseWhenPoolIsExhausted() throws Exception {
+		sessionPool = new TensorflowSessionPool(graph, TensorflowSessionPool.Mode.POOLED, 1);
+		Session session = sessionPool.acquire();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Session> waiting = executor.submit(new Callable<Session>() {
+				@Override
+				public Session call() {
+					return sessionPool.acquire();
+				}
+			});
+			Thread.sleep(200);
+			assertFalse(waiting.isDone());
+
+			sessionPool.release(session);
+			Session handedOver = waiting.get(10, TimeUnit.SECONDS);
+			assertSame(session, handedOver);
+			sessionPool.release(handedOver);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void releasePermitWhenSessionCreationFails() throws Exception {
+		sessionPool = new TensorflowSessionPool(graph, TensorflowSessionPool.Mode.POOLED, 1);
+		// No session can be opened for a closed graph
+		graph.close();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			for (int i = 0; i < 2; i++) {
+				// Without the permit released by the first failure the second acquire would block
+				Future<Session> failing = executor.submit(new Callable<Session>() {
+					@Override
+					public Session call() {
+						return sessionPool.acquire();
+					}
+				});
+				try {
+					failing.get(10, TimeUnit.SECONDS);
+					fail("The session creation must fail");
+				}
+				catch (ExecutionException e) {
+					assertTrue(e.getCause() instanceof IllegalStateException);
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void openSessionPerCall() {
+		sessionPool = new TensorflowSessionPool(graph, TensorflowSessionPool.Mode.PER_CALL, 0);
+		Session first = sessionPool.acquire();
+		Session second = sessionPool.acquire();
+		assertNotSame(first, second);
+		assertEquals(0.29999298f, evaluate(first), 0f);
+
+		sessionPool.release(first);
+		sessionPool.release(second);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectAcquireAfterClose() {
+		sessionPool = new TensorflowSessionPool(graph, TensorflowSessionPool.Mode.POOLED, 1);
+		sessionPool.release(sessionPool.acquire());
+		sessionPool.close();
+
+		sessionPool.acquire();
+	}
+
+	@Test
+	public void releaseInFlightSessionAfterClose() {
+		sessionPool = new TensorflowSessionPool(graph, TensorflowSessionPool.Mode.POOLED, 1);
+		Session inFlight = sessionPool.acquire();
+		sessionPool.close();
+
+		// Closed on release instead of returned to the closed pool
+		sessionPool.release(inFlight);
+		try {
+			sessionPool.acquire();
+			fail("The closed pool must reject the acquire");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectEmptyPool() {
+		new TensorflowSessionPool(graph, TensorflowSessionPool.Mode.POOLED, 0);
+	}
+
+	private static float evaluate(Session session) {
+		try (Tensor x = Tensor.create(0.7f);
+				Tensor result = session.runner().feed("Placeholder", x).fetch("add").run().get(0)) {
+			return result.floatValue();
+		}
+	}
+}
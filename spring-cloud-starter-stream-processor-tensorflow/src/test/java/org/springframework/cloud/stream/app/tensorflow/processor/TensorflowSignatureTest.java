@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tensorflow.DataType;
+
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowSignatureTest {
+
+	private static final List<String> FETCHES = Collections.singletonList("add");
+
+	private TensorflowSignature signature;
+
+	@Before
+	public void before() throws Exception {
+		signature = TensorflowSignature.read("linear_regression_graph.proto",
+				GraphDefLoader.load(new ClassPathResource("tensorflow/model/linear_regression_graph.proto")));
+	}
+
+	@Test
+	public void readPlaceholders() {
+		assertEquals(7, signature.getOperationCount());
+		assertEquals("Add", signature.getOperationType("add"));
+		assertEquals(Collections.singleton("Placeholder"), signature.getInputs().keySet());
+
+		TensorflowSignature.Input placeholder = signature.getInputs().get("Placeholder");
+		assertEquals(DataType.FLOAT, placeholder.getDataType());
+		// Empty placeholder shape is unconstrained
+		assertNull(placeholder.getShape());
+		assertEquals(Collections.singleton("Placeholder"), signature.getRequiredInputs(FETCHES));
+	}
+
+	@Test
+	public void acceptValidFeeds() {
+		signature.validateFeeds(feeds("Placeholder", 0.7f), FETCHES);
+		signature.validateFeeds(feeds("Placeholder", new float[] { 0.7f, 0.8f }), FETCHES);
+		// Feeding an intermediate operation cuts the placeholder off
+		signature.validateFeeds(feeds("mul", 0.7f), FETCHES);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectUnknownFeed() {
+		signature.validateFeeds(feeds("missing", 0.7f), FETCHES);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectDataTypeMismatch() {
+		signature.validateFeeds(feeds("Placeholder", 0.7d), FETCHES);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectMissingPlaceholder() {
+		signature.validateFeeds(Collections.<String, Object>emptyMap(), FETCHES);
+	}
+
+	@Test
+	public void checkPlaceholderShape() {
+		TensorflowSignature shaped = TensorflowSignature.read("shaped", placeholderGraphDef("x", 1, -1, 3));
+		assertArrayEquals(new long[] { -1, 3 }, shaped.getInputs().get("x").getShape());
+
+		List<String> fetches = Collections.singletonList("x");
+		shaped.validateFeeds(feeds("x", new float[][] { { 1f, 2f, 3f }, { 4f, 5f, 6f } }), fetches);
+		shaped.validateFeeds(feeds("x", TensorFeed.of(new float[3], 1, 3)), fetches);
+		try {
+			shaped.validateFeeds(feeds("x", new float[][] { { 1f, 2f } }), fetches);
+			throw new AssertionError("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static Map<String, Object> feeds(String name, Object value) {
+		return Collections.singletonMap(name, value);
+	}
+
+	/**
+	 * @return GraphDef with a single placeholder node of the given data type and shape.
+	 */
+	private static byte[] placeholderGraphDef(String name, int dataType, long... shape) {
+		ByteArrayOutputStream shapeProto = new ByteArrayOutputStream();
+		for (long size : shape) {
+			ByteArrayOutputStream dim = new ByteArrayOutputStream();
+			ProtobufWriter.writeVarintField(dim, 1, size);
+			ProtobufWriter.writeBytesField(shapeProto, 2, dim.toByteArray());
+		}
+
+		ByteArrayOutputStream node = new ByteArrayOutputStream();
+		ProtobufWriter.writeStringField(node, 1, name);
+		ProtobufWriter.writeStringField(node, 2, "Placeholder");
+
+		ByteArrayOutputStream dtype = new ByteArrayOutputStream();
+		ProtobufWriter.writeVarintField(dtype, 6, dataType);
+		ProtobufWriter.writeBytesField(node, 5, attr("dtype", dtype.toByteArray()));
+
+		ByteArrayOutputStream shapeValue = new ByteArrayOutputStream();
+		ProtobufWriter.writeBytesField(shapeValue, 7, shapeProto.toByteArray());
+		ProtobufWriter.writeBytesField(node, 5, attr("shape", shapeValue.toByteArray()));
+
+		ByteArrayOutputStream graphDef = new ByteArrayOutputStream();
+		ProtobufWriter.writeBytesField(graphDef, 1, node.toByteArray());
+		return graphDef.toByteArray();
+	}
+
+	private static byte[] attr(String key, byte[] value) {
+		ByteArrayOutputStream entry = new ByteArrayOutputStream();
+		ProtobufWriter.writeStringField(entry, 1, key);
+		ProtobufWriter.writeBytesField(entry, 2, value);
+		return entry.toByteArray();
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowStartupTest {
+
+	private TensorflowStartup startup;
+
+	@After
+	public void after() {
+		startup.close();
+	}
+
+	@Test
+	public void loadConcurrently() {
+		startup = new TensorflowStartup(2);
+		// Each load completes only once the other one has started
+		final CountDownLatch started = new CountDownLatch(2);
+		Callable<String> loader = new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				started.countDown();
+				assertTrue(started.await(10, TimeUnit.SECONDS));
+				return Thread.currentThread().getName();
+			}
+		};
+		Future<String> vocabulary = startup.submit("vocabulary", loader);
+		Future<String> labels = startup.submit("labels", loader);
+
+		assertTrue(TensorflowStartup.await(vocabulary, "vocabulary").startsWith("tensorflow-startup-"));
+		assertTrue(TensorflowStartup.await(labels, "labels").startsWith("tensorflow-startup-"));
+		startup.onApplicationEvent(readyEvent());
+		assertEquals(Arrays.asList("vocabulary", "labels"), Arrays.asList(startup.getLoadTimes().keySet().toArray()));
+	}
+
+	@Test
+	public void loadInSubmittingThread() {
+		startup = new TensorflowStartup(0);
+		Future<String> labels = startup.submit("labels", new Callable<String>() {
+			@Override
+			public String call() {
+				return Thread.currentThread().getName();
+			}
+		});
+
+		assertTrue(labels.isDone());
+		assertEquals(Thread.currentThread().getName(), TensorflowStartup.await(labels, "labels"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void failStartupOnFailedLoad() {
+		startup = new TensorflowStartup(1);
+		startup.submit("labels", new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				throw new FileNotFoundException("labels.txt");
+			}
+		});
+
+		startup.onApplicationEvent(readyEvent());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void loadModelInBackground() throws Exception {
+		startup = new TensorflowStartup(1);
+		TensorFlowService tensorFlowService = new TensorFlowService(
+				new ClassPathResource("tensorflow/model/linear_regression_graph.proto"),
+				TensorflowSessionPool.Mode.SHARED, 1, TensorflowSessionConfig.DEFAULT, new TensorMemoryTracker(), null,
+				Collections.singletonList("missing_output:0"), startup);
+		try {
+			// The missing output fails the background load, reported on first use
+			tensorFlowService.getModelLocation();
+		}
+		finally {
+			tensorFlowService.close();
+		}
+	}
+
+	private static ApplicationReadyEvent readyEvent() {
+		return new ApplicationReadyEvent(new SpringApplication(), new String[0], new StaticApplicationContext());
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.messaging.Message;
+
+/**
+ * @author Christian Tzolov
+ */
+public class TensorflowWarmupTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final List<Message<?>> evaluated = new ArrayList<>();
+
+	private String samples;
+
+	@Before
+	public void before() throws Exception {
+		File sample = folder.newFile("sample.json");
+		try (OutputStream os = new FileOutputStream(sample)) {
+			os.write("{\"Placeholder\": 0.7}".getBytes("UTF-8"));
+		}
+		samples = "file:" + folder.getRoot().getAbsolutePath() + "/*.json";
+	}
+
+	@Test
+	public void evaluateSamplesBeforeReportingUp() {
+		TensorflowWarmup warmup = warmup(new Consumer<Message<?>>() {
+			@Override
+			public void accept(Message<?> message) {
+				evaluated.add(message);
+			}
+		});
+		assertEquals(Status.OUT_OF_SERVICE, warmup.health().getStatus());
+
+		warmup.afterSingletonsInstantiated();
+
+		assertEquals(3, evaluated.size());
+		assertEquals(0.7, ((Map<?, ?>) evaluated.get(0).getPayload()).get("Placeholder"));
+		assertTrue(warmup.isCompleted());
+		assertEquals(Status.UP, warmup.health().getStatus());
+		assertEquals(3, warmup.health().getDetails().get("evaluations"));
+	}
+
+	@Test
+	public void failStartupOnFailedEvaluation() {
+		TensorflowWarmup warmup = warmup(new Consumer<Message<?>>() {
+			@Override
+			public void accept(Message<?> message) {
+				throw new IllegalArgumentException("Unsupported input format");
+			}
+		});
+
+		try {
+			warmup.afterSingletonsInstantiated();
+			fail("Expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			// expected, fails the context refresh before the binding starts
+		}
+		assertFalse(warmup.isCompleted());
+		assertEquals(Status.OUT_OF_SERVICE, warmup.health().getStatus());
+	}
+
+	private TensorflowWarmup warmup(Consumer<Message<?>> evaluator) {
+		return new TensorflowWarmup(new PathMatchingResourcePatternResolver(), Collections.singletonList(samples), 3,
+				evaluator);
+	}
+}
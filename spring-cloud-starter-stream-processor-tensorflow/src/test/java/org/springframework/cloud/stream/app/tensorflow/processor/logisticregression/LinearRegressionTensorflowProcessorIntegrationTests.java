@@ -20,17 +20,29 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.springframework.cloud.stream.app.tensorflow.processor.TensorTupleConverter.TF_SHAPE;
 import static org.springframework.cloud.stream.app.tensorflow.processor.TensorTupleConverter.TF_VALUE;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.tensorflow.Tensor;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorRawBinaryConverter;
 import org.springframework.cloud.stream.app.tensorflow.processor.TensorTupleConverter;
 import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowOutputConverter;
 import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowProcessorConfiguration;
@@ -38,9 +50,15 @@ import org.springframework.cloud.stream.messaging.Processor;
 import org.springframework.cloud.stream.test.binder.MessageCollector;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
+import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
 import org.springframework.messaging.MessageHandlingException;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -83,6 +101,32 @@ public abstract class LinearRegressionTensorflowProcessorIntegrationTests {
 	@Autowired
 	protected MessageCollector messageCollector;
 
+	@Autowired
+	@Qualifier(IntegrationContextUtils.ERROR_CHANNEL_BEAN_NAME)
+	protected SubscribableChannel errorChannel;
+
+	/**
+	 * Failures published to the error channel.
+	 */
+	protected final BlockingQueue<ErrorMessage> errors = new LinkedBlockingQueue<>();
+
+	private final MessageHandler errorCollector = new MessageHandler() {
+		@Override
+		public void handleMessage(Message<?> message) throws MessagingException {
+			errors.add((ErrorMessage) message);
+		}
+	};
+
+	@Before
+	public void subscribeErrors() {
+		errorChannel.subscribe(errorCollector);
+	}
+
+	@After
+	public void unsubscribeErrors() {
+		errorChannel.unsubscribe(errorCollector);
+	}
+
 	@TestPropertySource(properties = {
 			"tensorflow.saveOutputInHeader=true"
 	})
@@ -147,6 +191,153 @@ public abstract class LinearRegressionTensorflowProcessorIntegrationTests {
 		}
 	}
 
+	@TestPropertySource(properties = {
+			"tensorflow.transport.feedName=Placeholder"
+	})
+	public static class LinearRegressionRawTensorTests extends LinearRegressionTensorflowProcessorIntegrationTests {
+
+		@Test
+		public void testEvaluationRawTensorInput() {
+			channels.input().send(TensorRawBinaryConverter.toMessage(Tensor.create(0.7f)));
+
+			Message<?> received = messageCollector.forChannel(channels.output()).poll();
+			Assert.assertThat((Float) received.getPayload(), equalTo(0.29999298f));
+		}
+
+		@Test
+		public void testRawTensorHeadersNotCopiedToConvertedOutput() {
+			channels.input().send(TensorRawBinaryConverter.toMessage(Tensor.create(0.7f)));
+
+			Message<?> received = messageCollector.forChannel(channels.output()).poll();
+			Assert.assertFalse(received.getHeaders().containsKey(TensorRawBinaryConverter.TF_DATA_TYPE_HEADER));
+			Assert.assertFalse(received.getHeaders().containsKey(TensorRawBinaryConverter.TF_SHAPE_HEADER));
+			Assert.assertNotEquals(TensorRawBinaryConverter.CONTENT_TYPE,
+					String.valueOf(received.getHeaders().get(MessageHeaders.CONTENT_TYPE)));
+		}
+	}
+
+	public static class LinearRegressionMetricsTests extends LinearRegressionTensorflowProcessorIntegrationTests {
+
+		@Autowired
+		private MeterRegistry meterRegistry;
+
+		@Test
+		public void testStagesRecorded() {
+			Map<String, Object> inMap = new HashMap<>();
+			inMap.put("Placeholder", 0.7f);
+			channels.input().send(MessageBuilder.withPayload(inMap).build());
+			Assert.assertNotNull(messageCollector.forChannel(channels.output()).poll());
+
+			Timer sessionRun = meterRegistry.find("tensorflow.stage").tags("stage", "session.run").timer();
+			Assert.assertNotNull(sessionRun);
+			Assert.assertTrue(sessionRun.count() > 0);
+		}
+	}
+
+	@TestPropertySource(properties = {
+			"tensorflow.outputs=mul,add"
+	})
+	public static class LinearRegressionOutputsTests extends LinearRegressionTensorflowProcessorIntegrationTests {
+
+		@Test
+		public void testEvaluationFetchesAllOutputsInOrder() {
+			Map<String, Object> inMap = new HashMap<>();
+			inMap.put("Placeholder", 0.7f);
+			channels.input().send(MessageBuilder.withPayload(inMap).build());
+
+			Message<?> received = messageCollector.forChannel(channels.output()).poll();
+			Map<String, Float> outputs = (Map<String, Float>) received.getPayload();
+			// Both outputs of the single session run, in the tensorflow.outputs order
+			Assert.assertThat(new ArrayList<>(outputs.keySet()), equalTo(Arrays.asList("mul", "add")));
+			Assert.assertEquals(-0.7f, outputs.get("mul"), 1e-4f);
+			Assert.assertThat(outputs.get("add"), equalTo(0.29999298f));
+		}
+	}
+
+	@TestPropertySource(properties = {
+			"tensorflow.batch.enabled=true",
+			"tensorflow.batch.maxSize=4",
+			"tensorflow.batch.maxWait=50"
+	})
+	public static class LinearRegressionBatchTests extends LinearRegressionTensorflowProcessorIntegrationTests {
+
+		@Test
+		public void testBatchEvaluation() throws InterruptedException {
+			for (int i = 0; i < 6; i++) {
+				Map<String, Object> inMap = new HashMap<>();
+				inMap.put("Placeholder", new float[] { 0.7f });
+				channels.input().send(MessageBuilder.withPayload(inMap).setHeader("index", i).build());
+			}
+
+			for (int i = 0; i < 6; i++) {
+				Message<?> received = messageCollector.forChannel(channels.output()).poll(10, TimeUnit.SECONDS);
+				Assert.assertNotNull(received);
+				Assert.assertThat((Integer) received.getHeaders().get("index"), equalTo(i));
+				Assert.assertThat((Float) received.getPayload(), equalTo(0.29999298f));
+			}
+		}
+
+		@Test
+		public void testBatchFailureReported() throws InterruptedException {
+			Map<String, Object> inMap = new HashMap<>();
+			inMap.put("Placeholder", new float[] { 0.7f });
+			channels.input().send(MessageBuilder.withPayload(inMap).setHeader("index", 0).build());
+			channels.input().send(MessageBuilder.withPayload("unsupported").setHeader("index", 1).build());
+
+			// The batch fails, its messages are evaluated one by one
+			Message<?> received = messageCollector.forChannel(channels.output()).poll(10, TimeUnit.SECONDS);
+			Assert.assertNotNull(received);
+			Assert.assertThat((Integer) received.getHeaders().get("index"), equalTo(0));
+
+			ErrorMessage error = errors.poll(10, TimeUnit.SECONDS);
+			Assert.assertNotNull(error);
+			Assert.assertThat((Integer) ((MessagingException) error.getPayload()).getFailedMessage().getHeaders()
+					.get("index"), equalTo(1));
+		}
+	}
+
+	@TestPropertySource(properties = {
+			"tensorflow.reactive.enabled=true",
+			"tensorflow.reactive.parallelism=4",
+			"tensorflow.reactive.prefetch=8"
+	})
+	public static class LinearRegressionReactiveTests extends LinearRegressionTensorflowProcessorIntegrationTests {
+
+		@Test
+		public void testReactiveEvaluationKeepsOrder() throws InterruptedException {
+			for (int i = 0; i < 20; i++) {
+				Map<String, Object> inMap = new HashMap<>();
+				inMap.put("Placeholder", new float[] { 0.7f });
+				channels.input().send(MessageBuilder.withPayload(inMap).setHeader("index", i).build());
+			}
+
+			for (int i = 0; i < 20; i++) {
+				Message<?> received = messageCollector.forChannel(channels.output()).poll(10, TimeUnit.SECONDS);
+				Assert.assertNotNull(received);
+				Assert.assertThat((Integer) received.getHeaders().get("index"), equalTo(i));
+				Assert.assertThat((Float) received.getPayload(), equalTo(0.29999298f));
+			}
+		}
+
+		@Test
+		public void testReactiveFailureReported() throws InterruptedException {
+			channels.input().send(MessageBuilder.withPayload("unsupported").setHeader("index", 0).build());
+			Map<String, Object> inMap = new HashMap<>();
+			inMap.put("Placeholder", new float[] { 0.7f });
+			channels.input().send(MessageBuilder.withPayload(inMap).setHeader("index", 1).build());
+
+			ErrorMessage error = errors.poll(10, TimeUnit.SECONDS);
+			Assert.assertNotNull(error);
+			Assert.assertThat((Integer) ((MessagingException) error.getPayload()).getFailedMessage().getHeaders()
+					.get("index"), equalTo(0));
+
+			// The stream keeps evaluating after the failure
+			Message<?> received = messageCollector.forChannel(channels.output()).poll(10, TimeUnit.SECONDS);
+			Assert.assertNotNull(received);
+			Assert.assertThat((Integer) received.getHeaders().get("index"), equalTo(1));
+		}
+	}
+
 	@SpringBootApplication
 	@Import(TensorflowProcessorConfiguration.class)
 	public static class LogisticRegressionTensorflowProcessorApplication {
@@ -160,6 +351,18 @@ public abstract class LinearRegressionTensorflowProcessorIntegrationTests {
 					tensor.copyTo(outputValue);
 					return outputValue[0];
 				}
+
+				@Override
+				public Object convert(Map<String, Tensor> tensors, Map<String, Object> processorContext) {
+					if (tensors.size() == 1) {
+						return convert(tensors.values().iterator().next(), processorContext);
+					}
+					Map<String, Object> outputValues = new LinkedHashMap<>();
+					for (Map.Entry<String, Tensor> tensor : tensors.entrySet()) {
+						outputValues.put(tensor.getKey(), convert(tensor.getValue(), processorContext));
+					}
+					return outputValues;
+				}
 			};
 		}
 	}
@@ -17,6 +17,10 @@
 package org.springframework.cloud.stream.app.twitter.sentiment.processor;
 
 import java.net.MalformedURLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import javax.annotation.PostConstruct;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -29,9 +33,11 @@ import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowInput
 import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowOutputConverter;
 import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowProcessorConfiguration;
 import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowProcessorProperties;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowStartup;
 import org.springframework.cloud.stream.messaging.Processor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.io.Resource;
 
 /**
  * A processor that evaluates a machine learning model stored in TensorFlow's ProtoBuf format.
@@ -51,6 +57,18 @@ public class TwitterSentimentProcessorConfiguration {
 	@Autowired
 	private TwitterSentimentProcessorProperties properties;
 
+	@Autowired
+	private TensorflowStartup tensorflowStartup;
+
+	private Future<WordVocabulary> preloadedVocabulary;
+
+	@PostConstruct
+	public void init() {
+		// The refresh scope creates the input converter after the singletons. Start the first vocabulary load now,
+		// so it runs along with the model import.
+		preloadedVocabulary = loadVocabulary();
+	}
+
 	@Bean
 	public TensorflowOutputConverter tensorflowOutputConverter() {
 		logger.info("Load TwitterSentimentTensorflowOutputConverter");
@@ -60,7 +78,25 @@ public class TwitterSentimentProcessorConfiguration {
 	@Bean
 	@RefreshScope
 	public TensorflowInputConverter tensorflowInputConverter() throws MalformedURLException {
-		logger.info("Load vocabulary: " + properties.getVocabularyLocation());
-		return new TwitterSentimentTensorflowInputConverter(properties.getVocabularyLocation());
+		Future<WordVocabulary> vocabulary;
+		synchronized (this) {
+			vocabulary = preloadedVocabulary;
+			preloadedVocabulary = null;
+		}
+		if (vocabulary == null) {
+			vocabulary = loadVocabulary();
+		}
+		return new TwitterSentimentTensorflowInputConverter(vocabulary);
+	}
+
+	private Future<WordVocabulary> loadVocabulary() {
+		final Resource vocabularyLocation = properties.getVocabularyLocation();
+		logger.info("Load vocabulary: " + vocabularyLocation);
+		return tensorflowStartup.submit("vocabulary", new Callable<WordVocabulary>() {
+			@Override
+			public WordVocabulary call() {
+				return TwitterSentimentTensorflowInputConverter.readVocabulary(vocabularyLocation);
+			}
+		});
 	}
 }
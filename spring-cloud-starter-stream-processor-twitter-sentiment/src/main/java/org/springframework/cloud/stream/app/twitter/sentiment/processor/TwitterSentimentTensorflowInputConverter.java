@@ -23,11 +23,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorFeed;
 import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowInputConverter;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowStartup;
 import org.springframework.core.io.Resource;
 import org.springframework.messaging.Message;
 import org.springframework.util.Assert;
@@ -59,22 +63,44 @@ public class TwitterSentimentTensorflowInputConverter implements TensorflowInput
 
 	private static final Log logger = LogFactory.getLog(TwitterSentimentTensorflowInputConverter.class);
 
-	private final WordVocabulary wordVocabulary;
+	private volatile WordVocabulary wordVocabulary;
 
-	private final ObjectMapper objectMapper;
+	private final Future<WordVocabulary> pendingVocabulary;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
 
 	public TwitterSentimentTensorflowInputConverter(Resource vocabularLocation) {
+		this.wordVocabulary = readVocabulary(vocabularLocation);
+		this.pendingVocabulary = null;
+	}
+
+	/**
+	 * @param wordVocabulary Vocabulary loaded in the background (see {@link #readVocabulary(Resource)}). The first
+	 * conversion waits for it.
+	 */
+	public TwitterSentimentTensorflowInputConverter(Future<WordVocabulary> wordVocabulary) {
+		this.pendingVocabulary = wordVocabulary;
+	}
+
+	public static WordVocabulary readVocabulary(Resource vocabularLocation) {
 		try (InputStream is = vocabularLocation.getInputStream()) {
-			wordVocabulary = new WordVocabulary(is);
-			objectMapper = new ObjectMapper();
+			WordVocabulary wordVocabulary = new WordVocabulary(is);
 			Assert.notNull(wordVocabulary, "Failed to initialize the word vocabulary");
-			Assert.notNull(objectMapper, "Failed to initialize the objectMapper");
+			logger.info("Word Vocabulary Initialized");
+			return wordVocabulary;
 		}
 		catch (IOException e) {
 			throw new RuntimeException("Failed to initialize the Vocabulary", e);
 		}
+	}
 
-		logger.info("Word Vocabulary Initialized");
+	private WordVocabulary wordVocabulary() {
+		WordVocabulary loaded = wordVocabulary;
+		if (loaded == null) {
+			loaded = TensorflowStartup.await(pendingVocabulary, "word vocabulary");
+			wordVocabulary = loaded;
+		}
+		return loaded;
 	}
 
 	@Override
@@ -111,12 +137,13 @@ public class TwitterSentimentTensorflowInputConverter implements TensorflowInput
 			tweetText = "";
 		}
 
-		int[][] tweetVector = wordVocabulary.vectorizeSentence(tweetText);
+		int[][] tweetVector = wordVocabulary().vectorizeSentence(tweetText);
 
 		Assert.notEmpty(tweetVector, "Failed to vectorize the tweet text: " + tweetText);
 
 		Map<String, Object> response = new HashMap<>();
-		response.put(DATA_IN, tweetVector);
+		// Single bulk copy of the [1, sentence length] word ids, instead of a reflective walk of the int[][]
+		response.put(DATA_IN, TensorFeed.of(tweetVector[0], 1, tweetVector[0].length));
 		response.put(DROPOUT_KEEP_PROB, DROPOUT_KEEP_PROB_VALUE);
 
 		return response;
@@ -125,8 +152,17 @@ public class TwitterSentimentTensorflowInputConverter implements TensorflowInput
 	@Override
 	public void close() throws Exception {
 		logger.info("Word Vocabulary Destroyed");
-		if (wordVocabulary != null) {
-			wordVocabulary.close();
+		WordVocabulary loaded = wordVocabulary;
+		if (loaded == null && pendingVocabulary != null && !pendingVocabulary.cancel(false)) {
+			try {
+				loaded = pendingVocabulary.get();
+			}
+			catch (ExecutionException e) {
+				logger.debug("The word vocabulary failed to load", e.getCause());
+			}
+		}
+		if (loaded != null) {
+			loaded.close();
 		}
 	}
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.benchmark;
+
+import java.util.Collection;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Enforces the heap allocation budget of the steady state evaluation path. Runs the {@link EndToEndBenchmark} with
+ * the JMH GC profiler (-prof gc) and fails with exit status 1 if the bytes allocated per evaluated message
+ * (gc.alloc.rate.norm) exceed the budget.
+ *
+ * <code>
+ *     java -Dbudget=6144 -cp benchmarks.jar org.springframework.cloud.stream.app.tensorflow.benchmark.AllocationBudget
+ * </code>
+ *
+ * @author Christian Tzolov
+ */
+public class AllocationBudget {
+
+	/**
+	 * Default budget in bytes per message. Covers the Runner and the result list of the TensorFlow session run, the
+	 * output Tuple and the output message with its headers.
+	 */
+	private static final long DEFAULT_BUDGET = 6144;
+
+	private static final String ALLOC_RATE_NORM = "\u00b7gc.alloc.rate.norm";
+
+	public static void main(String[] args) throws Exception {
+		long budget = Long.getLong("budget", DEFAULT_BUDGET);
+
+		Collection<RunResult> results = new Runner(new OptionsBuilder()
+				.include(EndToEndBenchmark.class.getName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+
+		boolean overBudget = false;
+		for (RunResult result : results) {
+			Result allocated = result.getSecondaryResults().get(ALLOC_RATE_NORM);
+			String benchmark = result.getParams().getBenchmark() + " " + result.getParams().getParam("transportFormat");
+			if (allocated == null) {
+				System.err.println(benchmark + ": no allocation rate reported by the GC profiler");
+				overBudget = true;
+			}
+			else if (allocated.getScore() > budget) {
+				System.err.println(String.format("%s: %.0f B/op exceeds the allocation budget of %d B/op",
+						benchmark, allocated.getScore(), budget));
+				overBudget = true;
+			}
+			else {
+				System.out.println(String.format("%s: %.0f B/op within the allocation budget of %d B/op",
+						benchmark, allocated.getScore(), budget));
+			}
+		}
+		System.exit(overBudget ? 1 : 0);
+	}
+}
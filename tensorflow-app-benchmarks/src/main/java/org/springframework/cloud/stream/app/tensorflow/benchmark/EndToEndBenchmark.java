@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.benchmark;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowProcessorConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+/**
+ * Measures {@link TensorflowProcessorConfiguration#evaluate(Message)}: the input conversion, the model evaluation and
+ * the output conversion of a message, for the Tuple and the raw binary output transport. The processor runs in a
+ * Spring Boot application bound to the test binder.
+ *
+ * @author Christian Tzolov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EndToEndBenchmark {
+
+	@Param({ "TUPLE", "RAW" })
+	public String transportFormat;
+
+	private ConfigurableApplicationContext context;
+
+	private TensorflowProcessorConfiguration processor;
+
+	private Message<?> input;
+
+	@Setup
+	public void setup() {
+		context = new SpringApplicationBuilder(EndToEndApplication.class)
+				.web(false)
+				.properties("tensorflow.modelLocation=classpath:tensorflow/model/linear_regression_graph.proto",
+						"tensorflow.outputName=add",
+						"tensorflow.transport.format=" + transportFormat,
+						"logging.level.root=WARN")
+				.run();
+		processor = context.getBean(TensorflowProcessorConfiguration.class);
+		input = MessageBuilder.withPayload(Collections.singletonMap("Placeholder", 0.7f)).build();
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Message<?> evaluate() {
+		return processor.evaluate(input);
+	}
+
+	@Configuration
+	@EnableAutoConfiguration
+	@Import(TensorflowProcessorConfiguration.class)
+	public static class EndToEndApplication {
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.Tensor;
+
+import org.springframework.cloud.stream.app.label.image.processor.LabelImageTensorflowInputConverter;
+import org.springframework.cloud.stream.app.label.image.processor.LabelImageTensorflowOutputConverter;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+/**
+ * Measures the label image converters: the JPEG decoding and normalization graph of the
+ * {@link LabelImageTensorflowInputConverter} and the label selection of the {@link LabelImageTensorflowOutputConverter}
+ * with and without alternatives. The image and the labels are generated, so the benchmark does not download the
+ * Inception model.
+ *
+ * @author Christian Tzolov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LabelImageConverterBenchmark {
+
+	/**
+	 * Number of labels of the Inception5h model.
+	 */
+	private static final int LABELS = 1008;
+
+	@Param({ "0", "10" })
+	public int alternativesLength;
+
+	private LabelImageTensorflowInputConverter inputConverter;
+
+	private LabelImageTensorflowOutputConverter outputConverter;
+
+	private Message<byte[]> image;
+
+	private Tensor labelProbabilities;
+
+	private final Map<String, Object> processorContext = new HashMap<>();
+
+	@Setup
+	public void setup() throws Exception {
+		inputConverter = new LabelImageTensorflowInputConverter();
+		image = MessageBuilder.withPayload(jpeg(640, 480)).build();
+
+		StringBuilder labels = new StringBuilder();
+		for (int i = 0; i < LABELS; i++) {
+			labels.append("label").append(i).append('\n');
+		}
+		outputConverter = new LabelImageTensorflowOutputConverter(
+				new ByteArrayResource(labels.toString().getBytes(StandardCharsets.UTF_8)), alternativesLength);
+
+		Random random = new Random(0);
+		float[][] probabilities = new float[1][LABELS];
+		for (int i = 0; i < LABELS; i++) {
+			probabilities[0][i] = random.nextFloat();
+		}
+		labelProbabilities = Tensor.create(probabilities);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		inputConverter.close();
+		labelProbabilities.close();
+	}
+
+	@Benchmark
+	public long inputConverter() {
+		Map<String, Object> feeds = inputConverter.convert(image, processorContext);
+		try (Tensor normalizedImage = (Tensor) feeds.get("input")) {
+			return normalizedImage.numBytes();
+		}
+	}
+
+	@Benchmark
+	public String outputConverter() {
+		return outputConverter.convert(labelProbabilities, processorContext);
+	}
+
+	private static byte[] jpeg(int width, int height) throws Exception {
+		BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = bufferedImage.createGraphics();
+		Random random = new Random(0);
+		for (int i = 0; i < 100; i++) {
+			graphics.setColor(new Color(random.nextInt(0xFFFFFF)));
+			graphics.fillOval(random.nextInt(width), random.nextInt(height), 20 + random.nextInt(200),
+					20 + random.nextInt(200));
+		}
+		graphics.dispose();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ImageIO.write(bufferedImage, "jpg", bytes);
+		return bytes.toByteArray();
+	}
+}
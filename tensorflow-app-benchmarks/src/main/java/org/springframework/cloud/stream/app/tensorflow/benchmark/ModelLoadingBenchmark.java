@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.benchmark;
+
+import static org.apache.commons.io.IOUtils.buffer;
+import static org.apache.commons.io.IOUtils.toByteArray;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.stream.app.tensorflow.processor.GraphDefLoader;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * Compares the memory-mapped {@link GraphDefLoader} with the former buffered stream read of file based models.
+ * Run with -prof gc to compare the allocated bytes per load, which drive the startup heap peak.
+ *
+ * @author Christian Tzolov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class ModelLoadingBenchmark {
+
+	/**
+	 * Model file size in MB.
+	 */
+	@Param({ "16", "128" })
+	public int sizeMb;
+
+	private File modelFile;
+
+	private Resource modelLocation;
+
+	@Setup
+	public void setup() throws Exception {
+		modelFile = File.createTempFile("graph", ".pb");
+		byte[] content = new byte[sizeMb * 1024 * 1024];
+		new Random(42).nextBytes(content);
+		Files.write(modelFile.toPath(), content);
+		modelLocation = new FileSystemResource(modelFile);
+	}
+
+	@TearDown
+	public void tearDown() {
+		modelFile.delete();
+	}
+
+	@Benchmark
+	public int memoryMapped() throws Exception {
+		return GraphDefLoader.load(modelLocation).length;
+	}
+
+	@Benchmark
+	public int bufferedStream() throws Exception {
+		try (InputStream is = modelLocation.getInputStream()) {
+			return toByteArray(buffer(is)).length;
+		}
+	}
+}
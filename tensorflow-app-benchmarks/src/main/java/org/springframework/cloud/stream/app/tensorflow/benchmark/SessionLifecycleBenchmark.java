@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.benchmark;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.Tensor;
+
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorFlowService;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowSessionPool;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Compares the per-call Session lifecycle (the original behavior) with the shared and pooled session modes
+ * on the bundled linear regression model.
+ *
+ * @author Christian Tzolov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SessionLifecycleBenchmark {
+
+	@Param({ "PER_CALL", "SHARED", "POOLED" })
+	public TensorflowSessionPool.Mode mode;
+
+	private TensorFlowService tensorFlowService;
+
+	private Map<String, Object> feeds;
+
+	@Setup
+	public void setup() throws Exception {
+		tensorFlowService = new TensorFlowService(
+				new ClassPathResource("tensorflow/model/linear_regression_graph.proto"), mode,
+				Runtime.getRuntime().availableProcessors());
+		feeds = Collections.<String, Object>singletonMap("Placeholder", 0.7f);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		tensorFlowService.close();
+	}
+
+	@Benchmark
+	public float singleThreaded() {
+		return evaluate();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public float fourThreads() {
+		return evaluate();
+	}
+
+	private float evaluate() {
+		Tensor output = tensorFlowService.evaluate(feeds, "add", 0);
+		try {
+			return output.copyTo(new float[1])[0];
+		}
+		finally {
+			tensorFlowService.getTensorMemoryTracker().close(output);
+		}
+	}
+}
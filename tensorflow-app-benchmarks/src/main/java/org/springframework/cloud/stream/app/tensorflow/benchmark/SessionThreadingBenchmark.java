@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.benchmark;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.Tensor;
+
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorFlowService;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorMemoryTracker;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowSessionConfig;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowSessionPool;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Compares the evaluation throughput of the session thread settings on the bundled linear regression model, with
+ * 4 concurrent callers (e.g. binder concurrency 4). 0 lets TensorFlow size the pool to all cores.
+ *
+ * @author Christian Tzolov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SessionThreadingBenchmark {
+
+	@Param({ "0", "1", "2" })
+	public int intraOpParallelism;
+
+	@Param({ "0", "1", "2" })
+	public int interOpParallelism;
+
+	@Param({ "false", "true" })
+	public boolean usePerSessionThreads;
+
+	private TensorFlowService tensorFlowService;
+
+	private Map<String, Object> feeds;
+
+	@Setup
+	public void setup() throws Exception {
+		TensorflowSessionConfig sessionConfig = new TensorflowSessionConfig(intraOpParallelism, interOpParallelism,
+				usePerSessionThreads, false, TensorflowSessionConfig.OptimizerLevel.L1,
+				TensorflowSessionConfig.JitLevel.DEFAULT);
+		tensorFlowService = new TensorFlowService(
+				new ClassPathResource("tensorflow/model/linear_regression_graph.proto"),
+				TensorflowSessionPool.Mode.POOLED, 4, sessionConfig, new TensorMemoryTracker());
+		feeds = Collections.<String, Object>singletonMap("Placeholder", 0.7f);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		tensorFlowService.close();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public float evaluate() {
+		Tensor output = tensorFlowService.evaluate(feeds, "add", 0);
+		try {
+			return output.copyTo(new float[1])[0];
+		}
+		finally {
+			tensorFlowService.getTensorMemoryTracker().close(output);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.Tensor;
+
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorFlowService;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorTupleConverter;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowResultCache;
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorflowSessionPool;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.tuple.Tuple;
+
+/**
+ * Measures {@link TensorFlowService#evaluate} on the bundled linear regression model for the supported feed types
+ * (scalar, Tuple encoded tensor and Tensor) and with the result cache enabled.
+ *
+ * @author Christian Tzolov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TensorFlowServiceBenchmark {
+
+	private static final String FEED = "Placeholder";
+
+	private static final List<String> FETCHES = Collections.singletonList("add");
+
+	private TensorFlowService tensorFlowService;
+
+	private TensorFlowService cachedTensorFlowService;
+
+	private Tuple tupleFeed;
+
+	@Setup
+	public void setup() throws Exception {
+		ClassPathResource model = new ClassPathResource("tensorflow/model/linear_regression_graph.proto");
+		tensorFlowService = new TensorFlowService(model, TensorflowSessionPool.Mode.SHARED, 1);
+		cachedTensorFlowService = new TensorFlowService(model, TensorflowSessionPool.Mode.SHARED, 1);
+		cachedTensorFlowService.setResultCache(new TensorflowResultCache(1000, 0, new SimpleMeterRegistry()));
+
+		try (Tensor tensor = Tensor.create(0.7f)) {
+			tupleFeed = TensorTupleConverter.toTuple(tensor);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		tensorFlowService.close();
+		cachedTensorFlowService.close();
+	}
+
+	@Benchmark
+	public float scalarFeed() {
+		return evaluate(tensorFlowService, Collections.<String, Object>singletonMap(FEED, 0.7f));
+	}
+
+	@Benchmark
+	public float tupleFeed() {
+		return evaluate(tensorFlowService, Collections.<String, Object>singletonMap(FEED, tupleFeed));
+	}
+
+	@Benchmark
+	public float tensorFeed() {
+		// The service closes the Tensor feeds
+		return evaluate(tensorFlowService, Collections.<String, Object>singletonMap(FEED, Tensor.create(0.7f)));
+	}
+
+	@Benchmark
+	public float cachedScalarFeed() {
+		Map<String, Tensor> outputs = cachedTensorFlowService.evaluate(null,
+				Collections.<String, Object>singletonMap(FEED, 0.7f), FETCHES, null);
+		return value(cachedTensorFlowService, outputs.get("add"));
+	}
+
+	private static float evaluate(TensorFlowService service, Map<String, Object> feeds) {
+		return value(service, service.evaluate(feeds, FETCHES).get("add"));
+	}
+
+	private static float value(TensorFlowService service, Tensor output) {
+		try {
+			return output.copyTo(new float[1])[0];
+		}
+		finally {
+			service.getTensorMemoryTracker().close(output);
+		}
+	}
+}
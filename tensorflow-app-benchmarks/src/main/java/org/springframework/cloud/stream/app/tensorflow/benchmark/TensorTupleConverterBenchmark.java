@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.Tensor;
+
+import org.springframework.cloud.stream.app.tensorflow.processor.TensorTupleConverter;
+import org.springframework.tuple.Tuple;
+import org.springframework.tuple.TupleBuilder;
+
+/**
+ * Compares the {@link TensorTupleConverter} with the former implementation, which copied the tensor through an
+ * intermediate heap ByteBuffer, and measures the Tensor to Tuple to Tensor round trip. Run with -prof gc to compare the allocation rates.
+ *
+ * @author Christian Tzolov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TensorTupleConverterBenchmark {
+
+	/**
+	 * Number of float elements: 64B, 4KB, 4MB and 16MB tensors.
+	 */
+	@Param({ "16", "1024", "1048576", "4194304" })
+	public int size;
+
+	private Tensor tensor;
+
+	private Tuple tuple;
+
+	@Setup
+	public void setup() {
+		float[] values = new float[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = i;
+		}
+		tensor = Tensor.create(new long[] { size }, FloatBuffer.wrap(values));
+		tuple = TensorTupleConverter.toTuple(tensor);
+	}
+
+	@TearDown
+	public void tearDown() {
+		tensor.close();
+	}
+
+	@Benchmark
+	public Tuple toTuple() {
+		return TensorTupleConverter.toTuple(tensor);
+	}
+
+	@Benchmark
+	public Tuple toTupleLegacy() {
+		ByteBuffer buffer = ByteBuffer.allocate(tensor.numBytes());
+		tensor.writeTo(buffer);
+		buffer.clear();
+		byte[] bytes = new byte[buffer.capacity()];
+		buffer.get(bytes, 0, bytes.length);
+
+		return TupleBuilder.tuple()
+				.put(TensorTupleConverter.TF_DATA_TYPE, tensor.dataType().name())
+				.put(TensorTupleConverter.TF_SHAPE, tensor.shape())
+				.put(TensorTupleConverter.TF_VALUE, bytes)
+				.build();
+	}
+
+	@Benchmark
+	public int toTensor() {
+		try (Tensor t = TensorTupleConverter.toTensor(tuple)) {
+			return t.numBytes();
+		}
+	}
+
+	@Benchmark
+	public int roundTrip() {
+		try (Tensor t = TensorTupleConverter.toTensor(TensorTupleConverter.toTuple(tensor))) {
+			return t.numBytes();
+		}
+	}
+}
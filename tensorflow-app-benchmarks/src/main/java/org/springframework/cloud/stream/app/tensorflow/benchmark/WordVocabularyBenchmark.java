@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.tensorflow.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.stream.app.twitter.sentiment.processor.WordVocabulary;
+
+/**
+ * Measures {@link WordVocabulary#vectorizeSentence(String)} for a short and a long tweet. The vocabulary is
+ * generated, so the benchmark does not download the twitter sentiment vocabulary.
+ *
+ * @author Christian Tzolov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class WordVocabularyBenchmark {
+
+	private static final int VOCABULARY_SIZE = 20000;
+
+	@Param({ "short", "long" })
+	public String sentenceLength;
+
+	private WordVocabulary vocabulary;
+
+	private String sentence;
+
+	@Setup
+	public void setup() throws Exception {
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < VOCABULARY_SIZE; i++) {
+			// The vocabulary skips the single digit indexes
+			csv.append("word").append(i).append(',').append(i + 10).append('\n');
+		}
+		vocabulary = new WordVocabulary(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+
+		sentence = "short".equals(sentenceLength) ?
+				"Hello word1, isn't word2 great?!" :
+				"RT @someone: I've been waiting sooooo long for word12 and word345 (really!) but they'd rather "
+						+ "keep word6789 for themselves... Can't believe it, won't you? #word42 word43 word44 word45 "
+						+ "word46 word47 word48 word49 word50 word51 word52 word53 word54 word55 word56 word57";
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		vocabulary.close();
+	}
+
+	@Benchmark
+	public int[][] vectorizeSentence() {
+		return vocabulary.vectorizeSentence(sentence);
+	}
+}